@@ -0,0 +1,85 @@
+"""
+把 stable-baselines3 DQN 模型的 Q-network（MLP）權重匯出成 Java `light.PolicyNetwork`
+可以直接讀取的扁平二進位格式。
+
+格式（全部 little-endian）：
+    magic        4 bytes  b"SNKP"
+    version      int32    目前為 1
+    obs_mode     int32    0 = 4 維特徵（FeatureExtractWrapper: dx, dy, snake_len, dnorm）
+                          1 = board(n*n) + head/food/len/direction one-hot（JavaSnakeSocketEnv 含 extras）
+                          2 = 只有 board(n*n)
+    board_size   int32
+    num_layers   int32
+    每一層：
+        in_dim   int32
+        out_dim  int32
+        weights  float32[out_dim * in_dim]   row-major（與 torch Linear.weight 相同）
+        bias     float32[out_dim]
+隱藏層固定為 ReLU，最後一層為線性輸出（Q 值）。
+
+用法：
+    python export_policy.py                       # 預設讀 dqn_snake_model.zip，輸出 dqn_snake_policy.bin
+    python export_policy.py --model dqn_snake_model_socket --out policy.bin --board-size 20
+"""
+import argparse
+import os
+import struct
+
+import numpy as np
+import torch
+from stable_baselines3 import DQN
+
+BASE_DIR = os.path.dirname(__file__)
+
+OBS_FEATURES = 0
+OBS_BOARD_EXTRAS = 1
+OBS_BOARD = 2
+
+
+def guess_obs_mode(in_dim: int, board_size: int) -> int:
+    n2 = board_size * board_size
+    if in_dim == 4:
+        return OBS_FEATURES
+    if in_dim == n2 + 9:
+        return OBS_BOARD_EXTRAS
+    if in_dim == n2:
+        return OBS_BOARD
+    raise ValueError(f"無法由輸入維度 {in_dim} 推斷 observation 格式（board_size={board_size}），請用 --obs-mode 指定")
+
+
+def main() -> None:
+    parser = argparse.ArgumentParser(description="匯出 DQN policy 給 Java PolicyNetwork")
+    parser.add_argument("--model", default=os.path.join(BASE_DIR, "dqn_snake_model"))
+    parser.add_argument("--out", default=os.path.join(BASE_DIR, "dqn_snake_policy.bin"))
+    parser.add_argument("--board-size", type=int, default=20)
+    parser.add_argument("--obs-mode", type=int, default=None, choices=[OBS_FEATURES, OBS_BOARD_EXTRAS, OBS_BOARD])
+    args = parser.parse_args()
+
+    model = DQN.load(args.model, device="cpu")
+    seq = model.policy.q_net.q_net
+    linears = [m for m in seq if isinstance(m, torch.nn.Linear)]
+    for m in seq:
+        if not isinstance(m, (torch.nn.Linear, torch.nn.ReLU)):
+            raise ValueError(f"不支援的 layer: {m}（Java 端只實作 Linear + ReLU）")
+    if not linears:
+        raise ValueError("q_net 內找不到任何 Linear layer")
+
+    in_dim = linears[0].in_features
+    obs_mode = args.obs_mode if args.obs_mode is not None else guess_obs_mode(in_dim, args.board_size)
+
+    with open(args.out, "wb") as f:
+        f.write(b"SNKP")
+        f.write(struct.pack("<iiii", 1, obs_mode, args.board_size, len(linears)))
+        for layer in linears:
+            w = layer.weight.detach().cpu().numpy().astype("<f4")
+            b = layer.bias.detach().cpu().numpy().astype("<f4")
+            f.write(struct.pack("<ii", layer.in_features, layer.out_features))
+            f.write(np.ascontiguousarray(w).tobytes())
+            f.write(np.ascontiguousarray(b).tobytes())
+
+    dims = " -> ".join([str(in_dim)] + [str(l.out_features) for l in linears])
+    print(f"已匯出 {args.model} 到 {args.out}：obs_mode={obs_mode}, layers={dims}")
+
+
+if __name__ == "__main__":
+    main()
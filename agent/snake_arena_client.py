@@ -0,0 +1,80 @@
+"""
+多蛇 arena（Java 端 light.ArenaSnakeServer）的 Python client。
+
+一個 client 可以控制全部的蛇（server 以 clients=1 啟動，snake_id = -1），
+也可以每條蛇各自一個 client（clients=K，snake_id 由連線順序決定）。
+
+用法：
+    client = ArenaClient()            # 連到 SNAKE_HOST:SNAKE_ARENA_PORT（預設 127.0.0.1:5200）
+    state = client.reset()
+    while True:
+        state, rewards, dones, episode_over = client.step(actions)
+        if episode_over:
+            state = client.reset()
+"""
+import os
+import socket
+from typing import Any, Dict, List, Tuple
+
+import numpy as np
+
+from snake_socket_env import recv_msg, send_msg
+
+HOST = os.environ.get("SNAKE_HOST", "127.0.0.1")
+PORT = int(os.environ.get("SNAKE_ARENA_PORT", "5200"))
+
+
+class ArenaClient:
+    def __init__(self, host: str = HOST, port: int = PORT) -> None:
+        self.sock = socket.create_connection((host, port))
+        self.sock.setsockopt(socket.IPPROTO_TCP, socket.TCP_NODELAY, 1)
+        init = self._wait_for("INIT")
+        payload = init.get("payload", {}) or {}
+        self.board_size: int = int(payload["board_size"])
+        self.num_snakes: int = int(payload["snakes"])
+        self.snake_id: int = int(payload.get("snake_id", -1))
+        print(f"[ArenaClient] 已連線 board_size={self.board_size}, snakes={self.num_snakes}, snake_id={self.snake_id}")
+
+    def _wait_for(self, msg_type: str) -> Dict[str, Any]:
+        while True:
+            msg = recv_msg(self.sock)
+            if msg.get("type") == msg_type:
+                return msg
+
+    def reset(self) -> Dict[str, Any]:
+        """回傳新一局的第一個 ARENA_STATE payload。"""
+        return self._wait_for("ARENA_STATE").get("payload", {}) or {}
+
+    def step(self, actions) -> Tuple[Dict[str, Any], np.ndarray, np.ndarray, bool]:
+        """送出動作並等下一個狀態。
+
+        actions：控制全部時為長度 K 的序列；單蛇 client 時為一個 int。
+        回傳 (state, rewards[K], dones[K], episode_over)。episode_over 時請呼叫 reset()。
+        """
+        if self.snake_id < 0:
+            send_msg(self.sock, "ARENA_ACTION", {"actions": [int(a) for a in actions]})
+        else:
+            send_msg(self.sock, "ARENA_ACTION", {"action": int(actions)})
+        state = self._wait_for("ARENA_STATE").get("payload", {}) or {}
+        snakes: List[Dict[str, Any]] = state.get("snakes", [])
+        rewards = np.array([float(s.get("reward", 0.0)) for s in snakes], dtype=np.float32)
+        dones = np.array([not bool(s.get("alive", False)) for s in snakes], dtype=np.bool_)
+        episode_over = bool(state.get("done", False)) or bool(state.get("truncated", False))
+        if episode_over:
+            # server 接著會送 RESET 與新一局的 ARENA_STATE，reset() 時再讀
+            self._wait_for("RESET")
+        return state, rewards, dones, episode_over
+
+    def board_planes(self, state: Dict[str, Any], snake_id: int) -> np.ndarray:
+        """把 board 轉成 (3, n, n)：自己、其他蛇、食物。"""
+        board = np.asarray(state["board"], dtype=np.int32)
+        own = (board == 3 + snake_id).astype(np.float32)
+        others = ((board >= 3) & (board != 3 + snake_id)).astype(np.float32)
+        food = (board == 2).astype(np.float32)
+        return np.stack([own, others, food])
+
+    def close(self) -> None:
+        try:
+            self.sock.close()
+        except OSError:
+            pass
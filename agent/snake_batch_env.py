@@ -0,0 +1,84 @@
+"""
+EnvPool（Java 端 light.EnvPoolServer）的向量化 Python client：一次 step 推進全部 env。
+
+boards 以字串傳輸（每格一個字元 '0'/'1'/'2'），在這裡轉成 (N, n, n) 的 uint8 陣列。
+結束的 env 由 server 自動 reset，dones[i] 為 True 時 obs[i] 已是新局的第一個畫面，
+剛結束那一局的步數與分數放在 info["episode_length"] / info["episode_score"]。
+
+用法：
+    env = BatchSnakeEnv()             # 連到 SNAKE_HOST:SNAKE_BATCH_PORT（預設 127.0.0.1:5300）
+    obs = env.reset()
+    while True:
+        obs, rewards, dones, info = env.step(actions)        # 一次送出全部動作
+        # 或依 shard 分批送出，server 收到一批就先開始跑：
+        # for s in range(env.num_shards):
+        #     env.send_shard(s, policy(obs[env.shard_slice(s)]))
+        # obs, rewards, dones, info = env.recv()
+"""
+import os
+import socket
+from typing import Any, Dict, Tuple
+
+import numpy as np
+
+from snake_socket_env import recv_msg, send_msg
+
+HOST = os.environ.get("SNAKE_HOST", "127.0.0.1")
+PORT = int(os.environ.get("SNAKE_BATCH_PORT", "5300"))
+
+
+class BatchSnakeEnv:
+    def __init__(self, host: str = HOST, port: int = PORT) -> None:
+        self.sock = socket.create_connection((host, port))
+        self.sock.setsockopt(socket.IPPROTO_TCP, socket.TCP_NODELAY, 1)
+        init = self._wait_for("INIT")
+        payload = init.get("payload", {}) or {}
+        self.board_size: int = int(payload["board_size"])
+        self.num_envs: int = int(payload["num_envs"])
+        self.shard_size: int = int(payload["shard_size"])
+        self.num_shards: int = (self.num_envs + self.shard_size - 1) // self.shard_size
+        print(f"[BatchSnakeEnv] 已連線 num_envs={self.num_envs}, shard_size={self.shard_size}, board_size={self.board_size}")
+
+    def _wait_for(self, msg_type: str) -> Dict[str, Any]:
+        while True:
+            msg = recv_msg(self.sock)
+            if msg.get("type") == msg_type:
+                return msg
+
+    def shard_slice(self, shard: int) -> slice:
+        start = shard * self.shard_size
+        return slice(start, min(self.num_envs, start + self.shard_size))
+
+    def reset(self) -> np.ndarray:
+        """讀第一個 BATCH_STATE（只在連線後呼叫一次；之後 env 會自動 reset）。"""
+        obs, _, _, _ = self.recv()
+        return obs
+
+    def step(self, actions) -> Tuple[np.ndarray, np.ndarray, np.ndarray, Dict[str, Any]]:
+        send_msg(self.sock, "BATCH_ACTION", {"actions": [int(a) for a in actions]})
+        return self.recv()
+
+    def send_shard(self, shard: int, actions) -> None:
+        send_msg(self.sock, "BATCH_ACTION", {"shard": int(shard), "actions": [int(a) for a in actions]})
+
+    def recv(self) -> Tuple[np.ndarray, np.ndarray, np.ndarray, Dict[str, Any]]:
+        payload = self._wait_for("BATCH_STATE").get("payload", {}) or {}
+        n = self.board_size
+        raw = "".join(payload["boards"]).encode("ascii")
+        obs = (np.frombuffer(raw, dtype=np.uint8) - ord("0")).reshape(self.num_envs, n, n)
+        rewards = np.asarray(payload["rewards"], dtype=np.float32)
+        dones = np.asarray(payload["dones"], dtype=np.bool_)
+        info = {
+            "truncated": np.asarray(payload["truncated"], dtype=np.bool_),
+            "snake_len": np.asarray(payload["snake_len"], dtype=np.int32),
+            "direction": np.asarray(payload["direction"], dtype=np.int32),
+            "episode_length": np.asarray(payload["episode_length"], dtype=np.int32),
+            "episode_score": np.asarray(payload["episode_score"], dtype=np.int32),
+        }
+        return obs, rewards, dones, info
+
+    def close(self) -> None:
+        try:
+            self.sock.close()
+        except OSError:
+            pass
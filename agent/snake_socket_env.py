@@ -1,25 +1,49 @@
+import os
 import socket
 import json
+import time
+import weakref
+from collections import deque
 from typing import Any, Dict, Tuple, Optional
 
 import numpy as np
 import gymnasium as gym
 from gymnasium import spaces
 
-HOST = "127.0.0.1"
-PORT = 5000
+# 可由 TrainerProcessPool 以環境變數指定每個 worker 的 server 位置
+HOST = os.environ.get("SNAKE_HOST", "127.0.0.1")
+PORT = int(os.environ.get("SNAKE_PORT", "5000"))
+# SNAKE_COORDINATOR=host:port 時不用 SNAKE_HOST / SNAKE_PORT，改向 Java 端 light.EnvCoordinator 要一個空閒的 env server；
+# 連線中斷時（例如該 env server 掛掉）會重新詢問並接到別的 server，該局以 truncated 結束
+COORDINATOR = os.environ.get("SNAKE_COORDINATOR", "")
+# 經由 coordinator 連線時，這麼多秒內連不上或沒收到 INIT（例如 port 被分給了別的 actor、排在 accept backlog）就重新詢問
+INIT_TIMEOUT = float(os.environ.get("SNAKE_INIT_TIMEOUT", "10"))
+# 連線中斷時，在這麼多秒內不斷重連並以 INIT 給的 session token 送出 RESUME，接回 server 上原本的局
+RESUME_TIMEOUT = float(os.environ.get("SNAKE_RESUME_TIMEOUT", "30"))
+# SNAKE_OBS_REACHABLE=1 時把 STATE 的 reachable（各 action 之後可達的空格比例，4 維）加進 observation
+OBS_REACHABLE = os.environ.get("SNAKE_OBS_REACHABLE", "0") == "1"
+# SNAKE_ACTION_REPEAT=k 時連線後以 CONFIG 要求 server 把每個 ACTION 連續執行 k 步（frame skip）
+ACTION_REPEAT = int(os.environ.get("SNAKE_ACTION_REPEAT", "1"))
+# SNAKE_AUTO_RESET=1 時要求 server 在終局 STATE 中直接附上新局的第一個觀測（next_obs），省掉 RESET 的往返
+AUTO_RESET = os.environ.get("SNAKE_AUTO_RESET", "0") == "1"
+# SNAKE_OBS_MODE=ego 時改用以蛇頭為中心、依方向旋轉的 k×k 視窗（SNAKE_EGO_SIZE，預設 11），
+# 可再加上 g×g 的粗略全域通道（SNAKE_COARSE_SIZE，預設 0 = 不使用）；觀測大小與棋盤大小無關
+OBS_MODE = os.environ.get("SNAKE_OBS_MODE", "board")
+EGO_SIZE = int(os.environ.get("SNAKE_EGO_SIZE", "11"))
+COARSE_SIZE = int(os.environ.get("SNAKE_COARSE_SIZE", "0"))
+
+
+# 每個 socket 已經收到、還沒解析的資料：一次 recv 可能包含好幾行（例如 RESET 緊接著 STATE），不能丟掉
+_RECV_BUFFERS: "weakref.WeakKeyDictionary[socket.socket, bytes]" = weakref.WeakKeyDictionary()
 
 
 def recv_msg(sock: socket.socket) -> Dict[str, Any]:
     """從 socket 讀取一行以 '\n' 結尾的 JSON，解析成 dict。"""
-    buffer = b""
+    buffer = _RECV_BUFFERS.get(sock, b"")
     while True:
-        chunk = sock.recv(4096)
-        if not chunk:
-            raise ConnectionError("socket 已關閉")
-        buffer += chunk
         if b"\n" in buffer:
             line, buffer = buffer.split(b"\n", 1)
+            _RECV_BUFFERS[sock] = buffer
             line_str = line.decode("utf-8").strip()
             if not line_str:
                 continue
@@ -29,6 +53,11 @@ def recv_msg(sock: socket.socket) -> Dict[str, Any]:
                 print(f"[WARN] JSON 解析失敗: {e}, line={line_str}")
                 # 略過錯誤行，繼續讀
                 continue
+        chunk = sock.recv(4096)
+        if not chunk:
+            raise ConnectionError("socket 已關閉")
+        buffer += chunk
+        _RECV_BUFFERS[sock] = buffer
 
 
 def send_msg(sock: socket.socket, msg_type: str, payload: Optional[Dict[str, Any]] = None) -> None:
@@ -40,6 +69,77 @@ def send_msg(sock: socket.socket, msg_type: str, payload: Optional[Dict[str, Any
     sock.sendall(data)
 
 
+def route_via_coordinator(coordinator: str, timeout: float = 60.0) -> Tuple[str, int]:
+    """向 EnvCoordinator 送 ROUTE，回傳 (host, port)；暫時沒有空閒的 server 或 coordinator 連不上時等待後重試。"""
+    c_host, c_port = coordinator.rsplit(":", 1)
+    deadline = time.time() + timeout
+    while True:
+        retry = 1.0
+        try:
+            with socket.create_connection((c_host, int(c_port)), timeout=5.0) as s:
+                send_msg(s, "ROUTE")
+                msg = recv_msg(s)
+            payload = msg.get("payload", {}) or {}
+            if msg.get("type") == "ROUTE" and "port" in payload:
+                print(f"[JavaSnakeEnv] coordinator 分配 {payload['host']}:{payload['port']} (node={payload.get('node')})")
+                return payload["host"], int(payload["port"])
+            retry = float(payload.get("retry_ms", 1000)) / 1000.0
+        except OSError as e:
+            print(f"[JavaSnakeEnv] 無法連到 coordinator {coordinator}: {e}")
+        if time.time() + retry > deadline:
+            raise ConnectionError(f"{timeout:.0f}s 內沒有從 coordinator {coordinator} 取得 env server")
+        time.sleep(retry)
+
+
+def _read_init(sock: socket.socket) -> Dict[str, Any]:
+    """讀到 INIT 為止，略過其他封包。"""
+    while True:
+        msg = recv_msg(sock)
+        if msg.get("type") == "INIT":
+            return msg
+        print(f"[JavaSnakeEnv] 忽略非 INIT 封包: {msg.get('type')}")
+
+
+def connect_env_server(init_timeout: Optional[float] = None, timeout: float = 60.0) -> Tuple[socket.socket, Dict[str, Any]]:
+    """
+    連到 env server 並讀到 INIT，回傳 (socket, INIT 訊息)；回傳的 socket 沒有 timeout。
+
+    沒有設定 SNAKE_COORDINATOR 時連到 SNAKE_HOST:SNAKE_PORT，init_timeout 為 None 時一直等（server 忙碌時排隊）。
+    經由 coordinator 時連線與等待 INIT 最多 init_timeout（預設 SNAKE_INIT_TIMEOUT）秒，
+    逾時就關掉連線重新 ROUTE，直到 timeout 秒內都沒有成功才丟出 ConnectionError。
+    """
+    if not COORDINATOR:
+        print(f"[JavaSnakeEnv] 連線到 {HOST}:{PORT} ...")
+        sock = socket.create_connection((HOST, PORT), timeout=init_timeout)
+        try:
+            init = _read_init(sock)
+        except BaseException:
+            sock.close()
+            raise
+        sock.settimeout(None)
+        return sock, init
+
+    wait = INIT_TIMEOUT if init_timeout is None else init_timeout
+    deadline = time.time() + timeout
+    while True:
+        host, port = route_via_coordinator(COORDINATOR, max(1.0, deadline - time.time()))
+        print(f"[JavaSnakeEnv] 連線到 {host}:{port} ...")
+        try:
+            sock = socket.create_connection((host, port), timeout=wait)
+        except OSError as e:
+            print(f"[JavaSnakeEnv] 無法連到 {host}:{port}: {e}")
+        else:
+            try:
+                init = _read_init(sock)
+                sock.settimeout(None)
+                return sock, init
+            except (OSError, ConnectionError) as e:
+                sock.close()
+                print(f"[JavaSnakeEnv] {wait:.0f}s 內沒有從 {host}:{port} 收到 INIT ({e})，重新詢問 coordinator")
+        if time.time() > deadline:
+            raise ConnectionError(f"{timeout:.0f}s 內無法經由 coordinator {COORDINATOR} 連上 env server")
+
+
 class JavaSnakeSocketEnv(gym.Env):
     """
     使用 socket 與 Java `SocketSnakeServerGame` 溝通的 Gym Environment。
@@ -69,6 +169,8 @@ class JavaSnakeSocketEnv(gym.Env):
 
         # store initial observation read during connect, so reset() can return it immediately
         self._initial_obs: Optional[np.ndarray] = None
+        # sample_replay() 等 SAMPLE_RESULT 時先收到的其他封包（例如 GUI server 照常送出的 STATE），留給下一次 step() / reset()
+        self._deferred: "deque[Dict[str, Any]]" = deque()
 
         # 連線並拿 INIT + probe one STATE
         self._connect_and_init()
@@ -76,31 +178,38 @@ class JavaSnakeSocketEnv(gym.Env):
         # 內部狀態緩存
         self._last_obs: Optional[np.ndarray] = None
         self._last_done: bool = False
+        # Java 端 GameState 的 Zobrist hash（舊版 server 沒有此欄位時為 None）
+        self.last_state_hash: Optional[int] = None
+        # server 端每個 ACTION 執行的步數（由 CONFIG 回覆更新）與上一個 STATE 實際走的步數
+        self.action_repeat: int = 1
+        self.last_steps: int = 1
+        self.auto_reset: bool = False
+        if ACTION_REPEAT != 1 or AUTO_RESET:
+            self.configure(action_repeat=ACTION_REPEAT, auto_reset=AUTO_RESET)
 
     def _connect_and_init(self) -> None:
-        print(f"[JavaSnakeEnv] 連線到 {HOST}:{PORT} ...")
-        self.sock = socket.create_connection((HOST, PORT))
         # use raw recv functions (recv_msg uses sock.recv)
+        self.sock, msg = connect_env_server()
+        self._deferred.clear()
 
-        # 等 INIT
-        while True:
-            msg = recv_msg(self.sock)
-            msg_type = msg.get("type")
-            if msg_type == "INIT":
-                payload = msg.get("payload", {}) or {}
-                board_size = int(payload.get("board_size", 0))
-                if board_size <= 0:
-                    raise ValueError(f"INIT.board_size 不合法: {board_size}")
-                self.board_size = board_size
-                print(f"[JavaSnakeEnv] 收到 INIT, board_size={board_size}")
-                break
-            else:
-                print(f"[JavaSnakeEnv] 忽略非 INIT 封包: {msg_type}")
-                continue
+        self._base_len = 0  # board 或 ego 視窗 + 粗略通道的長度（不含 extras）
+
+        # INIT
+        payload = msg.get("payload", {}) or {}
+        board_size = int(payload.get("board_size", 0))
+        if board_size <= 0:
+            raise ValueError(f"INIT.board_size 不合法: {board_size}")
+        self.board_size = board_size
+        # 可恢復 session 的 token（舊版 server 沒有）；ACTION 計數隨新 session 歸零
+        self.session = payload.get("session")
+        self._actions_sent = 0
+        print(f"[JavaSnakeEnv] 收到 INIT, board_size={board_size}, session={self.session}")
+        if OBS_MODE == "ego":
+            # server 回覆 CONFIG 後會以 ego 格式重送目前的 STATE（resend=true）
+            send_msg(self.sock, "CONFIG", {"obs_mode": "ego", "ego_size": EGO_SIZE, "coarse_size": COARSE_SIZE})
 
         # Probe: read messages until we observe a STATE so we can detect extras and set observation_space
         probe_timeout = 10.0
-        import time
         start = time.time()
         while True:
             if time.time() - start > probe_timeout:
@@ -108,6 +217,7 @@ class JavaSnakeSocketEnv(gym.Env):
                 n = self.board_size
                 self._extras_keys = []
                 self._extras_count = 0
+                self._base_len = n * n
                 self.observation_space = spaces.Box(low=0, high=2, shape=(n * n,), dtype=np.int32)
                 print(f"[JavaSnakeEnv] probe timeout: assume no extras, obs shape={n*n}")
                 return
@@ -118,25 +228,37 @@ class JavaSnakeSocketEnv(gym.Env):
                 continue
             t = msg.get("type")
             payload = msg.get("payload", {}) or {}
+            if t == "STATE" and OBS_MODE == "ego" and "ego" not in payload:
+                # 送出 CONFIG 之前就已經送來的 board 格式 STATE，等重送的 ego 版本
+                continue
             if t == "STATE":
                 # detect extras keys
                 extras = []
                 for k in ("head_x", "head_y", "food_x", "food_y", "snake_len", "direction"):
                     if k in payload:
                         extras.append(k)
+                if OBS_REACHABLE and "reachable" in payload:
+                    extras.append("reachable")
                 self._extras_keys = extras
                 # compute extras count: if 'direction' present we will encode as one-hot 4
                 extras_count = 0
                 for k in extras:
-                    if k == "direction":
+                    if k in ("direction", "reachable"):
                         extras_count += 4
                     else:
                         extras_count += 1
                 self._extras_count = extras_count
                 n = self.board_size
-                obs_len = n * n + self._extras_count
+                if "ego" in payload:
+                    k = int(payload["ego_size"])
+                    g = int(payload.get("coarse_size", 0))
+                    self._base_len = k * k + 2 * g * g
+                else:
+                    self._base_len = n * n
+                obs_len = self._base_len + self._extras_count
                 # set observation_space
-                self.observation_space = spaces.Box(low=-1.0, high=2.0, shape=(obs_len,), dtype=np.float32)
+                high = 3.0 if "ego" in payload else 2.0
+                self.observation_space = spaces.Box(low=-1.0, high=high, shape=(obs_len,), dtype=np.float32)
                 # store initial obs to return on reset
                 obs_arr, reward, done = self._parse_state(msg)
                 self._initial_obs = obs_arr
@@ -166,7 +288,7 @@ class JavaSnakeSocketEnv(gym.Env):
 
         # Otherwise wait for a STATE
         while True:
-            msg = recv_msg(self.sock)
+            msg = self._recv()
             msg_type = msg.get("type")
             if msg_type == "STATE":
                 obs, reward, done = self._parse_state(msg)
@@ -178,27 +300,142 @@ class JavaSnakeSocketEnv(gym.Env):
                 board_size = int(payload.get("board_size", self.board_size or 0))
                 self.board_size = board_size
                 print(f"[JavaSnakeEnv] reset 時收到 INIT, board_size={board_size}")
+            elif msg_type == "CONFIG":
+                self._apply_config(msg)
             else:
                 print(f"[JavaSnakeEnv] reset() 忽略封包 type={msg_type}")
 
-    def step(self, action: int):
+    def set_action_repeat(self, repeat: int) -> None:
+        """要求 server 之後每個 ACTION 連續執行 repeat 步；實際值以 server 的 CONFIG 回覆為準。"""
+        self.configure(action_repeat=repeat)
+
+    def configure(self, action_repeat: Optional[int] = None, auto_reset: Optional[bool] = None) -> None:
+        """送出 CONFIG 修改連線設定；只送有指定的欄位。"""
+        payload: Dict[str, Any] = {}
+        if action_repeat is not None:
+            self.action_repeat = int(action_repeat)
+            payload["action_repeat"] = int(action_repeat)
+        if auto_reset is not None:
+            self.auto_reset = bool(auto_reset)
+            payload["auto_reset"] = bool(auto_reset)
+        send_msg(self.sock, "CONFIG", payload)
+
+    def _apply_config(self, msg: Dict[str, Any]) -> None:
+        payload = msg.get("payload", {}) or {}
+        self.action_repeat = int(payload.get("action_repeat", self.action_repeat))
+        self.auto_reset = bool(payload.get("auto_reset", self.auto_reset))
+
+    def step(self, action: int, repeat: Optional[int] = None):
         # Gymnasium step: return (obs, reward, terminated, truncated, info)
+        # repeat 可覆寫這一步的 action repeat；reward 為實際走過各步的總和，info["steps"] 為步數
         if self.sock is None:
             raise RuntimeError("socket 尚未連線")
 
-        # 將 action 送給 Java
-        action_int = int(action)
-        send_msg(self.sock, "ACTION", {"action": action_int})
-
+        # 將 action 送給 Java；先計數，送出途中斷線時 RESUME 才知道這個 ACTION 可能沒送到
+        payload = {"action": int(action)}
+        if repeat is not None:
+            payload["repeat"] = int(repeat)
+        try:
+            self._actions_sent += 1
+            send_msg(self.sock, "ACTION", payload)
+            return self._await_step()
+        except (ConnectionError, OSError) as e:
+            return self._reconnect(e, payload)
+
+    def _reconnect(self, error: Exception, action_payload: Dict[str, Any]):
+        """
+        與 env server 的連線中斷：先在 RESUME_TIMEOUT 秒內重連並以 session token 送出 RESUME，
+        成功時接著原本的局，回傳這一步原本的結果；失敗時（server 不認得 token 或連不上）開新的連線，
+        這一局以 truncated 結束，下一次 reset() 回傳新局的第一個觀測。
+        """
+        print(f"[JavaSnakeEnv] 與 env server 的連線中斷 ({error})，嘗試恢復 session {self.session}")
+        self._close_sock()
+        obs = self._last_obs if self._last_obs is not None else self._empty_obs()
+        if self.session:
+            deadline = time.time() + RESUME_TIMEOUT
+            while True:
+                try:
+                    result = self._try_resume(action_payload)
+                    if result is not None:
+                        return result
+                    break
+                except (ConnectionError, OSError) as e:
+                    if time.time() > deadline:
+                        print(f"[JavaSnakeEnv] {RESUME_TIMEOUT:.0f}s 內無法恢復 session ({e})")
+                        break
+                    time.sleep(1.0)
+        self._connect_and_init()
+        if self.action_repeat != 1 or self.auto_reset:
+            self.configure(action_repeat=self.action_repeat, auto_reset=self.auto_reset)
+        return obs, 0.0, False, True, {"reconnected": True}
+
+    def _try_resume(self, action_payload: Dict[str, Any]):
+        """連線並送出 RESUME；server 接回 session 時回傳這一步的結果，不認得 token 時回傳 None。"""
+        sock, _ = connect_env_server(init_timeout=5.0)
+        sock.settimeout(5.0)
+        try:
+            send_msg(sock, "RESUME", {"session": self.session, "actions": self._actions_sent})
+            # 中間收到的是 server 為這條新連線開的新局，略過
+            while True:
+                msg = recv_msg(sock)
+                if msg.get("type") == "RESUME":
+                    break
+            reply = msg.get("payload", {}) or {}
+        except BaseException:
+            sock.close()
+            raise
+        if not reply.get("resumed"):
+            print(f"[JavaSnakeEnv] server 不認得 session {self.session}（可能已超過寬限期），改開新的一局")
+            sock.close()
+            return None
+        sock.settimeout(None)
+        self.sock = sock
+        print(f"[JavaSnakeEnv] 已恢復 session {self.session}（server 已執行 {reply.get('actions')} 個 ACTION）")
+        if not reply.get("replay"):
+            # 斷線前最後一個 ACTION 沒有送到，重送一次；server 已執行時則會重送這一步的 STATE
+            send_msg(sock, "ACTION", action_payload)
+        return self._await_step()
+
+    def _recv(self) -> Dict[str, Any]:
+        """先交出 sample_replay() 暫存的封包，沒有時才從 socket 讀。"""
+        if self._deferred:
+            return self._deferred.popleft()
+        return recv_msg(self.sock)
+
+    def _close_sock(self) -> None:
+        self._deferred.clear()
+        try:
+            self.sock.close()
+        except OSError:
+            pass
+        self.sock = None
+
+    def _await_step(self):
         # 等下一個 STATE
         while True:
-            msg = recv_msg(self.sock)
+            msg = self._recv()
             msg_type = msg.get("type")
             if msg_type == "STATE":
+                if (msg.get("payload") or {}).get("resend"):
+                    # 改變觀測格式後重送的目前狀態，不是這個 ACTION 的結果
+                    continue
                 obs, reward, done = self._parse_state(msg)
                 self._last_obs = obs
                 self._last_done = done
-                info: Dict[str, Any] = {}
+                info: Dict[str, Any] = {"steps": self.last_steps}
+                if self.last_state_hash is not None:
+                    info["state_hash"] = self.last_state_hash
+                payload = msg.get("payload", {}) or {}
+                next_payload = payload.get("next_obs")
+                if next_payload is not None:
+                    # auto-reset：obs 為終局觀測，新局的第一個觀測留給下一次 reset() 直接回傳
+                    info["episode"] = payload.get("episode", {})
+                    truncated = bool(payload.get("truncated", False))
+                    next_obs, _, _ = self._parse_state({"payload": next_payload})
+                    self._initial_obs = next_obs
+                    self._last_obs = next_obs
+                    self._last_done = False
+                    return obs, reward, bool(done), truncated and not done, info
                 # In Gymnasium, return terminated, truncated. We treat 'done' as terminated and truncated=False
                 return obs, reward, bool(done), False, info
             elif msg_type == "RESET":
@@ -211,30 +448,40 @@ class JavaSnakeSocketEnv(gym.Env):
                 board_size = int(payload.get("board_size", self.board_size or 0))
                 self.board_size = board_size
                 print(f"[JavaSnakeEnv] step 時收到 INIT, board_size={board_size}")
+            elif msg_type == "CONFIG":
+                self._apply_config(msg)
             else:
                 print(f"[JavaSnakeEnv] step() 忽略封包 type={msg_type}")
 
     def _empty_obs(self) -> np.ndarray:
         if self.board_size is None:
             return np.zeros((0,), dtype=np.float32)
-        n = self.board_size
-        return np.zeros((n * n + self._extras_count,), dtype=np.float32)
+        return np.zeros((self._base_len + self._extras_count,), dtype=np.float32)
 
     def _parse_state(self, msg: Dict[str, Any]) -> Tuple[np.ndarray, float, bool]:
         payload = msg.get("payload", {}) or {}
         board = payload.get("board")
         reward = float(payload.get("reward", 0.0))
         done = bool(payload.get("done", False))
-
-        if board is None:
-            raise ValueError("STATE payload 缺少 board 欄位")
-
-        arr = np.array(board, dtype=np.float32)
-        flat = arr.flatten()
+        state_hash = payload.get("state_hash")
+        self.last_state_hash = int(state_hash) if state_hash is not None else None
+        self.last_steps = int(payload.get("steps", 1))
 
         n = self.board_size
-        if n is not None and flat.size != n * n:
-            raise ValueError(f"obs size {flat.size} != board_size^2 {n*n}")
+        ego = payload.get("ego")
+        if ego is not None:
+            # ego 視窗以字串傳送，每格一個字元 '0'~'3'（3 = 棋盤外的牆），後面接粗略全域通道
+            flat = (np.frombuffer(ego.encode("ascii"), dtype=np.uint8) - ord("0")).astype(np.float32)
+            if int(payload.get("coarse_size", 0)) > 0:
+                flat = np.concatenate([flat,
+                                       np.asarray(payload["coarse_body"], dtype=np.float32),
+                                       np.asarray(payload["coarse_food"], dtype=np.float32)])
+        else:
+            if board is None:
+                raise ValueError("STATE payload 缺少 board / ego 欄位")
+            flat = np.array(board, dtype=np.float32).flatten()
+            if n is not None and flat.size != n * n:
+                raise ValueError(f"obs size {flat.size} != board_size^2 {n*n}")
 
         extras_values = []
         # if extras were detected earlier, try to extract them; otherwise attempt best-effort
@@ -250,6 +497,10 @@ class JavaSnakeSocketEnv(gym.Env):
                 if 0 <= d < 4:
                     onehot[d] = 1.0
                 extras_values.extend(onehot)
+            elif k == "reachable":
+                # 以棋盤格數正規化到 0~1；沒有此欄位時補 0
+                reach = payload.get("reachable") or [0, 0, 0, 0]
+                extras_values.extend(float(v) / float(n * n) for v in reach[:4])
             else:
                 try:
                     v = float(payload.get(k, 0.0))
@@ -272,6 +523,59 @@ class JavaSnakeSocketEnv(gym.Env):
 
         return obs, reward, done
 
+    # ====== Java 端 prioritized replay buffer（需以 -Dsnake.replay.capacity 啟用） ======
+
+    def push_transition(self, obs, action: int, reward: float, next_obs, done: bool,
+                        state_hash: Optional[int] = None) -> None:
+        """把一筆 transition 寫入 Java 端的 replay buffer。
+
+        state_hash 為 obs 對應的 STATE 所帶的 hash（step 前的 env.last_state_hash）；
+        有給時 Java 端會丟棄 (state_hash, action, reward, done, next_obs) 全部相同的 transition。
+        """
+        payload = {
+            "obs": np.asarray(obs, dtype=np.float32).ravel().tolist(),
+            "action": int(action),
+            "reward": float(reward),
+            "next_obs": np.asarray(next_obs, dtype=np.float32).ravel().tolist(),
+            "done": bool(done),
+        }
+        if state_hash is not None:
+            payload["state_hash"] = int(state_hash)
+        send_msg(self.sock, "TRANSITION", payload)
+
+    def sample_replay(self, batch_size: int = 64, beta: float = 0.4) -> Optional[Dict[str, np.ndarray]]:
+        """向 Java 要求一個 minibatch；buffer 為空或 server 未啟用 replay 時回傳 None。
+
+        等待 SAMPLE_RESULT 時收到的其他封包（STATE、RESET 等）不會丟掉，下一次 step() / reset() 依序處理。
+        """
+        send_msg(self.sock, "SAMPLE", {"batch_size": int(batch_size), "beta": float(beta)})
+        while True:
+            msg = recv_msg(self.sock)
+            if msg.get("type") == "SAMPLE_RESULT":
+                break
+            self._deferred.append(msg)
+        payload = msg.get("payload", {}) or {}
+        count = int(payload.get("count", 0))
+        if count <= 0:
+            return None
+        dim = int(payload["obs_dim"])
+        return {
+            "indices": np.asarray(payload["indices"], dtype=np.int64),
+            "weights": np.asarray(payload["weights"], dtype=np.float32),
+            "obs": np.asarray(payload["obs"], dtype=np.float32).reshape(count, dim),
+            "actions": np.asarray(payload["actions"], dtype=np.int64),
+            "rewards": np.asarray(payload["rewards"], dtype=np.float32),
+            "next_obs": np.asarray(payload["next_obs"], dtype=np.float32).reshape(count, dim),
+            "dones": np.asarray(payload["dones"], dtype=np.bool_),
+        }
+
+    def update_priorities(self, indices, td_errors) -> None:
+        """回寫新的 TD error，Java 端會換算成 priority。"""
+        send_msg(self.sock, "PRIORITIES", {
+            "indices": np.asarray(indices, dtype=np.int64).ravel().tolist(),
+            "priorities": np.asarray(td_errors, dtype=np.float64).ravel().tolist(),
+        })
+
     def render(self, mode: str = "human"):
         # 已經有 Java Swing 畫面，這裡通常不需要再 render
         pass
@@ -11,13 +11,17 @@ from stable_baselines3.common.vec_env import DummyVecEnv
 from snake_socket_env import JavaSnakeSocketEnv
 
 BASE_DIR = os.path.dirname(__file__)
-TB_LOG_DIR = os.path.join(BASE_DIR, "tb_logs_socket")
+# TrainerProcessPool 會為每個 worker 指定獨立的 config / 輸出目錄 / seed
+OUTPUT_DIR = os.environ.get("SNAKE_OUTPUT_DIR", BASE_DIR)
+WORKER_ID = os.environ.get("SNAKE_WORKER_ID")
+SEED = int(os.environ["SNAKE_SEED"]) if "SNAKE_SEED" in os.environ else None
+TB_LOG_DIR = os.path.join(OUTPUT_DIR, "tb_logs_socket")
 DEFAULT_PER_EPISODE = 200  # 用於估算每局步數（當 max_steps<=0 時）
 
 
 def load_config() -> dict:
     base_dir = os.path.dirname(__file__)
-    config_path = os.path.join(base_dir, "config.json")
+    config_path = os.environ.get("SNAKE_CONFIG", os.path.join(base_dir, "config.json"))
 
     episodes = 100
     max_steps = 200
@@ -156,7 +160,7 @@ def make_env():
 
 
 def main():
-    base_dir = os.path.dirname(__file__)
+    base_dir = OUTPUT_DIR
     model_path = os.path.join(base_dir, "dqn_snake_model_socket")
 
     # ensure tensorboard log dir exists
@@ -216,6 +220,7 @@ def main():
         policy_kwargs=policy_kwargs,
         verbose=1,
         tensorboard_log=TB_LOG_DIR,
+        seed=SEED,
     )
 
     print("[train_agent_socket] DQN hyperparams:")
@@ -233,9 +238,11 @@ def main():
         from stable_baselines3.common.callbacks import EvalCallback
         eval_env = None
         # We can't create a reliable eval env before Java server is running; skip if fails
+        # worker 模式下每個 server 只服務一條連線，不建立額外的 eval env
         try:
-            eval_env = JavaSnakeSocketEnv()
-            eval_env = Monitor(eval_env)
+            if WORKER_ID is None:
+                eval_env = JavaSnakeSocketEnv()
+                eval_env = Monitor(eval_env)
         except Exception:
             eval_env = None
         if eval_env is not None:
@@ -0,0 +1,54 @@
+package light;
+
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * GameState 的 step / 碰撞檢查在不同蛇長下的成本。
+ *
+ * 蛇以 {@link GameState#layoutSerpentine(int)} 擺成指定長度；每次呼叫選第一個
+ * 不會撞的方向前進，死掉或長太長時重新擺放，讓量測維持在相同長度附近。
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class GameStateBenchmark {
+
+    @Param({"3", "50", "200", "380"})
+    public int snakeLength;
+
+    private GameState state;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        state = new GameState(42L);
+        state.setVerbose(false);
+        state.layoutSerpentine(snakeLength);
+    }
+
+    @Benchmark
+    public double stepByAction() {
+        if (state.isDone() || state.getSnakeLength() > snakeLength + 8) {
+            state.layoutSerpentine(snakeLength);
+        }
+        int action = state.getDirection();
+        for (int a = 0; a < 4; a++) {
+            if (!state.wouldCollide(a) && !state.isReverseDirection(state.getDirection(), a)) {
+                action = a;
+                break;
+            }
+        }
+        state.stepByAction(action);
+        return state.getReward();
+    }
+
+    @Benchmark
+    public void wouldCollide(Blackhole bh) {
+        bh.consume(state.wouldCollide(0));
+        bh.consume(state.wouldCollide(1));
+        bh.consume(state.wouldCollide(2));
+        bh.consume(state.wouldCollide(3));
+    }
+}
@@ -0,0 +1,41 @@
+package light;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * STATE 訊息的建立 / 編碼 / 解碼成本（每一步都會走一次的 Gson 路徑）。
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class ProtocolBenchmark {
+
+    private GameState state;
+    private String encodedState;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        state = new GameState(1L);
+        state.setVerbose(false);
+        state.layoutSerpentine(60);
+        encodedState = SocketProtocol.encode(newStateMessage());
+    }
+
+    private SocketProtocol.SocketMessage newStateMessage() {
+        return SocketProtocol.createStateMessage(state.getBoard(), state.getReward(), state.isDone(),
+                state.getHeadX(), state.getHeadY(), state.getSnakeLength(),
+                state.getFoodX(), state.getFoodY(), state.getDirection());
+    }
+
+    @Benchmark
+    public String encodeState() {
+        return SocketProtocol.encode(newStateMessage());
+    }
+
+    @Benchmark
+    public SocketProtocol.SocketMessage decodeState() {
+        return SocketProtocol.decode(encodedState);
+    }
+}
@@ -0,0 +1,44 @@
+package light;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 高佔用率下 spawnFood 的成本（rejection sampling 在盤面快滿時會大量重抽）。
+ * 每次呼叫前都從同一個盤面重新開始，量到的永遠是指定佔用率、同一組亂數下的成本。
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class SpawnFoodBenchmark {
+
+    /** 蛇身佔棋盤格子的比例。 */
+    @Param({"0.25", "0.75", "0.95", "0.99"})
+    public double occupancy;
+
+    private GameState template;
+    private GameState state;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        template = new GameState(7L);
+        template.setVerbose(false);
+        int cells = template.getBoardSize() * template.getBoardSize();
+        int length = Math.max(2, Math.min(cells - 1, (int) Math.round(cells * occupancy)));
+        template.layoutSerpentine(length);
+        state = new GameState(7L);
+        state.setVerbose(false);
+    }
+
+    @Setup(Level.Invocation)
+    public void restore() {
+        state.copyFrom(template);
+    }
+
+    @Benchmark
+    public int spawnFood() {
+        state.spawnFood();
+        return state.getFoodX() * 31 + state.getFoodY();
+    }
+}
@@ -20,7 +20,7 @@ set HAS_JAVA_FILES=false
 for %%f in (src\light\*.java) do (
     set HAS_JAVA_FILES=true
     echo ===== 編譯 %%f =====
-    javac -encoding UTF-8 -cp "src;lib\gson-2.10.1.jar" "%%f"
+    javac -encoding UTF-8 --add-modules jdk.incubator.vector -cp "src;lib\gson-2.10.1.jar" "%%f"
 )
 
 REM ===============================
@@ -46,7 +46,7 @@ REM 啟動 Java Socket Server
 REM ===============================
 start "Java Socket Server" cmd /k ^
     cd /d D:\workspace\SnakeGame-RL ^&^& ^
-    java -cp "src;lib\gson-2.10.1.jar" light.SocketSnakeServerGame
+    java --add-modules jdk.incubator.vector -cp "src;lib\gson-2.10.1.jar" light.SocketSnakeServerGame
 
 REM ===============================
 REM 等待 2 秒，讓 server 啟動
@@ -0,0 +1,167 @@
+package light;
+
+import com.google.gson.JsonArray;
+import com.google.gson.JsonObject;
+
+import java.io.IOException;
+import java.net.ServerSocket;
+
+/**
+ * 多蛇 {@link ArenaState} 的 socket 伺服端（self-play 用）。
+ *
+ * 兩種連線方式（clients=）：
+ * <ul>
+ *   <li>clients=1：單一 multi-agent client 控制全部的蛇，INIT 的 snake_id 為 -1，
+ *       每步回傳 {@code ARENA_ACTION {"actions": [a0, a1, ...]}}。</li>
+ *   <li>clients=K（等於蛇的數量）：K 個 agent 各自連線，依連線順序分配 snake_id，
+ *       每步各自回傳 {@code ARENA_ACTION {"action": a}}；蛇死後仍要回傳（會被忽略），直到整局結束。</li>
+ * </ul>
+ * 每步流程：對所有連線廣播 ARENA_STATE → 依序讀每條連線的 ARENA_ACTION → 所有蛇同時走一步。
+ * 整局結束（或超過 max_steps）時送出 done=true（或 truncated=true）的 ARENA_STATE 與 RESET，
+ * client 對這個 STATE 不回傳動作，等下一個 ARENA_STATE 開始新的一局。
+ *
+ * 用法（參數皆可省略）：
+ * <pre>
+ *   java -cp ... light.ArenaSnakeServer port=5200 snakes=4 foods=4 size=20 clients=1 max_steps=2000 seed=1
+ * </pre>
+ */
+public class ArenaSnakeServer {
+
+    public static void main(String[] args) {
+        int port = 5200;
+        int snakes = 4;
+        int foods = -1;
+        int size = 20;
+        int clients = 1;
+        int maxSteps = 2000;
+        long seed = System.nanoTime();
+
+        for (String arg : args) {
+            int eq = arg.indexOf('=');
+            if (eq < 0) continue;
+            String key = arg.substring(0, eq);
+            String value = arg.substring(eq + 1);
+            switch (key) {
+                case "port": port = Integer.parseInt(value); break;
+                case "snakes": snakes = Integer.parseInt(value); break;
+                case "foods": foods = Integer.parseInt(value); break;
+                case "size": size = Integer.parseInt(value); break;
+                case "clients": clients = Integer.parseInt(value); break;
+                case "max_steps": maxSteps = Integer.parseInt(value); break;
+                case "seed": seed = Long.parseLong(value); break;
+                default: System.err.println("[ArenaSnakeServer] 未知參數: " + key);
+            }
+        }
+        if (clients != 1 && clients != snakes) {
+            System.err.println("[ArenaSnakeServer] clients 只能是 1 或等於 snakes（" + snakes + "）: " + clients);
+            return;
+        }
+
+        MetricsHttpServer.startIfConfigured();
+        ArenaState arena = new ArenaState(size, snakes, foods > 0 ? foods : snakes, seed);
+        try {
+            run(arena, port, clients, maxSteps);
+        } catch (IOException e) {
+            System.err.println("[ArenaSnakeServer] 結束: " + e.getMessage());
+        }
+        MetricsHttpServer.stop();
+    }
+
+    /** 接受 clients 條連線並持續進行 arena，直到任一連線中斷。 */
+    static void run(ArenaState arena, int port, int clients, int maxSteps) throws IOException {
+        int snakes = arena.getSnakeCount();
+        SocketSnakeServer[] conns = new SocketSnakeServer[clients];
+        try (ServerSocket listener = new ServerSocket(port)) {
+            System.out.println("[ArenaSnakeServer] Listening on port " + port + "，等待 " + clients + " 個 client（snakes=" + snakes + "）...");
+            for (int c = 0; c < clients; c++) {
+                conns[c] = SocketSnakeServer.accept(listener);
+                int snakeId = (clients == 1) ? -1 : c;
+                conns[c].sendMessage(SocketProtocol.createArenaInitMessage(arena.getBoardSize(), snakes, snakeId));
+            }
+
+            int n = arena.getBoardSize();
+            int[][] board = new int[n][n];
+            int[] actions = new int[snakes];
+            while (true) {
+                boolean truncated = arena.getSteps() >= maxSteps;
+                if (arena.isDone() || truncated) {
+                    broadcast(conns, arena, board, truncated && !arena.isDone());
+                    double total = 0.0;
+                    for (int i = 0; i < snakes; i++) {
+                        total += arena.getEpisodeReward(i);
+                    }
+                    EnvMetrics.get().recordEpisode(arena.getSteps(), total);
+                    arena.reset();
+                    for (SocketSnakeServer conn : conns) {
+                        conn.sendReset();
+                    }
+                }
+
+                broadcast(conns, arena, board, false);
+                for (int i = 0; i < snakes; i++) {
+                    actions[i] = arena.getDirection(i);
+                }
+                for (int c = 0; c < clients; c++) {
+                    readActions(conns[c], clients == 1 ? -1 : c, actions);
+                }
+                arena.step(actions);
+                EnvMetrics.get().recordStep();
+            }
+        } finally {
+            for (SocketSnakeServer conn : conns) {
+                if (conn != null) {
+                    conn.close();
+                }
+            }
+        }
+    }
+
+    private static void broadcast(SocketSnakeServer[] conns, ArenaState arena, int[][] board,
+                                  boolean truncated) throws IOException {
+        arena.fillBoard(board);
+        // 所有連線收到的內容相同，只編碼一次
+        SocketProtocol.SocketMessage msg = SocketProtocol.createArenaStateMessage(arena, board, truncated);
+        String line = SocketProtocol.encode(msg);
+        for (SocketSnakeServer conn : conns) {
+            conn.sendEncoded(msg.getType(), line);
+        }
+    }
+
+    /**
+     * 讀到下一個 ARENA_ACTION 為止（PING 回應、其他訊息略過）並填入 actions。
+     *
+     * @param snakeId 這條連線控制的蛇；-1 表示讀 "actions" 陣列控制全部
+     */
+    private static void readActions(SocketSnakeServer conn, int snakeId, int[] actions) throws IOException {
+        while (true) {
+            SocketProtocol.SocketMessage msg = conn.readMessage();
+            if (msg == null) {
+                throw new IOException("client 已斷線");
+            }
+            SocketProtocol.MessageType type = msg.getType();
+            if (type == SocketProtocol.MessageType.PING) {
+                conn.sendPing();
+                continue;
+            }
+            if (type != SocketProtocol.MessageType.ARENA_ACTION) {
+                continue;
+            }
+            JsonObject payload = msg.getPayload();
+            if (snakeId < 0) {
+                JsonArray arr = payload.getAsJsonArray("actions");
+                if (arr == null) {
+                    throw new IOException("ARENA_ACTION 缺少 `actions` 欄位");
+                }
+                for (int i = 0; i < Math.min(arr.size(), actions.length); i++) {
+                    actions[i] = arr.get(i).getAsInt();
+                }
+            } else {
+                if (!payload.has("action")) {
+                    throw new IOException("ARENA_ACTION 缺少 `action` 欄位");
+                }
+                actions[snakeId] = payload.get("action").getAsInt();
+            }
+            return;
+        }
+    }
+}
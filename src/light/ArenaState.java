@@ -0,0 +1,428 @@
+package light;
+
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * 多條蛇共用一個棋盤、同時前進的 arena（self-play 用）。
+ *
+ * 每條蛇與 {@link GameState} 一樣以 ring buffer 存格子編號；所有蛇身共用一個 {@code long[]} bitset
+ * 記錄佔用，因此「新頭是否撞到任何蛇」是 O(1)。
+ *
+ * 一步的規則（與蛇的編號順序無關，結果可重現）：
+ * <ol>
+ *   <li>每條活著的蛇依 action 算出新頭（180 度回轉視為直走），出界即死亡。</li>
+ *   <li>本步不會吃到食物的蛇（包含本步會死的），尾巴那格視為已空出；新頭落在其他任何蛇身格（含自己）即死亡。</li>
+ *   <li>多個新頭落在同一格時（head-to-head），移動前最長的一條存活，其餘死亡；最長的不只一條時全部死亡。</li>
+ *   <li>死亡的蛇整條從棋盤移除；存活的蛇推進新頭，沒吃到食物的移除尾巴；被吃掉的食物在空格重新產生。</li>
+ * </ol>
+ * 每條蛇各自有 reward 與 done；只剩一條（單蛇模式為全部死亡）時整局結束。
+ *
+ * 不是 thread-safe；要平行跑請每個執行緒各自一個實例。
+ */
+public class ArenaState {
+
+    /** 吃到食物、死亡、一般一步的 reward。 */
+    public static final double FOOD_REWARD = 1.0;
+    public static final double DEATH_REWARD = -1.0;
+    public static final double STEP_REWARD = -0.01;
+    /** 每條蛇的初始長度 */
+    public static final int START_LENGTH = 3;
+
+    private final int size;
+    private final int cells;
+    private final int snakes;
+    private final int foodCount;
+
+    // 所有蛇身的佔用 bitset 與食物 bitset（格子編號 y * size + x）
+    private final long[] occupied;
+    private final long[] foodBits;
+    private final int[] foods;
+
+    // 每條蛇的 ring buffer：body[i][bodyHead[i]] 是頭，往後 length[i]-1 格為尾
+    private final int[][] body;
+    private final int[] bodyHead;
+    private final int[] length;
+    private final int[] direction;
+    private final boolean[] alive;
+    private final double[] reward;
+    private final double[] episodeReward;
+    private final int[] foodEaten;
+    private int steps;
+    private boolean done;
+
+    // 每步的 scratch（vacating：本步會空出的尾巴格）
+    private final long[] vacating;
+    private final int[] newHead;
+    private final boolean[] eats;
+    private final boolean[] dies;
+
+    private long rngState;
+
+    public ArenaState(int size, int snakes, int foodCount) {
+        this(size, snakes, foodCount, ThreadLocalRandom.current().nextLong());
+    }
+
+    /**
+     * @param size      棋盤邊長，至少 10（小於 10 時左右兩欄的初始蛇身會重疊）
+     * @param snakes    蛇的數量，最多 2 * (size / 2 - 1)（左右兩欄、每欄隔一列放一條）
+     * @param foodCount 同時存在的食物數
+     * @param seed      食物位置的亂數 seed
+     */
+    public ArenaState(int size, int snakes, int foodCount, long seed) {
+        int maxSnakes = 2 * (size / 2 - 1);
+        if (size < 10) {
+            throw new IllegalArgumentException("arena 邊長至少要 10: " + size);
+        }
+        if (snakes < 1 || snakes > maxSnakes) {
+            throw new IllegalArgumentException("蛇的數量必須介於 1 與 " + maxSnakes + " 之間: " + snakes);
+        }
+        if (foodCount < 1) {
+            throw new IllegalArgumentException("食物數量至少為 1: " + foodCount);
+        }
+        this.size = size;
+        this.cells = size * size;
+        this.snakes = snakes;
+        this.foodCount = foodCount;
+        this.occupied = new long[(cells + 63) >>> 6];
+        this.foodBits = new long[(cells + 63) >>> 6];
+        this.vacating = new long[(cells + 63) >>> 6];
+        this.foods = new int[foodCount];
+        this.body = new int[snakes][cells + 1];
+        this.bodyHead = new int[snakes];
+        this.length = new int[snakes];
+        this.direction = new int[snakes];
+        this.alive = new boolean[snakes];
+        this.reward = new double[snakes];
+        this.episodeReward = new double[snakes];
+        this.foodEaten = new int[snakes];
+        this.newHead = new int[snakes];
+        this.eats = new boolean[snakes];
+        this.dies = new boolean[snakes];
+        this.rngState = seed;
+        reset();
+    }
+
+    /**
+     * 重新開始一局。蛇分成左右兩欄、每隔一列一條：左欄朝右、右欄朝左，身體往後延伸。
+     */
+    public void reset() {
+        java.util.Arrays.fill(occupied, 0L);
+        java.util.Arrays.fill(foodBits, 0L);
+        int perColumn = size / 2 - 1;
+        int leftCount = Math.min(snakes, perColumn);
+        int rightCount = snakes - leftCount;
+        for (int i = 0; i < snakes; i++) {
+            boolean left = i < leftCount;
+            int slot = left ? i : i - leftCount;
+            int count = left ? leftCount : rightCount;
+            // 在該欄均勻分布：列 = (slot + 1) * size / (count + 1)，且至少相隔一列
+            int y = (slot + 1) * size / (count + 1);
+            int headX = left ? size / 4 + START_LENGTH - 1 : size - 1 - size / 4 - (START_LENGTH - 1);
+            int dx = left ? -1 : 1;
+            direction[i] = left ? 3 : 2;
+            bodyHead[i] = 0;
+            length[i] = START_LENGTH;
+            for (int k = 0; k < START_LENGTH; k++) {
+                int cell = y * size + headX + dx * k;
+                body[i][k] = cell;
+                setBit(occupied, cell);
+            }
+            alive[i] = true;
+            reward[i] = 0.0;
+            episodeReward[i] = 0.0;
+            foodEaten[i] = 0;
+        }
+        // 任兩條蛇的初始位置重疊時佔用格會少於總長度，之後的碰撞判定全錯，直接拒絕
+        int placed = 0;
+        for (long word : occupied) {
+            placed += Long.bitCount(word);
+        }
+        if (placed != snakes * START_LENGTH) {
+            throw new IllegalStateException("arena 初始蛇身重疊（size=" + size + ", snakes=" + snakes + "）：佔用 "
+                    + placed + " 格，應為 " + snakes * START_LENGTH);
+        }
+        for (int f = 0; f < foodCount; f++) {
+            foods[f] = spawnFood();
+        }
+        steps = 0;
+        done = false;
+    }
+
+    /**
+     * 所有蛇同時走一步。actions[i] 為第 i 條蛇的 action（0=上, 1=下, 2=左, 3=右），死掉的蛇忽略。
+     */
+    public void step(int[] actions) {
+        if (done) {
+            return;
+        }
+        // 1) 新頭位置、出界、是否吃到食物
+        for (int i = 0; i < snakes; i++) {
+            reward[i] = 0.0;
+            eats[i] = false;
+            dies[i] = false;
+            if (!alive[i]) {
+                continue;
+            }
+            int action = actions[i];
+            if (action < 0 || action > 3 || isReverse(direction[i], action)) {
+                action = direction[i];
+            }
+            direction[i] = action;
+            int head = body[i][bodyHead[i]];
+            int x = head % size + (action == 2 ? -1 : action == 3 ? 1 : 0);
+            int y = head / size + (action == 0 ? -1 : action == 1 ? 1 : 0);
+            if (x < 0 || y < 0 || x >= size || y >= size) {
+                dies[i] = true;
+                newHead[i] = -1;
+                continue;
+            }
+            newHead[i] = y * size + x;
+            eats[i] = getBit(foodBits, newHead[i]);
+        }
+
+        // 2) 撞到蛇身（沒吃到食物的蛇，尾巴那格視為已空出）
+        for (int i = 0; i < snakes; i++) {
+            if (alive[i] && !eats[i]) {
+                setBit(vacating, tail(i));
+            }
+        }
+        for (int i = 0; i < snakes; i++) {
+            if (!alive[i] || dies[i]) {
+                continue;
+            }
+            int cell = newHead[i];
+            if (getBit(occupied, cell) && !getBit(vacating, cell)) {
+                dies[i] = true;
+            }
+        }
+        for (int i = 0; i < snakes; i++) {
+            if (alive[i] && !eats[i]) {
+                clearBit(vacating, tail(i));
+            }
+        }
+
+        // 3) head-to-head：同一格只有移動前最長的那條存活，最長的平手則全部死亡
+        for (int i = 0; i < snakes; i++) {
+            if (!alive[i] || newHead[i] < 0) {
+                continue;
+            }
+            for (int j = i + 1; j < snakes; j++) {
+                if (!alive[j] || newHead[j] != newHead[i]) {
+                    continue;
+                }
+                if (length[i] > length[j]) {
+                    dies[j] = true;
+                } else if (length[j] > length[i]) {
+                    dies[i] = true;
+                } else {
+                    dies[i] = true;
+                    dies[j] = true;
+                }
+            }
+        }
+
+        // 4) 先清掉死亡的蛇與空出的尾巴，再放新頭
+        for (int i = 0; i < snakes; i++) {
+            if (!alive[i]) {
+                continue;
+            }
+            if (dies[i]) {
+                for (int k = 0; k < length[i]; k++) {
+                    clearBit(occupied, body[i][(bodyHead[i] + k) % body[i].length]);
+                }
+            } else if (!eats[i]) {
+                clearBit(occupied, tail(i));
+                length[i]--;
+            }
+        }
+        for (int i = 0; i < snakes; i++) {
+            if (!alive[i]) {
+                continue;
+            }
+            if (dies[i]) {
+                alive[i] = false;
+                reward[i] = DEATH_REWARD;
+            } else {
+                int[] b = body[i];
+                bodyHead[i] = (bodyHead[i] == 0) ? b.length - 1 : bodyHead[i] - 1;
+                b[bodyHead[i]] = newHead[i];
+                length[i]++;
+                setBit(occupied, newHead[i]);
+                if (eats[i]) {
+                    clearBit(foodBits, newHead[i]);
+                    foodEaten[i]++;
+                    reward[i] = FOOD_REWARD;
+                } else {
+                    reward[i] = STEP_REWARD;
+                }
+            }
+            episodeReward[i] += reward[i];
+        }
+
+        // 5) 補回被吃掉的食物
+        for (int f = 0; f < foodCount; f++) {
+            if (foods[f] < 0 || !getBit(foodBits, foods[f])) {
+                foods[f] = spawnFood();
+            }
+        }
+
+        steps++;
+        int aliveCount = getAliveCount();
+        done = (snakes == 1) ? aliveCount == 0 : aliveCount <= 1;
+    }
+
+    private int tail(int i) {
+        return body[i][(bodyHead[i] + length[i] - 1) % body[i].length];
+    }
+
+    private static boolean isReverse(int a, int b) {
+        return (a == 0 && b == 1) || (a == 1 && b == 0) || (a == 2 && b == 3) || (a == 3 && b == 2);
+    }
+
+    /** 在空格（非蛇身、非食物）隨機放一顆食物並回傳其格子編號；沒有空格時回傳 -1。 */
+    private int spawnFood() {
+        for (int attempt = 0; attempt < 32; attempt++) {
+            int cell = nextInt(cells);
+            if (!getBit(occupied, cell) && !getBit(foodBits, cell)) {
+                setBit(foodBits, cell);
+                return cell;
+            }
+        }
+        int free = 0;
+        for (int c = 0; c < cells; c++) {
+            if (!getBit(occupied, c) && !getBit(foodBits, c)) free++;
+        }
+        if (free == 0) {
+            return -1;
+        }
+        int pick = nextInt(free);
+        for (int c = 0; c < cells; c++) {
+            if (!getBit(occupied, c) && !getBit(foodBits, c) && pick-- == 0) {
+                setBit(foodBits, c);
+                return c;
+            }
+        }
+        return -1;
+    }
+
+    private int nextInt(int bound) {
+        long z = (rngState += 0x9E3779B97F4A7C15L);
+        z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+        z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+        z = z ^ (z >>> 31);
+        return (int) (((z >>> 32) * bound) >>> 32);
+    }
+
+    private static boolean getBit(long[] bits, int i) {
+        return (bits[i >>> 6] & (1L << i)) != 0;
+    }
+
+    private static void setBit(long[] bits, int i) {
+        bits[i >>> 6] |= 1L << i;
+    }
+
+    private static void clearBit(long[] bits, int i) {
+        bits[i >>> 6] &= ~(1L << i);
+    }
+
+    // ================== 查詢 ==================
+
+    /**
+     * 把棋盤寫入 out（size x size）：0 = 空, 2 = 食物, 3 + i = 第 i 條蛇（頭與身體相同）。
+     * 與單蛇的 0/1/2 編碼不同，agent 可依自己的編號分辨敵我。
+     */
+    public void fillBoard(int[][] out) {
+        for (int y = 0; y < size; y++) {
+            java.util.Arrays.fill(out[y], 0);
+        }
+        for (int f = 0; f < foodCount; f++) {
+            if (foods[f] >= 0) {
+                out[foods[f] / size][foods[f] % size] = 2;
+            }
+        }
+        for (int i = 0; i < snakes; i++) {
+            if (!alive[i]) continue;
+            for (int k = 0; k < length[i]; k++) {
+                int cell = body[i][(bodyHead[i] + k) % body[i].length];
+                out[cell / size][cell % size] = 3 + i;
+            }
+        }
+    }
+
+    /** 格子是否被任何蛇佔用（O(1)）。 */
+    public boolean isOccupied(int x, int y) {
+        return getBit(occupied, y * size + x);
+    }
+
+    public int getBoardSize() {
+        return size;
+    }
+
+    public int getSnakeCount() {
+        return snakes;
+    }
+
+    public int getFoodCount() {
+        return foodCount;
+    }
+
+    /** 第 f 顆食物的格子編號（y * size + x），沒有空格可放時為 -1。 */
+    public int getFoodCell(int f) {
+        return foods[f];
+    }
+
+    public int getAliveCount() {
+        int n = 0;
+        for (boolean a : alive) {
+            if (a) n++;
+        }
+        return n;
+    }
+
+    public boolean isAlive(int i) {
+        return alive[i];
+    }
+
+    /** 第 i 條蛇是否已結束（死亡即結束）。 */
+    public boolean isDone(int i) {
+        return !alive[i];
+    }
+
+    /** 整局是否結束 */
+    public boolean isDone() {
+        return done;
+    }
+
+    public int getHeadX(int i) {
+        return body[i][bodyHead[i]] % size;
+    }
+
+    public int getHeadY(int i) {
+        return body[i][bodyHead[i]] / size;
+    }
+
+    public int getLength(int i) {
+        return length[i];
+    }
+
+    public int getDirection(int i) {
+        return direction[i];
+    }
+
+    /** 第 i 條蛇上一步的 reward */
+    public double getReward(int i) {
+        return reward[i];
+    }
+
+    public double getEpisodeReward(int i) {
+        return episodeReward[i];
+    }
+
+    public int getFoodEaten(int i) {
+        return foodEaten[i];
+    }
+
+    public int getSteps() {
+        return steps;
+    }
+}
@@ -0,0 +1,139 @@
+package light;
+
+import java.util.Arrays;
+
+/**
+ * BFS 最短路徑策略：以食物為起點對空格做 BFS 得到距離場，蛇頭每步往距離較小的鄰格走。
+ *
+ * 距離場會被重複使用，只有在下列情況才重算：
+ * <ul>
+ *   <li>食物位置改變（吃到食物 / reset）</li>
+ *   <li>沿著距離場從蛇頭走到食物的路徑上出現蛇身（路被擋住）</li>
+ * </ul>
+ * 蛇頭走在最短路徑上時，每步只需 O(路徑長度) 的檢查而不是 O(N²) 的 BFS。
+ * 找不到路時退回 {@link GreedyPolicy#bestSafeAction(GameState)}。
+ *
+ * 內含 scratch buffer，一個實例只能由一個執行緒使用。
+ */
+public class BfsPolicy implements Policy {
+
+    private static final int UNREACHABLE = Integer.MAX_VALUE;
+    private static final int[] DX = {0, 0, -1, 1};
+    private static final int[] DY = {-1, 1, 0, 0};
+
+    private int size = -1;
+    private int[] dist = new int[0];
+    private int[] queue = new int[0];
+    private int cachedFoodX = -1;
+    private int cachedFoodY = -1;
+
+    /** 距離場重算次數（給 benchmark / 除錯觀察快取命中率）。 */
+    private long recomputeCount = 0L;
+
+    @Override
+    public int selectAction(GameState state) {
+        int[][] board = state.getBoard();
+        int n = state.getBoardSize();
+        if (n != size) {
+            size = n;
+            dist = new int[n * n];
+            queue = new int[n * n];
+            cachedFoodX = -1;
+        }
+        int fx = state.getFoodX();
+        int fy = state.getFoodY();
+        if (fx != cachedFoodX || fy != cachedFoodY) {
+            recompute(board, fx, fy);
+        }
+
+        int action = descend(state, board);
+        if (action < 0 || isPathBlocked(board, state.getHeadX() + DX[action], state.getHeadY() + DY[action])) {
+            recompute(board, fx, fy);
+            action = descend(state, board);
+        }
+        return action >= 0 ? action : GreedyPolicy.bestSafeAction(state);
+    }
+
+    public long getRecomputeCount() {
+        return recomputeCount;
+    }
+
+    /** 從蛇頭的合法鄰格中挑距離最小者；沒有可達鄰格時回傳 -1。 */
+    private int descend(GameState state, int[][] board) {
+        int dir = state.getDirection();
+        int hx = state.getHeadX();
+        int hy = state.getHeadY();
+        int best = -1;
+        int bestDist = UNREACHABLE;
+        for (int a = 0; a < 4; a++) {
+            if (state.isReverseDirection(dir, a) || state.wouldCollide(a)) {
+                continue;
+            }
+            int nx = hx + DX[a];
+            int ny = hy + DY[a];
+            int d = dist[ny * size + nx];
+            if (d < bestDist || (d == bestDist && d != UNREACHABLE && a == dir)) {
+                bestDist = d;
+                best = a;
+            }
+        }
+        return bestDist == UNREACHABLE ? -1 : best;
+    }
+
+    /** 沿距離遞減方向從 (x, y) 走到食物，途中遇到蛇身即視為被擋住。 */
+    private boolean isPathBlocked(int[][] board, int x, int y) {
+        int d = dist[y * size + x];
+        while (d > 0) {
+            int next = -1;
+            for (int a = 0; a < 4; a++) {
+                int nx = x + DX[a];
+                int ny = y + DY[a];
+                if (nx < 0 || nx >= size || ny < 0 || ny >= size) continue;
+                if (dist[ny * size + nx] == d - 1) {
+                    next = a;
+                    break;
+                }
+            }
+            if (next < 0) {
+                return true;
+            }
+            x += DX[next];
+            y += DY[next];
+            if (board[y][x] == 1) {
+                return true;
+            }
+            d--;
+        }
+        return false;
+    }
+
+    private void recompute(int[][] board, int fx, int fy) {
+        recomputeCount++;
+        cachedFoodX = fx;
+        cachedFoodY = fy;
+        Arrays.fill(dist, UNREACHABLE);
+        if (fx < 0 || fy < 0) {
+            return;
+        }
+        int head = 0;
+        int tail = 0;
+        int start = fy * size + fx;
+        dist[start] = 0;
+        queue[tail++] = start;
+        while (head < tail) {
+            int cell = queue[head++];
+            int cx = cell % size;
+            int cy = cell / size;
+            int nd = dist[cell] + 1;
+            for (int a = 0; a < 4; a++) {
+                int nx = cx + DX[a];
+                int ny = cy + DY[a];
+                if (nx < 0 || nx >= size || ny < 0 || ny >= size) continue;
+                int idx = ny * size + nx;
+                if (dist[idx] != UNREACHABLE || board[ny][nx] == 1) continue;
+                dist[idx] = nd;
+                queue[tail++] = idx;
+            }
+        }
+    }
+}
@@ -0,0 +1,174 @@
+package light;
+
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+
+import java.io.IOException;
+
+/**
+ * 單一 client 連線可協商的設定，由 client 送出 CONFIG 訊息修改，server 以 CONFIG 回覆實際生效的值。
+ *
+ * <ul>
+ *   <li>{@code action_repeat}：每個 ACTION 在 server 端連續執行幾次 {@link GameState#stepByAction(int)}
+ *       （frame skip）；中途 done 就提早停止。單一 ACTION 可用 {@code "repeat"} 欄位覆寫。
+ *       預設值由 {@code -Dsnake.action_repeat} 指定（1）。</li>
+ *   <li>{@code auto_reset}：一局結束時不再送 RESET 再送新的 STATE，而是在終局 STATE 中一併帶上
+ *       該局統計與新一局的第一個觀測（見 {@link SocketProtocol#createAutoResetStateMessage}）。
+ *       預設值由 {@code -Dsnake.auto_reset} 指定（false）。</li>
+ *   <li>{@code obs_mode}：{@code "board"} 傳完整 N×N 棋盤；{@code "ego"} 改傳以蛇頭為中心、依方向旋轉的
+ *       {@code ego_size}×{@code ego_size} 視窗與 {@code coarse_size}×{@code coarse_size} 粗略全域通道
+ *       （見 {@link EgocentricView}）。預設值由 {@code -Dsnake.obs.mode}、{@code -Dsnake.obs.ego_size}（11）、
+ *       {@code -Dsnake.obs.coarse_size}（0，不使用）指定。</li>
+ * </ul>
+ * 超出範圍的值會被夾到合法範圍，而不是拒絕整個訊息；型別不對（例如 action_repeat 不是數字）時整個 CONFIG 都不生效，
+ * 以 IOException 結束這條連線。
+ * 不支援 frame skip 的 server（例如每個 ACTION 只走一步、逐格畫面的 GUI server）以 {@link #setMaxActionRepeat(int)} 限制上限，
+ * 回覆的 action_repeat / max_action_repeat 就是實際執行的值。
+ */
+public final class ConnectionConfig {
+
+    /** 一個 ACTION 最多重複的步數，避免 client 一次鎖住 server 太久。 */
+    public static final int MAX_ACTION_REPEAT = 64;
+    public static final int MAX_EGO_SIZE = 63;
+    public static final int MAX_COARSE_SIZE = 32;
+
+    public static final String OBS_BOARD = "board";
+    public static final String OBS_EGO = "ego";
+
+    private int maxActionRepeat = MAX_ACTION_REPEAT;
+    private int actionRepeat = clampRepeat(Integer.getInteger("snake.action_repeat", 1));
+    private boolean autoReset = Boolean.getBoolean("snake.auto_reset");
+    private String obsMode = parseObsMode(System.getProperty("snake.obs.mode", OBS_BOARD));
+    private int egoSize = clampEgoSize(Integer.getInteger("snake.obs.ego_size", 11));
+    private int coarseSize = clampCoarseSize(Integer.getInteger("snake.obs.coarse_size", 0));
+
+    public boolean isAutoReset() {
+        return autoReset;
+    }
+
+    public void setAutoReset(boolean autoReset) {
+        this.autoReset = autoReset;
+    }
+
+    public String getObsMode() {
+        return obsMode;
+    }
+
+    public boolean isEgoObs() {
+        return OBS_EGO.equals(obsMode);
+    }
+
+    public int getEgoSize() {
+        return egoSize;
+    }
+
+    public int getCoarseSize() {
+        return coarseSize;
+    }
+
+    public int getActionRepeat() {
+        return actionRepeat;
+    }
+
+    public void setActionRepeat(int repeat) {
+        this.actionRepeat = repeatFor(repeat);
+    }
+
+    public int getMaxActionRepeat() {
+        return maxActionRepeat;
+    }
+
+    /** 這條連線每個 ACTION 最多重複的步數（1 ~ {@link #MAX_ACTION_REPEAT}）；目前的 action_repeat 一併夾到新上限。 */
+    public void setMaxActionRepeat(int max) {
+        this.maxActionRepeat = clampRepeat(max);
+        this.actionRepeat = Math.min(actionRepeat, maxActionRepeat);
+    }
+
+    /** ACTION 的 "repeat" 欄位夾到 [1, {@link #getMaxActionRepeat()}]。 */
+    public int repeatFor(int repeat) {
+        return Math.min(maxActionRepeat, clampRepeat(repeat));
+    }
+
+    /**
+     * 依 CONFIG payload 中有出現的欄位更新設定；未出現的欄位維持原值。
+     * 先檢查所有欄位的型別再套用，任一欄位型別不對時丟出 IOException，設定完全不變。
+     */
+    public void apply(JsonObject payload) throws IOException {
+        Integer repeat = payload.has("action_repeat") ? requireInt(payload, "action_repeat") : null;
+        Boolean reset = payload.has("auto_reset") ? requireBoolean(payload, "auto_reset") : null;
+        String mode = payload.has("obs_mode") ? requireString(payload, "obs_mode") : null;
+        Integer ego = payload.has("ego_size") ? requireInt(payload, "ego_size") : null;
+        Integer coarse = payload.has("coarse_size") ? requireInt(payload, "coarse_size") : null;
+        if (repeat != null) {
+            setActionRepeat(repeat);
+        }
+        if (reset != null) {
+            setAutoReset(reset);
+        }
+        if (mode != null) {
+            obsMode = parseObsMode(mode);
+        }
+        if (ego != null) {
+            egoSize = clampEgoSize(ego);
+        }
+        if (coarse != null) {
+            coarseSize = clampCoarseSize(coarse);
+        }
+    }
+
+    private static int requireInt(JsonObject payload, String key) throws IOException {
+        JsonElement e = payload.get(key);
+        if (!e.isJsonPrimitive() || !e.getAsJsonPrimitive().isNumber()) {
+            throw new IOException("CONFIG 封包的 `" + key + "` 必須是數字: " + e);
+        }
+        return e.getAsInt();
+    }
+
+    private static boolean requireBoolean(JsonObject payload, String key) throws IOException {
+        JsonElement e = payload.get(key);
+        if (!e.isJsonPrimitive() || !e.getAsJsonPrimitive().isBoolean()) {
+            throw new IOException("CONFIG 封包的 `" + key + "` 必須是 boolean: " + e);
+        }
+        return e.getAsBoolean();
+    }
+
+    private static String requireString(JsonObject payload, String key) throws IOException {
+        JsonElement e = payload.get(key);
+        if (!e.isJsonPrimitive() || !e.getAsJsonPrimitive().isString()) {
+            throw new IOException("CONFIG 封包的 `" + key + "` 必須是字串: " + e);
+        }
+        return e.getAsString();
+    }
+
+    /** 目前生效的設定，作為 CONFIG 回覆的 payload。 */
+    public JsonObject toJson() {
+        JsonObject json = new JsonObject();
+        json.addProperty("action_repeat", actionRepeat);
+        json.addProperty("max_action_repeat", maxActionRepeat);
+        json.addProperty("auto_reset", autoReset);
+        json.addProperty("obs_mode", obsMode);
+        json.addProperty("ego_size", egoSize);
+        json.addProperty("coarse_size", coarseSize);
+        return json;
+    }
+
+    /** ACTION 的 "repeat" 欄位（或連線預設值）夾到 [1, MAX_ACTION_REPEAT]。 */
+    static int clampRepeat(int repeat) {
+        return Math.max(1, Math.min(MAX_ACTION_REPEAT, repeat));
+    }
+
+    /** 未知的 obs_mode 一律當成 board。 */
+    private static String parseObsMode(String mode) {
+        return OBS_EGO.equalsIgnoreCase(mode) ? OBS_EGO : OBS_BOARD;
+    }
+
+    /** 視窗邊長夾到 [3, MAX_EGO_SIZE]，偶數加一讓蛇頭落在正中央。 */
+    private static int clampEgoSize(int size) {
+        int k = Math.max(3, Math.min(MAX_EGO_SIZE, size));
+        return (k % 2 == 0) ? k + 1 : k;
+    }
+
+    private static int clampCoarseSize(int size) {
+        return Math.max(0, Math.min(MAX_COARSE_SIZE, size));
+    }
+}
@@ -0,0 +1,133 @@
+package light;
+
+/**
+ * 以蛇頭為中心、依蛇的前進方向旋轉的 k×k 局部觀測，大小與棋盤 N 無關。
+ *
+ * 視窗第 0 列是蛇的正前方最遠處，中心格 (k/2, k/2) 是蛇頭，右邊是蛇的右手邊；
+ * 因此同一個局面不論蛇朝哪個方向走，看到的都是同一張圖。每格的值：
+ * {@link #EMPTY} / {@link #BODY} / {@link #FOOD} / {@link #WALL}（棋盤外）。
+ *
+ * 另可選擇 g×g 的粗略全域通道（不旋轉，依棋盤座標）：每個區塊中蛇身佔的比例與是否有食物，
+ * 讓 policy 在局部視窗外仍知道大致的空間分佈。
+ *
+ * 直接讀 {@link GameState#getBoard()} 寫入建構時配置好的緩衝區，之後不再配置物件；不是 thread-safe。
+ */
+public final class EgocentricView {
+
+    public static final byte EMPTY = 0;
+    public static final byte BODY = 1;
+    public static final byte FOOD = 2;
+    public static final byte WALL = 3;
+
+    private final int windowSize;
+    private final int coarseSize;
+    private final byte[] window;
+    private final float[] coarseBody;
+    private final float[] coarseFood;
+
+    /**
+     * @param windowSize 視窗邊長 k，必須是奇數（蛇頭才會在正中央）
+     * @param coarseSize 粗略全域通道的邊長 g（0 表示不使用）
+     */
+    public EgocentricView(int windowSize, int coarseSize) {
+        if (windowSize < 1 || windowSize % 2 == 0) {
+            throw new IllegalArgumentException("windowSize 必須是正奇數: " + windowSize);
+        }
+        if (coarseSize < 0) {
+            throw new IllegalArgumentException("coarseSize 不可為負: " + coarseSize);
+        }
+        this.windowSize = windowSize;
+        this.coarseSize = coarseSize;
+        this.window = new byte[windowSize * windowSize];
+        this.coarseBody = new float[coarseSize * coarseSize];
+        this.coarseFood = new float[coarseSize * coarseSize];
+    }
+
+    public int getWindowSize() {
+        return windowSize;
+    }
+
+    public int getCoarseSize() {
+        return coarseSize;
+    }
+
+    /** 依 state 目前的局面更新視窗與粗略通道。 */
+    public void compute(GameState state) {
+        int[][] board = state.getBoard();
+        int n = state.getBoardSize();
+        int headX = state.getHeadX();
+        int headY = state.getHeadY();
+        int half = windowSize / 2;
+
+        // 視窗 (r, c) 在蛇頭前方 forward 格、右方 right 格；
+        // 以前進方向 f 與右手方向 (rx, ry) 換算：棋盤座標 = 頭 + forward * f + right * (rx, ry)
+        int fx, fy, rx, ry;
+        switch (state.getDirection()) {
+            case 1:  fx = 0;  fy = 1;  rx = -1; ry = 0;  break; // down
+            case 2:  fx = -1; fy = 0;  rx = 0;  ry = -1; break; // left
+            case 3:  fx = 1;  fy = 0;  rx = 0;  ry = 1;  break; // right
+            default: fx = 0;  fy = -1; rx = 1;  ry = 0;  break; // up
+        }
+
+        int p = 0;
+        for (int r = 0; r < windowSize; r++) {
+            int forward = half - r;
+            for (int c = 0; c < windowSize; c++) {
+                int right = c - half;
+                int x = headX + forward * fx + right * rx;
+                int y = headY + forward * fy + right * ry;
+                if (x < 0 || y < 0 || x >= n || y >= n) {
+                    window[p++] = WALL;
+                } else {
+                    window[p++] = (byte) board[y][x];
+                }
+            }
+        }
+
+        if (coarseSize > 0) {
+            computeCoarse(board, n);
+        }
+    }
+
+    /** 把 N×N 棋盤切成 g×g 個區塊（N 不整除 g 時區塊大小相差一格；g > N 時空的區塊視為佔滿）。 */
+    private void computeCoarse(int[][] board, int n) {
+        int g = coarseSize;
+        for (int by = 0; by < g; by++) {
+            int y0 = by * n / g;
+            int y1 = (by + 1) * n / g;
+            for (int bx = 0; bx < g; bx++) {
+                int x0 = bx * n / g;
+                int x1 = (bx + 1) * n / g;
+                int body = 0;
+                boolean food = false;
+                for (int y = y0; y < y1; y++) {
+                    int[] row = board[y];
+                    for (int x = x0; x < x1; x++) {
+                        int v = row[x];
+                        if (v == 1) body++;
+                        else if (v == 2) food = true;
+                    }
+                }
+                int cells = (y1 - y0) * (x1 - x0);
+                int i = by * g + bx;
+                coarseBody[i] = cells > 0 ? body / (float) cells : 1f;
+                coarseFood[i] = food ? 1f : 0f;
+            }
+        }
+    }
+
+    /** row-major 的 k×k 視窗（{@link #compute} 之後有效，內容會被下一次 compute 覆寫）。 */
+    public byte[] getWindow() {
+        return window;
+    }
+
+    /** row-major 的 g×g 蛇身比例（0~1）。 */
+    public float[] getCoarseBody() {
+        return coarseBody;
+    }
+
+    /** row-major 的 g×g 食物指示（0 或 1）。 */
+    public float[] getCoarseFood() {
+        return coarseFood;
+    }
+}
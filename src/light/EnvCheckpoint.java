@@ -0,0 +1,279 @@
+package light;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.zip.CRC32;
+
+/**
+ * 定期把 {@link EnvPool} 內所有 env 的局面寫成一個二進位 checkpoint，長時間訓練中 server 當掉後可以從最後一份接著跑，
+ * 每個 env 的後續局面（含食物位置）與沒有中斷時完全相同。
+ *
+ * 寫檔不擋住 step：兩塊預先配置的 buffer 輪流使用，step 的執行緒在兩步之間把所有 env 序列化到閒置的那一塊
+ * （每個 env 約 100 bytes 的記憶體複製），交給背景執行緒以 {@link FileChannel} 寫到暫存檔、force 之後再以 rename 取代舊檔，
+ * 因此磁碟上永遠是一份完整的 checkpoint。背景執行緒還沒寫完上一份時，新的快照取代還在排隊、尚未開始寫的那一份。
+ *
+ * 檔案格式（little-endian）：{@value #HEADER_SIZE} bytes 檔頭
+ * <pre>
+ *   0  8 bytes magic {@code "SNKCKPT1"}
+ *   8  int    版本
+ *  12  int    env 數
+ *  16  int    棋盤邊長
+ *  20  int    之後的資料長度（bytes）
+ *  24  long   pool 已走的步數
+ *  32  long   寫出時間（epoch ms）
+ *  40  int    資料的 CRC32
+ *  44  int    保留
+ * </pre>
+ * 之後依序是每個 env 的紀錄（長度不定，見 {@link EnvPool#writeEnv} / {@link GameState#writeTo}）。
+ */
+public final class EnvCheckpoint implements Closeable {
+
+    static final byte[] MAGIC = "SNKCKPT1".getBytes(StandardCharsets.US_ASCII);
+    static final int VERSION = 1;
+    static final int HEADER_SIZE = 48;
+
+    private final Path path;
+    private final Path tmpPath;
+    private final ByteBuffer[] buffers = new ByteBuffer[2];
+    private final Thread writer;
+
+    // 以下由 this 保護：正在寫與排隊中的 buffer 編號（-1 表示沒有）
+    private int writing = -1;
+    private int queued = -1;
+    private boolean closed = false;
+    private IOException lastError;
+
+    private long written = 0L;
+    private long superseded = 0L;
+
+    /** @param numEnvs 之後每次 {@link #capture} 的 pool 大小，用來預先配置 buffer */
+    public EnvCheckpoint(Path path, int numEnvs) throws IOException {
+        this.path = path;
+        this.tmpPath = path.resolveSibling(path.getFileName() + ".tmp");
+        if (path.getParent() != null) {
+            Files.createDirectories(path.getParent());
+        }
+        int capacity = HEADER_SIZE + numEnvs * EnvPool.MAX_ENV_RECORD_SIZE;
+        for (int b = 0; b < buffers.length; b++) {
+            buffers[b] = ByteBuffer.allocateDirect(capacity).order(ByteOrder.LITTLE_ENDIAN);
+        }
+        this.writer = new Thread(this::writeLoop, "EnvCheckpoint-writer");
+        writer.setDaemon(true);
+        writer.start();
+    }
+
+    /**
+     * 在兩步之間（沒有 shard 在跑時）由 step 的執行緒呼叫：把 pool 目前的局面複製到閒置的 buffer，交給背景執行緒寫檔後立刻返回。
+     * 上一次寫檔失敗時只印錯誤，不影響 step。
+     */
+    public void capture(EnvPool envs, long step) {
+        int target;
+        synchronized (this) {
+            if (closed) {
+                throw new IllegalStateException("EnvCheckpoint 已關閉: " + path);
+            }
+            if (lastError != null) {
+                System.err.println("[EnvCheckpoint] 寫入 " + path + " 失敗: " + lastError.getMessage());
+                lastError = null;
+            }
+            if (queued >= 0) {
+                // 還沒開始寫的舊快照直接被這一份取代；先取回，避免背景執行緒在複製途中拿走
+                target = queued;
+                queued = -1;
+                superseded++;
+            } else {
+                target = writing == 0 ? 1 : 0;
+            }
+        }
+
+        ByteBuffer buf = buffers[target];
+        if (buf.capacity() < HEADER_SIZE + envs.size() * EnvPool.MAX_ENV_RECORD_SIZE) {
+            throw new IllegalArgumentException("pool 比建立 checkpoint 時大: " + envs.size());
+        }
+        buf.clear();
+        buf.put(MAGIC);
+        buf.putInt(VERSION);
+        buf.putInt(envs.size());
+        buf.putInt(envs.getBoardSize());
+        buf.putInt(0); // 資料長度與 CRC 由背景執行緒填入
+        buf.putLong(step);
+        buf.putLong(System.currentTimeMillis());
+        buf.putInt(0);
+        buf.putInt(0);
+        for (int i = 0; i < envs.size(); i++) {
+            envs.writeEnv(i, buf);
+        }
+        buf.flip();
+
+        synchronized (this) {
+            queued = target;
+            notifyAll();
+        }
+    }
+
+    private void writeLoop() {
+        while (true) {
+            int b;
+            synchronized (this) {
+                while (queued < 0 && !closed) {
+                    try {
+                        wait();
+                    } catch (InterruptedException e) {
+                        return;
+                    }
+                }
+                if (queued < 0) {
+                    return; // closed 且沒有待寫的快照
+                }
+                b = queued;
+                queued = -1;
+                writing = b;
+            }
+            IOException error = null;
+            try {
+                write(buffers[b]);
+            } catch (IOException e) {
+                error = e;
+            }
+            synchronized (this) {
+                writing = -1;
+                if (error != null) {
+                    lastError = error;
+                } else {
+                    written++;
+                }
+                notifyAll();
+            }
+        }
+    }
+
+    private void write(ByteBuffer buf) throws IOException {
+        int payload = buf.limit() - HEADER_SIZE;
+        CRC32 crc = new CRC32();
+        ByteBuffer data = buf.duplicate();
+        data.position(HEADER_SIZE);
+        crc.update(data);
+        buf.putInt(20, payload);
+        buf.putInt(40, (int) crc.getValue());
+
+        ByteBuffer out = buf.duplicate();
+        out.position(0);
+        try (FileChannel ch = FileChannel.open(tmpPath, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING)) {
+            while (out.hasRemaining()) {
+                ch.write(out);
+            }
+            ch.force(true);
+        }
+        try {
+            Files.move(tmpPath, path, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        } catch (AtomicMoveNotSupportedException e) {
+            Files.move(tmpPath, path, StandardCopyOption.REPLACE_EXISTING);
+        }
+    }
+
+    /** 已寫入磁碟的 checkpoint 數。 */
+    public synchronized long getWrittenCount() {
+        return written;
+    }
+
+    /** 還沒開始寫就被較新快照取代的次數（磁碟跟不上 checkpoint 頻率時會增加）。 */
+    public synchronized long getSupersededCount() {
+        return superseded;
+    }
+
+    /** 等待已 capture 的快照都寫完再結束背景執行緒；最後一次寫檔失敗時丟出。 */
+    @Override
+    public void close() throws IOException {
+        synchronized (this) {
+            if (closed) {
+                return;
+            }
+            closed = true;
+            notifyAll();
+        }
+        try {
+            writer.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        synchronized (this) {
+            if (lastError != null) {
+                IOException e = lastError;
+                lastError = null;
+                throw e;
+            }
+        }
+    }
+
+    /**
+     * 把 checkpoint 讀回 envs（env 數與棋盤大小必須相同；shard 大小與 thread 數可以不同），回傳寫出時 pool 已走的步數。
+     * 檔案不完整、CRC 不符或內容不合理時丟出 IOException。
+     */
+    public static long restore(Path path, EnvPool envs) throws IOException {
+        ByteBuffer buf;
+        try (FileChannel ch = FileChannel.open(path, StandardOpenOption.READ)) {
+            long size = ch.size();
+            if (size < HEADER_SIZE || size > Integer.MAX_VALUE) {
+                throw new IOException("不是 checkpoint 檔（大小 " + size + "）: " + path);
+            }
+            buf = ByteBuffer.allocate((int) size).order(ByteOrder.LITTLE_ENDIAN);
+            while (buf.hasRemaining()) {
+                if (ch.read(buf) < 0) {
+                    throw new IOException("讀取 " + path + " 時提早結束");
+                }
+            }
+            buf.flip();
+        }
+
+        byte[] magic = new byte[MAGIC.length];
+        buf.get(magic);
+        if (!Arrays.equals(magic, MAGIC)) {
+            throw new IOException("不是 checkpoint 檔（magic 不符）: " + path);
+        }
+        int version = buf.getInt();
+        if (version != VERSION) {
+            throw new IOException("不支援的 checkpoint 版本 " + version + ": " + path);
+        }
+        int numEnvs = buf.getInt();
+        int boardSize = buf.getInt();
+        int payload = buf.getInt();
+        long step = buf.getLong();
+        long timeMillis = buf.getLong();
+        int crcValue = buf.getInt();
+        buf.getInt();
+        if (numEnvs != envs.size() || boardSize != envs.getBoardSize()) {
+            throw new IOException("checkpoint 為 " + numEnvs + " 個 " + boardSize + "x" + boardSize
+                    + " 的 env，與目前的 pool（" + envs.size() + " 個 " + envs.getBoardSize() + "x" + envs.getBoardSize() + "）不同");
+        }
+        if (payload != buf.remaining()) {
+            throw new IOException("checkpoint 資料長度不符（檔頭 " + payload + "，實際 " + buf.remaining() + "）: " + path);
+        }
+        CRC32 crc = new CRC32();
+        crc.update(buf.duplicate());
+        if ((int) crc.getValue() != crcValue) {
+            throw new IOException("checkpoint CRC 不符: " + path);
+        }
+
+        try {
+            for (int i = 0; i < numEnvs; i++) {
+                envs.readEnv(i, buf);
+            }
+        } catch (RuntimeException e) {
+            throw new IOException("checkpoint 內容不合理: " + path + ": " + e.getMessage(), e);
+        }
+        System.out.println("[EnvCheckpoint] 從 " + path + " 還原 " + numEnvs + " 個 env（step " + step
+                + "，寫於 " + new java.util.Date(timeMillis) + "）");
+        return step;
+    }
+}
@@ -0,0 +1,349 @@
+package light;
+
+import com.google.gson.JsonArray;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketTimeoutException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 多個 env server JVM（{@link EnvNode}，可以在不同主機上）的輕量 coordinator：
+ * Python actor 不再寫死 {@code 127.0.0.1:5000}，而是先向 coordinator 要一個空閒的 env server。
+ *
+ * 協定與 env server 相同（單行 JSON，見 {@link SocketProtocol}），全部走同一個 port：
+ * <ul>
+ *   <li>{@code REGISTER}：node 開一條長連線登記自己的 host 與各 slot 的 port，之後每 {@code heartbeat_ms}
+ *       送一次 {@code HEARTBEAT}（目前空閒的 port、上一次心跳的往返時間）；coordinator 立刻回傳，讓 node 量到 RTT。</li>
+ *   <li>{@code ROUTE}：actor 開短連線詢問，coordinator 回覆一組 host / port 後關閉連線。
+ *       挑選方式為 least-loaded：空閒比例最高的 node 優先，相同時取 RTT 較低者；
+ *       發出去的 port 以 lease 保留，不會再發給別人。</li>
+ * </ul>
+ * 每個 lease 帶一個遞增的序號；coordinator 在 REGISTER / HEARTBEAT 回覆中附上目前的序號 {@code seq}，
+ * node 在下一次心跳原樣帶回，表示這次的空閒清單是在收到該序號之後才取得的。
+ * 只有序號不小於 lease 的心跳才能解除 lease：顯示該 port 已有連線（lease 已兌現），
+ * 或超過 {@code lease_ms} 仍然空閒（actor 沒有來）。發出 lease 之前就已經在路上的心跳不算數，
+ * 否則剛好在 lease 到期時抵達的舊心跳會讓同一個 port 被發給兩個 actor。
+ * node 的連線斷掉或超過 {@code timeout_ms} 沒有心跳就移除它的所有 slot；原本連在上面的 actor
+ * 斷線後重新 ROUTE，就會被分到其他還活著的 node 上（見 agent/snake_socket_env.py 的 {@code SNAKE_COORDINATOR}）。
+ *
+ * 用法（參數皆可省略）：
+ * <pre>
+ *   java -cp ... light.EnvCoordinator port=5400 heartbeat_ms=1000 timeout_ms=5000 lease_ms=5000
+ * </pre>
+ */
+public class EnvCoordinator {
+
+    public static final int DEFAULT_PORT = 5400;
+
+    /** 一個已登記的 env node。除了 final 欄位外都由 coordinator 的 monitor 保護。 */
+    private static final class Node {
+        final String id;
+        final String host;
+        final int[] ports;
+        final Link link;
+        boolean[] free;
+        final Map<Integer, Lease> leases = new HashMap<>();
+        double rttMs = -1.0;
+        long sessions;
+        long routed;
+
+        Node(String id, String host, int[] ports, Link link) {
+            this.id = id;
+            this.host = host;
+            this.ports = ports;
+            this.link = link;
+            this.free = new boolean[ports.length];
+        }
+
+        /** 還能發出去的 slot 數（空閒且沒有 lease）。 */
+        int available() {
+            int n = 0;
+            for (int i = 0; i < ports.length; i++) {
+                if (free[i] && !leases.containsKey(ports[i])) n++;
+            }
+            return n;
+        }
+    }
+
+    /** 發給 actor 的一個 port：到期時間（nanoTime）與發出時的序號。 */
+    private static final class Lease {
+        final long expiry;
+        final long seq;
+
+        Lease(long expiry, long seq) {
+            this.expiry = expiry;
+            this.seq = seq;
+        }
+    }
+
+    private final long heartbeatMs;
+    private final long timeoutMs;
+    private final long leaseMs;
+    private final Map<String, Node> nodes = new LinkedHashMap<>();
+    /** 最後發出的 lease 序號，由 coordinator 的 monitor 保護。 */
+    private long leaseSeq = 0L;
+
+    EnvCoordinator(long heartbeatMs, long timeoutMs, long leaseMs) {
+        this.heartbeatMs = heartbeatMs;
+        this.timeoutMs = timeoutMs;
+        this.leaseMs = leaseMs;
+    }
+
+    public static void main(String[] args) throws IOException {
+        int port = DEFAULT_PORT;
+        long heartbeatMs = 1000L;
+        long timeoutMs = 5000L;
+        long leaseMs = 5000L;
+        for (String arg : args) {
+            int eq = arg.indexOf('=');
+            if (eq < 0) continue;
+            String key = arg.substring(0, eq);
+            String value = arg.substring(eq + 1);
+            switch (key) {
+                case "port": port = Integer.parseInt(value); break;
+                case "heartbeat_ms": heartbeatMs = Long.parseLong(value); break;
+                case "timeout_ms": timeoutMs = Long.parseLong(value); break;
+                case "lease_ms": leaseMs = Long.parseLong(value); break;
+                default: System.err.println("[EnvCoordinator] 未知參數: " + key);
+            }
+        }
+        EnvCoordinator coordinator = new EnvCoordinator(heartbeatMs, timeoutMs, leaseMs);
+
+        ScheduledExecutorService status = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "EnvCoordinator-status");
+            t.setDaemon(true);
+            return t;
+        });
+        status.scheduleAtFixedRate(coordinator::printStatus, 10L, 10L, TimeUnit.SECONDS);
+
+        try (ServerSocket listener = new ServerSocket(port)) {
+            System.out.println("[EnvCoordinator] 啟動 (port=" + port + ", heartbeat=" + heartbeatMs
+                    + "ms, timeout=" + timeoutMs + "ms, lease=" + leaseMs + "ms)");
+            while (true) {
+                Socket socket = listener.accept();
+                Thread t = new Thread(() -> coordinator.serve(socket), "EnvCoordinator-" + socket.getRemoteSocketAddress());
+                t.setDaemon(true);
+                t.start();
+            }
+        }
+    }
+
+    /** 一條進來的連線：第一個訊息決定是 node（REGISTER）還是 actor（ROUTE）。 */
+    void serve(Socket socket) {
+        try (Link link = new Link(socket)) {
+            socket.setSoTimeout((int) timeoutMs);
+            SocketProtocol.SocketMessage first = link.read();
+            if (first == null) {
+                return;
+            }
+            switch (first.getType()) {
+                case REGISTER:
+                    serveNode(link, first.getPayload());
+                    break;
+                case ROUTE:
+                    link.send(route());
+                    break;
+                default:
+                    System.err.println("[EnvCoordinator] " + socket.getRemoteSocketAddress()
+                            + " 第一個訊息不是 REGISTER / ROUTE: " + first.getType());
+            }
+        } catch (IOException | RuntimeException e) {
+            System.err.println("[EnvCoordinator] 連線 " + socket.getRemoteSocketAddress() + " 錯誤: " + e);
+        }
+    }
+
+    private void serveNode(Link link, JsonObject register) throws IOException {
+        String name = register.get("name").getAsString();
+        String host = register.get("host").getAsString();
+        JsonArray portArray = register.getAsJsonArray("ports");
+        int[] ports = new int[portArray.size()];
+        for (int i = 0; i < ports.length; i++) {
+            ports[i] = portArray.get(i).getAsInt();
+        }
+        Node node = new Node(name, host, ports, link);
+        Node replaced;
+        synchronized (this) {
+            replaced = nodes.put(name, node);
+        }
+        if (replaced != null) {
+            // 同名 node 重新登記（例如重啟後舊連線還沒逾時），舊的連線已經沒有用了
+            replaced.link.close();
+        }
+        System.out.println("[EnvCoordinator] node " + name + " 登記 " + host + " ports=" + Arrays.toString(ports));
+        JsonObject reply = new JsonObject();
+        reply.addProperty("node", name);
+        reply.addProperty("heartbeat_ms", heartbeatMs);
+        reply.addProperty("seq", currentSeq());
+        link.send(new SocketProtocol.SocketMessage(SocketProtocol.MessageType.REGISTER, reply));
+
+        String reason = "連線關閉";
+        try {
+            SocketProtocol.SocketMessage msg;
+            while ((msg = link.read()) != null) {
+                if (msg.getType() != SocketProtocol.MessageType.HEARTBEAT) {
+                    continue;
+                }
+                JsonObject payload = msg.getPayload();
+                heartbeat(node, payload);
+                JsonObject ack = new JsonObject();
+                ack.add("t", payload.get("t"));
+                ack.addProperty("seq", currentSeq());
+                link.send(new SocketProtocol.SocketMessage(SocketProtocol.MessageType.HEARTBEAT, ack));
+            }
+        } catch (SocketTimeoutException e) {
+            reason = "超過 " + timeoutMs + "ms 沒有心跳";
+        } catch (IOException e) {
+            reason = e.toString();
+        } finally {
+            boolean removed;
+            synchronized (this) {
+                removed = nodes.remove(name, node);
+            }
+            if (removed) {
+                System.out.println("[EnvCoordinator] node " + name + " 失聯（" + reason + "），移除 " + ports.length + " 個 slot");
+            }
+        }
+    }
+
+    private synchronized long currentSeq() {
+        return leaseSeq;
+    }
+
+    private synchronized void heartbeat(Node node, JsonObject payload) {
+        long seq = payload.has("seq") ? payload.get("seq").getAsLong() : -1L;
+        long now = System.nanoTime();
+        boolean[] free = new boolean[node.ports.length];
+        for (JsonElement e : payload.getAsJsonArray("free")) {
+            int port = e.getAsInt();
+            for (int i = 0; i < node.ports.length; i++) {
+                if (node.ports[i] == port) {
+                    free[i] = true;
+                    break;
+                }
+            }
+        }
+        // 只採信 lease 發出之後取得的空閒清單：已有連線表示 lease 已兌現，過期仍空閒表示 actor 沒有來
+        for (int i = 0; i < node.ports.length; i++) {
+            Lease lease = node.leases.get(node.ports[i]);
+            if (lease != null && seq >= lease.seq && (!free[i] || lease.expiry - now <= 0)) {
+                node.leases.remove(node.ports[i]);
+            }
+        }
+        node.free = free;
+        node.rttMs = payload.has("rtt_ms") ? payload.get("rtt_ms").getAsDouble() : -1.0;
+        node.sessions = payload.has("sessions") ? payload.get("sessions").getAsLong() : 0L;
+    }
+
+    /** least-loaded：空閒比例最高的 node，相同時 RTT 較低者優先；發出的 port 先以 lease 保留。 */
+    synchronized SocketProtocol.SocketMessage route() {
+        long now = System.nanoTime();
+        Node best = null;
+        double bestLoad = Double.MAX_VALUE;
+        for (Node node : nodes.values()) {
+            int available = node.available();
+            if (available == 0) continue;
+            double load = 1.0 - (double) available / node.ports.length;
+            if (best == null || load < bestLoad
+                    || (load == bestLoad && rttOrder(node.rttMs) < rttOrder(best.rttMs))) {
+                best = node;
+                bestLoad = load;
+            }
+        }
+        if (best == null) {
+            return SocketProtocol.createRouteMessage(null, null, -1, heartbeatMs);
+        }
+        int port = -1;
+        for (int i = 0; i < best.ports.length; i++) {
+            if (best.free[i] && !best.leases.containsKey(best.ports[i])) {
+                port = best.ports[i];
+                break;
+            }
+        }
+        best.leases.put(port, new Lease(now + TimeUnit.MILLISECONDS.toNanos(leaseMs), ++leaseSeq));
+        best.routed++;
+        return SocketProtocol.createRouteMessage(best.id, best.host, port, 0L);
+    }
+
+    private static double rttOrder(double rttMs) {
+        return rttMs < 0 ? Double.MAX_VALUE : rttMs;
+    }
+
+    private void printStatus() {
+        List<String> lines = new ArrayList<>();
+        int total = 0;
+        int available = 0;
+        synchronized (this) {
+            for (Node node : nodes.values()) {
+                int a = node.available();
+                total += node.ports.length;
+                available += a;
+                lines.add(String.format("  %s %s 空閒=%d/%d rtt=%.2fms sessions=%d routed=%d",
+                        node.id, node.host, a, node.ports.length, node.rttMs, node.sessions, node.routed));
+            }
+        }
+        System.out.println("[EnvCoordinator] " + lines.size() + " 個 node，" + available + "/" + total + " 個 slot 空閒");
+        for (String line : lines) {
+            System.out.println(line);
+        }
+    }
+
+    /** 一條單行 JSON 連線（coordinator 與 {@link EnvNode} 兩端共用）。 */
+    static final class Link implements Closeable {
+        private final Socket socket;
+        private final BufferedReader reader;
+        private final BufferedWriter writer;
+
+        Link(Socket socket) throws IOException {
+            this.socket = socket;
+            socket.setTcpNoDelay(true);
+            this.reader = new BufferedReader(new InputStreamReader(socket.getInputStream(), StandardCharsets.UTF_8));
+            this.writer = new BufferedWriter(new OutputStreamWriter(socket.getOutputStream(), StandardCharsets.UTF_8));
+        }
+
+        Socket socket() {
+            return socket;
+        }
+
+        synchronized void send(SocketProtocol.SocketMessage msg) throws IOException {
+            writer.write(SocketProtocol.encode(msg));
+            writer.flush();
+        }
+
+        /** 讀下一個訊息；連線關閉時回傳 null，略過空行。 */
+        SocketProtocol.SocketMessage read() throws IOException {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                if (!line.trim().isEmpty()) {
+                    return SocketProtocol.decode(line);
+                }
+            }
+            return null;
+        }
+
+        @Override
+        public void close() {
+            try {
+                socket.close();
+            } catch (IOException ignored) {
+            }
+        }
+    }
+}
@@ -0,0 +1,173 @@
+package light;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.FlightRecorder;
+import jdk.jfr.FlightRecorderListener;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.Recording;
+import jdk.jfr.RecordingState;
+import jdk.jfr.StackTrace;
+import jdk.jfr.Threshold;
+
+/**
+ * 環境伺服器的 Java Flight Recorder 事件，用來把 GC 停頓、socket 卡住與 env 的 step / 訊息對在同一條時間軸上。
+ *
+ * 以 {@code jcmd <pid> JFR.start} 或 {@code -XX:StartFlightRecording} 開始錄製即可，不需要改程式或加 log；
+ * 沒有錄製時 {@code shouldCommit()} 為 false，每筆事件只剩建立一個小物件與一次檢查。
+ *
+ * Step 事件頻率很高（EnvPool 每秒可達百萬次），預設只記錄超過 1 ms 的 step；
+ * 需要全部時在錄製設定加上 {@code light.Step#threshold=0 ms}。
+ * step 路徑另外先檢查 {@link #isRecording()}（由 {@link FlightRecorderListener} 維護的 volatile 旗標），
+ * 沒有任何錄製時連事件物件都不建立；實測 JIT 不一定能把 stepByAction 裡的事件物件消掉。
+ * 其他事件都不收 stack trace，避免每筆事件走一次 stack walk。
+ */
+public final class EnvEvents {
+
+    private static volatile boolean recording = false;
+
+    static {
+        // 註冊時若 recorder 已經初始化（例如 -XX:StartFlightRecording），會立即呼叫 recorderInitialized
+        FlightRecorder.addListener(new FlightRecorderListener() {
+            @Override
+            public void recorderInitialized(FlightRecorder recorder) {
+                refresh(recorder);
+            }
+
+            @Override
+            public void recordingStateChanged(Recording changed) {
+                refresh(FlightRecorder.getFlightRecorder());
+            }
+        });
+    }
+
+    private EnvEvents() {
+        // 只放事件定義
+    }
+
+    private static void refresh(FlightRecorder recorder) {
+        boolean any = false;
+        for (Recording r : recorder.getRecordings()) {
+            if (r.getState() == RecordingState.RUNNING) {
+                any = true;
+                break;
+            }
+        }
+        recording = any;
+    }
+
+    /** 目前是否有任何 JFR 錄製在進行；高頻路徑用來略過事件物件的建立。 */
+    static boolean isRecording() {
+        return recording;
+    }
+
+    @Name("light.Step")
+    @Label("Env Step")
+    @Category({"Snake", "Environment"})
+    @Description("GameState.stepByAction 一次")
+    @Threshold("1 ms")
+    @StackTrace(false)
+    public static final class Step extends Event {
+        @Label("Action")
+        public int action;
+        @Label("Reward")
+        public double reward;
+        @Label("Done")
+        public boolean done;
+        @Label("Snake Length")
+        public int snakeLength;
+        @Label("Episode Steps")
+        public int episodeSteps;
+    }
+
+    @Name("light.EpisodeEnd")
+    @Label("Episode End")
+    @Category({"Snake", "Environment"})
+    @StackTrace(false)
+    public static final class EpisodeEnd extends Event {
+        @Label("Length")
+        public int length;
+        @Label("Total Reward")
+        public double reward;
+        @Label("Score")
+        public int score;
+        @Label("Truncated")
+        @Description("因步數上限結束，而不是撞死")
+        public boolean truncated;
+    }
+
+    @Name("light.MessageSent")
+    @Label("Message Sent")
+    @Category({"Snake", "Socket"})
+    @Description("一個協定訊息寫入 socket 並 flush；duration 為 encode + 寫入的時間")
+    @StackTrace(false)
+    public static final class MessageSent extends Event {
+        @Label("Type")
+        public String type;
+        @Label("Bytes")
+        @DataAmount
+        public long bytes;
+        @Label("Connection")
+        public String connection;
+    }
+
+    @Name("light.MessageReceived")
+    @Label("Message Received")
+    @Category({"Snake", "Socket"})
+    @Description("讀到一個協定訊息；duration 為等待該行 + decode 的時間")
+    @StackTrace(false)
+    public static final class MessageReceived extends Event {
+        @Label("Type")
+        public String type;
+        @Label("Bytes")
+        @DataAmount
+        public long bytes;
+        @Label("Connection")
+        public String connection;
+    }
+
+    @Name("light.FallbackAction")
+    @Label("Fallback Action")
+    @Category({"Snake", "Environment"})
+    @Description("client 沒有及時回傳 ACTION，改用 server 端內建 policy")
+    @StackTrace(false)
+    public static final class FallbackAction extends Event {
+        @Label("Action")
+        public int action;
+        @Label("Timeout ms")
+        public int timeoutMs;
+    }
+
+    @Name("light.ClientConnected")
+    @Label("Client Connected")
+    @Category({"Snake", "Socket"})
+    @StackTrace(false)
+    public static final class ClientConnected extends Event {
+        @Label("Connection")
+        public String connection;
+    }
+
+    @Name("light.ClientDisconnected")
+    @Label("Client Disconnected")
+    @Category({"Snake", "Socket"})
+    @StackTrace(false)
+    public static final class ClientDisconnected extends Event {
+        @Label("Connection")
+        public String connection;
+    }
+
+    /** 一局結束（server 迴圈記錄 episode 統計的地方呼叫）。 */
+    static void episodeEnd(int length, double reward, int score, boolean truncated) {
+        EpisodeEnd event = new EpisodeEnd();
+        if (event.shouldCommit()) {
+            event.length = length;
+            event.reward = reward;
+            event.score = score;
+            event.truncated = truncated;
+            event.commit();
+        }
+    }
+}
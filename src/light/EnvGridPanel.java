@@ -0,0 +1,192 @@
+package light;
+
+import javax.swing.*;
+import java.awt.*;
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferInt;
+import java.util.Arrays;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 把 {@link EnvSampler} 的 tile 排成格狀，一次顯示多個 env 的縮小盤面。
+ *
+ * 背景 daemon thread 以 {@code -Dsnake.gui.grid_fps}（預設 4）的頻率取每個 tile 最新的快照，
+ * 直接寫入同一張 {@link BufferedImage} 的像素陣列，畫完才換上並 {@link #repaint()}；
+ * 每一格畫完就對 sampler 提出下一次取樣的要求。每個 frame 的成本只和 tile 數與棋盤大小有關。
+ */
+public class EnvGridPanel extends JPanel {
+
+    private static final long serialVersionUID = 1L;
+
+    private static final int GAP = 2;
+    private static final int MAX_PIXELS = 900;
+
+    private static final int RGB_EMPTY = 0x000000;
+    private static final int RGB_BODY = 0x00C000;
+    private static final int RGB_HEAD = 0x80FF80;
+    private static final int RGB_FOOD = 0xFF0000;
+    private static final int RGB_GAP = 0x303030;
+    private static final int RGB_DONE = 0x602020;
+
+    private final EnvSampler sampler;
+    private final int fps;
+    private final int cols;
+    private final int rows;
+    private final int cellPx;
+    private final int tilePx;
+    private final int width;
+    private final int height;
+
+    private volatile BufferedImage image = null;
+    private ScheduledExecutorService renderer;
+
+    public EnvGridPanel(EnvSampler sampler) {
+        this.sampler = sampler;
+        this.fps = Math.max(1, Math.min(30, Integer.getInteger("snake.gui.grid_fps", 4)));
+        int tiles = sampler.getTileCount();
+        int n = sampler.getBoardSize();
+        this.cols = (int) Math.ceil(Math.sqrt(tiles));
+        this.rows = (tiles + cols - 1) / cols;
+        this.cellPx = Math.max(1, Math.min(8, (MAX_PIXELS - GAP * (cols + 1)) / (cols * n)));
+        this.tilePx = cellPx * n;
+        this.width = cols * tilePx + GAP * (cols + 1);
+        this.height = rows * tilePx + GAP * (rows + 1);
+        setBackground(Color.BLACK);
+        setPreferredSize(new Dimension(width, height));
+    }
+
+    /** 開一個視窗顯示 sampler 的 tile 並開始取樣；headless 環境下不做任何事並回傳 null。 */
+    public static EnvGridPanel showWindow(EnvSampler sampler, String title) {
+        if (GraphicsEnvironment.isHeadless()) {
+            System.err.println("[EnvGridPanel] headless 環境，不開啟格狀檢視");
+            return null;
+        }
+        EnvGridPanel panel = new EnvGridPanel(sampler);
+        SwingUtilities.invokeLater(() -> {
+            JFrame frame = new JFrame(title + "（" + sampler.getTileCount() + " 個 env）");
+            frame.setDefaultCloseOperation(JFrame.DISPOSE_ON_CLOSE);
+            frame.add(panel);
+            frame.pack();
+            frame.setResizable(false);
+            frame.setLocationRelativeTo(null);
+            frame.addWindowListener(new java.awt.event.WindowAdapter() {
+                @Override
+                public void windowClosed(java.awt.event.WindowEvent e) {
+                    panel.stop();
+                }
+            });
+            frame.setVisible(true);
+        });
+        panel.start();
+        return panel;
+    }
+
+    /** 開始背景取樣與繪圖；重複呼叫無效果。 */
+    public synchronized void start() {
+        if (renderer != null) {
+            return;
+        }
+        renderer = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "EnvGridPanel-render");
+            t.setDaemon(true);
+            return t;
+        });
+        renderer.scheduleAtFixedRate(this::renderFrame, 0L, 1000L / fps, TimeUnit.MILLISECONDS);
+    }
+
+    public synchronized void stop() {
+        if (renderer != null) {
+            renderer.shutdownNow();
+            renderer = null;
+        }
+    }
+
+    /** 畫一個 frame：每個 tile 取最新快照畫進新的 image，畫完後要求下一次取樣。 */
+    void renderFrame() {
+        try {
+            BufferedImage img = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+            int[] pixels = ((DataBufferInt) img.getRaster().getDataBuffer()).getData();
+            Arrays.fill(pixels, RGB_GAP);
+            int[] scores = new int[sampler.getTileCount()];
+            Arrays.fill(scores, -1);
+            for (int t = 0; t < sampler.getTileCount(); t++) {
+                int ox = GAP + (t % cols) * (tilePx + GAP);
+                int oy = GAP + (t / cols) * (tilePx + GAP);
+                EnvSampler.Frame f = sampler.latest(t);
+                if (f != null) {
+                    drawTile(pixels, ox, oy, f);
+                    scores[t] = f.score;
+                } else {
+                    fillRect(pixels, ox, oy, tilePx, tilePx, RGB_EMPTY);
+                }
+                // request 之後 f 可能被改寫，畫完才能要求下一份
+                sampler.request(t);
+            }
+            drawLabels(img, scores);
+            image = img;
+            repaint();
+        } catch (RuntimeException e) {
+            System.err.println("[EnvGridPanel] 繪圖失敗: " + e);
+        }
+    }
+
+    private void drawTile(int[] pixels, int ox, int oy, EnvSampler.Frame f) {
+        int n = sampler.getBoardSize();
+        int empty = f.done ? RGB_DONE : RGB_EMPTY;
+        for (int y = 0; y < n; y++) {
+            for (int x = 0; x < n; x++) {
+                int c = y * n + x;
+                int rgb;
+                if (c == f.head) {
+                    rgb = RGB_HEAD;
+                } else {
+                    switch (f.cells[c]) {
+                        case 1: rgb = RGB_BODY; break;
+                        case 2: rgb = RGB_FOOD; break;
+                        default: rgb = empty; break;
+                    }
+                }
+                fillRect(pixels, ox + x * cellPx, oy + y * cellPx, cellPx, cellPx, rgb);
+            }
+        }
+    }
+
+    private void fillRect(int[] pixels, int x0, int y0, int w, int h, int rgb) {
+        for (int y = y0; y < y0 + h; y++) {
+            int row = y * width;
+            Arrays.fill(pixels, row + x0, row + x0 + w, rgb);
+        }
+    }
+
+    /** tile 夠大時在左上角標出 env 編號與分數。 */
+    private void drawLabels(BufferedImage img, int[] scores) {
+        if (tilePx < 60) {
+            return;
+        }
+        Graphics2D g = img.createGraphics();
+        try {
+            g.setFont(g.getFont().deriveFont(10f));
+            g.setColor(Color.WHITE);
+            int ascent = g.getFontMetrics().getAscent();
+            for (int t = 0; t < scores.length; t++) {
+                if (scores[t] < 0) continue;
+                int ox = GAP + (t % cols) * (tilePx + GAP);
+                int oy = GAP + (t / cols) * (tilePx + GAP);
+                g.drawString("#" + sampler.envOfTile(t) + " " + scores[t], ox + 2, oy + ascent);
+            }
+        } finally {
+            g.dispose();
+        }
+    }
+
+    @Override
+    protected void paintComponent(Graphics g) {
+        super.paintComponent(g);
+        BufferedImage img = image;
+        if (img != null) {
+            g.drawImage(img, 0, 0, null);
+        }
+    }
+}
@@ -0,0 +1,193 @@
+package light;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.DoubleAdder;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 環境伺服器的執行期統計（steps、episodes、fallback、socket 流量與 RTT）。
+ *
+ * 所有計數都用 {@link LongAdder} / {@link DoubleAdder}，step 路徑上的寫入只是
+ * striped cell 的累加，不會和其他執行緒或 scrape 互相搶鎖。
+ * 由 {@link MetricsHttpServer} 以 Prometheus text format 輸出。
+ */
+public final class EnvMetrics {
+
+    /** episode 長度（步數）的 bucket 上界。 */
+    private static final double[] LENGTH_BOUNDS = {10, 25, 50, 100, 200, 400, 800, 1600, 3200};
+    /** episode 總 reward 的 bucket 上界。 */
+    private static final double[] REWARD_BOUNDS = {-10, -5, 0, 5, 10, 25, 50, 100, 200, 400};
+    /** RTT（秒）的 bucket 上界：0.1ms ~ 1s。 */
+    private static final double[] RTT_BOUNDS = {0.0001, 0.0005, 0.001, 0.002, 0.005, 0.01, 0.02, 0.05, 0.1, 0.25, 1.0};
+
+    // 必須放在 bucket 常數之後，否則建構時陣列尚未初始化
+    private static final EnvMetrics INSTANCE = new EnvMetrics();
+
+    private final LongAdder steps = new LongAdder();
+    private final LongAdder episodes = new LongAdder();
+    private final LongAdder fallbackActions = new LongAdder();
+    private final LongAdder bytesIn = new LongAdder();
+    private final LongAdder bytesOut = new LongAdder();
+    private final Histogram episodeLength = new Histogram(LENGTH_BOUNDS);
+    private final Histogram episodeReward = new Histogram(REWARD_BOUNDS);
+    private final Map<String, Histogram> rttByConnection = new ConcurrentHashMap<>();
+
+    // 只有 scrape 執行緒會讀寫，用來計算兩次 scrape 之間的 steps/sec
+    private long lastScrapeSteps = 0L;
+    private long lastScrapeNanos = System.nanoTime();
+
+    private EnvMetrics() {
+    }
+
+    public static EnvMetrics get() {
+        return INSTANCE;
+    }
+
+    // ======== 寫入端（step / socket 路徑） ========
+
+    public void recordStep() {
+        steps.increment();
+    }
+
+    /** 一次記錄 n 步（batch env 一步推進多個 env 時用）。 */
+    public void recordSteps(int n) {
+        steps.add(n);
+    }
+
+    public void recordEpisode(int length, double totalReward) {
+        episodes.increment();
+        episodeLength.observe(length);
+        episodeReward.observe(totalReward);
+    }
+
+    public void recordFallbackAction() {
+        fallbackActions.increment();
+    }
+
+    public void addBytesIn(long n) {
+        bytesIn.add(n);
+    }
+
+    public void addBytesOut(long n) {
+        bytesOut.add(n);
+    }
+
+    /** 記錄某條連線從送出 STATE 到收到 ACTION 的往返時間。 */
+    public void recordRtt(String connection, long nanos) {
+        Histogram h = rttByConnection.get(connection);
+        if (h == null) {
+            h = rttByConnection.computeIfAbsent(connection, k -> new Histogram(RTT_BOUNDS));
+        }
+        h.observe(nanos / 1e9);
+    }
+
+    /** 連線結束時移除其 RTT 統計，避免 label 無限增長。 */
+    public void removeConnection(String connection) {
+        rttByConnection.remove(connection);
+    }
+
+    public long getSteps() {
+        return steps.sum();
+    }
+
+    public long getEpisodes() {
+        return episodes.sum();
+    }
+
+    // ======== 輸出端（scrape） ========
+
+    /** 以 Prometheus text exposition format (0.0.4) 輸出所有指標。 */
+    public synchronized String renderPrometheus() {
+        StringBuilder sb = new StringBuilder(2048);
+
+        long nowSteps = steps.sum();
+        long now = System.nanoTime();
+        double elapsed = (now - lastScrapeNanos) / 1e9;
+        double stepsPerSec = elapsed > 0 ? (nowSteps - lastScrapeSteps) / elapsed : 0.0;
+        lastScrapeSteps = nowSteps;
+        lastScrapeNanos = now;
+
+        counter(sb, "snake_env_steps_total", "Environment steps executed.", nowSteps);
+        gauge(sb, "snake_env_steps_per_second", "Steps per second since the previous scrape.", stepsPerSec);
+        counter(sb, "snake_env_episodes_total", "Episodes completed.", episodes.sum());
+        counter(sb, "snake_env_fallback_actions_total", "Random fallback actions used when the agent did not answer in time.",
+                fallbackActions.sum());
+        counter(sb, "snake_socket_bytes_in_total", "Bytes received from clients.", bytesIn.sum());
+        counter(sb, "snake_socket_bytes_out_total", "Bytes sent to clients.", bytesOut.sum());
+
+        episodeLength.render(sb, "snake_env_episode_length_steps", "Episode length in steps.", null);
+        episodeReward.render(sb, "snake_env_episode_reward", "Total episode reward.", null);
+
+        boolean first = true;
+        for (Map.Entry<String, Histogram> e : rttByConnection.entrySet()) {
+            e.getValue().render(sb, "snake_socket_rtt_seconds",
+                    first ? "Time from STATE sent to ACTION received, per connection." : null,
+                    "connection=\"" + escape(e.getKey()) + "\"");
+            first = false;
+        }
+        return sb.toString();
+    }
+
+    private static void counter(StringBuilder sb, String name, String help, long value) {
+        sb.append("# HELP ").append(name).append(' ').append(help).append('\n');
+        sb.append("# TYPE ").append(name).append(" counter\n");
+        sb.append(name).append(' ').append(value).append('\n');
+    }
+
+    private static void gauge(StringBuilder sb, String name, String help, double value) {
+        sb.append("# HELP ").append(name).append(' ').append(help).append('\n');
+        sb.append("# TYPE ").append(name).append(" gauge\n");
+        sb.append(name).append(' ').append(value).append('\n');
+    }
+
+    private static String escape(String s) {
+        return s.replace("\\", "\\\\").replace("\"", "\\\"");
+    }
+
+    /**
+     * 固定 bucket 的 histogram；每個 bucket 是獨立的 LongAdder。
+     */
+    static final class Histogram {
+        private final double[] bounds;
+        private final LongAdder[] buckets; // bounds.length + 1 個，最後一個是 +Inf
+        private final DoubleAdder sum = new DoubleAdder();
+
+        Histogram(double[] bounds) {
+            this.bounds = bounds;
+            this.buckets = new LongAdder[bounds.length + 1];
+            for (int i = 0; i < buckets.length; i++) {
+                buckets[i] = new LongAdder();
+            }
+        }
+
+        void observe(double value) {
+            int i = 0;
+            while (i < bounds.length && value > bounds[i]) {
+                i++;
+            }
+            buckets[i].increment();
+            sum.add(value);
+        }
+
+        /** help 為 null 時不輸出 HELP/TYPE（同名 metric 的後續 label 組合）。 */
+        void render(StringBuilder sb, String name, String help, String labels) {
+            if (help != null) {
+                sb.append("# HELP ").append(name).append(' ').append(help).append('\n');
+                sb.append("# TYPE ").append(name).append(" histogram\n");
+            }
+            String prefix = labels == null ? "" : labels + ",";
+            long cumulative = 0L;
+            for (int i = 0; i < bounds.length; i++) {
+                cumulative += buckets[i].sum();
+                sb.append(name).append("_bucket{").append(prefix).append("le=\"").append(bounds[i]).append("\"} ")
+                        .append(cumulative).append('\n');
+            }
+            cumulative += buckets[bounds.length].sum();
+            sb.append(name).append("_bucket{").append(prefix).append("le=\"+Inf\"} ").append(cumulative).append('\n');
+            String lbl = labels == null ? "" : "{" + labels + "}";
+            sb.append(name).append("_sum").append(lbl).append(' ').append(sum.sum()).append('\n');
+            sb.append(name).append("_count").append(lbl).append(' ').append(cumulative).append('\n');
+        }
+    }
+}
@@ -0,0 +1,183 @@
+package light;
+
+import com.google.gson.JsonObject;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 一個 env server JVM：在 port, port+1, ... 開 {@code slots} 個 {@link SocketSnakeServerGameRL} 的 session，
+ * 每個 slot 一次服務一個 Python actor，actor 斷線後繼續等下一個；並向 {@link EnvCoordinator} 登記、定時送出心跳
+ * （哪些 slot 空閒、與 coordinator 之間的往返時間）。
+ *
+ * coordinator 重啟或暫時連不上時每 2 秒重新登記一次，不影響已經連上的 actor。
+ * 每個新連線從新的一局開始；斷線的 actor 在寬限期內重連到這個 node 的任一 slot 並送出 RESUME，
+ * 就接回原本的局（見 {@link SessionRegistry}）。
+ *
+ * 用法（參數皆可省略）：
+ * <pre>
+ *   java -cp ... light.EnvNode slots=4 port=5000 coordinator=127.0.0.1:5400 host=127.0.0.1 name=node-5000
+ * </pre>
+ * {@code host} 是 actor 連線用的位址（其他主機上的 actor 需要能連到），{@code coordinator=} 留空則不登記。
+ */
+public class EnvNode {
+
+    private static final long RECONNECT_MS = 2000L;
+
+    private final String name;
+    private final String host;
+    private final int[] ports;
+    private final long stepDelayMs;
+    private final AtomicIntegerArray busy;
+    private final AtomicLong sessions = new AtomicLong();
+    private final SessionRegistry registry = new SessionRegistry(SessionRegistry.DEFAULT_GRACE_MS);
+
+    EnvNode(String name, String host, int basePort, int slots, long stepDelayMs) {
+        this.name = name;
+        this.host = host;
+        this.ports = new int[slots];
+        for (int i = 0; i < slots; i++) {
+            ports[i] = basePort + i;
+        }
+        this.stepDelayMs = stepDelayMs;
+        this.busy = new AtomicIntegerArray(slots);
+    }
+
+    public static void main(String[] args) throws Exception {
+        int slots = Runtime.getRuntime().availableProcessors();
+        int port = 5000;
+        String coordinator = "127.0.0.1:" + EnvCoordinator.DEFAULT_PORT;
+        String host = "127.0.0.1";
+        String name = null;
+        long stepDelayMs = 0L;
+        for (String arg : args) {
+            int eq = arg.indexOf('=');
+            if (eq < 0) continue;
+            String key = arg.substring(0, eq);
+            String value = arg.substring(eq + 1);
+            switch (key) {
+                case "slots": slots = Integer.parseInt(value); break;
+                case "port": port = Integer.parseInt(value); break;
+                case "coordinator": coordinator = value; break;
+                case "host": host = value; break;
+                case "name": name = value; break;
+                case "step_delay_ms": stepDelayMs = Long.parseLong(value); break;
+                default: System.err.println("[EnvNode] 未知參數: " + key);
+            }
+        }
+        if (name == null) {
+            name = host + ":" + port;
+        }
+        MetricsHttpServer.startIfConfigured();
+
+        EnvNode node = new EnvNode(name, host, port, Math.max(1, slots), stepDelayMs);
+        for (int i = 0; i < node.ports.length; i++) {
+            final int slot = i;
+            ServerSocket listener = new ServerSocket(node.ports[i]);
+            Thread t = new Thread(() -> node.serveSlot(slot, listener), "EnvNode-slot-" + node.ports[i]);
+            t.start();
+        }
+        System.out.println("[EnvNode] " + name + " 啟動 " + node.ports.length + " 個 slot (ports "
+                + node.ports[0] + ".." + node.ports[node.ports.length - 1] + ")");
+
+        if (!coordinator.isEmpty()) {
+            int colon = coordinator.lastIndexOf(':');
+            String coordHost = colon < 0 ? coordinator : coordinator.substring(0, colon);
+            int coordPort = colon < 0 ? EnvCoordinator.DEFAULT_PORT : Integer.parseInt(coordinator.substring(colon + 1));
+            Thread t = new Thread(() -> node.reportTo(coordHost, coordPort), "EnvNode-heartbeat");
+            t.setDaemon(true);
+            t.start();
+        }
+    }
+
+    /** 一個 slot：依序接受 actor，每條連線跑完整個 session 後再接下一個。 */
+    private void serveSlot(int slot, ServerSocket listener) {
+        while (true) {
+            SocketSnakeServer conn;
+            try {
+                conn = SocketSnakeServer.accept(listener);
+            } catch (IOException e) {
+                System.err.println("[EnvNode] port " + ports[slot] + " accept 失敗: " + e);
+                return;
+            }
+            busy.set(slot, 1);
+            try {
+                SocketSnakeServerGameRL.runSession(conn, registry, registry.open(new GameState()), stepDelayMs, false);
+            } catch (IOException | RuntimeException e) {
+                System.err.println("[EnvNode] port " + ports[slot] + " session 結束: " + e);
+            } finally {
+                registry.detach(conn.getSession());
+                conn.close();
+                sessions.incrementAndGet();
+                busy.set(slot, 0);
+            }
+        }
+    }
+
+    /** 向 coordinator 登記並送心跳；連線中斷時等一下再重新登記。 */
+    private void reportTo(String coordHost, int coordPort) {
+        boolean warned = false;
+        while (true) {
+            try (Socket socket = new Socket()) {
+                socket.connect(new InetSocketAddress(coordHost, coordPort), (int) RECONNECT_MS);
+                EnvCoordinator.Link link = new EnvCoordinator.Link(socket);
+                link.send(SocketProtocol.createRegisterMessage(name, host, ports));
+                SocketProtocol.SocketMessage reply = link.read();
+                if (reply == null || reply.getType() != SocketProtocol.MessageType.REGISTER) {
+                    throw new IOException("coordinator 沒有回覆 REGISTER");
+                }
+                long heartbeatMs = reply.getPayload().get("heartbeat_ms").getAsLong();
+                // 空閒清單必須在收到 seq 之後才取得，coordinator 以此判斷心跳是否比 lease 新
+                long seq = reply.getPayload().has("seq") ? reply.getPayload().get("seq").getAsLong() : -1L;
+                socket.setSoTimeout((int) Math.max(1000L, heartbeatMs * 3));
+                System.out.println("[EnvNode] 已向 coordinator " + coordHost + ":" + coordPort + " 登記，心跳間隔 " + heartbeatMs + "ms");
+                warned = false;
+
+                double rttMs = -1.0;
+                while (true) {
+                    long t = System.nanoTime();
+                    link.send(SocketProtocol.createHeartbeatMessage(freePorts(), sessions.get(), rttMs, t, seq));
+                    SocketProtocol.SocketMessage ack = link.read();
+                    if (ack == null) {
+                        throw new IOException("coordinator 關閉連線");
+                    }
+                    JsonObject payload = ack.getPayload();
+                    if (payload.has("t") && payload.get("t").getAsLong() == t) {
+                        rttMs = (System.nanoTime() - t) / 1e6;
+                    }
+                    if (payload.has("seq")) {
+                        seq = payload.get("seq").getAsLong();
+                    }
+                    Thread.sleep(heartbeatMs);
+                }
+            } catch (IOException | RuntimeException e) {
+                if (!warned) {
+                    System.err.println("[EnvNode] 與 coordinator " + coordHost + ":" + coordPort + " 的連線中斷: " + e
+                            + "，每 " + RECONNECT_MS + "ms 重試");
+                    warned = true;
+                }
+            } catch (InterruptedException e) {
+                return;
+            }
+            try {
+                Thread.sleep(RECONNECT_MS);
+            } catch (InterruptedException e) {
+                return;
+            }
+        }
+    }
+
+    private int[] freePorts() {
+        int n = 0;
+        int[] free = new int[ports.length];
+        for (int i = 0; i < ports.length; i++) {
+            if (busy.get(i) == 0) free[n++] = ports[i];
+        }
+        return Arrays.copyOf(free, n);
+    }
+}
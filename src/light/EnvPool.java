@@ -0,0 +1,248 @@
+package light;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * 一次擁有大量 {@link GameState} 的 env pool，env 依 shardSize 切成 shard，在 {@link ForkJoinPool} 上平行前進。
+ *
+ * 兩種用法：
+ * <ul>
+ *   <li>{@link #step(int[])}：所有 env 同步走一步。以 RecursiveAction 對 shard 範圍二分，
+ *       閒下來的 worker 會偷走其他 worker 尚未開始的一半，shard 之間成本不均（例如吃到食物要重抽）也能平衡。</li>
+ *   <li>{@link #submitShard(int, int[], int)} / {@link #awaitShards()}：動作以 shard 為單位陸續到達時，
+ *       每到一個 shard 就立刻送出一個 task，解碼其餘 shard 的同時前面的已經在跑。</li>
+ * </ul>
+ * 結束（撞死或超過 maxSteps）的 env 會在同一步內記下該局統計後自動 reset，
+ * 因此 {@link #getState(int)} 永遠是下一步要用的局面；本步的 reward / done 另外存在陣列中。
+ *
+ * 同一時間只能有一個執行緒呼叫 step / submitShard；不同 shard 的 env 由不同 worker 修改，彼此不共用狀態。
+ */
+public class EnvPool {
+
+    private final ForkJoinPool pool;
+    private final GameState[] envs;
+    private final int shardSize;
+    private final int shardCount;
+    private final int maxSteps;
+
+    // 本步結果（每個 env 一格）
+    private final double[] rewards;
+    private final boolean[] dones;
+    private final boolean[] truncated;
+    // 剛結束那一局的統計（只在 dones[i] 時有意義）
+    private final int[] finishedLength;
+    private final double[] finishedReward;
+    private final int[] finishedScore;
+
+    private final ForkJoinTask<?>[] pending;
+
+    private EnvSampler sampler;
+
+    /**
+     * @param numEnvs   env 數量
+     * @param shardSize 每個 shard 的 env 數（一個 task 的最小單位）
+     * @param maxSteps  每局步數上限，超過視為 truncated（0 表示不限制）
+     * @param seed      第 i 個 env 使用 seed + i
+     */
+    public EnvPool(ForkJoinPool pool, int numEnvs, int shardSize, int maxSteps, long seed) {
+        if (numEnvs < 1 || shardSize < 1) {
+            throw new IllegalArgumentException("numEnvs 與 shardSize 必須 > 0: " + numEnvs + ", " + shardSize);
+        }
+        this.pool = pool;
+        this.shardSize = shardSize;
+        this.shardCount = (numEnvs + shardSize - 1) / shardSize;
+        this.maxSteps = maxSteps;
+        this.envs = new GameState[numEnvs];
+        for (int i = 0; i < numEnvs; i++) {
+            envs[i] = new GameState(seed + i);
+            envs[i].setVerbose(false);
+        }
+        this.rewards = new double[numEnvs];
+        this.dones = new boolean[numEnvs];
+        this.truncated = new boolean[numEnvs];
+        this.finishedLength = new int[numEnvs];
+        this.finishedReward = new double[numEnvs];
+        this.finishedScore = new int[numEnvs];
+        this.pending = new ForkJoinTask<?>[shardCount];
+    }
+
+    /** 以 CPU 核心數的共用 pool 建立。 */
+    public EnvPool(int numEnvs, int shardSize, int maxSteps, long seed) {
+        this(ForkJoinPool.commonPool(), numEnvs, shardSize, maxSteps, seed);
+    }
+
+    /**
+     * 設定格狀檢視的取樣器（null 表示不取樣）；須在開始 step 之前設定。
+     * 每個 env 走完一步、auto-reset 之前交給 sampler，因此終局盤面也看得到。
+     */
+    public void setSampler(EnvSampler sampler) {
+        this.sampler = sampler;
+    }
+
+    /** 所有 env 同步走一步，actions 長度至少為 {@link #size()}。 */
+    public void step(int[] actions) {
+        pool.invoke(new ShardRange(actions, 0, 0, shardCount));
+    }
+
+    /**
+     * 非同步地讓第 shard 個 shard 走一步；actions[offset..] 依序對應該 shard 的 env。
+     * 之後以 {@link #awaitShards()} 等待所有已送出的 shard 完成。
+     */
+    public void submitShard(int shard, int[] actions, int offset) {
+        if (pending[shard] != null) {
+            throw new IllegalStateException("shard " + shard + " 這一步已經送出過");
+        }
+        int base = shard * shardSize;
+        pending[shard] = pool.submit(new ShardRange(actions, offset - base, shard, shard + 1));
+    }
+
+    /** 等待所有 {@link #submitShard} 送出的 shard 完成。 */
+    public void awaitShards() {
+        for (int s = 0; s < shardCount; s++) {
+            if (pending[s] != null) {
+                pending[s].join();
+                pending[s] = null;
+            }
+        }
+    }
+
+    /**
+     * 對 [from, to) 的 shard 二分；只剩一個 shard 時直接執行。
+     * actionBias：env i 的動作為 actions[i + actionBias]。
+     */
+    private final class ShardRange extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+
+        private final int[] actions;
+        private final int actionBias;
+        private final int from;
+        private final int to;
+
+        ShardRange(int[] actions, int actionBias, int from, int to) {
+            this.actions = actions;
+            this.actionBias = actionBias;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from == 1) {
+                stepShard(from, actions, actionBias);
+                return;
+            }
+            int mid = (from + to) >>> 1;
+            invokeAll(new ShardRange(actions, actionBias, from, mid),
+                      new ShardRange(actions, actionBias, mid, to));
+        }
+    }
+
+    private void stepShard(int shard, int[] actions, int actionBias) {
+        int end = Math.min(envs.length, (shard + 1) * shardSize);
+        EnvSampler view = sampler;
+        for (int i = shard * shardSize; i < end; i++) {
+            GameState env = envs[i];
+            env.stepByAction(actions[i + actionBias]);
+            if (view != null) {
+                view.offer(i, env);
+            }
+            rewards[i] = env.getReward();
+            boolean cut = maxSteps > 0 && !env.isDone() && env.getEpisodeSteps() >= maxSteps;
+            dones[i] = env.isDone() || cut;
+            truncated[i] = cut;
+            if (dones[i]) {
+                finishedLength[i] = env.getEpisodeSteps();
+                finishedReward[i] = env.getEpisodeReward();
+                finishedScore[i] = env.getSnakeLength() - 3;
+                EnvEvents.episodeEnd(finishedLength[i], finishedReward[i], finishedScore[i], cut);
+                EpisodeLog.recordEpisode(env, cut);
+                env.reset();
+            }
+        }
+    }
+
+    // ================== 查詢 ==================
+
+    public int size() {
+        return envs.length;
+    }
+
+    public int getShardSize() {
+        return shardSize;
+    }
+
+    public int getShardCount() {
+        return shardCount;
+    }
+
+    public int getBoardSize() {
+        return envs[0].getBoardSize();
+    }
+
+    /** 第 i 個 env 目前（下一步要用）的局面；done 時已經是 reset 之後的新局。 */
+    public GameState getState(int i) {
+        return envs[i];
+    }
+
+    /** 本步的 reward */
+    public double getReward(int i) {
+        return rewards[i];
+    }
+
+    /** 本步是否結束一局（撞死或 truncated） */
+    public boolean isDone(int i) {
+        return dones[i];
+    }
+
+    /** 本步是因步數上限而結束 */
+    public boolean isTruncated(int i) {
+        return truncated[i];
+    }
+
+    /** 本步結束的那一局的步數（只在 isDone(i) 時有意義） */
+    public int getFinishedLength(int i) {
+        return finishedLength[i];
+    }
+
+    public double getFinishedReward(int i) {
+        return finishedReward[i];
+    }
+
+    /** 剛結束那一局的分數（吃到的食物數） */
+    public int getFinishedScore(int i) {
+        return finishedScore[i];
+    }
+
+    // ================== checkpoint ==================
+
+    /** {@link #writeEnv} 每個 env 最多寫入的 bytes。 */
+    static final int MAX_ENV_RECORD_SIZE = GameState.MAX_SERIALIZED_SIZE + 23;
+
+    /**
+     * 寫出第 i 個 env 的局面與本步結果，還原後送出的第一個 BATCH_STATE 與寫出時相同。
+     * 只能在兩步之間（沒有 shard 在跑時）由 step 的執行緒呼叫。
+     */
+    void writeEnv(int i, ByteBuffer buf) {
+        envs[i].writeTo(buf);
+        buf.putDouble(rewards[i]);
+        buf.put((byte) ((dones[i] ? 1 : 0) | (truncated[i] ? 2 : 0)));
+        buf.putInt(finishedLength[i]);
+        buf.putDouble(finishedReward[i]);
+        buf.putShort((short) finishedScore[i]);
+    }
+
+    /** 讀回 {@link #writeEnv} 的內容；限制同 writeEnv。 */
+    void readEnv(int i, ByteBuffer buf) {
+        envs[i].readFrom(buf);
+        rewards[i] = buf.getDouble();
+        int flags = buf.get();
+        dones[i] = (flags & 1) != 0;
+        truncated[i] = (flags & 2) != 0;
+        finishedLength[i] = buf.getInt();
+        finishedReward[i] = buf.getDouble();
+        finishedScore[i] = buf.getShort();
+    }
+}
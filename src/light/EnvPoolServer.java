@@ -0,0 +1,207 @@
+package light;
+
+import com.google.gson.JsonArray;
+import com.google.gson.JsonObject;
+
+import java.io.IOException;
+import java.net.ServerSocket;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * 以 batch step 協定對外提供 {@link EnvPool} 的 socket 伺服端，讓一個 learner 一次推進上千個 env。
+ *
+ * 每步流程：送出 BATCH_STATE → 讀 BATCH_ACTION → 所有 env 走一步。BATCH_ACTION 有兩種形式：
+ * <ul>
+ *   <li>{@code {"actions": [a0, a1, ...]}}：一次給全部 env 的動作，以 work stealing 平行前進。</li>
+ *   <li>{@code {"shard": s, "actions": [...]}}：只給第 s 個 shard（shard_size 個 env）的動作；
+ *       每收到一個 shard 就立刻開始跑，收齊所有 shard 才送出下一個 BATCH_STATE。
+ *       learner 可以一邊對後面的 shard 做 inference，一邊讓前面的 shard 先前進。</li>
+ * </ul>
+ * 結束的 env 會自動 reset，BATCH_STATE 的 dones[i] 為 true 時 boards[i] 已是新局的第一個畫面。
+ *
+ * 用法（參數皆可省略）：
+ * <pre>
+ *   java -cp ... light.EnvPoolServer port=5300 envs=1024 shard=64 threads=8 max_steps=1000 seed=1 view=16
+ * </pre>
+ * {@code view=N} 開一個格狀視窗，從所有 env 中平均挑 N 個顯示（見 {@link EnvGridPanel}）。
+ *
+ * {@code checkpoint=<path>} 每 {@code checkpoint_every} 步（預設 10000）在背景把所有 env 寫成 checkpoint（見 {@link EnvCheckpoint}），
+ * 加上 {@code resume=true} 時若檔案存在就先還原再開始，之後每個 env 的局面與中斷前接續（envs 必須相同）。
+ */
+public class EnvPoolServer {
+
+    public static void main(String[] args) {
+        int port = 5300;
+        int envs = 1024;
+        int shard = 64;
+        int threads = Runtime.getRuntime().availableProcessors();
+        int maxSteps = 1000;
+        long seed = System.nanoTime();
+        int view = 0;
+        String checkpoint = null;
+        long checkpointEvery = 10_000L;
+        boolean resume = false;
+
+        for (String arg : args) {
+            int eq = arg.indexOf('=');
+            if (eq < 0) continue;
+            String key = arg.substring(0, eq);
+            String value = arg.substring(eq + 1);
+            switch (key) {
+                case "port": port = Integer.parseInt(value); break;
+                case "envs": envs = Integer.parseInt(value); break;
+                case "shard": shard = Integer.parseInt(value); break;
+                case "threads": threads = Integer.parseInt(value); break;
+                case "max_steps": maxSteps = Integer.parseInt(value); break;
+                case "seed": seed = Long.parseLong(value); break;
+                case "view": view = Integer.parseInt(value); break;
+                case "checkpoint": checkpoint = value; break;
+                case "checkpoint_every": checkpointEvery = Long.parseLong(value); break;
+                case "resume": resume = Boolean.parseBoolean(value); break;
+                default: System.err.println("[EnvPoolServer] 未知參數: " + key);
+            }
+        }
+
+        MetricsHttpServer.startIfConfigured();
+        ForkJoinPool pool = new ForkJoinPool(Math.max(1, threads));
+        EnvPool envPool = new EnvPool(pool, envs, shard, maxSteps, seed);
+        if (view > 0) {
+            EnvSampler sampler = new EnvSampler(envs, view, envPool.getBoardSize());
+            envPool.setSampler(sampler);
+            EnvGridPanel.showWindow(sampler, "EnvPoolServer");
+        }
+        EnvCheckpoint ckpt = null;
+        long step = 0L;
+        try {
+            if (checkpoint != null) {
+                Path ckptPath = Paths.get(checkpoint);
+                if (resume && Files.exists(ckptPath)) {
+                    step = EnvCheckpoint.restore(ckptPath, envPool);
+                }
+                ckpt = new EnvCheckpoint(ckptPath, envs);
+            }
+            run(envPool, port, ckpt, Math.max(1L, checkpointEvery), step);
+        } catch (IOException e) {
+            System.err.println("[EnvPoolServer] 結束: " + e.getMessage());
+        } finally {
+            if (ckpt != null) {
+                try {
+                    ckpt.close();
+                } catch (IOException e) {
+                    System.err.println("[EnvPoolServer] checkpoint 寫入失敗: " + e.getMessage());
+                }
+            }
+            pool.shutdown();
+        }
+        MetricsHttpServer.stop();
+    }
+
+    /** 接受一條 learner 連線並持續以 batch step 推進，直到連線中斷。 */
+    static void run(EnvPool envs, int port) throws IOException {
+        run(envs, port, null, 1L, 0L);
+    }
+
+    /**
+     * 同 {@link #run(EnvPool, int)}；ckpt 不為 null 時每走 checkpointEvery 步 capture 一次。
+     * step 為 pool 已走的步數（從 checkpoint 還原時接續）。
+     */
+    static void run(EnvPool envs, int port, EnvCheckpoint ckpt, long checkpointEvery, long step) throws IOException {
+        SocketSnakeServer conn = null;
+        try (ServerSocket listener = new ServerSocket(port)) {
+            System.out.println("[EnvPoolServer] Listening on port " + port + "（envs=" + envs.size()
+                    + ", shards=" + envs.getShardCount() + "x" + envs.getShardSize() + "）...");
+            conn = SocketSnakeServer.accept(listener);
+            conn.sendMessage(SocketProtocol.createBatchInitMessage(envs.getBoardSize(), envs.size(), envs.getShardSize()));
+
+            int[] actions = new int[envs.size()];
+            boolean[] received = new boolean[envs.getShardCount()];
+            while (true) {
+                conn.sendMessage(SocketProtocol.createBatchStateMessage(envs));
+                readAndStep(conn, envs, actions, received);
+                recordFinished(envs);
+                step++;
+                if (ckpt != null && step % checkpointEvery == 0) {
+                    ckpt.capture(envs, step);
+                }
+            }
+        } finally {
+            if (conn != null) {
+                conn.close();
+            }
+        }
+    }
+
+    /** 讀 BATCH_ACTION 直到所有 env 都有動作，並讓 env 走完這一步。 */
+    private static void readAndStep(SocketSnakeServer conn, EnvPool envs, int[] actions,
+                                    boolean[] received) throws IOException {
+        int remaining = envs.getShardCount();
+        java.util.Arrays.fill(received, false);
+        try {
+            while (remaining > 0) {
+                SocketProtocol.SocketMessage msg = conn.readMessage();
+                if (msg == null) {
+                    throw new IOException("client 已斷線");
+                }
+                SocketProtocol.MessageType type = msg.getType();
+                if (type == SocketProtocol.MessageType.PING) {
+                    conn.sendPing();
+                    continue;
+                }
+                if (type != SocketProtocol.MessageType.BATCH_ACTION) {
+                    continue;
+                }
+                JsonObject payload = msg.getPayload();
+                JsonArray arr = payload.getAsJsonArray("actions");
+                if (arr == null) {
+                    throw new IOException("BATCH_ACTION 缺少 `actions` 欄位");
+                }
+
+                if (!payload.has("shard")) {
+                    if (remaining != envs.getShardCount()) {
+                        throw new IOException("已經以 shard 送出部分動作，不能再送整批");
+                    }
+                    if (arr.size() != envs.size()) {
+                        throw new IOException("actions 長度應為 " + envs.size() + ": " + arr.size());
+                    }
+                    for (int i = 0; i < actions.length; i++) {
+                        actions[i] = arr.get(i).getAsInt();
+                    }
+                    envs.step(actions);
+                    return;
+                }
+
+                int s = payload.get("shard").getAsInt();
+                if (s < 0 || s >= received.length || received[s]) {
+                    throw new IOException("不合法或重複的 shard: " + s);
+                }
+                int base = s * envs.getShardSize();
+                int len = Math.min(envs.getShardSize(), envs.size() - base);
+                if (arr.size() != len) {
+                    throw new IOException("shard " + s + " 的 actions 長度應為 " + len + ": " + arr.size());
+                }
+                for (int k = 0; k < len; k++) {
+                    actions[base + k] = arr.get(k).getAsInt();
+                }
+                received[s] = true;
+                remaining--;
+                envs.submitShard(s, actions, base);
+            }
+        } finally {
+            // 斷線或格式錯誤時也要等已送出的 shard 結束，避免 worker 仍在修改 env
+            envs.awaitShards();
+        }
+    }
+
+    private static void recordFinished(EnvPool envs) {
+        EnvMetrics metrics = EnvMetrics.get();
+        metrics.recordSteps(envs.size());
+        for (int i = 0; i < envs.size(); i++) {
+            if (envs.isDone(i)) {
+                metrics.recordEpisode(envs.getFinishedLength(i), envs.getFinishedReward(i));
+            }
+        }
+    }
+}
@@ -0,0 +1,129 @@
+package light;
+
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * 從大量正在跑的 env 中挑出固定幾個（tile），讓模擬執行緒在 viewer 要求時交出一份盤面快照。
+ *
+ * 每個 tile 有兩個 {@link Frame} 輪流使用，以一個 request 旗標交接：
+ * <ol>
+ *   <li>viewer 畫完目前的 front frame 後才把 request 設為 1</li>
+ *   <li>模擬執行緒在 {@link #offer} 看到 request 時把盤面寫進另一個 frame，發佈成新的 front 後清掉 request</li>
+ * </ol>
+ * viewer 只讀 front、模擬執行緒只寫另一個，兩邊不加鎖也不會讀到寫到一半的 frame。
+ * 模擬執行緒這邊永遠不等待：沒被取樣的 env 只多一次陣列讀取，被取樣但 viewer 沒要求時只多一次 volatile 讀取。
+ * 因此 viewer 的取樣頻率決定快照頻率，成本與 env 總數無關。
+ *
+ * 同一個 env 同一時間只能由一個執行緒呼叫 {@link #offer}（EnvPool 的 shard 與評估的 worker 都滿足）。
+ */
+public final class EnvSampler {
+
+    /** 一個 tile 的盤面快照。 */
+    public static final class Frame {
+        /** row-major 的 N×N 盤面（0 空、1 蛇、2 食物）。 */
+        public final byte[] cells;
+        /** 蛇頭位置（y * N + x），沒有蛇頭時為 -1。 */
+        public int head;
+        public int score;
+        public int episodeSteps;
+        public boolean done;
+        /** 這個 tile 取樣的是第幾個 env。 */
+        public int env;
+
+        Frame(int boardSize) {
+            this.cells = new byte[boardSize * boardSize];
+        }
+    }
+
+    private final int boardSize;
+    private final int[] tileOfEnv;
+    private final int[] envOfTile;
+    private final AtomicIntegerArray requested;
+    private final AtomicReferenceArray<Frame> front;
+    private final Frame[] spare;
+
+    /**
+     * @param numEnvs   env 總數
+     * @param tiles     要顯示的 tile 數（超過 numEnvs 時以 numEnvs 為準）
+     * @param boardSize 棋盤邊長
+     */
+    public EnvSampler(int numEnvs, int tiles, int boardSize) {
+        if (numEnvs < 1 || tiles < 1) {
+            throw new IllegalArgumentException("numEnvs 與 tiles 必須 > 0: " + numEnvs + ", " + tiles);
+        }
+        int t = Math.min(tiles, numEnvs);
+        this.boardSize = boardSize;
+        this.tileOfEnv = new int[numEnvs];
+        this.envOfTile = new int[t];
+        Arrays.fill(tileOfEnv, -1);
+        // tile 平均分散到所有 env（也就分散到各個 shard / worker）
+        for (int k = 0; k < t; k++) {
+            int env = (int) ((long) k * numEnvs / t);
+            envOfTile[k] = env;
+            tileOfEnv[env] = k;
+        }
+        this.requested = new AtomicIntegerArray(t);
+        this.front = new AtomicReferenceArray<>(t);
+        this.spare = new Frame[t];
+        for (int k = 0; k < t; k++) {
+            spare[k] = new Frame(boardSize);
+            requested.set(k, 1);
+        }
+    }
+
+    public int getTileCount() {
+        return envOfTile.length;
+    }
+
+    public int getBoardSize() {
+        return boardSize;
+    }
+
+    /** 第 tile 個 tile 取樣的 env 編號。 */
+    public int envOfTile(int tile) {
+        return envOfTile[tile];
+    }
+
+    /**
+     * 模擬執行緒在 env 走完一步後呼叫；只有 viewer 要求時才複製盤面，從不阻塞。
+     */
+    public void offer(int env, GameState state) {
+        int tile = tileOfEnv[env];
+        if (tile < 0 || requested.get(tile) == 0) {
+            return;
+        }
+        Frame f = spare[tile];
+        int[][] board = state.getBoard();
+        int n = boardSize;
+        for (int y = 0; y < n; y++) {
+            int[] row = board[y];
+            int base = y * n;
+            for (int x = 0; x < n; x++) {
+                f.cells[base + x] = (byte) row[x];
+            }
+        }
+        int hx = state.getHeadX();
+        f.head = hx < 0 ? -1 : state.getHeadY() * n + hx;
+        f.score = state.getSnakeLength() - 3;
+        f.episodeSteps = state.getEpisodeSteps();
+        f.done = state.isDone();
+        f.env = env;
+
+        Frame old = front.getAndSet(tile, f);
+        // viewer 畫完 old 才會再提出 request，所以 old 可以拿來寫下一份；第一次沒有 old 時新配置一個
+        spare[tile] = (old != null) ? old : new Frame(boardSize);
+        requested.set(tile, 0);
+    }
+
+    /** viewer 取得 tile 最新的快照（尚未有快照時為 null）；讀完後呼叫 {@link #request(int)}。 */
+    public Frame latest(int tile) {
+        return front.get(tile);
+    }
+
+    /** viewer 已經用完 {@link #latest(int)} 的 frame，請模擬執行緒在下一步交出新的快照。 */
+    public void request(int tile) {
+        requested.set(tile, 1);
+    }
+}
@@ -0,0 +1,331 @@
+package light;
+
+import javax.imageio.IIOImage;
+import javax.imageio.ImageIO;
+import javax.imageio.ImageTypeSpecifier;
+import javax.imageio.ImageWriteParam;
+import javax.imageio.ImageWriter;
+import javax.imageio.metadata.IIOMetadata;
+import javax.imageio.metadata.IIOMetadataNode;
+import javax.imageio.stream.ImageOutputStream;
+import java.awt.*;
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferByte;
+import java.awt.image.IndexColorModel;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 把 {@link EpisodeRecording} 的局重播成動畫 GIF 或逐格 PNG，不需要螢幕（可加 {@code -Djava.awt.headless=true}）。
+ *
+ * 每一格以 {@link SnakePanel#paintBoard} 畫到 {@link BufferedImage}，與視窗看到的畫面相同，
+ * 下方另有一行局序號 / 步數 / 分數。不同局在 {@code threads} 個執行緒上平行輸出，每局各用一個 {@link ImageWriter}。
+ * GIF 每格只有十幾種顏色，直接建立該格的調色盤轉成 indexed image，不經過 ImageIO 的色彩量化。
+ *
+ * 用法（參數皆可省略）：
+ * <pre>
+ *   java -Djava.awt.headless=true -cp ... light.EpisodeExporter \
+ *        in=agent/eval_episodes.rec out=export format=gif from=0 to=100 size=400 frame_ms=80 every=1 hold_ms=1000
+ * </pre>
+ * {@code from}/{@code to} 為局序號範圍（to 不含），{@code every=k} 每 k 步輸出一格（最後一格一定輸出），
+ * {@code hold_ms} 為 GIF 最後一格停留的時間。
+ */
+public class EpisodeExporter {
+
+    private static final int STATUS_HEIGHT = 18;
+
+    private final Path outDir;
+    private final boolean gif;
+    private final int size;
+    private final int frameMs;
+    private final int every;
+    private final int holdMs;
+
+    EpisodeExporter(Path outDir, boolean gif, int size, int frameMs, int every, int holdMs) {
+        this.outDir = outDir;
+        this.gif = gif;
+        this.size = size;
+        this.frameMs = frameMs;
+        this.every = Math.max(1, every);
+        this.holdMs = holdMs;
+    }
+
+    public static void main(String[] args) throws Exception {
+        String in = "agent" + java.io.File.separator + "eval_episodes.rec";
+        String out = "export";
+        String format = "gif";
+        long from = 0;
+        long to = Long.MAX_VALUE;
+        int size = 400;
+        int frameMs = 80;
+        int every = 1;
+        int holdMs = 1000;
+        int threads = Runtime.getRuntime().availableProcessors();
+
+        for (String arg : args) {
+            int eq = arg.indexOf('=');
+            if (eq < 0) continue;
+            String key = arg.substring(0, eq);
+            String value = arg.substring(eq + 1);
+            switch (key) {
+                case "in": in = value; break;
+                case "out": out = value; break;
+                case "format": format = value.toLowerCase(); break;
+                case "from": from = Long.parseLong(value); break;
+                case "to": to = Long.parseLong(value); break;
+                case "size": size = Integer.parseInt(value); break;
+                case "frame_ms": frameMs = Integer.parseInt(value); break;
+                case "every": every = Integer.parseInt(value); break;
+                case "hold_ms": holdMs = Integer.parseInt(value); break;
+                case "threads": threads = Integer.parseInt(value); break;
+                default: System.err.println("[EpisodeExporter] 未知參數: " + key);
+            }
+        }
+        if (!"gif".equals(format) && !"png".equals(format)) {
+            throw new IllegalArgumentException("format 只支援 gif 或 png: " + format);
+        }
+
+        List<EpisodeRecording.Entry> entries = EpisodeRecording.read(Paths.get(in), from, to);
+        if (entries.isEmpty()) {
+            System.out.println("[EpisodeExporter] " + in + " 中沒有局序號在 [" + from + ", " + to + ") 的紀錄");
+            return;
+        }
+        Path outDir = Paths.get(out);
+        Files.createDirectories(outDir);
+        EpisodeExporter exporter = new EpisodeExporter(outDir, "gif".equals(format), size, frameMs, every, holdMs);
+
+        threads = Math.max(1, Math.min(threads, entries.size()));
+        System.out.println("[EpisodeExporter] 輸出 " + entries.size() + " 局到 " + outDir + "（" + format + "，" + threads + " 個執行緒）");
+        long t0 = System.nanoTime();
+        ExecutorService pool = Executors.newFixedThreadPool(threads);
+        AtomicInteger frames = new AtomicInteger();
+        AtomicInteger done = new AtomicInteger();
+        List<Future<?>> futures = new ArrayList<>();
+        int total = entries.size();
+        int every10 = Math.max(1, total / 10);
+        for (EpisodeRecording.Entry e : entries) {
+            futures.add(pool.submit(() -> {
+                frames.addAndGet(exporter.export(e));
+                int n = done.incrementAndGet();
+                if (n % every10 == 0 || n == total) {
+                    System.out.println("[EpisodeExporter] " + n + "/" + total + " 局");
+                }
+                return null;
+            }));
+        }
+        int failed = 0;
+        for (Future<?> f : futures) {
+            try {
+                f.get();
+            } catch (java.util.concurrent.ExecutionException ex) {
+                failed++;
+                System.err.println("[EpisodeExporter] 輸出失敗: " + ex.getCause());
+            }
+        }
+        pool.shutdown();
+        double secs = (System.nanoTime() - t0) / 1e9;
+        System.out.println(String.format("[EpisodeExporter] 完成：%d 局（失敗 %d），%d 格，%.2fs，%.0f 格/秒",
+                total - failed, failed, frames.get(), secs, frames.get() / secs));
+    }
+
+    /** 重播並輸出一局，回傳輸出的格數。 */
+    int export(EpisodeRecording.Entry entry) throws IOException {
+        GameState state = new GameState(entry.seed);
+        state.setVerbose(false);
+        state.setTraceEvents(false);
+        BufferedImage canvas = new BufferedImage(size, size + STATUS_HEIGHT, BufferedImage.TYPE_INT_RGB);
+        String name = String.format("episode_%06d", entry.episode);
+
+        FrameSink sink = gif ? new GifSink(outDir.resolve(name + ".gif")) : new PngSink(outDir.resolve(name));
+        int frames = 0;
+        try {
+            int steps = entry.actions.length;
+            for (int k = 0; k <= steps; k++) {
+                if (k > 0) {
+                    if (state.isDone()) {
+                        System.err.println("[EpisodeExporter] 局 " + entry.episode + " 在第 " + (k - 1)
+                                + " 步就結束了，紀錄還有 " + (steps - k + 1) + " 步（紀錄與目前的遊戲規則不符？）");
+                        break;
+                    }
+                    state.stepByAction(entry.actions[k - 1]);
+                }
+                boolean last = (k == steps);
+                if (k % every != 0 && !last) {
+                    continue;
+                }
+                draw(canvas, state, entry.episode);
+                sink.write(canvas, last ? Math.max(frameMs, holdMs) : frameMs * (k == 0 ? 1 : every));
+                frames++;
+            }
+        } finally {
+            sink.close();
+        }
+        return frames;
+    }
+
+    private void draw(BufferedImage canvas, GameState state, long episode) {
+        Graphics2D g = canvas.createGraphics();
+        try {
+            g.setColor(Color.BLACK);
+            g.fillRect(0, 0, size, size + STATUS_HEIGHT);
+            SnakePanel.paintBoard(g, state.getBoard(), size, size);
+            g.setColor(Color.WHITE);
+            g.setFont(new Font(Font.MONOSPACED, Font.PLAIN, 12));
+            String status = String.format("ep %d  step %d  score %d%s", episode, state.getEpisodeSteps(),
+                    state.getSnakeLength() - 3, state.isDone() ? "  done" : "");
+            g.drawString(status, 4, size + STATUS_HEIGHT - 5);
+        } finally {
+            g.dispose();
+        }
+    }
+
+    private interface FrameSink {
+        void write(BufferedImage frame, int delayMs) throws IOException;
+
+        void close() throws IOException;
+    }
+
+    /** 每格一個 PNG：{@code <dir>/frame_00000.png}。 */
+    private static final class PngSink implements FrameSink {
+        private final Path dir;
+        private int index = 0;
+
+        PngSink(Path dir) throws IOException {
+            this.dir = Files.createDirectories(dir);
+        }
+
+        @Override
+        public void write(BufferedImage frame, int delayMs) throws IOException {
+            Path file = dir.resolve(String.format("frame_%05d.png", index++));
+            if (!ImageIO.write(frame, "png", file.toFile())) {
+                throw new IOException("沒有可用的 PNG writer");
+            }
+        }
+
+        @Override
+        public void close() {
+        }
+    }
+
+    /** 以 ImageIO 的 GIF writer 寫成無限循環的動畫。 */
+    private static final class GifSink implements FrameSink {
+        private final ImageWriter writer;
+        private final ImageOutputStream stream;
+        private boolean first = true;
+
+        GifSink(Path file) throws IOException {
+            java.util.Iterator<ImageWriter> writers = ImageIO.getImageWritersByFormatName("gif");
+            if (!writers.hasNext()) {
+                throw new IOException("沒有可用的 GIF writer");
+            }
+            writer = writers.next();
+            Files.deleteIfExists(file);
+            stream = ImageIO.createImageOutputStream(file.toFile());
+            writer.setOutput(stream);
+            writer.prepareWriteSequence(null);
+        }
+
+        @Override
+        public void write(BufferedImage frame, int delayMs) throws IOException {
+            BufferedImage indexed = toIndexed(frame);
+            ImageWriteParam param = writer.getDefaultWriteParam();
+            IIOMetadata meta = writer.getDefaultImageMetadata(new ImageTypeSpecifier(indexed), param);
+            String format = meta.getNativeMetadataFormatName();
+            IIOMetadataNode root = (IIOMetadataNode) meta.getAsTree(format);
+
+            IIOMetadataNode gce = child(root, "GraphicControlExtension");
+            gce.setAttribute("disposalMethod", "none");
+            gce.setAttribute("userInputFlag", "FALSE");
+            gce.setAttribute("transparentColorFlag", "FALSE");
+            gce.setAttribute("transparentColorIndex", "0");
+            gce.setAttribute("delayTime", Integer.toString(Math.max(1, delayMs / 10)));
+
+            if (first) {
+                // NETSCAPE2.0 extension：loop count 0 = 無限循環
+                IIOMetadataNode ext = new IIOMetadataNode("ApplicationExtension");
+                ext.setAttribute("applicationID", "NETSCAPE");
+                ext.setAttribute("authenticationCode", "2.0");
+                ext.setUserObject(new byte[]{1, 0, 0});
+                child(root, "ApplicationExtensions").appendChild(ext);
+                first = false;
+            }
+            meta.setFromTree(format, root);
+            writer.writeToSequence(new IIOImage(indexed, null, meta), param);
+        }
+
+        @Override
+        public void close() throws IOException {
+            try {
+                writer.endWriteSequence();
+            } catch (IllegalStateException ignored) {
+                // 一格都沒寫時沒有 sequence 可結束
+            } finally {
+                stream.close();
+                writer.dispose();
+            }
+        }
+
+        private static IIOMetadataNode child(IIOMetadataNode root, String name) {
+            for (int i = 0; i < root.getLength(); i++) {
+                if (root.item(i).getNodeName().equalsIgnoreCase(name)) {
+                    return (IIOMetadataNode) root.item(i);
+                }
+            }
+            IIOMetadataNode node = new IIOMetadataNode(name);
+            root.appendChild(node);
+            return node;
+        }
+
+        /** 以這一格實際出現的顏色建立調色盤（最多 256 色，超過時交給 ImageIO 量化）。 */
+        private static BufferedImage toIndexed(BufferedImage rgb) {
+            int w = rgb.getWidth();
+            int h = rgb.getHeight();
+            int[] pixels = rgb.getRGB(0, 0, w, h, null, 0, w);
+            int[] palette = new int[256];
+            int colors = 0;
+            byte[] index = new byte[pixels.length];
+            int lastRgb = 0;
+            int lastIndex = -1;
+            for (int p = 0; p < pixels.length; p++) {
+                int c = pixels[p] & 0xFFFFFF;
+                int found = (c == lastRgb && lastIndex >= 0) ? lastIndex : -1;
+                for (int i = 0; found < 0 && i < colors; i++) {
+                    if (palette[i] == c) found = i;
+                }
+                if (found < 0) {
+                    if (colors == palette.length) {
+                        return rgb;
+                    }
+                    palette[colors] = c;
+                    found = colors++;
+                }
+                index[p] = (byte) found;
+                lastRgb = c;
+                lastIndex = found;
+            }
+            int bits = 1;
+            while ((1 << bits) < colors) bits++;
+            byte[] r = new byte[colors];
+            byte[] g = new byte[colors];
+            byte[] b = new byte[colors];
+            for (int i = 0; i < colors; i++) {
+                r[i] = (byte) (palette[i] >> 16);
+                g[i] = (byte) (palette[i] >> 8);
+                b[i] = (byte) palette[i];
+            }
+            IndexColorModel model = new IndexColorModel(bits, colors, r, g, b);
+            BufferedImage out = new BufferedImage(w, h, BufferedImage.TYPE_BYTE_INDEXED, model);
+            byte[] data = ((DataBufferByte) out.getRaster().getDataBuffer()).getData();
+            System.arraycopy(index, 0, data, 0, index.length);
+            return out;
+        }
+    }
+}
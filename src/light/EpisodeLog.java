@@ -0,0 +1,223 @@
+package light;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 每局結束時附加一筆固定長度的二進位紀錄，取代整份重寫的 {@code eval_rewards.json}。
+ *
+ * 檔案格式（little-endian）：16 bytes 檔頭（magic {@code "SNKEPLOG"}、版本、紀錄長度），
+ * 之後每筆 {@value #RECORD_SIZE} bytes：
+ * <pre>
+ *   0  long   run id
+ *   8  long   該 run 內的局序號（從 0 起算）
+ *  16  long   結束時間（epoch ms）
+ *  24  double 總 reward
+ *  32  int    步數
+ *  36  short  吃到的食物數
+ *  38  byte   死因（{@link GameState#DEATH_NONE} / {@link GameState#DEATH_WALL} / {@link GameState#DEATH_SELF} / {@link #CAUSE_TRUNCATED}）
+ *  39  byte   保留
+ * </pre>
+ * 伺服器以 {@code -Dsnake.episode_log=<path>} 啟用全域 log（未設定時 {@link #recordEpisode} 不做任何事），
+ * run id 預設為啟動時間（ms），可用 {@code -Dsnake.episode_log.run_id} 指定。
+ * 紀錄先放在記憶體緩衝區，滿了、距上次寫入超過一秒或 JVM 結束時才寫入檔案；
+ * 一秒的期限由背景執行緒每秒檢查，server 很久沒有新的一局結束時緩衝中的紀錄也會寫出，當掉時最多遺失約一秒內的紀錄。
+ * 上次異常結束留下的半筆紀錄會在開檔時截掉。同一個檔案一次只能有一個 writer。
+ * 查詢用 {@link EpisodeLogReader}。
+ */
+public final class EpisodeLog implements Closeable {
+
+    static final byte[] MAGIC = "SNKEPLOG".getBytes(StandardCharsets.US_ASCII);
+    static final int VERSION = 1;
+    static final int HEADER_SIZE = 16;
+    public static final int RECORD_SIZE = 40;
+
+    /** 死因：達到步數上限被截斷，不是撞死。 */
+    public static final int CAUSE_TRUNCATED = 3;
+
+    private static final int BUFFERED_RECORDS = 1024;
+    private static final long FLUSH_INTERVAL_NANOS = 1_000_000_000L;
+
+    private static final EpisodeLog INSTANCE = openDefault();
+
+    private final Path path;
+    private final FileChannel channel;
+    private final ByteBuffer buffer;
+    private final long runId;
+    private final ScheduledExecutorService flusher;
+    private long nextEpisode = 0L;
+    private long lastFlushNanos = System.nanoTime();
+    private boolean closed = false;
+
+    /** 開啟（必要時建立）log 檔，新紀錄附加在最後一筆完整紀錄之後。 */
+    public EpisodeLog(Path path, long runId) throws IOException {
+        this.path = path;
+        this.runId = runId;
+        if (path.getParent() != null) {
+            Files.createDirectories(path.getParent());
+        }
+        this.channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        this.buffer = ByteBuffer.allocateDirect(BUFFERED_RECORDS * RECORD_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+        try {
+            long size = channel.size();
+            if (size == 0) {
+                writeHeader();
+            } else {
+                EpisodeLogReader.checkHeader(channel, path);
+                long aligned = HEADER_SIZE + (size - HEADER_SIZE) / RECORD_SIZE * RECORD_SIZE;
+                if (aligned != size) {
+                    System.err.println("[EpisodeLog] " + path + " 結尾有不完整的紀錄（" + (size - aligned) + " bytes），已截掉");
+                    channel.truncate(aligned);
+                }
+            }
+            channel.position(channel.size());
+        } catch (IOException e) {
+            channel.close();
+            throw e;
+        }
+        this.flusher = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "EpisodeLog-flush");
+            t.setDaemon(true);
+            return t;
+        });
+        flusher.scheduleAtFixedRate(this::flushIfStale, 1000L, 1000L, TimeUnit.MILLISECONDS);
+    }
+
+    private static EpisodeLog openDefault() {
+        String file = System.getProperty("snake.episode_log");
+        if (file == null || file.isEmpty()) {
+            return null;
+        }
+        long runId = Long.getLong("snake.episode_log.run_id", System.currentTimeMillis());
+        try {
+            EpisodeLog log = new EpisodeLog(Paths.get(file), runId);
+            Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+                try {
+                    log.close();
+                } catch (IOException e) {
+                    System.err.println("[EpisodeLog] 關閉 " + file + " 失敗: " + e.getMessage());
+                }
+            }, "EpisodeLog-close"));
+            System.out.println("[EpisodeLog] 每局紀錄附加到 " + file + " (run_id=" + runId + ")");
+            return log;
+        } catch (IOException e) {
+            System.err.println("[EpisodeLog] 無法開啟 " + file + "，不記錄每局統計: " + e.getMessage());
+            return null;
+        }
+    }
+
+    /** 全域 log 是否啟用。 */
+    public static boolean isEnabled() {
+        return INSTANCE != null;
+    }
+
+    /**
+     * 以全域 log 記錄 state 剛結束的一局（須在 reset 之前呼叫）；未啟用時不做任何事。
+     * 寫檔失敗只印錯誤，不影響遊戲迴圈。
+     *
+     * @param truncated 是否因步數上限結束
+     */
+    public static void recordEpisode(GameState state, boolean truncated) {
+        EpisodeLog log = INSTANCE;
+        if (log == null) {
+            return;
+        }
+        int cause = truncated ? CAUSE_TRUNCATED : state.getDeathCause();
+        try {
+            log.append(state.getEpisodeSteps(), state.getEpisodeReward(), state.getFoodEaten(), cause);
+        } catch (IOException e) {
+            System.err.println("[EpisodeLog] 寫入 " + log.path + " 失敗: " + e.getMessage());
+        }
+    }
+
+    public long getRunId() {
+        return runId;
+    }
+
+    /** 附加一筆紀錄，回傳它在這個 run 內的局序號。 */
+    public synchronized long append(int length, double reward, int foodEaten, int cause) throws IOException {
+        if (closed) {
+            throw new IOException("EpisodeLog 已關閉: " + path);
+        }
+        long episode = nextEpisode++;
+        buffer.putLong(runId);
+        buffer.putLong(episode);
+        buffer.putLong(System.currentTimeMillis());
+        buffer.putDouble(reward);
+        buffer.putInt(length);
+        buffer.putShort((short) Math.min(Short.MAX_VALUE, foodEaten));
+        buffer.put((byte) cause);
+        buffer.put((byte) 0);
+        long now = System.nanoTime();
+        if (!buffer.hasRemaining() || now - lastFlushNanos >= FLUSH_INTERVAL_NANOS) {
+            flushBuffer();
+            lastFlushNanos = now;
+        }
+        return episode;
+    }
+
+    /** 把緩衝區中的紀錄寫入檔案（不做 fsync）。 */
+    public synchronized void flush() throws IOException {
+        if (!closed) {
+            flushBuffer();
+        }
+    }
+
+    /** 背景執行緒每秒呼叫：緩衝區有紀錄且距上次寫入超過一秒時寫出，寫檔失敗只印錯誤。 */
+    private synchronized void flushIfStale() {
+        long now = System.nanoTime();
+        if (closed || buffer.position() == 0 || now - lastFlushNanos < FLUSH_INTERVAL_NANOS) {
+            return;
+        }
+        try {
+            flushBuffer();
+        } catch (IOException e) {
+            System.err.println("[EpisodeLog] 寫入 " + path + " 失敗: " + e.getMessage());
+        }
+        lastFlushNanos = now;
+    }
+
+    private void flushBuffer() throws IOException {
+        buffer.flip();
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+        buffer.clear();
+    }
+
+    private void writeHeader() throws IOException {
+        ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+        header.put(MAGIC);
+        header.putInt(VERSION);
+        header.putInt(RECORD_SIZE);
+        header.flip();
+        while (header.hasRemaining()) {
+            channel.write(header, header.position());
+        }
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        if (closed) {
+            return;
+        }
+        flusher.shutdown();
+        try {
+            flushBuffer();
+        } finally {
+            closed = true;
+            channel.close();
+        }
+    }
+}
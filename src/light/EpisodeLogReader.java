@@ -0,0 +1,318 @@
+package light;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.time.Instant;
+import java.util.Arrays;
+
+/**
+ * 以 memory-mapped file 讀取 {@link EpisodeLog} 的二進位紀錄。
+ *
+ * 每筆紀錄固定長度，第 i 筆的位置可以直接算出來，欄位由 mapped buffer 就地讀取、不配置物件；
+ * 區間統計逐筆累加（分位數用 P²），記憶體用量與紀錄數無關，百萬局以上也只有 page cache 的成本。
+ * 超過 2GB 的檔案分段 map。只看得到開檔當下已寫入的紀錄；writer 還在跑時可重新開檔取得新資料。
+ *
+ * 命令列用法（參數皆可省略）：
+ * <pre>
+ *   java -cp ... light.EpisodeLogReader file=logs/episodes.bin from=0 to=100000 run=1712345678901 tail=10
+ * </pre>
+ * {@code from}/{@code to} 為檔案中的紀錄位置（to 不含），{@code since}/{@code until} 為 epoch ms，
+ * {@code run} 只統計指定的 run id，{@code tail} 額外列出區間最後幾筆。
+ */
+public final class EpisodeLogReader implements Closeable {
+
+    private static final int R = EpisodeLog.RECORD_SIZE;
+    /** 每段 mapping 的紀錄數（單一 MappedByteBuffer 最多 2GB）。 */
+    private static final int RECORDS_PER_SEGMENT = Integer.MAX_VALUE / R;
+
+    private final FileChannel channel;
+    private final MappedByteBuffer[] segments;
+    private final long count;
+
+    public EpisodeLogReader(Path path) throws IOException {
+        this.channel = FileChannel.open(path, StandardOpenOption.READ);
+        try {
+            checkHeader(channel, path);
+            this.count = (channel.size() - EpisodeLog.HEADER_SIZE) / R;
+            int n = (int) ((count + RECORDS_PER_SEGMENT - 1) / RECORDS_PER_SEGMENT);
+            this.segments = new MappedByteBuffer[n];
+            for (int s = 0; s < n; s++) {
+                long first = (long) s * RECORDS_PER_SEGMENT;
+                long records = Math.min(RECORDS_PER_SEGMENT, count - first);
+                MappedByteBuffer buf = channel.map(FileChannel.MapMode.READ_ONLY,
+                        EpisodeLog.HEADER_SIZE + first * R, records * R);
+                buf.order(ByteOrder.LITTLE_ENDIAN);
+                segments[s] = buf;
+            }
+        } catch (IOException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    /** 確認檔頭的 magic、版本與紀錄長度。 */
+    static void checkHeader(FileChannel channel, Path path) throws IOException {
+        if (channel.size() < EpisodeLog.HEADER_SIZE) {
+            throw new IOException("不是 episode log（檔案太短）: " + path);
+        }
+        ByteBuffer header = ByteBuffer.allocate(EpisodeLog.HEADER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+        while (header.hasRemaining()) {
+            if (channel.read(header, header.position()) < 0) {
+                throw new IOException("讀取檔頭失敗: " + path);
+            }
+        }
+        header.flip();
+        byte[] magic = new byte[EpisodeLog.MAGIC.length];
+        header.get(magic);
+        int version = header.getInt();
+        int recordSize = header.getInt();
+        if (!Arrays.equals(magic, EpisodeLog.MAGIC)) {
+            throw new IOException("不是 episode log（magic 不符）: " + path);
+        }
+        if (version != EpisodeLog.VERSION || recordSize != R) {
+            throw new IOException("不支援的 episode log 版本 " + version + "（紀錄長度 " + recordSize + "）: " + path);
+        }
+    }
+
+    /** 檔案中完整紀錄的筆數。 */
+    public long size() {
+        return count;
+    }
+
+    private ByteBuffer segment(long i) {
+        if (i < 0 || i >= count) {
+            throw new IndexOutOfBoundsException("紀錄位置超出範圍: " + i + " (共 " + count + " 筆)");
+        }
+        return segments[(int) (i / RECORDS_PER_SEGMENT)];
+    }
+
+    private static int offset(long i) {
+        return (int) (i % RECORDS_PER_SEGMENT) * R;
+    }
+
+    public long runId(long i) {
+        return segment(i).getLong(offset(i));
+    }
+
+    public long episode(long i) {
+        return segment(i).getLong(offset(i) + 8);
+    }
+
+    public long timeMillis(long i) {
+        return segment(i).getLong(offset(i) + 16);
+    }
+
+    public double reward(long i) {
+        return segment(i).getDouble(offset(i) + 24);
+    }
+
+    public int length(long i) {
+        return segment(i).getInt(offset(i) + 32);
+    }
+
+    public int foodEaten(long i) {
+        return segment(i).getShort(offset(i) + 36);
+    }
+
+    public int cause(long i) {
+        return segment(i).get(offset(i) + 38);
+    }
+
+    /**
+     * 第一筆結束時間 ≥ millis 的紀錄位置（沒有則為 {@link #size()}）。
+     * 以二分搜尋實作，假設紀錄依時間遞增（單一 writer 依序附加時成立）。
+     */
+    public long lowerBoundTime(long millis) {
+        long lo = 0;
+        long hi = count;
+        while (lo < hi) {
+            long mid = (lo + hi) >>> 1;
+            if (timeMillis(mid) < millis) {
+                lo = mid + 1;
+            } else {
+                hi = mid;
+            }
+        }
+        return lo;
+    }
+
+    /** 統計 [from, to) 的紀錄。 */
+    public Summary summarize(long from, long to) {
+        return summarize(from, to, null);
+    }
+
+    /**
+     * 統計 [from, to) 中屬於指定 run 的紀錄。
+     *
+     * @param runId null 表示不篩選
+     */
+    public Summary summarize(long from, long to, Long runId) {
+        long lo = Math.max(0, from);
+        long hi = Math.min(count, to);
+        Summary s = new Summary();
+        for (long i = lo; i < hi; i++) {
+            if (runId != null && runId(i) != runId) {
+                continue;
+            }
+            s.add(reward(i), length(i), foodEaten(i), cause(i));
+        }
+        return s;
+    }
+
+    @Override
+    public void close() throws IOException {
+        // mapping 在 buffer 被 GC 時才釋放；關閉 channel 不影響已建立的 mapping
+        channel.close();
+    }
+
+    /** 一段紀錄的統計；只保存累加值與 P² marker，不保存樣本。 */
+    public static final class Summary {
+        private long count = 0L;
+        private double rewardSum = 0.0;
+        private double rewardMin = Double.POSITIVE_INFINITY;
+        private double rewardMax = Double.NEGATIVE_INFINITY;
+        private long lengthSum = 0L;
+        private int lengthMax = 0;
+        private long foodSum = 0L;
+        private int foodMax = 0;
+        private final long[] causes = new long[EpisodeLog.CAUSE_TRUNCATED + 1];
+        private final LearningCurve.P2Quantile rewardP50 = new LearningCurve.P2Quantile(0.50);
+        private final LearningCurve.P2Quantile rewardP90 = new LearningCurve.P2Quantile(0.90);
+
+        void add(double reward, int length, int food, int cause) {
+            count++;
+            rewardSum += reward;
+            rewardMin = Math.min(rewardMin, reward);
+            rewardMax = Math.max(rewardMax, reward);
+            lengthSum += length;
+            lengthMax = Math.max(lengthMax, length);
+            foodSum += food;
+            foodMax = Math.max(foodMax, food);
+            if (cause >= 0 && cause < causes.length) {
+                causes[cause]++;
+            }
+            rewardP50.add(reward);
+            rewardP90.add(reward);
+        }
+
+        public long getCount() {
+            return count;
+        }
+
+        public double getMeanReward() {
+            return count == 0 ? 0.0 : rewardSum / count;
+        }
+
+        public double getMinReward() {
+            return count == 0 ? 0.0 : rewardMin;
+        }
+
+        public double getMaxReward() {
+            return count == 0 ? 0.0 : rewardMax;
+        }
+
+        /** reward 中位數（P² 估計）。 */
+        public double getMedianReward() {
+            return rewardP50.value();
+        }
+
+        public double getP90Reward() {
+            return rewardP90.value();
+        }
+
+        public double getMeanLength() {
+            return count == 0 ? 0.0 : lengthSum / (double) count;
+        }
+
+        public int getMaxLength() {
+            return lengthMax;
+        }
+
+        public double getMeanFood() {
+            return count == 0 ? 0.0 : foodSum / (double) count;
+        }
+
+        public int getMaxFood() {
+            return foodMax;
+        }
+
+        /** 死因為 cause 的局數（{@link GameState#DEATH_WALL} 等）。 */
+        public long getCauseCount(int cause) {
+            return (cause >= 0 && cause < causes.length) ? causes[cause] : 0L;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("episodes=%d reward mean=%.3f p50=%.3f p90=%.3f min=%.3f max=%.3f | "
+                            + "length mean=%.1f max=%d | food mean=%.2f max=%d | wall=%d self=%d truncated=%d other=%d",
+                    count, getMeanReward(), getMedianReward(), getP90Reward(), getMinReward(), getMaxReward(),
+                    getMeanLength(), lengthMax, getMeanFood(), foodMax,
+                    causes[GameState.DEATH_WALL], causes[GameState.DEATH_SELF],
+                    causes[EpisodeLog.CAUSE_TRUNCATED], causes[GameState.DEATH_NONE]);
+        }
+    }
+
+    static String causeName(int cause) {
+        switch (cause) {
+            case GameState.DEATH_WALL: return "wall";
+            case GameState.DEATH_SELF: return "self";
+            case EpisodeLog.CAUSE_TRUNCATED: return "truncated";
+            default: return "other";
+        }
+    }
+
+    public static void main(String[] args) throws IOException {
+        String file = "logs" + java.io.File.separator + "episodes.bin";
+        long from = 0;
+        long to = Long.MAX_VALUE;
+        Long since = null;
+        Long until = null;
+        Long run = null;
+        int tail = 0;
+
+        for (String arg : args) {
+            int eq = arg.indexOf('=');
+            if (eq < 0) continue;
+            String key = arg.substring(0, eq);
+            String value = arg.substring(eq + 1);
+            switch (key) {
+                case "file": file = value; break;
+                case "from": from = Long.parseLong(value); break;
+                case "to": to = Long.parseLong(value); break;
+                case "since": since = Long.parseLong(value); break;
+                case "until": until = Long.parseLong(value); break;
+                case "run": run = Long.parseLong(value); break;
+                case "tail": tail = Integer.parseInt(value); break;
+                default: System.err.println("[EpisodeLogReader] 未知參數: " + key);
+            }
+        }
+
+        try (EpisodeLogReader reader = new EpisodeLogReader(Paths.get(file))) {
+            long lo = Math.max(0, from);
+            long hi = Math.min(reader.size(), to);
+            if (since != null) {
+                lo = Math.max(lo, reader.lowerBoundTime(since));
+            }
+            if (until != null) {
+                hi = Math.min(hi, reader.lowerBoundTime(until));
+            }
+            System.out.println("[EpisodeLogReader] " + file + " 共 " + reader.size() + " 筆，統計位置 [" + lo + ", " + hi + ")"
+                    + (run != null ? " run=" + run : ""));
+            System.out.println("[EpisodeLogReader] " + reader.summarize(lo, hi, run));
+            if (tail > 0) {
+                for (long i = Math.max(lo, hi - tail); i < hi; i++) {
+                    System.out.println(String.format("  #%d run=%d episode=%d time=%s reward=%.3f length=%d food=%d cause=%s",
+                            i, reader.runId(i), reader.episode(i), Instant.ofEpochMilli(reader.timeMillis(i)),
+                            reader.reward(i), reader.length(i), reader.foodEaten(i), causeName(reader.cause(i))));
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,129 @@
+package light;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * 可重播的局紀錄：每局只存起始 seed 與動作序列，以 {@code new GameState(seed)} 依序套用動作即可還原每一步的盤面
+ * （{@link GameState} 的食物位置與初始方向只由 seed 決定）。
+ *
+ * 檔案格式（big-endian，{@link DataOutputStream}）：16 bytes 檔頭（magic {@code "SNKEPREC"}、版本、保留），
+ * 之後每局一筆不定長紀錄：{@code long 局序號, long seed, int 步數, byte[步數] 動作}。
+ * 以 append 方式寫入；異常結束留下的半筆紀錄在讀取時略過。
+ * 由 {@link EvaluationHarness} 的 {@code record=} 參數產生，{@link EpisodeExporter} 讀取並輸出成圖片。
+ */
+public final class EpisodeRecording implements Closeable {
+
+    private static final byte[] MAGIC = "SNKEPREC".getBytes(StandardCharsets.US_ASCII);
+    private static final int VERSION = 1;
+
+    /** 一局的紀錄。 */
+    public static final class Entry {
+        public final long episode;
+        public final long seed;
+        public final byte[] actions;
+
+        Entry(long episode, long seed, byte[] actions) {
+            this.episode = episode;
+            this.seed = seed;
+            this.actions = actions;
+        }
+    }
+
+    private final DataOutputStream out;
+
+    /** 開啟（必要時建立）紀錄檔，新的局附加在最後。 */
+    public EpisodeRecording(Path path) throws IOException {
+        if (path.getParent() != null) {
+            Files.createDirectories(path.getParent());
+        }
+        boolean fresh = !Files.exists(path) || Files.size(path) == 0;
+        if (!fresh) {
+            try (DataInputStream in = new DataInputStream(Files.newInputStream(path))) {
+                checkHeader(in, path);
+            }
+        }
+        this.out = new DataOutputStream(new BufferedOutputStream(
+                Files.newOutputStream(path, StandardOpenOption.CREATE, StandardOpenOption.APPEND), 1 << 16));
+        if (fresh) {
+            out.write(MAGIC);
+            out.writeInt(VERSION);
+            out.writeInt(0);
+        }
+    }
+
+    /** 附加一局；actions[0..steps) 為依序執行的動作。 */
+    public synchronized void append(long episode, long seed, byte[] actions, int steps) throws IOException {
+        out.writeLong(episode);
+        out.writeLong(seed);
+        out.writeInt(steps);
+        out.write(actions, 0, steps);
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        out.close();
+    }
+
+    private static void checkHeader(DataInputStream in, Path path) throws IOException {
+        byte[] magic = new byte[MAGIC.length];
+        in.readFully(magic);
+        int version = in.readInt();
+        in.readInt();
+        if (!Arrays.equals(magic, MAGIC)) {
+            throw new IOException("不是局紀錄檔（magic 不符）: " + path);
+        }
+        if (version != VERSION) {
+            throw new IOException("不支援的局紀錄版本 " + version + ": " + path);
+        }
+    }
+
+    /**
+     * 讀出局序號落在 [from, to) 的紀錄（依檔案中的順序）。
+     * 其他局只讀過不保留，檔案很大時記憶體用量只和選到的局數有關。
+     */
+    public static List<Entry> read(Path path, long from, long to) throws IOException {
+        List<Entry> entries = new ArrayList<>();
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(path), 1 << 16))) {
+            checkHeader(in, path);
+            while (true) {
+                long episode;
+                try {
+                    episode = in.readLong();
+                } catch (EOFException end) {
+                    break;
+                }
+                try {
+                    long seed = in.readLong();
+                    int steps = in.readInt();
+                    if (steps < 0) {
+                        throw new IOException("紀錄損毀（步數為負）: " + path);
+                    }
+                    if (episode >= from && episode < to) {
+                        byte[] actions = new byte[steps];
+                        in.readFully(actions);
+                        entries.add(new Entry(episode, seed, actions));
+                    } else if (in.skipBytes(steps) < steps) {
+                        throw new EOFException();
+                    }
+                } catch (EOFException partial) {
+                    System.err.println("[EpisodeRecording] " + path + " 結尾有不完整的紀錄，已略過");
+                    break;
+                }
+            }
+        }
+        return entries;
+    }
+}
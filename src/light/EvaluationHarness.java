@@ -0,0 +1,369 @@
+package light;
+
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+import com.google.gson.JsonObject;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Arrays;
+import java.util.SplittableRandom;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 平行評估：用 {@code threads} 個執行緒同時跑 {@code episodes} 局，輸出分數與步數的分佈並寫成 JSON 摘要，
+ * 取代逐局序列執行的 {@code evaluation.bat} / {@code eval_agent.py}。
+ *
+ * 第 i 局一律以 seed + i 開始（食物位置與初始方向固定），與由哪個執行緒、以什麼順序執行無關，
+ * 因此同一個 policy、同一組參數的平均分數可以重現；{@code source=random} 也以該局 seed 產生動作。
+ * 分數與步數的平均 / 最小 / 最大為精確值，p5 / p50 / p95 以 P² 串流估計（見 {@link StreamingStats}）。
+ *
+ * 動作來源 {@code source}：
+ * <ul>
+ *   <li>{@code network}：{@link LocalNetworkPolicy}（{@code policy=} 指定權重檔），每個執行緒一份副本。
+ *       {@code batch=B}（B &gt; 1）時每個執行緒同時推進 B 局，每一步對其中所有進行中的局做一次批次推論；
+ *       每局仍以 seed + i 開始，分數與 batch 大小無關</li>
+ *   <li>{@code greedy} / {@code bfs} / {@code hamiltonian} / {@code mcts} / {@code random}：內建策略</li>
+ *   <li>{@code socket}：agent pool；第 w 個執行緒在 port + w 等待一個 Python agent 連線，
+ *       以與 {@link SocketSnakeServerGameRL} 相同的 STATE / ACTION / RESET 協定取得動作
+ *       （各 agent 以 {@code SNAKE_PORT} 指定要連的 port）</li>
+ * </ul>
+ * 設定 {@code -Dsnake.episode_log} 時每局也會寫入 {@link EpisodeLog}；{@code view=N} 以格狀視窗顯示 N 個執行緒的局面；
+ * {@code record=<path>} 把每局的 seed 與動作附加到 {@link EpisodeRecording}，之後可用 {@link EpisodeExporter} 輸出成 GIF。
+ * 任一執行緒失敗（例如 agent 斷線）時不寫摘要，並以 exit code 1 結束。
+ *
+ * 用法（參數皆可省略）：
+ * <pre>
+ *   java --add-modules jdk.incubator.vector -cp ... light.EvaluationHarness \
+ *        source=network policy=agent/dqn_snake_policy.bin episodes=1000 threads=8 batch=32 max_steps=1000 seed=1 \
+ *        out=agent/eval_summary.json
+ * </pre>
+ */
+public class EvaluationHarness {
+
+    private static final double[] QUANTILES = {0.05, 0.50, 0.95};
+
+    private final String source;
+    private final int episodes;
+    private final int maxSteps;
+    private final long seed;
+
+    private final AtomicInteger nextEpisode = new AtomicInteger(0);
+    private final StreamingStats score = new StreamingStats(QUANTILES);
+    private final StreamingStats length = new StreamingStats(QUANTILES);
+    private final long[] causes = new long[EpisodeLog.CAUSE_TRUNCATED + 1];
+    private long totalSteps = 0L;
+    private int finished = 0;
+    private EnvSampler sampler;
+    private EpisodeRecording recording;
+
+    EvaluationHarness(String source, int episodes, int maxSteps, long seed) {
+        this.source = source;
+        this.episodes = episodes;
+        this.maxSteps = maxSteps;
+        this.seed = seed;
+    }
+
+    public static void main(String[] args) throws Exception {
+        String source = "network";
+        String policyFile = "agent" + java.io.File.separator + "dqn_snake_policy.bin";
+        int episodes = 100;
+        int threads = Runtime.getRuntime().availableProcessors();
+        int batch = 1;
+        int maxSteps = 1000;
+        long seed = 1L;
+        int port = 5100;
+        String out = "agent" + java.io.File.separator + "eval_summary.json";
+        int view = 0;
+        String record = null;
+
+        for (String arg : args) {
+            int eq = arg.indexOf('=');
+            if (eq < 0) continue;
+            String key = arg.substring(0, eq);
+            String value = arg.substring(eq + 1);
+            switch (key) {
+                case "source": source = value.toLowerCase(); break;
+                case "policy": policyFile = value; break;
+                case "episodes": episodes = Integer.parseInt(value); break;
+                case "threads": threads = Integer.parseInt(value); break;
+                case "batch": batch = Integer.parseInt(value); break;
+                case "max_steps": maxSteps = Integer.parseInt(value); break;
+                case "seed": seed = Long.parseLong(value); break;
+                case "port": port = Integer.parseInt(value); break;
+                case "out": out = value; break;
+                case "view": view = Integer.parseInt(value); break;
+                case "record": record = value; break;
+                default: System.err.println("[EvaluationHarness] 未知參數: " + key);
+            }
+        }
+        threads = Math.max(1, Math.min(threads, episodes));
+        batch = Math.max(1, Math.min(batch, (episodes + threads - 1) / threads));
+
+        LocalNetworkPolicy network = null;
+        if ("network".equals(source)) {
+            network = LocalNetworkPolicy.load(Paths.get(policyFile));
+        } else if (!"socket".equals(source) && !"random".equals(source)) {
+            // 先建一次，名稱錯誤時在啟動執行緒之前就失敗
+            Policy.builtin(source, new GameState(seed).getBoardSize());
+        }
+
+        EvaluationHarness harness = new EvaluationHarness(source, episodes, maxSteps, seed);
+        if (view > 0) {
+            harness.sampler = new EnvSampler(threads, view, new GameState(seed).getBoardSize());
+            EnvGridPanel.showWindow(harness.sampler, "EvaluationHarness");
+        }
+        if (record != null) {
+            harness.recording = new EpisodeRecording(Paths.get(record));
+        }
+        if (network == null) {
+            batch = 1;
+        }
+        System.out.println("[EvaluationHarness] source=" + source + "，" + episodes + " 局，" + threads + " 個執行緒，"
+                + (batch > 1 ? "batch=" + batch + "，" : "") + "seed=" + seed);
+        long t0 = System.nanoTime();
+        Thread[] workers = new Thread[threads];
+        Throwable[] errors = new Throwable[threads];
+        for (int w = 0; w < threads; w++) {
+            final int id = w;
+            final LocalNetworkPolicy policy = (network != null) ? network.copy() : null;
+            final int workerPort = port + w;
+            final int workerBatch = batch;
+            workers[w] = new Thread(() -> {
+                try {
+                    if (workerBatch > 1) {
+                        harness.runBatchedWorker(id, policy, workerBatch);
+                    } else {
+                        harness.runWorker(id, policy, workerPort);
+                    }
+                } catch (Throwable e) {
+                    errors[id] = e;
+                }
+            }, "EvaluationHarness-" + w);
+            workers[w].start();
+        }
+        int failed = 0;
+        for (int w = 0; w < threads; w++) {
+            workers[w].join();
+            if (errors[w] != null) {
+                System.err.println("[EvaluationHarness] 執行緒 " + w + " 失敗: " + errors[w]);
+                failed++;
+            }
+        }
+        double secs = (System.nanoTime() - t0) / 1e9;
+        if (harness.recording != null) {
+            harness.recording.close();
+            System.out.println("[EvaluationHarness] 每局動作已附加到 " + record);
+        }
+        if (failed > 0) {
+            // 局數不完整的摘要會被當成正常結果使用，因此不寫摘要；以 exit 結束，格狀視窗開著時 JVM 也會以非 0 離開
+            System.err.println("[EvaluationHarness] " + failed + " 個執行緒失敗，不寫入摘要 " + out);
+            System.exit(1);
+        }
+
+        JsonObject summary = harness.summary(threads, secs);
+        if (network != null) {
+            summary.addProperty("policy", policyFile);
+            summary.addProperty("batch", batch);
+        }
+        harness.printSummary(secs);
+        writeSummary(Paths.get(out), summary);
+        System.out.println("[EvaluationHarness] 摘要已寫入 " + out);
+    }
+
+    /**
+     * 一個執行緒的迴圈：不斷領取下一個局序號直到全部領完。
+     *
+     * @param worker  執行緒編號（格狀檢視以此對應 tile）
+     * @param network network 來源時此執行緒專用的 policy，其他來源為 null
+     * @param port    socket 來源時此執行緒監聽的 port
+     */
+    void runWorker(int worker, Policy network, int port) throws IOException {
+        GameState state = new GameState(seed);
+        state.setVerbose(false);
+        Policy builtin = null;
+        if (network == null && !"socket".equals(source) && !"random".equals(source)) {
+            builtin = Policy.builtin(source, state.getBoardSize());
+        }
+
+        SocketSnakeServer server = null;
+        if ("socket".equals(source)) {
+            server = new SocketSnakeServer(port);
+            server.waitForClient();
+            server.sendInit(state.getBoardSize());
+        }
+        byte[] actions = new byte[maxSteps > 0 ? maxSteps : 1024];
+        try {
+            int played = 0;
+            int episode;
+            while ((episode = nextEpisode.getAndIncrement()) < episodes) {
+                long episodeSeed = seed + episode;
+                state.reseed(episodeSeed);
+                state.reset();
+                SplittableRandom random = "random".equals(source) ? new SplittableRandom(episodeSeed) : null;
+                if (server != null && played > 0) {
+                    server.sendReset();
+                }
+
+                while (!state.isDone() && (maxSteps <= 0 || state.getEpisodeSteps() < maxSteps)) {
+                    int action;
+                    if (network != null) {
+                        action = network.selectAction(state);
+                    } else if (builtin != null) {
+                        action = builtin.selectAction(state);
+                    } else if (random != null) {
+                        action = random.nextInt(4);
+                    } else {
+                        server.sendState(state);
+                        action = server.readAction();
+                    }
+                    if (recording != null) {
+                        int k = state.getEpisodeSteps();
+                        if (k == actions.length) {
+                            actions = Arrays.copyOf(actions, k * 2);
+                        }
+                        actions[k] = (byte) action;
+                    }
+                    state.stepByAction(action);
+                    if (sampler != null) {
+                        sampler.offer(worker, state);
+                    }
+                }
+                played++;
+                if (recording != null) {
+                    recording.append(episode, episodeSeed, actions, state.getEpisodeSteps());
+                }
+                record(state, !state.isDone());
+            }
+        } finally {
+            if (server != null) {
+                server.close();
+            }
+        }
+    }
+
+    /**
+     * network 來源、batch &gt; 1 時的執行緒迴圈：同時推進 batch 局，每一步對所有進行中的局呼叫一次
+     * {@link LocalNetworkPolicy#selectActions}；一局結束就在同一格領取下一個局序號，全部領完後逐漸收斂成較小的 batch。
+     * 格狀檢視顯示每一步第一個進行中的局。
+     */
+    void runBatchedWorker(int worker, LocalNetworkPolicy network, int batch) throws IOException {
+        GameState[] envs = new GameState[batch];
+        int[] episodeOf = new int[batch];
+        byte[][] actionLog = (recording != null) ? new byte[batch][] : null;
+        for (int i = 0; i < batch; i++) {
+            envs[i] = new GameState(seed);
+            envs[i].setVerbose(false);
+            if (actionLog != null) {
+                actionLog[i] = new byte[maxSteps > 0 ? maxSteps : 1024];
+            }
+            episodeOf[i] = startEpisode(envs[i]);
+        }
+        GameState[] active = new GameState[batch];
+        int[] slots = new int[batch];
+        int[] actions = new int[batch];
+        while (true) {
+            int count = 0;
+            for (int i = 0; i < batch; i++) {
+                if (episodeOf[i] >= 0) {
+                    active[count] = envs[i];
+                    slots[count++] = i;
+                }
+            }
+            if (count == 0) {
+                break;
+            }
+            network.selectActions(active, count, actions);
+            for (int k = 0; k < count; k++) {
+                int i = slots[k];
+                GameState state = envs[i];
+                if (actionLog != null) {
+                    int step = state.getEpisodeSteps();
+                    if (step == actionLog[i].length) {
+                        actionLog[i] = Arrays.copyOf(actionLog[i], step * 2);
+                    }
+                    actionLog[i][step] = (byte) actions[k];
+                }
+                state.stepByAction(actions[k]);
+                if (sampler != null && k == 0) {
+                    sampler.offer(worker, state);
+                }
+                if (state.isDone() || (maxSteps > 0 && state.getEpisodeSteps() >= maxSteps)) {
+                    if (recording != null) {
+                        recording.append(episodeOf[i], seed + episodeOf[i], actionLog[i], state.getEpisodeSteps());
+                    }
+                    record(state, !state.isDone());
+                    episodeOf[i] = startEpisode(state);
+                }
+            }
+        }
+    }
+
+    /** 領取下一個局序號並以對應的 seed 重設 state；全部領完時回傳 -1。 */
+    private int startEpisode(GameState state) {
+        int episode = nextEpisode.getAndIncrement();
+        if (episode >= episodes) {
+            return -1;
+        }
+        state.reseed(seed + episode);
+        state.reset();
+        return episode;
+    }
+
+    private synchronized void record(GameState state, boolean truncated) {
+        int s = state.getSnakeLength() - 3;
+        int steps = state.getEpisodeSteps();
+        score.add(s);
+        length.add(steps);
+        totalSteps += steps;
+        causes[truncated ? EpisodeLog.CAUSE_TRUNCATED : state.getDeathCause()]++;
+        EpisodeLog.recordEpisode(state, truncated);
+        finished++;
+        int every = Math.max(1, episodes / 10);
+        if (finished % every == 0 || finished == episodes) {
+            System.out.println(String.format("[EvaluationHarness] %d/%d 局，目前平均分數=%.2f", finished, episodes, score.getMean()));
+        }
+    }
+
+    synchronized JsonObject summary(int threads, double secs) {
+        JsonObject json = new JsonObject();
+        json.addProperty("source", source);
+        json.addProperty("episodes", finished);
+        json.addProperty("threads", threads);
+        json.addProperty("seed", seed);
+        json.addProperty("max_steps", maxSteps);
+        json.addProperty("elapsed_sec", secs);
+        json.addProperty("episodes_per_sec", finished / Math.max(1e-9, secs));
+        json.addProperty("steps_per_sec", totalSteps / Math.max(1e-9, secs));
+        json.add("score", score.toJson());
+        json.add("length", length.toJson());
+        JsonObject causeJson = new JsonObject();
+        causeJson.addProperty("wall", causes[GameState.DEATH_WALL]);
+        causeJson.addProperty("self", causes[GameState.DEATH_SELF]);
+        causeJson.addProperty("truncated", causes[EpisodeLog.CAUSE_TRUNCATED]);
+        causeJson.addProperty("other", causes[GameState.DEATH_NONE]);
+        json.add("causes", causeJson);
+        return json;
+    }
+
+    private synchronized void printSummary(double secs) {
+        System.out.println(String.format("[EvaluationHarness] %d 局：分數 平均=%.2f p5=%.1f p50=%.1f p95=%.1f 最高=%.0f",
+                finished, score.getMean(), score.quantile(0), score.quantile(1), score.quantile(2), score.getMax()));
+        System.out.println(String.format("[EvaluationHarness] 步數 平均=%.1f p5=%.1f p50=%.1f p95=%.1f 最長=%.0f",
+                length.getMean(), length.quantile(0), length.quantile(1), length.quantile(2), length.getMax()));
+        System.out.println(String.format("[EvaluationHarness] 死因 撞牆=%d 撞自己=%d 步數上限=%d；%.2fs，%.1f 局/秒，%.0f steps/sec",
+                causes[GameState.DEATH_WALL], causes[GameState.DEATH_SELF], causes[EpisodeLog.CAUSE_TRUNCATED],
+                secs, finished / Math.max(1e-9, secs), totalSteps / Math.max(1e-9, secs)));
+    }
+
+    private static void writeSummary(Path path, JsonObject summary) throws IOException {
+        if (path.getParent() != null) {
+            Files.createDirectories(path.getParent());
+        }
+        Gson gson = new GsonBuilder().setPrettyPrinting().create();
+        Files.write(path, gson.toJson(summary).getBytes(StandardCharsets.UTF_8));
+    }
+}
@@ -1,13 +1,24 @@
 package light;
 
-import java.util.LinkedList;
-import java.util.Random;
+import java.nio.ByteBuffer;
+import java.util.concurrent.ThreadLocalRandom;
 
 public class GameState {
 
+    /** {@link #getDeathCause()}：尚未結束（或盤面已滿而沒有撞到任何東西）。 */
+    public static final int DEATH_NONE = 0;
+    /** 撞牆。 */
+    public static final int DEATH_WALL = 1;
+    /** 撞到自己。 */
+    public static final int DEATH_SELF = 2;
+
     // 0 = 空, 1 = 蛇, 2 = 食物
-    private int[][] board;
-    private LinkedList<int[]> snakeBody; // 每個元素: [x, y]
+    private final int[][] board;
+    // 蛇身以 ring buffer 存放格子編號（y * size + x），bodyHead 指向頭，往後 snakeLength-1 格為尾。
+    // 走一步只需移動頭尾索引並更新 board 上的兩格，不配置任何物件。
+    private final int[] body;
+    private int bodyHead;
+    private int snakeLength;
     private int direction;               // 0=上, 1=下, 2=左, 3=右  (changed mapping per user request)
     private int foodX;
     private int foodY;
@@ -16,7 +27,43 @@ public class GameState {
     // 給 RL 用的獎勵
     private double reward;
 
-    private final Random random = new Random();
+    // 本局統計（步數、累積 reward、吃到的食物數與死因），reset 時歸零
+    private int episodeSteps;
+    private double episodeReward;
+    private int foodEaten;
+    private int deathCause;
+
+    // Zobrist hash：蛇身格、頭、尾、食物、方向與是否結束各有一組隨機 key，狀態改變時只 XOR 有變動的部分
+    private static final long[] Z_BODY;
+    private static final long[] Z_HEAD;
+    private static final long[] Z_TAIL;
+    private static final long[] Z_FOOD;
+    private static final long[] Z_DIR = new long[4];
+    private static final long Z_DONE;
+    private long hash;
+
+    static {
+        int cells = 20 * 20;
+        Z_BODY = new long[cells];
+        Z_HEAD = new long[cells];
+        Z_TAIL = new long[cells];
+        Z_FOOD = new long[cells];
+        // 固定 seed：同一個局面在不同 process 得到相同 hash，資料集可跨 worker 去重
+        long seed = 0x5EEDC0DE2024L;
+        for (int i = 0; i < cells; i++) {
+            Z_BODY[i] = splitMix(seed += 0x9E3779B97F4A7C15L);
+            Z_HEAD[i] = splitMix(seed += 0x9E3779B97F4A7C15L);
+            Z_TAIL[i] = splitMix(seed += 0x9E3779B97F4A7C15L);
+            Z_FOOD[i] = splitMix(seed += 0x9E3779B97F4A7C15L);
+        }
+        for (int d = 0; d < 4; d++) {
+            Z_DIR[d] = splitMix(seed += 0x9E3779B97F4A7C15L);
+        }
+        Z_DONE = splitMix(seed + 0x9E3779B97F4A7C15L);
+    }
+
+    // 亂數狀態（SplitMix64）。只有一個 long，複製 state 時連同亂數一起複製即可重現後續的食物位置。
+    private long rngState;
     private final int size = 20; // 棋盤邊長
 
     // 明確：不啟用穿牆（wrap）行為；撞到格子邊界即視為撞牆
@@ -24,14 +71,180 @@ public class GameState {
     // 上一步方向（用於偵測是否轉彎）
     private int lastDirection = -1;
 
+    // 是否在每一步印出診斷訊息（benchmark / 大量 headless env 時關閉）
+    private boolean verbose = true;
+    // 是否發出 JFR Step 事件；搜尋用的副本關掉，避免 rollout 淹沒錄製
+    private boolean traceEvents = true;
+
+    // 每走一步 +1，reset / copyFrom 等整盤改變時 +2；ReachabilityAnalyzer 以此判斷能否增量更新
+    private long version;
+    // 可達區域分析（第一次需要時才建立）與對應的 shaping 權重（-Dsnake.shaping.reachable，預設 0 不啟用）
+    private ReachabilityAnalyzer reachability;
+    private double reachableShaping = DEFAULT_REACHABLE_SHAPING;
+    private static final double DEFAULT_REACHABLE_SHAPING =
+            Double.parseDouble(System.getProperty("snake.shaping.reachable", "0"));
+
     public GameState() {
+        this(ThreadLocalRandom.current().nextLong());
+    }
+
+    /** 以固定 seed 建立，方便重現同一串食物與初始方向。 */
+    public GameState(long seed) {
+        this.board = new int[size][size];
+        // 自撞那一步會多放一格頭（與舊版行為一致），因此多留一格
+        this.body = new int[size * size + 1];
+        this.rngState = seed;
         reset();
     }
 
+    /** 複製另一個 state 的全部內容（含亂數狀態）；副本預設不印診斷訊息。 */
+    public GameState copy() {
+        GameState c = new GameState(0L);
+        c.verbose = false;
+        c.traceEvents = false;
+        c.copyFrom(this);
+        return c;
+    }
+
+    /**
+     * 把 other 的內容複製到這個實例（含亂數狀態，不含 verbose / traceEvents 設定）。
+     * 不配置新物件，給搜尋 / rollout 反覆重設 scratch state 使用。
+     */
+    public void copyFrom(GameState other) {
+        for (int y = 0; y < size; y++) {
+            System.arraycopy(other.board[y], 0, board[y], 0, size);
+        }
+        System.arraycopy(other.body, 0, body, 0, body.length);
+        bodyHead = other.bodyHead;
+        snakeLength = other.snakeLength;
+        direction = other.direction;
+        lastDirection = other.lastDirection;
+        foodX = other.foodX;
+        foodY = other.foodY;
+        done = other.done;
+        reward = other.reward;
+        episodeSteps = other.episodeSteps;
+        episodeReward = other.episodeReward;
+        foodEaten = other.foodEaten;
+        deathCause = other.deathCause;
+        rngState = other.rngState;
+        wrapWalls = other.wrapWalls;
+        hash = other.hash;
+        reachableShaping = other.reachableShaping;
+        version += 2;
+    }
+
+    /** {@link #writeTo} 最多寫入的 bytes（蛇身佔滿整個 ring buffer 時）。 */
+    static final int MAX_SERIALIZED_SIZE = 46 + 2 * (20 * 20 + 1);
+
+    /**
+     * 以精簡的二進位格式寫出重現這一局所需的全部內容（給 {@link EnvCheckpoint} 用）：
+     * 亂數狀態、reward 與局內統計、方向、食物，以及從頭到尾的蛇身格子（每格 2 bytes）。
+     * board 與 Zobrist hash 由蛇身與食物推得，不另外存；verbose / traceEvents 屬於執行設定，也不存。
+     */
+    void writeTo(ByteBuffer buf) {
+        buf.putLong(rngState);
+        buf.putDouble(reward);
+        buf.putDouble(episodeReward);
+        buf.putDouble(reachableShaping);
+        buf.putInt(episodeSteps);
+        buf.putShort((short) foodEaten);
+        buf.putShort((short) snakeLength);
+        buf.put((byte) direction);
+        buf.put((byte) lastDirection);
+        buf.put((byte) foodX);
+        buf.put((byte) foodY);
+        buf.put((byte) deathCause);
+        buf.put((byte) ((done ? 1 : 0) | (wrapWalls ? 2 : 0)));
+        for (int i = 0; i < snakeLength; i++) {
+            buf.putShort((short) body[(bodyHead + i) % body.length]);
+        }
+    }
+
+    /**
+     * 讀回 {@link #writeTo} 寫出的內容並重建 board 與 hash，之後的每一步（含食物位置）都與寫出時的 state 相同。
+     * 內容不合理（蛇長或格子超出範圍）時丟出 IllegalArgumentException，此時 state 內容未定義。
+     */
+    void readFrom(ByteBuffer buf) {
+        version += 2;
+        rngState = buf.getLong();
+        reward = buf.getDouble();
+        episodeReward = buf.getDouble();
+        reachableShaping = buf.getDouble();
+        episodeSteps = buf.getInt();
+        foodEaten = buf.getShort();
+        snakeLength = buf.getShort();
+        direction = buf.get();
+        lastDirection = buf.get();
+        foodX = buf.get();
+        foodY = buf.get();
+        deathCause = buf.get();
+        int flags = buf.get();
+        done = (flags & 1) != 0;
+        wrapWalls = (flags & 2) != 0;
+        if (snakeLength < 1 || snakeLength > body.length || direction < 0 || direction > 3) {
+            throw new IllegalArgumentException("不合法的 state: length=" + snakeLength + " direction=" + direction);
+        }
+
+        for (int y = 0; y < size; y++) {
+            java.util.Arrays.fill(board[y], 0);
+        }
+        bodyHead = 0;
+        for (int i = 0; i < snakeLength; i++) {
+            int cell = buf.getShort();
+            if (cell < 0 || cell >= size * size) {
+                throw new IllegalArgumentException("不合法的蛇身格子: " + cell);
+            }
+            body[i] = cell;
+            board[cell / size][cell % size] = 1;
+        }
+        hash = computeHash();
+        if (foodX >= 0) {
+            if (foodX >= size || foodY < 0 || foodY >= size) {
+                throw new IllegalArgumentException("不合法的食物位置: (" + foodX + "," + foodY + ")");
+            }
+            board[foodY][foodX] = 2;
+            hash ^= Z_FOOD[foodY * size + foodX];
+        }
+    }
+
+    /** 重設亂數狀態，之後的食物位置 / 隨機動作改由此 seed 決定（盤面不變）。 */
+    public void reseed(long seed) {
+        this.rngState = seed;
+    }
+
+    /**
+     * 設定「困住自己」的 shaping 權重：每步結束後若蛇頭可達的空格少於蛇長，
+     * reward 最多再扣 weight（依不足的比例）。0 表示關閉。
+     */
+    public void setReachableShaping(double weight) {
+        this.reachableShaping = weight;
+    }
+
+    /** 綁定此 state 的可達區域分析（第一次呼叫時建立）。 */
+    public ReachabilityAnalyzer getReachability() {
+        if (reachability == null) {
+            reachability = new ReachabilityAnalyzer(this);
+        }
+        return reachability;
+    }
+
+    /** 開關每一步的 console 診斷輸出（預設開啟）。 */
+    public void setVerbose(boolean verbose) {
+        this.verbose = verbose;
+    }
+
+    /** 是否發出 {@link EnvEvents.Step} JFR 事件（預設開啟；{@link #copy()} 出來的副本預設關閉）。 */
+    public void setTraceEvents(boolean traceEvents) {
+        this.traceEvents = traceEvents;
+    }
+
     /** 重新開始一局 */
     public void reset() {
-        board = new int[size][size];
-        snakeBody = new LinkedList<>();
+        version += 2;
+        for (int y = 0; y < size; y++) {
+            java.util.Arrays.fill(board[y], 0);
+        }
 
         // 蛇從中間開始，預設長度 3。頭在中心，身體要延伸到與 direction 相反的方向，
         // 以避免當 direction 被隨機為非右時產生立刻自撞的情況。
@@ -39,7 +252,7 @@ public class GameState {
         int startY = size / 2;
 
         // 初始方向隨機，避免每局都往同一方向（降低每次剛好 10 步到牆的情況）
-        direction = random.nextInt(4);
+        direction = nextInt(4);
         lastDirection = direction;
 
         int dx = 0, dy = 0; // 用於延伸蛇身的方向（tail 相對於 head 的偏移）
@@ -55,20 +268,26 @@ public class GameState {
         }
 
         // 建立長度為 3 的蛇身：i==0 為頭
+        bodyHead = 0;
+        snakeLength = 3;
         for (int i = 0; i < 3; i++) {
             int x = startX + dx * i;
             int y = startY + dy * i;
-            snakeBody.add(new int[]{x, y});
+            body[i] = y * size + x;
+            board[y][x] = 1;
         }
 
         done = false;
         reward = 0.0;
+        episodeSteps = 0;
+        episodeReward = 0.0;
+        foodEaten = 0;
+        deathCause = DEATH_NONE;
+
+        hash = computeHash();
 
         // 隨機放一顆食物
         spawnFood();
-
-        // 更新棋盤陣列
-        updateBoardFromState();
     }
 
     /** 是否 GameOver */
@@ -82,8 +301,9 @@ public class GameState {
             return;
         }
         lastDirection = direction;
-        direction = random.nextInt(4);
+        setDirection(nextInt(4));
         stepByDirection();
+        accumulateEpisode();
     }
 
     /** 依外部 action 0~3 走一步 */
@@ -97,13 +317,36 @@ public class GameState {
         // 禁止 180 度回轉：若 action 與目前方向相反，忽略該 action
         if (isReverseDirection(this.direction, action)) {
             // 記錄一次 debug 訊息並保留原方向
-            System.out.println(String.format("[GameState] 忽略 180 度回轉請求：current=%d, requested=%d", this.direction, action));
+            if (verbose) System.out.println(String.format("[GameState] 忽略 180 度回轉請求：current=%d, requested=%d", this.direction, action));
             action = this.direction;
         }
+        EnvEvents.Step event = (traceEvents && EnvEvents.isRecording()) ? new EnvEvents.Step() : null;
+        if (event != null) {
+            event.begin();
+        }
         // 保留上一個方向以判斷是否有轉彎
         this.lastDirection = this.direction;
-        this.direction = action;
+        setDirection(action);
         stepByDirection();
+        accumulateEpisode();
+        if (event != null && event.shouldCommit()) {
+            event.action = action;
+            event.reward = reward;
+            event.done = done;
+            event.snakeLength = snakeLength;
+            event.episodeSteps = episodeSteps;
+            event.commit();
+        }
+    }
+
+    private void setDirection(int d) {
+        hash ^= Z_DIR[direction] ^ Z_DIR[d];
+        direction = d;
+    }
+
+    private void accumulateEpisode() {
+        episodeSteps++;
+        episodeReward += reward;
     }
 
     // 檢查兩個方向是否互為相反方向
@@ -125,10 +368,10 @@ public class GameState {
         if (done) {
             return;
         }
+        version++;
 
-        int[] head = snakeBody.getFirst();
-        int curX = head[0];
-        int curY = head[1];
+        int curX = getHeadX();
+        int curY = getHeadY();
 
         int newX = curX;
         int newY = curY;
@@ -175,92 +418,216 @@ public class GameState {
             willEat = (newX == foodX && newY == foodY);
         }
 
-        System.out.println(String.format("[GameState] calc head=(%d,%d) food=(%d,%d) willEat=%b oldDist=%d newDist=%d", newX, newY, foodX, foodY, willEat, oldDist, newDist));
+        if (verbose) System.out.println(String.format("[GameState] calc head=(%d,%d) food=(%d,%d) willEat=%b oldDist=%d newDist=%d", newX, newY, foodX, foodY, willEat, oldDist, newDist));
 
         if (hitWall) {
             done = true;
+            deathCause = DEATH_WALL;
+            hash ^= Z_DONE;
             reward = -10.0; // 死亡較重懲罰
-            updateBoardFromState();
-            System.out.println(String.format("[GameState] DONE triggered: hitWall=%b selfCollision=%b newHead=(%d,%d)", hitWall, false, newX, newY));
+            if (verbose) System.out.println(String.format("[GameState] DONE triggered: hitWall=%b selfCollision=%b newHead=(%d,%d)", hitWall, false, newX, newY));
             return;
         }
 
-        boolean selfCollision = false;
-        int tailIndex = snakeBody.size() - 1;
-        for (int i = 0; i < snakeBody.size(); i++) {
-            int[] b = snakeBody.get(i);
-            if (b[0] == newX && b[1] == newY) {
-                if (i != tailIndex || willEat) {
-                    selfCollision = true;
-                    break;
-                }
-            }
-        }
-
-        int[] newHead = new int[]{newX, newY};
-        snakeBody.addFirst(newHead);
+        // board 上是蛇身即撞到自己；尾巴那格這一步會移開，除非同時吃到食物（尾巴不動）
+        int newCell = newY * size + newX;
+        boolean selfCollision = board[newY][newX] == 1 && (newCell != tailCell() || willEat);
 
         if (selfCollision) {
+            // 與舊版相同：頭仍推進到撞到的那一格，蛇長 +1
+            pushHead(newCell);
             done = true;
+            deathCause = DEATH_SELF;
+            hash ^= Z_DONE;
             reward = -10.0;
-            updateBoardFromState();
-            System.out.println(String.format("[GameState] DONE triggered: hitWall=%b selfCollision=%b newHead=(%d,%d)", false, selfCollision, newX, newY));
+            if (verbose) System.out.println(String.format("[GameState] DONE triggered: hitWall=%b selfCollision=%b newHead=(%d,%d)", false, selfCollision, newX, newY));
             return;
         }
 
         if (willEat) {
+            hash ^= Z_FOOD[newCell];
+            pushHead(newCell);
+            board[newY][newX] = 1;
+            foodEaten++;
             reward = 12.0; // 吃到食物給大正分
             spawnFood(); // 產生下一個食物
+            reward -= trapPenalty();
         } else {
             reward = stepReward + distBonus + turnBonus; // 微懲罰加上接近食物的獎勵與轉彎獎勵
             if (reward > 1.0) reward = 1.0;
             if (reward < -1.0) reward = -1.0;
-            snakeBody.removeLast();
+            // 先移走尾巴再放頭，頭剛好走進舊尾巴那格時 board 才會是 1
+            int tail = tailCell();
+            board[tail / size][tail % size] = 0;
+            snakeLength--;
+            hash ^= Z_BODY[tail] ^ Z_TAIL[tail] ^ Z_TAIL[tailCell()];
+            pushHead(newCell);
+            board[newY][newX] = 1;
+            reward = Math.max(-1.0, reward - trapPenalty());
+        }
+    }
+
+    /** 蛇頭可達空格少於蛇長時的懲罰（0 ~ reachableShaping）。 */
+    private double trapPenalty() {
+        if (reachableShaping <= 0.0) {
+            return 0.0;
+        }
+        int region = getReachability().regionAroundHead();
+        if (region >= snakeLength) {
+            return 0.0;
         }
+        return reachableShaping * (snakeLength - region) / (double) snakeLength;
+    }
 
-        updateBoardFromState();
+    private void pushHead(int cell) {
+        hash ^= Z_HEAD[body[bodyHead]] ^ Z_HEAD[cell] ^ Z_BODY[cell];
+        bodyHead = (bodyHead == 0) ? body.length - 1 : bodyHead - 1;
+        body[bodyHead] = cell;
+        snakeLength++;
     }
 
-    /** 隨機產生一顆新食物（不與身體重疊） */
-    private void spawnFood() {
-        while (true) {
-            int fx = random.nextInt(size);
-            int fy = random.nextInt(size);
-            boolean conflict = false;
-            for (int[] body : snakeBody) {
-                if (body[0] == fx && body[1] == fy) {
-                    conflict = true;
-                    break;
-                }
+    int headCell() {
+        return body[bodyHead];
+    }
+
+    long version() {
+        return version;
+    }
+
+    int tailCell() {
+        return body[(bodyHead + snakeLength - 1) % body.length];
+    }
+
+    /**
+     * 隨機產生一顆新食物（不與身體重疊），盤面上原本的食物先移除。package-private 供 benchmark 直接量測。
+     * 先以 board 做 O(1) 的 rejection sampling；盤面很滿、連續抽中蛇身時改為在空格中直接挑一格。
+     * 沒有空格時（蛇已佔滿棋盤）食物座標設為 -1，這一局以 {@link #DEATH_NONE} 結束。
+     */
+    void spawnFood() {
+        if (foodX >= 0 && board[foodY][foodX] == 2) {
+            board[foodY][foodX] = 0;
+            hash ^= Z_FOOD[foodY * size + foodX];
+        }
+        for (int attempt = 0; attempt < 32; attempt++) {
+            int fx = nextInt(size);
+            int fy = nextInt(size);
+            if (board[fy][fx] == 0) {
+                placeFood(fx, fy);
+                return;
             }
-            if (!conflict) {
-                foodX = fx;
-                foodY = fy;
-                break;
+        }
+        int free = 0;
+        for (int y = 0; y < size; y++) {
+            for (int x = 0; x < size; x++) {
+                if (board[y][x] == 0) free++;
             }
         }
-    }
-
-    /** 依蛇與食物位置更新 board 陣列 */
-    private void updateBoardFromState() {
-        // 全清為 0
-        for (int i = 0; i < size; i++) {
-            for (int j = 0; j < size; j++) {
-                board[i][j] = 0;
+        if (free == 0) {
+            foodX = -1;
+            foodY = -1;
+            if (!done) {
+                done = true;
+                deathCause = DEATH_NONE;
+                hash ^= Z_DONE;
             }
+            return;
         }
-        // 畫蛇
-        for (int[] body : snakeBody) {
-            int bx = body[0];
-            int by = body[1];
-            if (bx >= 0 && bx < size && by >= 0 && by < size) {
-                board[by][bx] = 1;
+        int pick = nextInt(free);
+        for (int y = 0; y < size; y++) {
+            for (int x = 0; x < size; x++) {
+                if (board[y][x] == 0 && pick-- == 0) {
+                    placeFood(x, y);
+                    return;
+                }
             }
         }
-        // 畫食物
-        if (foodX >= 0 && foodX < size && foodY >= 0 && foodY < size) {
-            board[foodY][foodX] = 2;
+    }
+
+    private void placeFood(int fx, int fy) {
+        foodX = fx;
+        foodY = fy;
+        board[fy][fx] = 2;
+        hash ^= Z_FOOD[fy * size + fx];
+    }
+
+    /** SplitMix64，回傳 [0, bound) 的整數。 */
+    private int nextInt(int bound) {
+        long z = splitMix(rngState += 0x9E3779B97F4A7C15L);
+        return (int) (((z >>> 32) * bound) >>> 32);
+    }
+
+    private static long splitMix(long z) {
+        z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+        z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+        return z ^ (z >>> 31);
+    }
+
+    /** 由目前的蛇身、方向與 done 重新計算 hash（不含食物，食物由 placeFood 加入）。 */
+    private long computeHash() {
+        long h = Z_DIR[direction];
+        for (int i = 0; i < snakeLength; i++) {
+            h ^= Z_BODY[body[(bodyHead + i) % body.length]];
+        }
+        if (snakeLength > 0) {
+            h ^= Z_HEAD[body[bodyHead]] ^ Z_TAIL[tailCell()];
+        }
+        if (done) {
+            h ^= Z_DONE;
+        }
+        return h;
+    }
+
+    /**
+     * 目前局面的 64-bit Zobrist hash，每一步以 XOR 增量維護。
+     * 涵蓋蛇身佔用格、頭、尾、食物、方向與是否結束；不含 reward、步數與亂數狀態。
+     * key 以固定 seed 產生，因此跨 process 穩定。
+     */
+    public long getZobristHash() {
+        return hash;
+    }
+
+    /**
+     * 把蛇擺成沿著蛇行（boustrophedon）路徑、長度為 {@code length} 的狀態，
+     * 頭在路徑第 length-1 格，下一格沿路徑仍是空的。
+     * 只給 benchmark 用來重現「指定長度 / 高佔用率」的局面。
+     */
+    void layoutSerpentine(int length) {
+        int cells = size * size;
+        if (length < 2 || length >= cells) {
+            throw new IllegalArgumentException("length 必須介於 2 與 " + (cells - 1) + " 之間: " + length);
         }
+        version += 2;
+        for (int y = 0; y < size; y++) {
+            java.util.Arrays.fill(board[y], 0);
+        }
+        bodyHead = 0;
+        snakeLength = length;
+        for (int i = 0; i < length; i++) {
+            int cell = serpentineCell(length - 1 - i);
+            body[i] = cell;
+            board[cell / size][cell % size] = 1;
+        }
+        int head = body[0];
+        int neck = body[1];
+        if (head / size < neck / size) direction = 0;
+        else if (head / size > neck / size) direction = 1;
+        else if (head % size < neck % size) direction = 2;
+        else direction = 3;
+        lastDirection = direction;
+        done = false;
+        reward = 0.0;
+        episodeSteps = 0;
+        episodeReward = 0.0;
+        foodEaten = 0;
+        deathCause = DEATH_NONE;
+        hash = computeHash();
+        spawnFood();
+    }
+
+    private int serpentineCell(int k) {
+        int y = k / size;
+        int x = (y % 2 == 0) ? k % size : size - 1 - k % size;
+        return y * size + x;
     }
 
     /** 給 UI 使用的棋盤大小 */
@@ -268,7 +635,7 @@ public class GameState {
         return size;
     }
 
-    /** 給 UI 使用的棋盤內容 */
+    /** 給 UI 使用的棋盤內容（每一步就地更新，呼叫端不應修改） */
     public int[][] getBoard() {
         return board;
     }
@@ -278,22 +645,41 @@ public class GameState {
         return reward;
     }
 
+    /** 本局已走的步數 */
+    public int getEpisodeSteps() {
+        return episodeSteps;
+    }
+
+    /** 本局累積 reward */
+    public double getEpisodeReward() {
+        return episodeReward;
+    }
+
+    /** 本局吃到的食物數 */
+    public int getFoodEaten() {
+        return foodEaten;
+    }
+
+    /** 本局的死因（{@link #DEATH_NONE} / {@link #DEATH_WALL} / {@link #DEATH_SELF}） */
+    public int getDeathCause() {
+        return deathCause;
+    }
+
     /** 取得蛇頭 X */
     public int getHeadX() {
-        if (snakeBody == null || snakeBody.isEmpty()) return -1;
-        return snakeBody.getFirst()[0];
+        if (snakeLength == 0) return -1;
+        return body[bodyHead] % size;
     }
 
     /** 取得蛇頭 Y */
     public int getHeadY() {
-        if (snakeBody == null || snakeBody.isEmpty()) return -1;
-        return snakeBody.getFirst()[1];
+        if (snakeLength == 0) return -1;
+        return body[bodyHead] / size;
     }
 
     /** 取得蛇長 */
     public int getSnakeLength() {
-        if (snakeBody == null) return 0;
-        return snakeBody.size();
+        return snakeLength;
     }
 
     /** 取得食物 X */
@@ -317,9 +703,8 @@ public class GameState {
      */
     public boolean wouldCollide(int action) {
         if (action < 0 || action > 3) return true;
-        int[] head = snakeBody.getFirst();
-        int curX = head[0];
-        int curY = head[1];
+        int curX = getHeadX();
+        int curY = getHeadY();
         int newX = curX;
         int newY = curY;
         switch (action) {
@@ -332,17 +717,12 @@ public class GameState {
         // 撞牆
         if (!wrapWalls) {
             if (newX < 0 || newX >= size || newY < 0 || newY >= size) return true;
+        } else {
+            newX = (newX % size + size) % size;
+            newY = (newY % size + size) % size;
         }
+        if (board[newY][newX] != 1) return false;
         boolean willEat = (newX == foodX && newY == foodY);
-        int tailIndex = snakeBody.size() - 1;
-        for (int i = 0; i < snakeBody.size(); i++) {
-            int[] b = snakeBody.get(i);
-            if (b[0] == newX && b[1] == newY) {
-                if (i != tailIndex || willEat) {
-                    return true;
-                }
-            }
-        }
-        return false;
+        return newY * size + newX != tailCell() || willEat;
     }
 }
@@ -0,0 +1,41 @@
+package light;
+
+/**
+ * 貪婪策略：在不會立即撞牆 / 撞到自己的方向中，選 Manhattan 距離食物最近的一個。
+ * 同距離時優先維持目前方向；沒有安全方向時維持目前方向。
+ *
+ * 沒有內部狀態，可跨執行緒共用。
+ */
+public class GreedyPolicy implements Policy {
+
+    private static final int[] DX = {0, 0, -1, 1};
+    private static final int[] DY = {-1, 1, 0, 0};
+
+    @Override
+    public int selectAction(GameState state) {
+        return bestSafeAction(state);
+    }
+
+    /** 供其他策略在找不到路時共用的「安全 + 靠近食物」選擇。 */
+    static int bestSafeAction(GameState state) {
+        int dir = state.getDirection();
+        int hx = state.getHeadX();
+        int hy = state.getHeadY();
+        int fx = state.getFoodX();
+        int fy = state.getFoodY();
+
+        int best = dir;
+        int bestDist = Integer.MAX_VALUE;
+        for (int a = 0; a < 4; a++) {
+            if (state.isReverseDirection(dir, a) || state.wouldCollide(a)) {
+                continue;
+            }
+            int d = Math.abs(hx + DX[a] - fx) + Math.abs(hy + DY[a] - fy);
+            if (d < bestDist || (d == bestDist && a == dir)) {
+                bestDist = d;
+                best = a;
+            }
+        }
+        return best;
+    }
+}
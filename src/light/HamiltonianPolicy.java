@@ -0,0 +1,60 @@
+package light;
+
+/**
+ * 沿著預先計算好的 Hamiltonian cycle 走：保證不會撞到自己，但不追求最短路徑。
+ *
+ * cycle 的形狀（棋盤邊長必須為偶數）：第 0 欄保留為往上的回程通道，
+ * 其餘 1..N-1 欄逐列蛇行往下，最後一列走到 (1, N-1) 後進入第 0 欄往上回到 (0, 0)。
+ * 蛇剛開局時身體尚未沿著 cycle 排列，若 cycle 指定的方向會回轉或撞到，
+ * 先以 {@link GreedyPolicy#bestSafeAction(GameState)} 走一步。
+ *
+ * 建好之後為唯讀，可跨執行緒共用。
+ */
+public class HamiltonianPolicy implements Policy {
+
+    private final int size;
+    private final byte[] nextAction; // 每格沿 cycle 的下一步 action
+
+    public HamiltonianPolicy(int size) {
+        if (size < 2 || size % 2 != 0) {
+            throw new IllegalArgumentException("Hamiltonian cycle 需要偶數邊長的棋盤: " + size);
+        }
+        this.size = size;
+        this.nextAction = new byte[size * size];
+        build();
+    }
+
+    private void build() {
+        for (int y = 0; y < size; y++) {
+            for (int x = 0; x < size; x++) {
+                byte a;
+                if (x == 0) {
+                    // 回程通道：往上，到頂後往右進入第 0 列
+                    a = (byte) (y == 0 ? 3 : 0);
+                } else if (y % 2 == 0) {
+                    // 偶數列往右，到最右邊往下
+                    a = (byte) (x == size - 1 ? 1 : 3);
+                } else if (y == size - 1) {
+                    // 最後一列（奇數列）一路往左進入回程通道
+                    a = 2;
+                } else {
+                    // 奇數列往左，到第 1 欄往下
+                    a = (byte) (x == 1 ? 1 : 2);
+                }
+                nextAction[y * size + x] = a;
+            }
+        }
+    }
+
+    @Override
+    public int selectAction(GameState state) {
+        if (state.getBoardSize() != size) {
+            throw new IllegalStateException("棋盤大小 " + state.getBoardSize() + " 與 cycle 大小 " + size + " 不符");
+        }
+        int a = nextAction[state.getHeadY() * size + state.getHeadX()];
+        if (state.isReverseDirection(state.getDirection(), a) || state.wouldCollide(a)) {
+            return GreedyPolicy.bestSafeAction(state);
+        }
+        return a;
+    }
+}
@@ -0,0 +1,235 @@
+package light;
+
+import java.util.Arrays;
+
+/**
+ * 訓練過程中每局 reward / 長度的串流統計，供 {@link LearningCurvePanel} 即時畫學習曲線。
+ *
+ * 最近 {@code capacity} 局存在固定大小的 primitive ring buffer（reward、步數，以及該局結束當下的
+ * 移動平均與分位數），舊資料直接被覆寫。每加入一局只做 O(1) 的更新：
+ * <ul>
+ *   <li>移動平均：維護最近 {@code window} 局的總和，加入新值、減去滑出視窗的值</li>
+ *   <li>分位數：P² 演算法（Jain &amp; Chlamtac 1985），每個分位數只保留固定大小的狀態，不重算歷史</li>
+ * </ul>
+ * 寫入與 {@link #snapshot} 以同一把鎖保護；snapshot 只複製 primitive 陣列，可在背景 thread 呼叫。
+ */
+public final class LearningCurve {
+
+    /** 畫在圖上的 reward 分位數。 */
+    public static final double[] QUANTILES = {0.10, 0.50, 0.90};
+
+    private final int capacity;
+    private final int window;
+
+    private final double[] rewards;
+    private final int[] lengths;
+    private final double[] movingAvg;
+    private final double[][] quantiles;
+
+    private final P2Quantile[] estimators;
+
+    private long total = 0L;       // 累計局數（含已被覆寫的）
+    private double windowSum = 0.0;
+    private long version = 0L;
+
+    /**
+     * @param capacity ring buffer 保留的局數
+     * @param window   移動平均的視窗局數（不超過 capacity）
+     */
+    public LearningCurve(int capacity, int window) {
+        if (capacity < 1) {
+            throw new IllegalArgumentException("capacity 必須為正: " + capacity);
+        }
+        this.capacity = capacity;
+        this.window = Math.max(1, Math.min(window, capacity));
+        this.rewards = new double[capacity];
+        this.lengths = new int[capacity];
+        this.movingAvg = new double[capacity];
+        this.quantiles = new double[QUANTILES.length][capacity];
+        this.estimators = new P2Quantile[QUANTILES.length];
+        for (int i = 0; i < QUANTILES.length; i++) {
+            estimators[i] = new P2Quantile(QUANTILES[i]);
+        }
+    }
+
+    public int getCapacity() {
+        return capacity;
+    }
+
+    public int getWindow() {
+        return window;
+    }
+
+    /** 加入一局的結果。 */
+    public synchronized void add(double reward, int length) {
+        int slot = (int) (total % capacity);
+        // 滑出移動平均視窗的那一局；它一定還在 ring buffer 裡（window <= capacity）
+        if (total >= window) {
+            windowSum -= rewards[(int) ((total - window) % capacity)];
+        }
+        rewards[slot] = reward;
+        lengths[slot] = length;
+        windowSum += reward;
+        total++;
+        movingAvg[slot] = windowSum / Math.min(total, window);
+        for (int i = 0; i < estimators.length; i++) {
+            estimators[i].add(reward);
+            quantiles[i][slot] = estimators[i].value();
+        }
+        version++;
+    }
+
+    /** 每次 {@link #add} 都會遞增，用來判斷是否需要重畫。 */
+    public synchronized long version() {
+        return version;
+    }
+
+    /** 由舊到新複製目前保留的資料。 */
+    public synchronized Snapshot snapshot() {
+        int n = (int) Math.min(total, capacity);
+        long first = total - n;
+        Snapshot s = new Snapshot(n, QUANTILES.length);
+        s.firstEpisode = first + 1;
+        s.version = version;
+        for (int k = 0; k < n; k++) {
+            int slot = (int) ((first + k) % capacity);
+            s.rewards[k] = rewards[slot];
+            s.lengths[k] = lengths[slot];
+            s.movingAvg[k] = movingAvg[slot];
+            for (int i = 0; i < QUANTILES.length; i++) {
+                s.quantiles[i][k] = quantiles[i][slot];
+            }
+        }
+        return s;
+    }
+
+    /** {@link #snapshot} 的結果；index 0 是保留資料中最舊的一局。 */
+    public static final class Snapshot {
+        public final int size;
+        public final double[] rewards;
+        public final int[] lengths;
+        public final double[] movingAvg;
+        /** quantiles[i] 對應 {@link #QUANTILES}[i]，為每局結束當下的估計值。 */
+        public final double[][] quantiles;
+        /** rewards[0] 是第幾局（從 1 起算）。 */
+        public long firstEpisode;
+        public long version;
+
+        Snapshot(int size, int q) {
+            this.size = size;
+            this.rewards = new double[size];
+            this.lengths = new int[size];
+            this.movingAvg = new double[size];
+            this.quantiles = new double[q][size];
+        }
+    }
+
+    /**
+     * P² 串流分位數估計：以 5 個 marker 的位置與高度近似分佈，每筆資料 O(1)、不保存樣本。
+     * 前 {@value #WARMUP} 筆資料先原樣保存並回傳精確分位數，之後以這些樣本的經驗分位數初始化 marker
+     * （原始演算法只用前 5 筆初始化，樣本少時極端分位數會偏向中位數）。
+     */
+    static final class P2Quantile {
+        private static final int WARMUP = 64;
+
+        private final double p;
+        private final double[] warmup = new double[WARMUP];
+        private final double[] q = new double[5];      // marker 高度
+        private final int[] n = new int[5];            // marker 實際位置（0 起算）
+        private final double[] np = new double[5];     // marker 期望位置
+        private final double[] dn;                     // 期望位置的增量
+        private int count = 0;
+
+        P2Quantile(double p) {
+            this.p = p;
+            this.dn = new double[]{0.0, p / 2, p, (1 + p) / 2, 1.0};
+        }
+
+        void add(double x) {
+            if (count < WARMUP) {
+                warmup[count++] = x;
+                if (count == WARMUP) {
+                    initMarkers();
+                }
+                return;
+            }
+            count++;
+
+            int k;
+            if (x < q[0]) {
+                q[0] = x;
+                k = 0;
+            } else if (x >= q[4]) {
+                q[4] = x;
+                k = 3;
+            } else {
+                k = 0;
+                while (k < 3 && x >= q[k + 1]) {
+                    k++;
+                }
+            }
+            for (int i = k + 1; i < 5; i++) {
+                n[i]++;
+            }
+            for (int i = 0; i < 5; i++) {
+                np[i] += dn[i];
+            }
+
+            // 調整中間三個 marker：偏離期望位置超過 1 時移動一格，優先用拋物線內插
+            for (int i = 1; i <= 3; i++) {
+                double d = np[i] - n[i];
+                if ((d >= 1 && n[i + 1] - n[i] > 1) || (d <= -1 && n[i - 1] - n[i] < -1)) {
+                    int s = d >= 0 ? 1 : -1;
+                    double candidate = parabolic(i, s);
+                    if (q[i - 1] < candidate && candidate < q[i + 1]) {
+                        q[i] = candidate;
+                    } else {
+                        q[i] = q[i] + s * (q[i + s] - q[i]) / (n[i + s] - n[i]);
+                    }
+                    n[i] += s;
+                }
+            }
+        }
+
+        /** 以排序後的暖身樣本設定 marker；位置必須嚴格遞增，公式才不會除以 0。 */
+        private void initMarkers() {
+            double[] sorted = warmup.clone();
+            Arrays.sort(sorted);
+            int last = WARMUP - 1;
+            for (int i = 0; i < 5; i++) {
+                np[i] = last * dn[i];
+                n[i] = (int) Math.round(np[i]);
+            }
+            for (int i = 1; i < 5; i++) {
+                n[i] = Math.max(n[i], n[i - 1] + 1);
+            }
+            for (int i = 3; i >= 0; i--) {
+                n[i] = Math.min(n[i], n[i + 1] - 1);
+            }
+            for (int i = 0; i < 5; i++) {
+                q[i] = sorted[n[i]];
+            }
+        }
+
+        private double parabolic(int i, int s) {
+            return q[i] + s / (double) (n[i + 1] - n[i - 1])
+                    * ((n[i] - n[i - 1] + s) * (q[i + 1] - q[i]) / (n[i + 1] - n[i])
+                    + (n[i + 1] - n[i] - s) * (q[i] - q[i - 1]) / (n[i] - n[i - 1]));
+        }
+
+        double value() {
+            if (count == 0) {
+                return 0.0;
+            }
+            if (count < WARMUP) {
+                double[] sorted = Arrays.copyOf(warmup, count);
+                Arrays.sort(sorted);
+                double rank = p * (count - 1);
+                int lo = (int) Math.floor(rank);
+                int hi = Math.min(count - 1, lo + 1);
+                return sorted[lo] + (rank - lo) * (sorted[hi] - sorted[lo]);
+            }
+            return q[2];
+        }
+    }
+}
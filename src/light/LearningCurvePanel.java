@@ -0,0 +1,252 @@
+package light;
+
+import javax.swing.*;
+import java.awt.*;
+import java.awt.event.ComponentAdapter;
+import java.awt.event.ComponentEvent;
+import java.awt.image.BufferedImage;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 即時學習曲線：每局 reward（點）、移動平均（線）、累計至該局的 P10~P90 帶狀區與 P50，下方另畫每局步數。
+ *
+ * 圖在背景 daemon thread 以固定頻率（{@code -Dsnake.gui.chart_fps}，預設 2）畫進 {@link BufferedImage}，
+ * 畫好後換上再 {@link #repaint()}；EDT 上的 {@link #paintComponent} 只貼圖，不會因為資料多而拖慢遊戲迴圈。
+ * 資料沒有變化時不重畫。
+ */
+public class LearningCurvePanel extends JPanel {
+
+    private static final long serialVersionUID = 1L;
+
+    private static final int DEFAULT_WIDTH = 360;
+    private static final Color BG = new Color(20, 20, 24);
+    private static final Color GRID = new Color(60, 60, 70);
+    private static final Color TEXT = new Color(200, 200, 200);
+    private static final Color POINT = new Color(120, 160, 255, 110);
+    private static final Color BAND = new Color(255, 200, 80, 50);
+    private static final Color MEDIAN = new Color(255, 200, 80);
+    private static final Color AVG = new Color(90, 230, 120);
+    private static final Color LENGTH = new Color(200, 120, 255);
+
+    private final LearningCurve curve;
+    private final int fps;
+
+    private volatile BufferedImage image = null;
+    private volatile int targetW;
+    private volatile int targetH;
+    private long drawnVersion = -1L;
+    private int drawnW = -1;
+    private int drawnH = -1;
+    private ScheduledExecutorService renderer;
+
+    public LearningCurvePanel(LearningCurve curve) {
+        this.curve = curve;
+        this.fps = Math.max(1, Math.min(30, Integer.getInteger("snake.gui.chart_fps", 2)));
+        setBackground(BG);
+        setPreferredSize(new Dimension(DEFAULT_WIDTH, 600));
+        // 尺寸只在 EDT 上讀，render thread 透過 volatile 欄位取得
+        addComponentListener(new ComponentAdapter() {
+            @Override
+            public void componentResized(ComponentEvent e) {
+                targetW = getWidth();
+                targetH = getHeight();
+            }
+        });
+    }
+
+    public LearningCurve getCurve() {
+        return curve;
+    }
+
+    /** 開始背景重畫；重複呼叫無效果。 */
+    public synchronized void start() {
+        if (renderer != null) {
+            return;
+        }
+        renderer = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "LearningCurvePanel-render");
+            t.setDaemon(true);
+            return t;
+        });
+        long period = 1000L / fps;
+        renderer.scheduleAtFixedRate(this::renderIfChanged, 0L, period, TimeUnit.MILLISECONDS);
+    }
+
+    public synchronized void stop() {
+        if (renderer != null) {
+            renderer.shutdownNow();
+            renderer = null;
+        }
+    }
+
+    private void renderIfChanged() {
+        try {
+            int w = targetW;
+            int h = targetH;
+            if (w <= 0 || h <= 0) {
+                return;
+            }
+            long v = curve.version();
+            if (v == drawnVersion && w == drawnW && h == drawnH) {
+                return;
+            }
+            BufferedImage img = new BufferedImage(w, h, BufferedImage.TYPE_INT_RGB);
+            Graphics2D g = img.createGraphics();
+            try {
+                draw(g, w, h, curve.snapshot());
+            } finally {
+                g.dispose();
+            }
+            image = img;
+            drawnVersion = v;
+            drawnW = w;
+            drawnH = h;
+            repaint();
+        } catch (RuntimeException e) {
+            // 不讓例外結束 scheduled task（之後就不會再重畫）
+            System.err.println("[LearningCurvePanel] 繪圖失敗: " + e);
+        }
+    }
+
+    @Override
+    protected void paintComponent(Graphics g) {
+        super.paintComponent(g);
+        BufferedImage img = image;
+        if (img != null) {
+            g.drawImage(img, 0, 0, null);
+        }
+    }
+
+    private void draw(Graphics2D g, int w, int h, LearningCurve.Snapshot s) {
+        g.setRenderingHint(RenderingHints.KEY_ANTIALIASING, RenderingHints.VALUE_ANTIALIAS_ON);
+        g.setColor(BG);
+        g.fillRect(0, 0, w, h);
+        g.setFont(g.getFont().deriveFont(11f));
+        FontMetrics fm = g.getFontMetrics();
+
+        int pad = 8;
+        int left = pad + fm.stringWidth("-000.0") + 4;
+        int right = w - pad;
+        int titleH = fm.getHeight() * 2 + 4;
+        int gap = fm.getHeight() + 6;
+        int usable = h - titleH - pad - gap;
+        int rewardTop = titleH;
+        int rewardBottom = rewardTop + usable * 2 / 3;
+        int lengthTop = rewardBottom + gap;
+        int lengthBottom = h - pad;
+
+        g.setColor(TEXT);
+        if (s.size == 0) {
+            g.drawString("學習曲線：等待第一局結束…", pad, fm.getAscent() + pad);
+            return;
+        }
+        int last = s.size - 1;
+        long lastEpisode = s.firstEpisode + last;
+        g.drawString(String.format("第 %d 局  reward %.2f  平均(%d) %.2f", lastEpisode, s.rewards[last],
+                curve.getWindow(), s.movingAvg[last]), pad, fm.getAscent() + 2);
+        g.drawString(String.format("累計 P10/P50/P90 %.2f / %.2f / %.2f  步數 %d", s.quantiles[0][last],
+                s.quantiles[1][last], s.quantiles[2][last], s.lengths[last]), pad, fm.getAscent() + fm.getHeight() + 2);
+
+        // reward 區：y 範圍涵蓋原始值與帶狀區
+        double min = Double.POSITIVE_INFINITY;
+        double max = Double.NEGATIVE_INFINITY;
+        for (int k = 0; k < s.size; k++) {
+            min = Math.min(min, Math.min(s.rewards[k], s.quantiles[0][k]));
+            max = Math.max(max, Math.max(s.rewards[k], s.quantiles[2][k]));
+        }
+        if (max - min < 1e-9) {
+            max = min + 1.0;
+        }
+        drawAxes(g, fm, left, right, rewardTop, rewardBottom, min, max);
+
+        int[] bandX = new int[s.size * 2];
+        int[] bandY = new int[s.size * 2];
+        for (int k = 0; k < s.size; k++) {
+            int x = xOf(k, s.size, left, right);
+            bandX[k] = x;
+            bandY[k] = yOf(s.quantiles[2][k], min, max, rewardTop, rewardBottom);
+            bandX[s.size * 2 - 1 - k] = x;
+            bandY[s.size * 2 - 1 - k] = yOf(s.quantiles[0][k], min, max, rewardTop, rewardBottom);
+        }
+        g.setColor(BAND);
+        g.fillPolygon(bandX, bandY, bandX.length);
+
+        g.setColor(POINT);
+        for (int k = 0; k < s.size; k++) {
+            g.fillRect(xOf(k, s.size, left, right) - 1, yOf(s.rewards[k], min, max, rewardTop, rewardBottom) - 1, 2, 2);
+        }
+        drawSeries(g, MEDIAN, s.quantiles[1], s.size, left, right, rewardTop, rewardBottom, min, max);
+        drawSeries(g, AVG, s.movingAvg, s.size, left, right, rewardTop, rewardBottom, min, max);
+
+        // 步數區
+        int maxLen = 1;
+        for (int k = 0; k < s.size; k++) {
+            maxLen = Math.max(maxLen, s.lengths[k]);
+        }
+        g.setColor(TEXT);
+        g.drawString("每局步數", left, lengthTop - 4);
+        drawAxes(g, fm, left, right, lengthTop, lengthBottom, 0, maxLen);
+        g.setColor(LENGTH);
+        int px = -1;
+        int py = -1;
+        for (int k = 0; k < s.size; k++) {
+            int x = xOf(k, s.size, left, right);
+            int y = yOf(s.lengths[k], 0, maxLen, lengthTop, lengthBottom);
+            if (px >= 0) {
+                g.drawLine(px, py, x, y);
+            }
+            px = x;
+            py = y;
+        }
+
+        g.setColor(TEXT);
+        String range = "第 " + s.firstEpisode + " ~ " + lastEpisode + " 局";
+        g.drawString(range, right - fm.stringWidth(range), lengthBottom - 2);
+    }
+
+    private static void drawAxes(Graphics2D g, FontMetrics fm, int left, int right, int top, int bottom,
+                                 double min, double max) {
+        g.setColor(GRID);
+        g.drawRect(left, top, right - left, bottom - top);
+        int mid = (top + bottom) / 2;
+        g.drawLine(left, mid, right, mid);
+        g.setColor(TEXT);
+        drawLabel(g, fm, max, left, top + fm.getAscent());
+        drawLabel(g, fm, (min + max) / 2, left, mid + fm.getAscent() / 2);
+        drawLabel(g, fm, min, left, bottom);
+    }
+
+    private static void drawLabel(Graphics2D g, FontMetrics fm, double value, int left, int baseline) {
+        String text = String.format("%.1f", value);
+        g.drawString(text, left - 4 - fm.stringWidth(text), baseline);
+    }
+
+    private static void drawSeries(Graphics2D g, Color color, double[] values, int size, int left, int right,
+                                   int top, int bottom, double min, double max) {
+        g.setColor(color);
+        Stroke old = g.getStroke();
+        g.setStroke(new BasicStroke(1.5f));
+        int px = -1;
+        int py = -1;
+        for (int k = 0; k < size; k++) {
+            int x = xOf(k, size, left, right);
+            int y = yOf(values[k], min, max, top, bottom);
+            if (px >= 0) {
+                g.drawLine(px, py, x, y);
+            }
+            px = x;
+            py = y;
+        }
+        g.setStroke(old);
+    }
+
+    private static int xOf(int k, int size, int left, int right) {
+        return size <= 1 ? right : left + (int) ((long) k * (right - left) / (size - 1));
+    }
+
+    private static int yOf(double v, double min, double max, int top, int bottom) {
+        return bottom - (int) Math.round((v - min) / (max - min) * (bottom - top));
+    }
+}
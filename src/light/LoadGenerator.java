@@ -0,0 +1,451 @@
+package light;
+
+import com.google.gson.JsonArray;
+import com.google.gson.JsonObject;
+
+import java.io.*;
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.net.ConnectException;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * 本機 loopback 壓測工具：在同一個 JVM 內啟動 M 個 {@link SocketSnakeServerGameRL} session，
+ * 再用 M 個 Java stub client 以與 Python 完全相同的 JSON 行協定驅動它們。
+ *
+ * 每組（協定變體 × 併發數）輸出每秒往返次數（ACTION 或 BATCH_ACTION）、每秒 env 步數、
+ * 單次往返延遲 p50/p99 與期間的 GC 時間，用來量測 server 端的吞吐上限，不需要 Python 參與。
+ * 變體見 {@link Variant}；batch 變體的 clients 是同一條連線驅動的 env 數。
+ *
+ * 用法（參數皆可省略）：
+ * <pre>
+ *   java -cp "src;lib\gson-2.10.1.jar" light.LoadGenerator clients=1,4,8 steps=20000 policy=greedy variants=json,repeat,auto_reset,batch repeat=4
+ * </pre>
+ */
+public class LoadGenerator {
+
+    /** 協定變體：決定 client 連線後要如何與 server 互動。 */
+    enum Variant {
+        /** 原始協定：STATE → ACTION，一局結束時 RESET + STATE。 */
+        JSON,
+        /** 連線後以 CONFIG 設定 action_repeat，每個 ACTION 在 server 端走 repeat 步。 */
+        REPEAT,
+        /** 連線後以 CONFIG 開啟 auto_reset，一局結束時只送一個合併的 STATE。 */
+        AUTO_RESET,
+        /** {@link EnvPoolServer} 的 batch 協定：一條連線以 BATCH_ACTION 一次推進 clients 個 env。 */
+        BATCH
+    }
+
+    /** stub agent 的動作策略。 */
+    enum StubPolicy {
+        RANDOM, GREEDY
+    }
+
+    public static void main(String[] args) throws Exception {
+        int[] clientCounts = {1, 2, 4, 8};
+        int stepsPerClient = 20_000;
+        int basePort = 5100;
+        StubPolicy policy = StubPolicy.RANDOM;
+        List<Variant> variants = new ArrayList<>(Arrays.asList(Variant.values()));
+        int repeat = 4;
+
+        for (String arg : args) {
+            int eq = arg.indexOf('=');
+            if (eq < 0) {
+                System.err.println("[LoadGenerator] 忽略無法解析的參數: " + arg);
+                continue;
+            }
+            String key = arg.substring(0, eq);
+            String value = arg.substring(eq + 1);
+            switch (key) {
+                case "clients":
+                    clientCounts = Arrays.stream(value.split(",")).mapToInt(Integer::parseInt).toArray();
+                    break;
+                case "steps":
+                    stepsPerClient = Integer.parseInt(value);
+                    break;
+                case "port":
+                    basePort = Integer.parseInt(value);
+                    break;
+                case "policy":
+                    policy = StubPolicy.valueOf(value.toUpperCase());
+                    break;
+                case "repeat":
+                    repeat = ConnectionConfig.clampRepeat(Integer.parseInt(value));
+                    break;
+                case "variants":
+                    variants.clear();
+                    for (String v : value.split(",")) {
+                        variants.add(Variant.valueOf(v.toUpperCase()));
+                    }
+                    break;
+                default:
+                    System.err.println("[LoadGenerator] 未知參數: " + key);
+            }
+        }
+
+        System.out.println(String.format("[LoadGenerator] steps/client=%d, policy=%s, repeat=%d", stepsPerClient, policy, repeat));
+        System.out.println(String.format("%-10s %8s %12s %12s %10s %10s %10s",
+                "variant", "clients", "actions/sec", "env_steps/s", "p50(us)", "p99(us)", "gc(ms)"));
+        for (Variant variant : variants) {
+            for (int clients : clientCounts) {
+                Result r = variant == Variant.BATCH
+                        ? runBatch(clients, stepsPerClient, basePort, policy)
+                        : runOnce(variant, clients, stepsPerClient, basePort, policy, repeat);
+                System.out.println(String.format("%-10s %8d %12.0f %12.0f %10.1f %10.1f %10d",
+                        variant.name().toLowerCase(), clients, r.stepsPerSec, r.envStepsPerSec,
+                        r.p50Micros, r.p99Micros, r.gcMillis));
+            }
+        }
+    }
+
+    private static final class Result {
+        /** 每秒往返次數（ACTION 或 BATCH_ACTION）。 */
+        double stepsPerSec;
+        double envStepsPerSec;
+        double p50Micros;
+        double p99Micros;
+        long gcMillis;
+    }
+
+    private static Result runOnce(Variant variant, int clients, int stepsPerClient,
+                                  int basePort, StubPolicy policy, int repeat) throws InterruptedException {
+        List<Thread> servers = new ArrayList<>();
+        for (int i = 0; i < clients; i++) {
+            int port = basePort + i;
+            Thread t = new Thread(() -> {
+                try (SocketSnakeServer server = new SocketSnakeServer(port)) {
+                    SocketSnakeServerGameRL.runSession(server, new GameState(port), 0L, false);
+                } catch (IOException e) {
+                    System.err.println("[LoadGenerator] server(port=" + port + ") 失敗: " + e.getMessage());
+                }
+            }, "LoadGenerator-Server-" + port);
+            t.setDaemon(true);
+            t.start();
+            servers.add(t);
+        }
+
+        StubClient[] stubs = new StubClient[clients];
+        Thread[] clientThreads = new Thread[clients];
+        CountDownLatch ready = new CountDownLatch(clients);
+        CountDownLatch go = new CountDownLatch(1);
+        for (int i = 0; i < clients; i++) {
+            stubs[i] = new StubClient(variant, basePort + i, stepsPerClient, policy, repeat, i, ready, go);
+            clientThreads[i] = new Thread(stubs[i], "LoadGenerator-Client-" + i);
+            clientThreads[i].start();
+        }
+
+        ready.await();
+        long gcBefore = totalGcMillis();
+        long start = System.nanoTime();
+        go.countDown();
+        for (Thread t : clientThreads) {
+            t.join();
+        }
+        long elapsed = System.nanoTime() - start;
+        long gcAfter = totalGcMillis();
+        for (Thread t : servers) {
+            t.join(2000);
+        }
+
+        long total = 0;
+        long envSteps = 0;
+        for (StubClient s : stubs) {
+            total += s.completed;
+            envSteps += s.envSteps;
+        }
+        long[] all = new long[(int) total];
+        int pos = 0;
+        for (StubClient s : stubs) {
+            System.arraycopy(s.latencies, 0, all, pos, s.completed);
+            pos += s.completed;
+        }
+        Arrays.sort(all);
+
+        return result(all, total, envSteps, elapsed, gcAfter - gcBefore);
+    }
+
+    private static Result result(long[] sortedLatencies, long roundTrips, long envSteps, long elapsedNanos, long gcMillis) {
+        Result r = new Result();
+        r.stepsPerSec = roundTrips / (elapsedNanos / 1e9);
+        r.envStepsPerSec = envSteps / (elapsedNanos / 1e9);
+        r.p50Micros = percentile(sortedLatencies, 0.50) / 1e3;
+        r.p99Micros = percentile(sortedLatencies, 0.99) / 1e3;
+        r.gcMillis = gcMillis;
+        return r;
+    }
+
+    /**
+     * batch 變體：同一個 JVM 內開一個 {@link EnvPoolServer}（numEnvs 個 env），
+     * 由一個 learner stub 以 BATCH_ACTION 推進 steps 次；延遲為「送出 BATCH_ACTION → 收到下一個 BATCH_STATE」。
+     */
+    private static Result runBatch(int numEnvs, int steps, int port, StubPolicy policy) throws Exception {
+        int threads = Runtime.getRuntime().availableProcessors();
+        ForkJoinPool pool = new ForkJoinPool(threads);
+        EnvPool envs = new EnvPool(pool, numEnvs, Math.max(1, (numEnvs + threads - 1) / threads), 1000, port);
+        Thread server = new Thread(() -> {
+            try {
+                EnvPoolServer.run(envs, port);
+            } catch (IOException e) {
+                // learner stub 跑完後關閉連線，run 以 IOException 結束是正常的
+            }
+        }, "LoadGenerator-BatchServer-" + port);
+        server.setDaemon(true);
+        server.start();
+
+        long[] latencies = new long[steps];
+        int completed = 0;
+        Random rnd = new Random(port);
+        long gcBefore;
+        long start;
+        try (Socket socket = StubClient.connectWithRetry(port)) {
+            socket.setTcpNoDelay(true);
+            BufferedReader reader = new BufferedReader(
+                    new InputStreamReader(socket.getInputStream(), StandardCharsets.UTF_8));
+            BufferedWriter writer = new BufferedWriter(
+                    new OutputStreamWriter(socket.getOutputStream(), StandardCharsets.UTF_8));
+            SocketProtocol.SocketMessage state = readBatchState(reader);
+            gcBefore = totalGcMillis();
+            start = System.nanoTime();
+            for (int i = 0; i < steps && state != null; i++) {
+                JsonObject p = state.getPayload();
+                JsonArray headX = p.getAsJsonArray("head_x");
+                JsonArray headY = p.getAsJsonArray("head_y");
+                JsonArray foodX = p.getAsJsonArray("food_x");
+                JsonArray foodY = p.getAsJsonArray("food_y");
+                JsonArray direction = p.getAsJsonArray("direction");
+                JsonArray actions = new JsonArray(numEnvs);
+                for (int e = 0; e < numEnvs; e++) {
+                    actions.add(policy == StubPolicy.GREEDY
+                            ? greedyAction(headX.get(e).getAsInt(), headY.get(e).getAsInt(),
+                                           foodX.get(e).getAsInt(), foodY.get(e).getAsInt(),
+                                           direction.get(e).getAsInt(), rnd)
+                            : rnd.nextInt(4));
+                }
+                JsonObject payload = new JsonObject();
+                payload.add("actions", actions);
+                long t0 = System.nanoTime();
+                writer.write(SocketProtocol.encode(
+                        new SocketProtocol.SocketMessage(SocketProtocol.MessageType.BATCH_ACTION, payload)));
+                writer.flush();
+                state = readBatchState(reader);
+                latencies[completed++] = System.nanoTime() - t0;
+            }
+        } finally {
+            pool.shutdown();
+        }
+        long elapsed = System.nanoTime() - start;
+        long gcAfter = totalGcMillis();
+        server.join(2000);
+
+        long[] all = Arrays.copyOf(latencies, completed);
+        Arrays.sort(all);
+        return result(all, completed, (long) completed * numEnvs, elapsed, gcAfter - gcBefore);
+    }
+
+    /** 讀到下一個 BATCH_STATE 為止（略過 INIT）；連線關閉時回傳 null。 */
+    private static SocketProtocol.SocketMessage readBatchState(BufferedReader reader) throws IOException {
+        String line;
+        while ((line = reader.readLine()) != null) {
+            SocketProtocol.SocketMessage msg = SocketProtocol.decode(line);
+            if (msg.getType() == SocketProtocol.MessageType.BATCH_STATE) {
+                return msg;
+            }
+        }
+        return null;
+    }
+
+    private static long percentile(long[] sorted, double q) {
+        if (sorted.length == 0) return 0L;
+        int idx = (int) Math.min(sorted.length - 1, Math.round(q * (sorted.length - 1)));
+        return sorted[idx];
+    }
+
+    private static long totalGcMillis() {
+        long sum = 0L;
+        for (GarbageCollectorMXBean gc : ManagementFactory.getGarbageCollectorMXBeans()) {
+            long t = gc.getCollectionTime();
+            if (t > 0) sum += t;
+        }
+        return sum;
+    }
+
+    /** 朝食物方向走，避開與 lastAction 相反的方向；沒有可走的偏好方向時維持 lastAction。 */
+    private static int greedyAction(int headX, int headY, int foodX, int foodY, int lastAction, Random rnd) {
+        int[] prefs = new int[4];
+        int n = 0;
+        if (foodY < headY) prefs[n++] = 0;
+        if (foodY > headY) prefs[n++] = 1;
+        if (foodX < headX) prefs[n++] = 2;
+        if (foodX > headX) prefs[n++] = 3;
+        for (int i = 0; i < n; i++) {
+            if (!isReverse(lastAction, prefs[i])) {
+                return prefs[i];
+            }
+        }
+        return lastAction >= 0 ? lastAction : rnd.nextInt(4);
+    }
+
+    private static boolean isReverse(int a, int b) {
+        return (a == 0 && b == 1) || (a == 1 && b == 0) || (a == 2 && b == 3) || (a == 3 && b == 2);
+    }
+
+    /**
+     * 模擬 Python agent 的 client：讀 INIT、依變體送出 CONFIG，之後反覆讀 STATE 並回 ACTION。
+     * 單步延遲定義為「送出 ACTION → 收到下一個 STATE」；env 步數取 STATE 的 steps 欄位（action repeat 時大於 1）。
+     */
+    private static final class StubClient implements Runnable {
+        private final Variant variant;
+        private final int port;
+        private final int steps;
+        private final StubPolicy policy;
+        private final int repeat;
+        private final Random rnd;
+        private final CountDownLatch ready;
+        private final CountDownLatch go;
+        final long[] latencies;
+        int completed = 0;
+        long envSteps = 0;
+        private int lastAction = -1;
+
+        StubClient(Variant variant, int port, int steps, StubPolicy policy, int repeat, long seed,
+                   CountDownLatch ready, CountDownLatch go) {
+            this.variant = variant;
+            this.port = port;
+            this.steps = steps;
+            this.policy = policy;
+            this.repeat = repeat;
+            this.rnd = new Random(seed);
+            this.ready = ready;
+            this.go = go;
+            this.latencies = new long[steps];
+        }
+
+        @Override
+        public void run() {
+            boolean signalled = false;
+            try (Socket socket = connectWithRetry(port)) {
+                socket.setTcpNoDelay(true);
+                BufferedReader reader = new BufferedReader(
+                        new InputStreamReader(socket.getInputStream(), StandardCharsets.UTF_8));
+                BufferedWriter writer = new BufferedWriter(
+                        new OutputStreamWriter(socket.getOutputStream(), StandardCharsets.UTF_8));
+
+                SocketProtocol.SocketMessage state = readUntilState(reader);
+                if (variant == Variant.REPEAT || variant == Variant.AUTO_RESET) {
+                    ConnectionConfig config = new ConnectionConfig();
+                    if (variant == Variant.REPEAT) {
+                        config.setActionRepeat(repeat);
+                    } else {
+                        config.setAutoReset(true);
+                    }
+                    writer.write(SocketProtocol.encode(SocketProtocol.createConfigMessage(config)));
+                    writer.flush();
+                    readUntil(reader, SocketProtocol.MessageType.CONFIG);
+                }
+                ready.countDown();
+                signalled = true;
+                go.await();
+
+                for (int i = 0; i < steps && state != null; i++) {
+                    int action = chooseAction(state.getPayload());
+                    long t0 = System.nanoTime();
+                    writer.write(SocketProtocol.encode(SocketProtocol.createActionMessage(action)));
+                    writer.flush();
+                    state = readUntilState(reader);
+                    latencies[completed++] = System.nanoTime() - t0;
+                    if (state != null) {
+                        JsonObject p = state.getPayload();
+                        envSteps += p.has("steps") ? p.get("steps").getAsInt() : 1;
+                    }
+                }
+            } catch (IOException e) {
+                System.err.println("[LoadGenerator] client(port=" + port + ", variant=" + variant + ") 失敗: " + e.getMessage());
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            } finally {
+                if (!signalled) {
+                    ready.countDown();
+                }
+            }
+        }
+
+        /** 讀到下一個 STATE 為止（略過 INIT / RESET / PING / CONFIG）；連線關閉時回傳 null。 */
+        private SocketProtocol.SocketMessage readUntilState(BufferedReader reader) throws IOException {
+            return readUntil(reader, SocketProtocol.MessageType.STATE);
+        }
+
+        /** 讀到下一個 type 訊息為止，途中的 RESET 清掉上一個動作；連線關閉時回傳 null。 */
+        private SocketProtocol.SocketMessage readUntil(BufferedReader reader, SocketProtocol.MessageType type)
+                throws IOException {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                SocketProtocol.SocketMessage msg = SocketProtocol.decode(line);
+                if (msg.getType() == type) {
+                    return msg;
+                }
+                if (msg.getType() == SocketProtocol.MessageType.RESET) {
+                    lastAction = -1;
+                }
+            }
+            return null;
+        }
+
+        private int chooseAction(JsonObject payload) {
+            int action;
+            if (policy == StubPolicy.GREEDY) {
+                action = greedyAction(payload);
+            } else {
+                action = rnd.nextInt(4);
+            }
+            lastAction = action;
+            return action;
+        }
+
+        /**
+         * 朝食物方向走；payload 沒有 head 座標時，與 Python FeatureExtractWrapper 相同，
+         * 以 row-major 掃描到的第一個蛇身格當作頭。
+         */
+        private int greedyAction(JsonObject payload) {
+            int headX = payload.has("head_x") ? payload.get("head_x").getAsInt() : -1;
+            int headY = payload.has("head_y") ? payload.get("head_y").getAsInt() : -1;
+            int foodX = payload.has("food_x") ? payload.get("food_x").getAsInt() : -1;
+            int foodY = payload.has("food_y") ? payload.get("food_y").getAsInt() : -1;
+            if (headX < 0 || foodX < 0) {
+                JsonArray rows = payload.getAsJsonArray("board");
+                for (int y = 0; y < rows.size(); y++) {
+                    JsonArray row = rows.get(y).getAsJsonArray();
+                    for (int x = 0; x < row.size(); x++) {
+                        int v = row.get(x).getAsInt();
+                        if (v == 1 && headX < 0) {
+                            headX = x;
+                            headY = y;
+                        } else if (v == 2) {
+                            foodX = x;
+                            foodY = y;
+                        }
+                    }
+                }
+            }
+            return LoadGenerator.greedyAction(headX, headY, foodX, foodY, lastAction, rnd);
+        }
+
+        static Socket connectWithRetry(int port) throws IOException, InterruptedException {
+            for (int attempt = 0; ; attempt++) {
+                try {
+                    return new Socket("127.0.0.1", port);
+                } catch (ConnectException e) {
+                    if (attempt >= 100) throw e;
+                    Thread.sleep(20);
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,64 @@
+package light;
+
+import java.io.IOException;
+import java.nio.file.Path;
+
+/**
+ * 以 {@link PolicyNetwork} 在 JVM 內直接推論的 {@link Policy}（不需要 Python process）。
+ *
+ * 單一 env 用 {@link #selectAction(GameState)}；多個 env 同步前進時用
+ * {@link #selectActions(GameState[], int, int[])} 一次批次推論。
+ * 與 PolicyNetwork 相同，一個實例只能由一個執行緒使用，多執行緒請用 {@link #copy()}。
+ */
+public class LocalNetworkPolicy implements Policy {
+
+    private final PolicyNetwork network;
+    private float[] input = new float[0];
+    private float[] q = new float[0];
+    private int[] actions = new int[0];
+
+    public LocalNetworkPolicy(PolicyNetwork network) {
+        this.network = network;
+    }
+
+    /** 從 export_policy.py 匯出的檔案載入。 */
+    public static LocalNetworkPolicy load(Path file) throws IOException {
+        return new LocalNetworkPolicy(PolicyNetwork.load(file));
+    }
+
+    /** 共用權重的副本，給其他執行緒使用。 */
+    public LocalNetworkPolicy copy() {
+        return new LocalNetworkPolicy(network.copy());
+    }
+
+    public PolicyNetwork getNetwork() {
+        return network;
+    }
+
+    @Override
+    public int selectAction(GameState state) {
+        ensureCapacity(1);
+        network.encode(state, input, 0);
+        network.argmax(input, 1, q, actions);
+        return actions[0];
+    }
+
+    /** 對 states[0..count) 批次推論，結果寫入 out。 */
+    public void selectActions(GameState[] states, int count, int[] out) {
+        ensureCapacity(count);
+        int in = network.getInputSize();
+        for (int i = 0; i < count; i++) {
+            network.encode(states[i], input, i * in);
+        }
+        network.argmax(input, count, q, out);
+    }
+
+    private void ensureCapacity(int batch) {
+        int in = network.getInputSize() * batch;
+        if (input.length < in) {
+            input = new float[in];
+            q = new float[network.getOutputSize() * batch];
+            actions = new int[batch];
+        }
+    }
+}
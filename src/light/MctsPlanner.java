@@ -0,0 +1,321 @@
+package light;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.SplittableRandom;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * 以 Monte Carlo tree search 決定動作的 {@link Policy}，搜尋在 {@link ForkJoinPool} 上平行進行。
+ *
+ * 採 root-parallel：每個 worker 各自從根節點建一棵樹、互不同步，預算用完後把根節點各動作的
+ * 拜訪次數加總，選拜訪最多的動作。食物位置是隨機的，因此樹是 open-loop（節點只代表動作序列），
+ * 每次模擬都把 scratch state {@link GameState#copyFrom 複製}自根節點並重設亂數，
+ * 不會「偷看」真正的下一顆食物。節點存在預先配置的陣列裡，模擬與 rollout 過程不配置物件。
+ *
+ * 預算可用總 rollout 數、每步時間上限，或兩者同時（先到者為準）。
+ * 若給了 {@link TranspositionTable}，所有 worker 共用它記錄各局面（Zobrist hash）的 rollout 平均回報；
+ * 葉節點的局面已有足夠樣本時直接取用，不再重跑 rollout，且表格跨步保留，下一步搜到相同局面時可以沿用。
+ * 同一個實例同時只能由一個執行緒呼叫 {@link #selectAction}；多個實例共用同一個 pool。
+ */
+public class MctsPlanner implements Policy {
+
+    private static final int ACTIONS = 4;
+    // UCT 探索係數；GameState 的 reward 介於 -10 與 12 之間，係數也跟著放大
+    private static final double EXPLORATION = 14.0;
+    // transposition table 的樣本數達到此值才取代 rollout
+    private static final int TT_TRUST = 8;
+
+    private static volatile ForkJoinPool sharedPool;
+
+    private final ForkJoinPool pool;
+    private final long timeBudgetNanos;
+    private final int maxDepth;
+    private final double gamma;
+    private final TranspositionTable table;
+    private final Worker[] workers;
+    private final List<Callable<Void>> tasks;
+
+    // 加總後的根節點統計（供呼叫端觀察，例如蒸餾時當成 soft target）
+    private final long[] rootVisits = new long[ACTIONS];
+    private final double[] rootValues = new double[ACTIONS];
+
+    // 每次 selectAction 的輸入，由 worker 讀取（invokeAll 之前寫入，happens-before 由 pool 保證）
+    private GameState root;
+    private long deadline;
+
+    /**
+     * @param threads      worker 數，通常等於 pool 的 parallelism
+     * @param rollouts     每步的總模擬次數（0 表示只看時間）
+     * @param timeBudgetMs 每步的時間上限（0 表示只看次數）
+     * @param maxDepth     每次模擬（樹內 + rollout）最多走幾步
+     * @param table        共用的 transposition table，可為 null
+     */
+    public MctsPlanner(ForkJoinPool pool, int threads, int rollouts, long timeBudgetMs, int maxDepth,
+                       TranspositionTable table) {
+        if (rollouts <= 0 && timeBudgetMs <= 0) {
+            throw new IllegalArgumentException("rollouts 與 timeBudgetMs 至少要有一個大於 0");
+        }
+        this.pool = pool;
+        this.timeBudgetNanos = timeBudgetMs * 1_000_000L;
+        this.maxDepth = maxDepth;
+        this.gamma = 0.97;
+        this.table = table;
+        int n = Math.max(1, threads);
+        this.workers = new Worker[n];
+        this.tasks = new ArrayList<>(n);
+        int perWorker = (rollouts <= 0) ? Integer.MAX_VALUE : (rollouts + n - 1) / n;
+        SplittableRandom seeds = new SplittableRandom();
+        for (int i = 0; i < n; i++) {
+            Worker w = new Worker(perWorker, seeds.split());
+            workers[i] = w;
+            tasks.add(w);
+        }
+    }
+
+    /**
+     * 依系統屬性建立：-Dsnake.mcts.threads（預設 CPU 核心數）、-Dsnake.mcts.rollouts（預設 2000）、
+     * -Dsnake.mcts.time_ms（預設 0，不限時）、-Dsnake.mcts.depth（預設 60）、
+     * -Dsnake.mcts.tt_bits（transposition table 容量 2^bits，預設 18；0 表示不使用）。
+     */
+    public static MctsPlanner fromProperties() {
+        int threads = Integer.getInteger("snake.mcts.threads", Runtime.getRuntime().availableProcessors());
+        int rollouts = Integer.getInteger("snake.mcts.rollouts", 2000);
+        long timeMs = Long.getLong("snake.mcts.time_ms", 0L);
+        int depth = Integer.getInteger("snake.mcts.depth", 60);
+        int ttBits = Integer.getInteger("snake.mcts.tt_bits", 18);
+        TranspositionTable table = (ttBits > 0) ? new TranspositionTable(ttBits) : null;
+        return new MctsPlanner(sharedPool(threads), threads, rollouts, timeMs, depth, table);
+    }
+
+    /** 所有 MCTS 實例共用的 pool（第一次呼叫時依 parallelism 建立）。 */
+    static ForkJoinPool sharedPool(int parallelism) {
+        ForkJoinPool p = sharedPool;
+        if (p == null) {
+            synchronized (MctsPlanner.class) {
+                p = sharedPool;
+                if (p == null) {
+                    p = new ForkJoinPool(Math.max(1, parallelism));
+                    sharedPool = p;
+                }
+            }
+        }
+        return p;
+    }
+
+    @Override
+    public int selectAction(GameState state) {
+        if (state.isDone()) {
+            return state.getDirection();
+        }
+        root = state;
+        if (table != null) {
+            table.newGeneration();
+        }
+        deadline = (timeBudgetNanos > 0) ? System.nanoTime() + timeBudgetNanos : Long.MAX_VALUE;
+        pool.invokeAll(tasks);
+        root = null;
+
+        java.util.Arrays.fill(rootVisits, 0L);
+        java.util.Arrays.fill(rootValues, 0.0);
+        for (Worker w : workers) {
+            for (int a = 0; a < ACTIONS; a++) {
+                int child = w.children[a];
+                if (child > 0) {
+                    rootVisits[a] += w.visits[child];
+                    rootValues[a] += w.valueSum[child];
+                }
+            }
+        }
+
+        int best = state.getDirection();
+        long bestVisits = -1;
+        double bestMean = Double.NEGATIVE_INFINITY;
+        for (int a = 0; a < ACTIONS; a++) {
+            if (rootVisits[a] == 0) continue;
+            double mean = rootValues[a] / rootVisits[a];
+            if (rootVisits[a] > bestVisits || (rootVisits[a] == bestVisits && mean > bestMean)) {
+                best = a;
+                bestVisits = rootVisits[a];
+                bestMean = mean;
+            }
+        }
+        return best;
+    }
+
+    /** 上一次 selectAction 時根節點各動作（0~3）的總拜訪次數；回轉方向恆為 0。 */
+    public long getRootVisits(int action) {
+        return rootVisits[action];
+    }
+
+    /** 上一次 selectAction 的總模擬次數。 */
+    public long getLastRolloutCount() {
+        long total = 0;
+        for (long v : rootVisits) total += v;
+        return total;
+    }
+
+    /**
+     * 單一 worker 的樹與 scratch。節點 0 是根；children[node * 4 + a] 為子節點索引（0 表示尚未展開）。
+     * 陣列在建構時依預算一次配置（每次模擬最多新增一個節點），節點用完時不再展開，只從葉節點做 rollout。
+     */
+    private final class Worker implements Callable<Void> {
+        private static final int MAX_NODES = 1 << 15;
+
+        private final int budget;
+        private final int maxNodes;
+        private final SplittableRandom rng;
+        private final GameState scratch = new GameState(0L);
+        private final int[] children;
+        private final int[] visits;
+        private final double[] valueSum;
+        private final int[] path;
+        private final double[] pathRewards;
+        private final int[] candidates = new int[ACTIONS];
+        private int nodeCount;
+
+        Worker(int budget, SplittableRandom rng) {
+            this.budget = budget;
+            this.rng = rng;
+            this.maxNodes = (int) Math.min(MAX_NODES, budget + 1L);
+            this.children = new int[maxNodes * ACTIONS];
+            this.visits = new int[maxNodes];
+            this.valueSum = new double[maxNodes];
+            this.path = new int[maxDepth + 1];
+            this.pathRewards = new double[maxDepth + 1];
+            scratch.setVerbose(false);
+            scratch.setTraceEvents(false);
+        }
+
+        @Override
+        public Void call() {
+            java.util.Arrays.fill(children, 0, nodeCount * ACTIONS, 0);
+            java.util.Arrays.fill(visits, 0, nodeCount, 0);
+            java.util.Arrays.fill(valueSum, 0, nodeCount, 0.0);
+            nodeCount = 1;
+            GameState rootState = root;
+            for (int i = 0; i < budget; i++) {
+                if (deadline != Long.MAX_VALUE && System.nanoTime() >= deadline) break;
+                simulate(rootState);
+            }
+            return null;
+        }
+
+        private void simulate(GameState rootState) {
+            scratch.copyFrom(rootState);
+            scratch.reseed(rng.nextLong());
+
+            // selection + expansion
+            int node = 0;
+            int depth = 0;
+            path[0] = 0;
+            while (!scratch.isDone() && depth < maxDepth) {
+                int action = selectChild(node);
+                int child = children[node * ACTIONS + action];
+                boolean expanded = false;
+                if (child == 0) {
+                    if (nodeCount >= maxNodes) break;
+                    child = nodeCount++;
+                    children[node * ACTIONS + action] = child;
+                    expanded = true;
+                }
+                scratch.stepByAction(action);
+                pathRewards[depth] = scratch.getReward();
+                node = child;
+                path[++depth] = node;
+                if (expanded) break;
+            }
+
+            // rollout（葉節點局面在 transposition table 中已有足夠樣本時直接取平均值）
+            double tail = 0.0;
+            if (!scratch.isDone()) {
+                long key = scratch.getZobristHash();
+                long entry = (table != null) ? table.probe(key) : 0L;
+                if (TranspositionTable.visits(entry) >= TT_TRUST) {
+                    tail = TranspositionTable.value(entry);
+                } else {
+                    tail = rollout(depth);
+                    if (table != null) {
+                        table.update(key, tail);
+                    }
+                }
+            }
+
+            // backup：從葉往根累加折扣回報
+            double ret = tail;
+            for (int d = depth; d >= 1; d--) {
+                ret = pathRewards[d - 1] + gamma * ret;
+                int n = path[d];
+                visits[n]++;
+                valueSum[n] += ret;
+            }
+            visits[0]++;
+        }
+
+        private double rollout(int depth) {
+            double ret = 0.0;
+            double discount = 1.0;
+            int steps = depth;
+            while (!scratch.isDone() && steps < maxDepth) {
+                scratch.stepByAction(rolloutAction(scratch));
+                ret += discount * scratch.getReward();
+                discount *= gamma;
+                steps++;
+            }
+            return ret;
+        }
+
+        /** UCT；未拜訪的子節點優先，不考慮 180 度回轉（會被 GameState 忽略，等同直走）。 */
+        private int selectChild(int node) {
+            GameState s = scratch;
+            int dir = s.getDirection();
+            double logParent = Math.log(Math.max(1, visits[node]));
+            int best = dir;
+            double bestScore = Double.NEGATIVE_INFINITY;
+            for (int a = 0; a < ACTIONS; a++) {
+                if (s.isReverseDirection(dir, a)) continue;
+                int child = children[node * ACTIONS + a];
+                double score;
+                if (child == 0 || visits[child] == 0) {
+                    // 未展開：隨機打破平手，避免總是先試 action 0
+                    score = 1e9 + rng.nextDouble();
+                } else {
+                    double mean = valueSum[child] / visits[child];
+                    score = mean + EXPLORATION * Math.sqrt(logParent / visits[child]);
+                }
+                if (score > bestScore) {
+                    bestScore = score;
+                    best = a;
+                }
+            }
+            return best;
+        }
+
+        /** rollout 策略：在不會立即死亡的動作中，一半機率往食物靠近，否則隨機。 */
+        private int rolloutAction(GameState s) {
+            int dir = s.getDirection();
+            int count = 0;
+            int toward = -1;
+            int hx = s.getHeadX(), hy = s.getHeadY();
+            int fx = s.getFoodX(), fy = s.getFoodY();
+            int dist = Math.abs(hx - fx) + Math.abs(hy - fy);
+            for (int a = 0; a < ACTIONS; a++) {
+                if (s.isReverseDirection(dir, a) || s.wouldCollide(a)) continue;
+                candidates[count++] = a;
+                int nx = hx + (a == 2 ? -1 : a == 3 ? 1 : 0);
+                int ny = hy + (a == 0 ? -1 : a == 1 ? 1 : 0);
+                if (fx >= 0 && Math.abs(nx - fx) + Math.abs(ny - fy) < dist) {
+                    toward = a;
+                }
+            }
+            if (count == 0) {
+                return dir;
+            }
+            if (toward >= 0 && rng.nextBoolean()) {
+                return toward;
+            }
+            return candidates[rng.nextInt(count)];
+        }
+    }
+}
@@ -0,0 +1,54 @@
+package light;
+
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * 選用的內嵌 HTTP endpoint，於 {@code /metrics} 輸出 {@link EnvMetrics}。
+ *
+ * 以 {@code -Dsnake.metrics.port=9100} 啟用；未設定時不會開任何 port。
+ * 只綁在 loopback，供本機的 Prometheus / curl 抓取。
+ */
+public final class MetricsHttpServer {
+
+    private static HttpServer server;
+
+    private MetricsHttpServer() {
+        // 工具類不允許實例化
+    }
+
+    /** 若有設定 snake.metrics.port 則啟動 endpoint；重複呼叫不會重開。 */
+    public static synchronized void startIfConfigured() {
+        Integer port = Integer.getInteger("snake.metrics.port");
+        if (port == null || port <= 0 || server != null) {
+            return;
+        }
+        try {
+            server = HttpServer.create(new InetSocketAddress("127.0.0.1", port), 0);
+            server.createContext("/metrics", exchange -> {
+                byte[] body = EnvMetrics.get().renderPrometheus().getBytes(StandardCharsets.UTF_8);
+                exchange.getResponseHeaders().set("Content-Type", "text/plain; version=0.0.4; charset=utf-8");
+                exchange.sendResponseHeaders(200, body.length);
+                try (OutputStream os = exchange.getResponseBody()) {
+                    os.write(body);
+                }
+            });
+            server.start();
+            System.out.println("[MetricsHttpServer] metrics 於 http://127.0.0.1:" + port + "/metrics");
+        } catch (IOException e) {
+            System.err.println("[MetricsHttpServer] 無法啟動 metrics endpoint: " + e.getMessage());
+            server = null;
+        }
+    }
+
+    public static synchronized void stop() {
+        if (server != null) {
+            server.stop(0);
+            server = null;
+        }
+    }
+}
@@ -0,0 +1,39 @@
+package light;
+
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * 動作來源：給定目前的 {@link GameState}，決定下一步 action（0=上, 1=下, 2=左, 3=右）。
+ *
+ * 實作不得修改傳入的 state；是否可跨執行緒共用由各實作自行說明。
+ */
+public interface Policy {
+
+    int selectAction(GameState state);
+
+    /**
+     * 依名稱建立內建策略：random / greedy / bfs / hamiltonian / mcts。
+     * hamiltonian 需要偶數邊長，奇數時退回 bfs；mcts 的預算由 -Dsnake.mcts.* 決定（見 {@link MctsPlanner#fromProperties()}）。
+     * 每次呼叫都回傳新的實例。
+     */
+    static Policy builtin(String name, int boardSize) {
+        switch (name.toLowerCase()) {
+            case "random":
+                return state -> ThreadLocalRandom.current().nextInt(4);
+            case "greedy":
+                return new GreedyPolicy();
+            case "hamiltonian":
+                if (boardSize % 2 == 0) {
+                    return new HamiltonianPolicy(boardSize);
+                }
+                System.err.println("[Policy] 棋盤邊長 " + boardSize + " 為奇數，無法使用 hamiltonian，改用 bfs。");
+                return new BfsPolicy();
+            case "bfs":
+                return new BfsPolicy();
+            case "mcts":
+                return MctsPlanner.fromProperties();
+            default:
+                throw new IllegalArgumentException("未知的內建策略: " + name);
+        }
+    }
+}
@@ -0,0 +1,301 @@
+package light;
+
+import jdk.incubator.vector.FloatVector;
+import jdk.incubator.vector.VectorOperators;
+import jdk.incubator.vector.VectorSpecies;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+/**
+ * 純 Java 的 DQN Q-network 推論（Linear + ReLU 的 MLP），權重由 agent/export_policy.py 匯出。
+ *
+ * 前向運算用 {@code jdk.incubator.vector} 的 FloatVector 做 SIMD 內積，
+ * 並以一次 4 筆 observation 為一組共用同一列權重，減少權重的重複載入。
+ * 執行時需加上 {@code --add-modules jdk.incubator.vector}。
+ *
+ * 權重陣列是唯讀的，可被多個執行緒共用；但中間結果的 scratch buffer 屬於單一實例，
+ * 因此一個 PolicyNetwork 實例同時只能由一個執行緒使用，多執行緒請各自 {@link #copy()}。
+ */
+public final class PolicyNetwork {
+
+    private static final VectorSpecies<Float> SPECIES = FloatVector.SPECIES_PREFERRED;
+    private static final int MAGIC = ('S') | ('N' << 8) | ('K' << 16) | ('P' << 24);
+
+    /** observation 格式，對應 export_policy.py 的 obs_mode。 */
+    public enum ObsMode {
+        /** 4 維特徵：dx, dy, snake_len, dnorm（train_agent_socket.py 的 FeatureExtractWrapper）。 */
+        FEATURES,
+        /** 攤平的 board 加上 head/food/len 與方向 one-hot（JavaSnakeSocketEnv 含 extras）。 */
+        BOARD_EXTRAS,
+        /** 只有攤平的 board。 */
+        BOARD
+    }
+
+    private final ObsMode obsMode;
+    private final int boardSize;
+    private final int[] inDims;
+    private final int[] outDims;
+    private final float[][] weights; // 每層 out x in，row-major
+    private final float[][] biases;
+
+    // scratch：兩塊 ping-pong buffer，依 batch 大小成長
+    private float[] bufA = new float[0];
+    private float[] bufB = new float[0];
+
+    private PolicyNetwork(ObsMode obsMode, int boardSize, int[] inDims, int[] outDims,
+                          float[][] weights, float[][] biases) {
+        this.obsMode = obsMode;
+        this.boardSize = boardSize;
+        this.inDims = inDims;
+        this.outDims = outDims;
+        this.weights = weights;
+        this.biases = biases;
+    }
+
+    /** 讀取 export_policy.py 匯出的權重檔；檔案截斷或維度不合理時丟出 IOException。 */
+    public static PolicyNetwork load(Path file) throws IOException {
+        ByteBuffer buf = ByteBuffer.wrap(Files.readAllBytes(file)).order(ByteOrder.LITTLE_ENDIAN);
+        if (buf.remaining() < 20 || buf.getInt() != MAGIC) {
+            throw new IOException("不是有效的 policy 檔（magic 不符）: " + file);
+        }
+        int version = buf.getInt();
+        if (version != 1) {
+            throw new IOException("不支援的 policy 檔版本: " + version);
+        }
+        int mode = buf.getInt();
+        if (mode < 0 || mode >= ObsMode.values().length) {
+            throw new IOException("未知的 obs_mode: " + mode);
+        }
+        int boardSize = buf.getInt();
+        int layers = buf.getInt();
+        if (layers < 1 || (long) layers * 8 > buf.remaining()) {
+            throw new IOException("policy 檔的層數不合理: " + layers + ": " + file);
+        }
+        int[] inDims = new int[layers];
+        int[] outDims = new int[layers];
+        float[][] w = new float[layers][];
+        float[][] b = new float[layers][];
+        for (int l = 0; l < layers; l++) {
+            if (buf.remaining() < 8) {
+                throw new IOException("policy 檔在第 " + l + " 層的維度處提早結束: " + file);
+            }
+            inDims[l] = buf.getInt();
+            outDims[l] = buf.getInt();
+            if (inDims[l] < 1 || outDims[l] < 1) {
+                throw new IOException("第 " + l + " 層的維度不合理: " + inDims[l] + " x " + outDims[l] + ": " + file);
+            }
+            if (l > 0 && inDims[l] != outDims[l - 1]) {
+                throw new IOException("第 " + l + " 層輸入維度 " + inDims[l] + " 與上一層輸出 " + outDims[l - 1] + " 不符");
+            }
+            long floats = (long) inDims[l] * outDims[l] + outDims[l];
+            if (floats * Float.BYTES > buf.remaining()) {
+                throw new IOException("policy 檔在第 " + l + " 層的權重處提早結束（需要 " + floats * Float.BYTES
+                        + " bytes，剩 " + buf.remaining() + "）: " + file);
+            }
+            w[l] = new float[inDims[l] * outDims[l]];
+            buf.asFloatBuffer().get(w[l]);
+            buf.position(buf.position() + w[l].length * Float.BYTES);
+            b[l] = new float[outDims[l]];
+            buf.asFloatBuffer().get(b[l]);
+            buf.position(buf.position() + b[l].length * Float.BYTES);
+        }
+        return new PolicyNetwork(ObsMode.values()[mode], boardSize, inDims, outDims, w, b);
+    }
+
+    /** 共用權重、擁有獨立 scratch buffer 的副本，給其他執行緒使用。 */
+    public PolicyNetwork copy() {
+        return new PolicyNetwork(obsMode, boardSize, inDims, outDims, weights, biases);
+    }
+
+    public ObsMode getObsMode() {
+        return obsMode;
+    }
+
+    public int getBoardSize() {
+        return boardSize;
+    }
+
+    public int getInputSize() {
+        return inDims[0];
+    }
+
+    public int getOutputSize() {
+        return outDims[outDims.length - 1];
+    }
+
+    /**
+     * 對 {@code batch} 筆 observation 做前向運算。
+     *
+     * @param input  batch x inputSize，row-major
+     * @param output batch x outputSize，寫入各 action 的 Q 值
+     */
+    public void forward(float[] input, int batch, float[] output) {
+        int maxWidth = 0;
+        for (int d : outDims) {
+            maxWidth = Math.max(maxWidth, d);
+        }
+        int need = batch * maxWidth;
+        if (bufA.length < need) {
+            bufA = new float[need];
+            bufB = new float[need];
+        }
+
+        float[] x = input;
+        int layers = weights.length;
+        for (int l = 0; l < layers; l++) {
+            float[] y = (l == layers - 1) ? output : ((l % 2 == 0) ? bufA : bufB);
+            dense(weights[l], biases[l], inDims[l], outDims[l], x, batch, y, l < layers - 1);
+            x = y;
+        }
+    }
+
+    /**
+     * 對每筆 observation 取 Q 值最大的 action。
+     *
+     * @param qScratch 至少 batch x outputSize 的暫存陣列
+     */
+    public void argmax(float[] input, int batch, float[] qScratch, int[] actions) {
+        forward(input, batch, qScratch);
+        int n = getOutputSize();
+        for (int b = 0; b < batch; b++) {
+            int best = 0;
+            float bestQ = qScratch[b * n];
+            for (int a = 1; a < n; a++) {
+                float q = qScratch[b * n + a];
+                if (q > bestQ) {
+                    bestQ = q;
+                    best = a;
+                }
+            }
+            actions[b] = best;
+        }
+    }
+
+    /** y = act(W x + b)，一次處理 4 筆 batch 共用同一列權重。 */
+    private static void dense(float[] w, float[] bias, int in, int out,
+                              float[] x, int batch, float[] y, boolean relu) {
+        int upper = SPECIES.loopBound(in);
+        int step = SPECIES.length();
+        for (int o = 0; o < out; o++) {
+            int wOff = o * in;
+            int b = 0;
+            for (; b + 3 < batch; b += 4) {
+                int x0 = b * in, x1 = x0 + in, x2 = x1 + in, x3 = x2 + in;
+                FloatVector acc0 = FloatVector.zero(SPECIES);
+                FloatVector acc1 = FloatVector.zero(SPECIES);
+                FloatVector acc2 = FloatVector.zero(SPECIES);
+                FloatVector acc3 = FloatVector.zero(SPECIES);
+                int i = 0;
+                for (; i < upper; i += step) {
+                    FloatVector wv = FloatVector.fromArray(SPECIES, w, wOff + i);
+                    acc0 = wv.fma(FloatVector.fromArray(SPECIES, x, x0 + i), acc0);
+                    acc1 = wv.fma(FloatVector.fromArray(SPECIES, x, x1 + i), acc1);
+                    acc2 = wv.fma(FloatVector.fromArray(SPECIES, x, x2 + i), acc2);
+                    acc3 = wv.fma(FloatVector.fromArray(SPECIES, x, x3 + i), acc3);
+                }
+                float s0 = acc0.reduceLanes(VectorOperators.ADD);
+                float s1 = acc1.reduceLanes(VectorOperators.ADD);
+                float s2 = acc2.reduceLanes(VectorOperators.ADD);
+                float s3 = acc3.reduceLanes(VectorOperators.ADD);
+                for (; i < in; i++) {
+                    float wi = w[wOff + i];
+                    s0 += wi * x[x0 + i];
+                    s1 += wi * x[x1 + i];
+                    s2 += wi * x[x2 + i];
+                    s3 += wi * x[x3 + i];
+                }
+                y[b * out + o] = activate(s0 + bias[o], relu);
+                y[(b + 1) * out + o] = activate(s1 + bias[o], relu);
+                y[(b + 2) * out + o] = activate(s2 + bias[o], relu);
+                y[(b + 3) * out + o] = activate(s3 + bias[o], relu);
+            }
+            for (; b < batch; b++) {
+                int xOff = b * in;
+                FloatVector acc = FloatVector.zero(SPECIES);
+                int i = 0;
+                for (; i < upper; i += step) {
+                    acc = FloatVector.fromArray(SPECIES, w, wOff + i)
+                            .fma(FloatVector.fromArray(SPECIES, x, xOff + i), acc);
+                }
+                float s = acc.reduceLanes(VectorOperators.ADD);
+                for (; i < in; i++) {
+                    s += w[wOff + i] * x[xOff + i];
+                }
+                y[b * out + o] = activate(s + bias[o], relu);
+            }
+        }
+    }
+
+    private static float activate(float v, boolean relu) {
+        return (relu && v < 0f) ? 0f : v;
+    }
+
+    // ================== observation 編碼 ==================
+
+    /**
+     * 依 {@link #getObsMode()} 把 state 編碼成網路輸入，寫入 {@code out[offset..offset+inputSize)}。
+     * 與 Python 端 wrapper 的計算方式一致（含 FeatureExtractWrapper 以 row-major 第一個蛇身格當頭的行為）。
+     */
+    public void encode(GameState state, float[] out, int offset) {
+        int[][] board = state.getBoard();
+        int n = board.length;
+        switch (obsMode) {
+            case FEATURES: {
+                int headX = -1, headY = -1, foodX = -1, foodY = -1, body = 0;
+                for (int y = 0; y < n; y++) {
+                    for (int x = 0; x < n; x++) {
+                        int v = board[y][x];
+                        if (v == 1) {
+                            body++;
+                            if (headX < 0) {
+                                headX = x;
+                                headY = y;
+                            }
+                        } else if (v == 2 && foodX < 0) {
+                            foodX = x;
+                            foodY = y;
+                        }
+                    }
+                }
+                if (headX < 0) {
+                    headX = headY = n / 2;
+                }
+                if (foodX < 0) {
+                    foodX = foodY = n / 2;
+                }
+                out[offset] = (foodX - headX) / (float) n;
+                out[offset + 1] = (foodY - headY) / (float) n;
+                out[offset + 2] = body / (float) (n * n);
+                out[offset + 3] = (Math.abs(foodX - headX) + Math.abs(foodY - headY)) / (float) (2 * n);
+                break;
+            }
+            case BOARD_EXTRAS:
+            case BOARD: {
+                int p = offset;
+                for (int y = 0; y < n; y++) {
+                    for (int x = 0; x < n; x++) {
+                        out[p++] = board[y][x];
+                    }
+                }
+                if (obsMode == ObsMode.BOARD_EXTRAS) {
+                    out[p++] = state.getHeadX() / (float) n;
+                    out[p++] = state.getHeadY() / (float) n;
+                    out[p++] = state.getFoodX() / (float) n;
+                    out[p++] = state.getFoodY() / (float) n;
+                    out[p++] = state.getSnakeLength() / (float) (n * n);
+                    int d = state.getDirection();
+                    for (int k = 0; k < 4; k++) {
+                        out[p++] = (k == d) ? 1f : 0f;
+                    }
+                }
+                break;
+            }
+            default:
+                break;
+        }
+    }
+}
@@ -0,0 +1,218 @@
+package light;
+
+import java.util.Random;
+
+/**
+ * 放在 Java env server 端的 prioritized replay buffer（proportional 版）。
+ *
+ * 所有 transition 都存在預先配置好的 primitive 陣列中（環狀覆寫），
+ * obs / next_obs 以 {@code obsDim} 為步長攤平成一維 float[]。
+ * 抽樣使用 {@link SumTree}，priority 為 {@code (|td| + eps)^alpha}。
+ *
+ * Python learner 透過 {@link SocketProtocol} 的 TRANSITION / SAMPLE / PRIORITIES
+ * 訊息存取這個 buffer，請參考 {@link SocketSnakeServer#enableReplayBuffer(int, double)}。
+ */
+public class PrioritizedReplayBuffer {
+
+    /** 避免 priority 為 0 導致永遠抽不到。 */
+    private static final double PRIORITY_EPS = 1e-6;
+
+    private final int capacity;
+    private final int obsDim;
+    private final double alpha;
+
+    private final float[] obs;
+    private final float[] nextObs;
+    private final int[] actions;
+    private final float[] rewards;
+    private final boolean[] dones;
+
+    private final SumTree tree;
+
+    private int nextIndex = 0;  // 下一個要寫入的 slot
+    private int size = 0;       // 目前有效筆數
+    private double maxPriority = 1.0;
+
+    /**
+     * @param capacity 最多保存幾筆 transition
+     * @param obsDim   每個 observation 的長度
+     * @param alpha    priority 指數（0 = 均勻抽樣）
+     */
+    public PrioritizedReplayBuffer(int capacity, int obsDim, double alpha) {
+        if (obsDim <= 0) {
+            throw new IllegalArgumentException("obsDim 必須 > 0: " + obsDim);
+        }
+        this.capacity = capacity;
+        this.obsDim = obsDim;
+        this.alpha = alpha;
+        this.obs = new float[capacity * obsDim];
+        this.nextObs = new float[capacity * obsDim];
+        this.actions = new int[capacity];
+        this.rewards = new float[capacity];
+        this.dones = new boolean[capacity];
+        this.tree = new SumTree(capacity);
+    }
+
+    public int getCapacity() {
+        return capacity;
+    }
+
+    public int getObsDim() {
+        return obsDim;
+    }
+
+    public synchronized int size() {
+        return size;
+    }
+
+    /**
+     * 新增一筆 transition，新資料以目前最大的 priority 寫入，確保至少被抽到一次。
+     *
+     * @return 寫入的 slot index
+     */
+    public synchronized int add(float[] observation, int action, float reward,
+                                float[] nextObservation, boolean done) {
+        if (observation.length != obsDim || nextObservation.length != obsDim) {
+            throw new IllegalArgumentException("obs 長度需為 " + obsDim + "，收到 "
+                    + observation.length + " / " + nextObservation.length);
+        }
+        int slot = nextIndex;
+        System.arraycopy(observation, 0, obs, slot * obsDim, obsDim);
+        System.arraycopy(nextObservation, 0, nextObs, slot * obsDim, obsDim);
+        actions[slot] = action;
+        rewards[slot] = reward;
+        dones[slot] = done;
+        tree.set(slot, maxPriority);
+
+        nextIndex = (slot + 1) % capacity;
+        if (size < capacity) {
+            size++;
+        }
+        return slot;
+    }
+
+    /**
+     * 依 priority 分層抽樣 {@code out.getBatchSize()} 筆資料寫入 {@code out}。
+     * importance-sampling 權重以 batch 內最大值正規化到 (0, 1]。
+     *
+     * @param beta IS 權重指數（通常由 0.4 線性退火到 1.0）
+     * @return 實際抽到的筆數；buffer 為空時回傳 0
+     */
+    public synchronized int sample(SampleBatch out, double beta, Random rnd) {
+        if (size == 0) {
+            return 0;
+        }
+        int batch = out.getBatchSize();
+        double total = tree.total();
+        double segment = total / batch;
+        double maxWeight = 0.0;
+
+        for (int i = 0; i < batch; i++) {
+            double prefix = segment * (i + rnd.nextDouble());
+            int slot = tree.find(prefix);
+            if (slot >= size) {
+                // 浮點誤差落到尚未寫入的 slot，退回最後一筆有效資料
+                slot = size - 1;
+            }
+            double p = tree.get(slot) / total;
+            double w = Math.pow(size * p, -beta);
+            if (w > maxWeight) {
+                maxWeight = w;
+            }
+            out.indices[i] = slot;
+            out.weights[i] = (float) w;
+            System.arraycopy(obs, slot * obsDim, out.obs, i * obsDim, obsDim);
+            System.arraycopy(nextObs, slot * obsDim, out.nextObs, i * obsDim, obsDim);
+            out.actions[i] = actions[slot];
+            out.rewards[i] = rewards[slot];
+            out.dones[i] = dones[slot];
+        }
+        if (maxWeight > 0.0) {
+            for (int i = 0; i < batch; i++) {
+                out.weights[i] = (float) (out.weights[i] / maxWeight);
+            }
+        }
+        return batch;
+    }
+
+    /**
+     * 由 learner 回傳新的 TD error，更新對應 slot 的 priority。
+     */
+    public synchronized void updatePriorities(int[] indices, double[] tdErrors) {
+        int n = Math.min(indices.length, tdErrors.length);
+        for (int i = 0; i < n; i++) {
+            int slot = indices[i];
+            if (slot < 0 || slot >= size) {
+                continue;
+            }
+            double priority = Math.pow(Math.abs(tdErrors[i]) + PRIORITY_EPS, alpha);
+            if (priority > maxPriority) {
+                maxPriority = priority;
+            }
+            tree.set(slot, priority);
+        }
+    }
+
+    /**
+     * 一次抽樣結果，陣列可重複使用以避免每次 SAMPLE 都配置新記憶體。
+     */
+    public static final class SampleBatch {
+        private final int batchSize;
+        private final int obsDim;
+        final int[] indices;
+        final float[] weights;
+        final float[] obs;
+        final float[] nextObs;
+        final int[] actions;
+        final float[] rewards;
+        final boolean[] dones;
+
+        public SampleBatch(int batchSize, int obsDim) {
+            this.batchSize = batchSize;
+            this.obsDim = obsDim;
+            this.indices = new int[batchSize];
+            this.weights = new float[batchSize];
+            this.obs = new float[batchSize * obsDim];
+            this.nextObs = new float[batchSize * obsDim];
+            this.actions = new int[batchSize];
+            this.rewards = new float[batchSize];
+            this.dones = new boolean[batchSize];
+        }
+
+        public int getBatchSize() {
+            return batchSize;
+        }
+
+        public int getObsDim() {
+            return obsDim;
+        }
+
+        public int[] getIndices() {
+            return indices;
+        }
+
+        public float[] getWeights() {
+            return weights;
+        }
+
+        public float[] getObs() {
+            return obs;
+        }
+
+        public float[] getNextObs() {
+            return nextObs;
+        }
+
+        public int[] getActions() {
+            return actions;
+        }
+
+        public float[] getRewards() {
+            return rewards;
+        }
+
+        public boolean[] getDones() {
+            return dones;
+        }
+    }
+}
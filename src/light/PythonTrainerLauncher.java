@@ -11,9 +11,30 @@ import java.io.IOException;
  */
 public class PythonTrainerLauncher {
 
-    // 專案根目錄下的 agent 目錄，相對於執行路徑可視情況調整
-    private static final String AGENT_DIR = "D:\\workspace\\SnakeGame-RL\\agent";
-    private static final String CONFIG_PATH = AGENT_DIR + File.separator + "config.json";
+    /**
+     * 專案根目錄下的 agent 目錄：優先使用 -Dsnake.agent.dir，
+     * 否則為目前工作目錄下的 agent/（與 SocketSnakeServerGame 相同的慣例）。
+     */
+    static File resolveAgentDir() {
+        String configured = System.getProperty("snake.agent.dir");
+        if (configured != null && !configured.isEmpty()) {
+            return new File(configured);
+        }
+        return new File(System.getProperty("user.dir"), "agent");
+    }
+
+    /**
+     * Python 執行檔：優先使用 -Dsnake.python，
+     * 否則 Windows 用 python、其他平台用 python3。
+     */
+    static String pythonExecutable() {
+        String configured = System.getProperty("snake.python");
+        if (configured != null && !configured.isEmpty()) {
+            return configured;
+        }
+        boolean windows = System.getProperty("os.name", "").toLowerCase().startsWith("windows");
+        return windows ? "python" : "python3";
+    }
 
     /**
      * 寫入 config.json 並啟動 Python 的 train_agent.py。
@@ -34,10 +55,9 @@ public class PythonTrainerLauncher {
         }
 
         try {
-            ProcessBuilder pb = new ProcessBuilder(
-                    "cmd.exe", "/c",
-                    "cd /d " + AGENT_DIR + " && python train_agent.py"
-            );
+            // 直接啟動 python，不經過 cmd.exe，Linux / Windows 皆可用
+            ProcessBuilder pb = new ProcessBuilder(pythonExecutable(), "train_agent.py");
+            pb.directory(resolveAgentDir());
             pb.inheritIO(); // 讓 Python 輸出直接顯示在同一個 console
             Process process = pb.start();
 
@@ -62,7 +82,7 @@ public class PythonTrainerLauncher {
      * 寫 `agent/config.json`，內容為 episodes / max_steps。
      */
     private static void writeConfigJson(int episodes, int maxSteps) throws IOException {
-        File configFile = new File(CONFIG_PATH);
+        File configFile = new File(resolveAgentDir(), "config.json");
         File parentDir = configFile.getParentFile();
         if (parentDir != null && !parentDir.exists()) {
             if (!parentDir.mkdirs()) {
@@ -0,0 +1,232 @@
+package light;
+
+/**
+ * 綁定單一 {@link GameState} 的可達區域分析：把空格（含食物）分成 4-連通的區塊並記錄每塊大小，
+ * 用來回答「走某個 action 之後，新的頭還能到達多少空格」，偵測把自己困住的走法。
+ *
+ * 區塊標籤跨步保留並增量更新：每走一步只有頭進入的格子與尾巴離開的格子會改變。
+ * 頭佔住的格子若在局部（周圍 8 格）看來不會把區塊切開，只把該區塊大小減一；
+ * 尾巴空出的格子若只接到同一個區塊，就併入該區塊。
+ * 只有在可能切開區塊、或空出的格子連接兩個不同區塊時，才重新對整個棋盤做一次標記。
+ * 中間跳過步數、reset 或 copyFrom 之後也會重新標記。
+ *
+ * 所有暫存陣列在建構時配置，之後不再配置物件；與 GameState 一樣不是 thread-safe。
+ */
+public final class ReachabilityAnalyzer {
+
+    private static final int BLOCKED = -1;
+
+    private final GameState state;
+    private final int size;
+    private final int[] label;     // 每格的區塊編號，蛇身為 BLOCKED
+    private final int[] compSize;  // 依區塊編號的大小
+    private final int[] queue;
+    private int labelCount;
+
+    private long syncedVersion = Long.MIN_VALUE;
+    private int syncedHead = -1;
+    private int syncedTail = -1;
+
+    private long fullRelabels;
+    private long incrementalUpdates;
+
+    public ReachabilityAnalyzer(GameState state) {
+        this.state = state;
+        this.size = state.getBoardSize();
+        int cells = size * size;
+        this.label = new int[cells];
+        this.compSize = new int[cells + 1];
+        this.queue = new int[cells];
+    }
+
+    /**
+     * 若採取 action，新頭所在區塊扣掉頭本身後剩下的空格數；會立即死亡（撞牆、撞身體）時為 0。
+     * 180 度回轉會被 GameState 當成直走，因此回傳直走的結果。
+     * 走進目前尾巴那格時，以尾巴周圍各區塊的大小合計。
+     */
+    public int reachableAfter(int action) {
+        sync();
+        if (state.isReverseDirection(state.getDirection(), action)) {
+            action = state.getDirection();
+        }
+        if (state.wouldCollide(action)) {
+            return 0;
+        }
+        int x = state.getHeadX();
+        int y = state.getHeadY();
+        switch (action) {
+            case 0: y--; break;
+            case 1: y++; break;
+            case 2: x--; break;
+            case 3: x++; break;
+            default: break;
+        }
+        int cell = y * size + x;
+        if (label[cell] == BLOCKED) {
+            // 唯一可能是走進即將移開的尾巴
+            return regionAround(cell);
+        }
+        return compSize[label[cell]] - 1;
+    }
+
+    /** 四個 action 的 {@link #reachableAfter(int)}，寫入 out[0..4)。 */
+    public void reachableAfterAll(int[] out) {
+        for (int a = 0; a < 4; a++) {
+            out[a] = reachableAfter(a);
+        }
+    }
+
+    /** 目前蛇頭周圍（上下左右）相鄰區塊的空格總數，即頭在下一步之後還能到達的範圍。 */
+    public int regionAroundHead() {
+        sync();
+        if (state.getHeadX() < 0) {
+            return 0;
+        }
+        return regionAround(state.getHeadY() * size + state.getHeadX());
+    }
+
+    /** 目前棋盤上的空格（含食物）總數。 */
+    public int freeCells() {
+        sync();
+        int total = 0;
+        for (int l = 0; l < labelCount; l++) {
+            total += compSize[l];
+        }
+        return total;
+    }
+
+    public long getFullRelabelCount() {
+        return fullRelabels;
+    }
+
+    public long getIncrementalUpdateCount() {
+        return incrementalUpdates;
+    }
+
+    private int regionAround(int cell) {
+        int x = cell % size;
+        int y = cell / size;
+        int l0 = (y > 0) ? label[cell - size] : BLOCKED;
+        int l1 = (y < size - 1) ? label[cell + size] : BLOCKED;
+        int l2 = (x > 0) ? label[cell - 1] : BLOCKED;
+        int l3 = (x < size - 1) ? label[cell + 1] : BLOCKED;
+        int total = 0;
+        if (l0 != BLOCKED) total += compSize[l0];
+        if (l1 != BLOCKED && l1 != l0) total += compSize[l1];
+        if (l2 != BLOCKED && l2 != l0 && l2 != l1) total += compSize[l2];
+        if (l3 != BLOCKED && l3 != l0 && l3 != l1 && l3 != l2) total += compSize[l3];
+        return total;
+    }
+
+    /** 讓標籤對應到 state 目前的棋盤：同一版本直接沿用，剛好前進一步則增量更新，否則重新標記。 */
+    private void sync() {
+        long version = state.version();
+        if (version == syncedVersion) {
+            return;
+        }
+        if (version == syncedVersion + 1 && applyStep()) {
+            incrementalUpdates++;
+        } else {
+            relabel();
+        }
+        syncedVersion = version;
+        syncedHead = state.headCell();
+        syncedTail = state.tailCell();
+    }
+
+    /** 依上一次的頭尾位置增量更新；需要整盤重新標記時回傳 false。 */
+    private boolean applyStep() {
+        int[][] board = state.getBoard();
+
+        // 尾巴離開的格子變回空格（吃到食物或頭剛好走進舊尾巴時，該格仍是蛇身）
+        int oldTail = syncedTail;
+        if (oldTail >= 0 && board[oldTail / size][oldTail % size] != 1 && label[oldTail] == BLOCKED) {
+            int x = oldTail % size;
+            int y = oldTail / size;
+            int joined = BLOCKED;
+            for (int k = 0; k < 4; k++) {
+                int l = BLOCKED;
+                switch (k) {
+                    case 0: if (y > 0) l = label[oldTail - size]; break;
+                    case 1: if (y < size - 1) l = label[oldTail + size]; break;
+                    case 2: if (x > 0) l = label[oldTail - 1]; break;
+                    default: if (x < size - 1) l = label[oldTail + 1]; break;
+                }
+                if (l == BLOCKED || l == joined) continue;
+                if (joined != BLOCKED) {
+                    return false; // 連接兩個不同區塊
+                }
+                joined = l;
+            }
+            if (joined == BLOCKED) {
+                if (labelCount >= label.length) {
+                    return false;
+                }
+                joined = labelCount++;
+                compSize[joined] = 0;
+            }
+            label[oldTail] = joined;
+            compSize[joined]++;
+        }
+
+        // 頭佔住的格子（撞牆時頭沒動；撞到自己時該格本來就是蛇身）
+        int head = state.headCell();
+        if (head != syncedHead && label[head] != BLOCKED) {
+            if (mayDisconnect(head)) {
+                return false;
+            }
+            compSize[label[head]]--;
+            label[head] = BLOCKED;
+        }
+        return true;
+    }
+
+    /**
+     * 移除 cell 後，其上下左右的空格在周圍 8 格內是否仍彼此相連；不相連時全域上可能被切開。
+     * 只看局部，因此是保守判斷（可能誤報，不會漏報）。
+     */
+    private boolean mayDisconnect(int cell) {
+        int x = cell % size;
+        int y = cell / size;
+        // 順時針：上、右上、右、右下、下、左下、左、左上
+        boolean n = free(x, y - 1), ne = free(x + 1, y - 1), e = free(x + 1, y), se = free(x + 1, y + 1);
+        boolean s = free(x, y + 1), sw = free(x - 1, y + 1), w = free(x - 1, y), nw = free(x - 1, y - 1);
+        int orth = (n ? 1 : 0) + (e ? 1 : 0) + (s ? 1 : 0) + (w ? 1 : 0);
+        int links = ((n && ne && e) ? 1 : 0) + ((e && se && s) ? 1 : 0)
+                + ((s && sw && w) ? 1 : 0) + ((w && nw && n) ? 1 : 0);
+        int groups = (links == 4) ? 1 : orth - links;
+        return groups > 1;
+    }
+
+    private boolean free(int x, int y) {
+        return x >= 0 && y >= 0 && x < size && y < size && label[y * size + x] != BLOCKED;
+    }
+
+    /** 對整個棋盤的空格做 4-連通標記。 */
+    private void relabel() {
+        fullRelabels++;
+        int[][] board = state.getBoard();
+        int cells = size * size;
+        for (int c = 0; c < cells; c++) {
+            label[c] = (board[c / size][c % size] == 1) ? BLOCKED : Integer.MAX_VALUE;
+        }
+        labelCount = 0;
+        for (int start = 0; start < cells; start++) {
+            if (label[start] != Integer.MAX_VALUE) continue;
+            int l = labelCount++;
+            int head = 0, tail = 0;
+            queue[tail++] = start;
+            label[start] = l;
+            while (head < tail) {
+                int c = queue[head++];
+                int x = c % size;
+                int y = c / size;
+                if (y > 0 && label[c - size] == Integer.MAX_VALUE) { label[c - size] = l; queue[tail++] = c - size; }
+                if (y < size - 1 && label[c + size] == Integer.MAX_VALUE) { label[c + size] = l; queue[tail++] = c + size; }
+                if (x > 0 && label[c - 1] == Integer.MAX_VALUE) { label[c - 1] = l; queue[tail++] = c - 1; }
+                if (x < size - 1 && label[c + 1] == Integer.MAX_VALUE) { label[c + 1] = l; queue[tail++] = c + 1; }
+            }
+            compSize[l] = tail;
+        }
+    }
+}
@@ -0,0 +1,114 @@
+package light;
+
+import java.security.SecureRandom;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 可在斷線後恢復的 session：client 斷線時 env 的 {@link GameState} 不丟掉，以 INIT 發出的 token 保留一段寬限期
+ * （{@code -Dsnake.session.grace_ms}，預設 60000），同一個 client 在期限內重新連線並送出 {@code RESUME} 就接著原本的局繼續。
+ *
+ * 恢復時不能重送或漏掉任何一步，所以 session 另外記錄：
+ * <ul>
+ *   <li>{@code actions}：server 已執行的 ACTION 數；client 在 RESUME 帶上自己送出的數量，
+ *       兩者相同表示斷線前最後一個 ACTION 已經執行，差一表示它沒有送到、client 要重送。</li>
+ *   <li>{@code outbox}：最後一個 ACTION 之後送出的訊息（STATE，或 RESET + STATE），
+ *       最後一個 ACTION 已經執行時原樣重送，client 就能拿到斷線時沒收到的結果。</li>
+ * </ul>
+ */
+public final class SessionRegistry {
+
+    public static final long DEFAULT_GRACE_MS = Long.getLong("snake.session.grace_ms", 60_000L);
+
+    private static final SecureRandom TOKENS = new SecureRandom();
+
+    /** 一個 client 的 env 狀態與協定進度；同一時間只由一條連線使用。 */
+    public static final class Session {
+        /** INIT 發給 client 的 token；null 表示不可恢復（例如 LoadGenerator 的 session）。 */
+        final String token;
+        final GameState state;
+        final ConnectionConfig config = new ConnectionConfig();
+        /** 上一個 ACTION（含 repeat）累積的 reward 與實際步數，隨下一個 STATE 送出。 */
+        double stepReward;
+        int stepsTaken;
+        /** 已執行的 ACTION 數。 */
+        long actions;
+        /** 最後一個 ACTION 之後送出的訊息（已編碼的整行）。 */
+        final List<String> outbox = new ArrayList<>();
+        long detachedAt;
+
+        Session(String token, GameState state) {
+            this.token = token;
+            this.state = state;
+            this.stepReward = state.getReward();
+        }
+
+        public String getToken() {
+            return token;
+        }
+
+        public GameState getState() {
+            return state;
+        }
+    }
+
+    private final long graceNanos;
+    private final Map<String, Session> detached = new LinkedHashMap<>();
+
+    public SessionRegistry(long graceMs) {
+        this.graceNanos = TimeUnit.MILLISECONDS.toNanos(graceMs);
+    }
+
+    public long getGraceMs() {
+        return TimeUnit.NANOSECONDS.toMillis(graceNanos);
+    }
+
+    /** 以新的 token 開一個 session。 */
+    public Session open(GameState state) {
+        byte[] bytes = new byte[12];
+        TOKENS.nextBytes(bytes);
+        StringBuilder token = new StringBuilder(bytes.length * 2);
+        for (byte b : bytes) {
+            token.append(Character.forDigit((b >> 4) & 0xF, 16)).append(Character.forDigit(b & 0xF, 16));
+        }
+        return new Session(token.toString(), state);
+    }
+
+    /** 連線中斷：保留 session 直到寬限期結束。 */
+    public synchronized void detach(Session session) {
+        purgeExpired();
+        if (session.token == null) {
+            return;
+        }
+        session.detachedAt = System.nanoTime();
+        detached.put(session.token, session);
+    }
+
+    /** 取回寬限期內的 session（取回後就不再保留）；token 不存在或已過期時回傳 null。 */
+    public synchronized Session resume(String token) {
+        purgeExpired();
+        return detached.remove(token);
+    }
+
+    public synchronized int detachedCount() {
+        purgeExpired();
+        return detached.size();
+    }
+
+    private void purgeExpired() {
+        long now = System.nanoTime();
+        Iterator<Session> it = detached.values().iterator();
+        while (it.hasNext()) {
+            Session s = it.next();
+            if (now - s.detachedAt < graceNanos) {
+                break; // 依 detach 順序排列，之後的都還沒過期
+            }
+            it.remove();
+            System.out.println("[SessionRegistry] session " + s.token + " 超過寬限期，丟棄（已執行 " + s.actions + " 個 ACTION）");
+        }
+    }
+}
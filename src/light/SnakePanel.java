@@ -26,16 +26,19 @@ public class SnakePanel extends JPanel {
     @Override
     protected void paintComponent(Graphics g0) {
         super.paintComponent(g0);
-        Graphics2D g = (Graphics2D) g0;
-        int[][] board = getBoard();
+        paintBoard((Graphics2D) g0, getBoard(), getWidth(), getHeight());
+    }
+
+    /**
+     * 把 board 畫滿 panelW × panelH 的區域（格子大小以整數除法加餘數分配，確保剛好鋪滿）。
+     * 也給 {@link EpisodeExporter} 在 headless 環境畫到 BufferedImage 上，輸出與視窗相同的畫面。
+     */
+    static void paintBoard(Graphics2D g, int[][] board, int panelW, int panelH) {
         if (board == null) return;
         int rows = board.length;
         if (rows == 0) return;
         int cols = board[0].length;
 
-        int panelW = getWidth();
-        int panelH = getHeight();
-
         // Integer division + remainder distribution to ensure exact coverage
         int baseW = panelW / cols;
         int remW = panelW % cols;
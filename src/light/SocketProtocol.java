@@ -1,6 +1,7 @@
 package light;
 
 import com.google.gson.Gson;
+import com.google.gson.JsonArray;
 import com.google.gson.JsonObject;
 import com.google.gson.JsonParser;
 
@@ -9,7 +10,9 @@ import com.google.gson.JsonParser;
  *
  * 封包格式統一為單行 JSON：
  * {
- *   "type": "STATE" | "ACTION" | "INIT" | "RESET" | "PING",
+ *   "type": "STATE" | "ACTION" | "INIT" | "RESET" | "PING"
+ *           | "TRANSITION" | "SAMPLE" | "SAMPLE_RESULT" | "PRIORITIES"
+ *           | "REGISTER" | "HEARTBEAT" | "ROUTE" | "RESUME" | ...,
  *   "payload": { ... } // 可為空物件
  * }
  */
@@ -27,7 +30,20 @@ public final class SocketProtocol {
         ACTION,  // 傳送動作 (action)
         RESET,   // 重置一局
         INIT,    // 初始資訊 (例如 boardSize)
-        PING     // 心跳
+        PING,    // 心跳
+        TRANSITION,    // learner → server：寫入一筆 transition 到 replay buffer
+        SAMPLE,        // learner → server：要求抽一個 minibatch
+        SAMPLE_RESULT, // server → learner：抽樣結果
+        PRIORITIES,    // learner → server：回寫新的 TD error / priority
+        ARENA_STATE,   // server → agent：多蛇 arena 的狀態
+        ARENA_ACTION,  // agent → server：arena 中一條或全部蛇的動作
+        BATCH_STATE,   // server → learner：EnvPool 中所有 env 的狀態
+        BATCH_ACTION,  // learner → server：所有 env 或單一 shard 的動作
+        CONFIG,        // agent → server 修改連線設定；server → agent 回覆實際生效的設定
+        REGISTER,      // env node → coordinator：登記 node 與它的 port；coordinator 回覆 node id
+        HEARTBEAT,     // env node → coordinator：目前空閒的 port 與延遲；coordinator 原樣回傳 t
+        ROUTE,         // actor → coordinator 要一個空閒的 env server；coordinator 回覆 host / port
+        RESUME         // client → server 以 INIT 的 session token 接回斷線前的局；server 回覆是否成功
     }
 
     /**
@@ -118,6 +134,131 @@ public final class SocketProtocol {
         return new SocketMessage(MessageType.STATE, payload);
     }
 
+    /**
+     * 由 {@link GameState} 直接建立 STATE 訊息：欄位同上，另加
+     * "state_hash": long（{@link GameState#getZobristHash()}，learner 可用來去除重複的 transition）、
+     * "reachable": [int x4]（各 action 走完後新頭可達的空格數，見 {@link ReachabilityAnalyzer}）、
+     * "free_cells": int（目前空格總數，可用來正規化 reachable）、
+     * "steps": int（產生這個 STATE 的 ACTION 實際走了幾步，見 {@link ConnectionConfig}）。
+     */
+    public static SocketMessage createStateMessage(GameState state) {
+        return createStateMessage(state, state.getReward(), 1);
+    }
+
+    /**
+     * 同 {@link #createStateMessage(GameState)}，但 reward 與 steps 由呼叫端指定：
+     * action repeat 時 reward 為這幾步的總和，steps 為實際走的步數（中途 done 會少於要求的次數）。
+     */
+    public static SocketMessage createStateMessage(GameState state, double reward, int steps) {
+        return createStateMessage(state, reward, steps, null);
+    }
+
+    /**
+     * 同 {@link #createStateMessage(GameState, double, int)}；view 不為 null 時以局部觀測取代 "board"：
+     * <pre>
+     *   "ego": "0130...",        // k*k 個字元，row-major，'0' 空 / '1' 蛇身 / '2' 食物 / '3' 牆（棋盤外）
+     *   "ego_size": int,
+     *   "coarse_size": int,      // 0 表示沒有下面兩個欄位
+     *   "coarse_body": [float],  // g*g，各區塊蛇身比例
+     *   "coarse_food": [float]   // g*g，各區塊是否有食物
+     * </pre>
+     * 其他欄位（head / food 座標、direction、reachable ...）不變，觀測大小因此不隨棋盤變大。
+     */
+    public static SocketMessage createStateMessage(GameState state, double reward, int steps, EgocentricView view) {
+        JsonObject payload = new JsonObject();
+        if (view == null) {
+            payload.add("board", GSON.toJsonTree(state.getBoard()));
+        } else {
+            addEgocentric(payload, state, view);
+        }
+        payload.addProperty("reward", reward);
+        payload.addProperty("done", state.isDone());
+        payload.addProperty("head_x", state.getHeadX());
+        payload.addProperty("head_y", state.getHeadY());
+        payload.addProperty("snake_len", state.getSnakeLength());
+        payload.addProperty("food_x", state.getFoodX());
+        payload.addProperty("food_y", state.getFoodY());
+        payload.addProperty("direction", state.getDirection());
+        SocketMessage msg = new SocketMessage(MessageType.STATE, payload);
+        payload.addProperty("state_hash", state.getZobristHash());
+        ReachabilityAnalyzer reachability = state.getReachability();
+        JsonArray reachable = new JsonArray(4);
+        for (int a = 0; a < 4; a++) {
+            reachable.add(reachability.reachableAfter(a));
+        }
+        payload.add("reachable", reachable);
+        payload.addProperty("free_cells", reachability.freeCells());
+        payload.addProperty("steps", steps);
+        return msg;
+    }
+
+    private static void addEgocentric(JsonObject payload, GameState state, EgocentricView view) {
+        view.compute(state);
+        byte[] window = view.getWindow();
+        char[] chars = new char[window.length];
+        for (int i = 0; i < window.length; i++) {
+            chars[i] = (char) ('0' + window[i]);
+        }
+        payload.addProperty("ego", new String(chars));
+        payload.addProperty("ego_size", view.getWindowSize());
+        payload.addProperty("coarse_size", view.getCoarseSize());
+        if (view.getCoarseSize() > 0) {
+            payload.add("coarse_body", toJsonArray(view.getCoarseBody()));
+            payload.add("coarse_food", toJsonArray(view.getCoarseFood()));
+        }
+    }
+
+    private static JsonArray toJsonArray(float[] values) {
+        JsonArray arr = new JsonArray(values.length);
+        for (float v : values) {
+            arr.add(v);
+        }
+        return arr;
+    }
+
+    /**
+     * 建立 CONFIG 訊息（server 回覆目前生效的連線設定）。
+     *
+     * payload:
+     * {
+     *   "action_repeat": int,
+     *   "max_action_repeat": int,
+     *   "auto_reset": boolean
+     * }
+     */
+    public static SocketMessage createConfigMessage(ConnectionConfig config) {
+        return new SocketMessage(MessageType.CONFIG, config.toJson());
+    }
+
+    /**
+     * auto-reset 模式下一局結束時的 STATE：以終局的 STATE（必須在 reset 之前建立）為基礎，
+     * 加上該局統計與 reset 後新局的第一個觀測，取代原本的 STATE → RESET → STATE 三個訊息。
+     * client 收到後直接對 next_obs 回傳下一個 ACTION。
+     *
+     * payload：終局 STATE 的所有欄位，另加
+     * {
+     *   "truncated": boolean,    // 因步數上限結束（此時 done 可能為 false）
+     *   "episode": {"length": int, "reward": double, "score": int},
+     *   "next_obs": { ... }      // 新局第一個 STATE 的 payload
+     * }
+     *
+     * @param terminal reset 之前建立的終局 STATE
+     * @param next     reset 之後新局的 STATE（觀測格式需與 terminal 相同）
+     */
+    public static SocketMessage createAutoResetStateMessage(SocketMessage terminal, boolean truncated,
+                                                            int length, double reward, int score,
+                                                            SocketMessage next) {
+        JsonObject payload = terminal.getPayload();
+        payload.addProperty("truncated", truncated);
+        JsonObject episode = new JsonObject();
+        episode.addProperty("length", length);
+        episode.addProperty("reward", reward);
+        episode.addProperty("score", score);
+        payload.add("episode", episode);
+        payload.add("next_obs", next.getPayload());
+        return terminal;
+    }
+
     /**
      * 建立 INIT 訊息。
      *
@@ -132,6 +273,43 @@ public final class SocketProtocol {
         return new SocketMessage(MessageType.INIT, payload);
     }
 
+    /**
+     * 建立可恢復 session 的 INIT 訊息（見 {@link SessionRegistry}）。
+     *
+     * payload:
+     * {
+     *   "board_size": int,
+     *   "session": string,        // 斷線後重連時放在 RESUME 的 token
+     *   "session_grace_ms": long  // 斷線後保留 session 的時間
+     * }
+     */
+    public static SocketMessage createInitMessage(int boardSize, String session, long graceMs) {
+        SocketMessage msg = createInitMessage(boardSize);
+        msg.getPayload().addProperty("session", session);
+        msg.getPayload().addProperty("session_grace_ms", graceMs);
+        return msg;
+    }
+
+    /**
+     * 建立 RESUME 回覆。
+     *
+     * payload:
+     * {
+     *   "session": string,  // 這條連線目前的 token（恢復成功時為原本的 token）
+     *   "resumed": boolean,
+     *   "actions": long,    // server 已執行的 ACTION 數
+     *   "replay": boolean   // 之後緊接著重送斷線時 client 沒收到的訊息；false 時 client 應重送最後一個 ACTION
+     * }
+     */
+    public static SocketMessage createResumeMessage(String session, boolean resumed, long actions, boolean replay) {
+        JsonObject payload = new JsonObject();
+        payload.addProperty("session", session);
+        payload.addProperty("resumed", resumed);
+        payload.addProperty("actions", actions);
+        payload.addProperty("replay", replay);
+        return new SocketMessage(MessageType.RESUME, payload);
+    }
+
     /**
      * 建立 RESET 訊息，payload 留空物件。
      */
@@ -163,4 +341,255 @@ public final class SocketProtocol {
         payload.addProperty("action", action);
         return new SocketMessage(MessageType.ACTION, payload);
     }
+
+    /**
+     * 建立 SAMPLE_RESULT 訊息（回覆 learner 的 SAMPLE 請求）。
+     *
+     * payload:
+     * {
+     *   "count": int,           // 實際抽到的筆數，buffer 為空時為 0
+     *   "obs_dim": int,
+     *   "indices": [int...],    // 之後 PRIORITIES 要帶回的 slot index
+     *   "weights": [float...],  // importance-sampling 權重
+     *   "obs": [float...],      // count * obs_dim 攤平
+     *   "actions": [int...],
+     *   "rewards": [float...],
+     *   "next_obs": [float...],
+     *   "dones": [boolean...]
+     * }
+     */
+    public static SocketMessage createSampleResultMessage(PrioritizedReplayBuffer.SampleBatch batch, int count) {
+        JsonObject payload = new JsonObject();
+        payload.addProperty("count", count);
+        payload.addProperty("obs_dim", batch.getObsDim());
+        if (count > 0) {
+            payload.add("indices", GSON.toJsonTree(batch.getIndices()));
+            payload.add("weights", GSON.toJsonTree(batch.getWeights()));
+            payload.add("obs", GSON.toJsonTree(batch.getObs()));
+            payload.add("actions", GSON.toJsonTree(batch.getActions()));
+            payload.add("rewards", GSON.toJsonTree(batch.getRewards()));
+            payload.add("next_obs", GSON.toJsonTree(batch.getNextObs()));
+            payload.add("dones", GSON.toJsonTree(batch.getDones()));
+        }
+        return new SocketMessage(MessageType.SAMPLE_RESULT, payload);
+    }
+
+    /**
+     * 建立 EnvPool 的 INIT 訊息。
+     *
+     * payload:
+     * {
+     *   "board_size": int,
+     *   "num_envs": int,
+     *   "shard_size": int   // BATCH_ACTION 可以 shard 為單位分批送出
+     * }
+     */
+    public static SocketMessage createBatchInitMessage(int boardSize, int numEnvs, int shardSize) {
+        JsonObject payload = new JsonObject();
+        payload.addProperty("board_size", boardSize);
+        payload.addProperty("num_envs", numEnvs);
+        payload.addProperty("shard_size", shardSize);
+        return new SocketMessage(MessageType.INIT, payload);
+    }
+
+    /**
+     * 建立 BATCH_STATE 訊息。棋盤以字串傳送以縮小封包：每個 env 一個長度 n*n 的字串，
+     * 依 row-major 每格一個字元 '0' / '1' / '2'。
+     *
+     * payload:
+     * {
+     *   "num_envs": int,
+     *   "boards": ["0010...", ...],
+     *   "rewards": [double...],   // 上一步的 reward
+     *   "dones": [boolean...],    // 上一步是否結束一局（env 已自動 reset，boards 為新局）
+     *   "truncated": [boolean...],
+     *   "head_x": [int...], "head_y": [int...], "food_x": [int...], "food_y": [int...],
+     *   "snake_len": [int...], "direction": [int...],
+     *   "episode_length": [int...], "episode_score": [int...]   // 只在 dones[i] 為 true 時有意義
+     * }
+     */
+    public static SocketMessage createBatchStateMessage(EnvPool envs) {
+        int count = envs.size();
+        int n = envs.getBoardSize();
+        char[] chars = new char[n * n];
+        JsonArray boards = new JsonArray(count);
+        JsonArray rewards = new JsonArray(count);
+        JsonArray dones = new JsonArray(count);
+        JsonArray truncated = new JsonArray(count);
+        JsonArray headX = new JsonArray(count);
+        JsonArray headY = new JsonArray(count);
+        JsonArray foodX = new JsonArray(count);
+        JsonArray foodY = new JsonArray(count);
+        JsonArray snakeLen = new JsonArray(count);
+        JsonArray direction = new JsonArray(count);
+        JsonArray episodeLength = new JsonArray(count);
+        JsonArray episodeScore = new JsonArray(count);
+        for (int i = 0; i < count; i++) {
+            GameState s = envs.getState(i);
+            int[][] board = s.getBoard();
+            int p = 0;
+            for (int y = 0; y < n; y++) {
+                for (int x = 0; x < n; x++) {
+                    chars[p++] = (char) ('0' + board[y][x]);
+                }
+            }
+            boards.add(new String(chars));
+            rewards.add(envs.getReward(i));
+            dones.add(envs.isDone(i));
+            truncated.add(envs.isTruncated(i));
+            headX.add(s.getHeadX());
+            headY.add(s.getHeadY());
+            foodX.add(s.getFoodX());
+            foodY.add(s.getFoodY());
+            snakeLen.add(s.getSnakeLength());
+            direction.add(s.getDirection());
+            episodeLength.add(envs.isDone(i) ? envs.getFinishedLength(i) : 0);
+            episodeScore.add(envs.isDone(i) ? envs.getFinishedScore(i) : 0);
+        }
+        JsonObject payload = new JsonObject();
+        payload.addProperty("num_envs", count);
+        payload.add("boards", boards);
+        payload.add("rewards", rewards);
+        payload.add("dones", dones);
+        payload.add("truncated", truncated);
+        payload.add("head_x", headX);
+        payload.add("head_y", headY);
+        payload.add("food_x", foodX);
+        payload.add("food_y", foodY);
+        payload.add("snake_len", snakeLen);
+        payload.add("direction", direction);
+        payload.add("episode_length", episodeLength);
+        payload.add("episode_score", episodeScore);
+        return new SocketMessage(MessageType.BATCH_STATE, payload);
+    }
+
+    /**
+     * 建立 arena 的 INIT 訊息。
+     *
+     * payload:
+     * {
+     *   "board_size": int,
+     *   "snakes": int,     // arena 中蛇的數量
+     *   "snake_id": int    // 這條連線控制的蛇；-1 表示單一 client 控制全部
+     * }
+     */
+    public static SocketMessage createArenaInitMessage(int boardSize, int snakes, int snakeId) {
+        JsonObject payload = new JsonObject();
+        payload.addProperty("board_size", boardSize);
+        payload.addProperty("snakes", snakes);
+        payload.addProperty("snake_id", snakeId);
+        return new SocketMessage(MessageType.INIT, payload);
+    }
+
+    /**
+     * 建立 ARENA_STATE 訊息。
+     *
+     * payload:
+     * {
+     *   "board": [[...], ...],  // 0 空, 2 食物, 3 + i 為第 i 條蛇
+     *   "foods": [[x, y], ...],
+     *   "snakes": [ { "id", "head_x", "head_y", "length", "direction", "alive", "reward" }, ... ],
+     *   "done": boolean,        // 整局是否結束
+     *   "truncated": boolean,   // 因步數上限而結束（done 與 truncated 任一為 true 時不需回傳動作）
+     *   "steps": int
+     * }
+     *
+     * @param board 由 {@link ArenaState#fillBoard(int[][])} 填好的 scratch
+     */
+    public static SocketMessage createArenaStateMessage(ArenaState arena, int[][] board, boolean truncated) {
+        JsonObject payload = new JsonObject();
+        payload.add("board", GSON.toJsonTree(board));
+        int n = arena.getBoardSize();
+        JsonArray foods = new JsonArray(arena.getFoodCount());
+        for (int f = 0; f < arena.getFoodCount(); f++) {
+            int cell = arena.getFoodCell(f);
+            if (cell < 0) continue;
+            JsonArray xy = new JsonArray(2);
+            xy.add(cell % n);
+            xy.add(cell / n);
+            foods.add(xy);
+        }
+        payload.add("foods", foods);
+        JsonArray snakes = new JsonArray(arena.getSnakeCount());
+        for (int i = 0; i < arena.getSnakeCount(); i++) {
+            JsonObject s = new JsonObject();
+            s.addProperty("id", i);
+            s.addProperty("head_x", arena.getHeadX(i));
+            s.addProperty("head_y", arena.getHeadY(i));
+            s.addProperty("length", arena.getLength(i));
+            s.addProperty("direction", arena.getDirection(i));
+            s.addProperty("alive", arena.isAlive(i));
+            s.addProperty("reward", arena.getReward(i));
+            snakes.add(s);
+        }
+        payload.add("snakes", snakes);
+        payload.addProperty("done", arena.isDone());
+        payload.addProperty("truncated", truncated);
+        payload.addProperty("steps", arena.getSteps());
+        return new SocketMessage(MessageType.ARENA_STATE, payload);
+    }
+
+    // ================== coordinator（見 EnvCoordinator / EnvNode） ==================
+
+    /**
+     * 建立 env node 的 REGISTER 訊息。
+     *
+     * payload:
+     * {
+     *   "name": string,  // node 名稱（同名重新登記時取代舊的）
+     *   "host": string,  // actor 連線用的位址
+     *   "ports": [int]   // 這個 node 上每個 env slot 的 port
+     * }
+     */
+    public static SocketMessage createRegisterMessage(String name, String host, int[] ports) {
+        JsonObject payload = new JsonObject();
+        payload.addProperty("name", name);
+        payload.addProperty("host", host);
+        payload.add("ports", GSON.toJsonTree(ports));
+        return new SocketMessage(MessageType.REGISTER, payload);
+    }
+
+    /**
+     * 建立 env node 的 HEARTBEAT 訊息。
+     *
+     * payload:
+     * {
+     *   "free": [int],      // 目前沒有 actor 連線的 port
+     *   "sessions": long,   // 啟動以來結束的連線數
+     *   "rtt_ms": double,   // 上一次 HEARTBEAT 的往返時間（尚未量到時為 -1）
+     *   "t": long,          // node 的 nanoTime，coordinator 原樣回傳
+     *   "seq": long         // 最近一次 REGISTER / HEARTBEAT 回覆中的 lease 序號（free 是收到它之後才取得的）
+     * }
+     */
+    public static SocketMessage createHeartbeatMessage(int[] freePorts, long sessions, double rttMs, long t, long seq) {
+        JsonObject payload = new JsonObject();
+        payload.addProperty("seq", seq);
+        payload.add("free", GSON.toJsonTree(freePorts));
+        payload.addProperty("sessions", sessions);
+        payload.addProperty("rtt_ms", rttMs);
+        payload.addProperty("t", t);
+        return new SocketMessage(MessageType.HEARTBEAT, payload);
+    }
+
+    /**
+     * 建立 ROUTE 回覆：actor 應連到 host:port。沒有空閒的 server 時 host 為 null，
+     * 只帶 {@code "retry_ms"}，actor 等待後再問一次。
+     *
+     * payload:
+     * {
+     *   "node": string, "host": string, "port": int
+     *   或 "retry_ms": long
+     * }
+     */
+    public static SocketMessage createRouteMessage(String node, String host, int port, long retryMs) {
+        JsonObject payload = new JsonObject();
+        if (host != null) {
+            payload.addProperty("node", node);
+            payload.addProperty("host", host);
+            payload.addProperty("port", port);
+        } else {
+            payload.addProperty("retry_ms", retryMs);
+        }
+        return new SocketMessage(MessageType.ROUTE, payload);
+    }
 }
@@ -1,11 +1,14 @@
 package light;
 
+import com.google.gson.JsonArray;
+import com.google.gson.JsonElement;
 import com.google.gson.JsonObject;
 
 import java.io.*;
 import java.net.ServerSocket;
 import java.net.Socket;
 import java.nio.charset.StandardCharsets;
+import java.util.Random;
 
 /**
  * 使用 {@link SocketProtocol} 進行 Java ↔ Python 溝通的簡單 TCP 伺服端。
@@ -25,6 +28,40 @@ public class SocketSnakeServer implements Closeable {
     private BufferedReader reader;
     private BufferedWriter writer;
 
+    // metrics：連線標籤（remote address）與最近一次送出 STATE 的時間，用於計算 RTT
+    private String connectionLabel = "none";
+    private long lastStateSentNanos = 0L;
+
+    // StepPhases：尚未計入的 STATE 建立時間，與最近一行讀入的時間點 / decode 耗時
+    private long pendingEncodeNanos = 0L;
+    private long lastLineReadNanos = 0L;
+    private long lastDecodeNanos = 0L;
+
+    // 連線設定（CONFIG 協商）與最近一個 ACTION 要求的重複次數；使用 session 時設定跟著 session 走
+    private ConnectionConfig config = new ConnectionConfig();
+    private int lastActionRepeat = 1;
+    // obs_mode=ego 時的局部觀測緩衝區（依 ego_size / coarse_size 重建）
+    private EgocentricView egoView;
+    // 最近一次建立 STATE 的局面；client 改變觀測格式時用新格式重送（等待 ACTION 時局面不會變）
+    private GameState lastState;
+    private double lastStateReward;
+    private int lastStateSteps;
+
+    // 目前連線使用的 session（見 SessionRegistry）；token 不為 null 時記錄 ACTION 數與之後送出的訊息，供 RESUME 使用
+    private SessionRegistry sessions;
+    private SessionRegistry.Session session;
+
+    // ======== Replay buffer（選用，由 learner 透過 TRANSITION / SAMPLE / PRIORITIES 存取） ========
+    private int replayCapacity = 0;              // 0 = 未啟用
+    private double replayAlpha = 0.6;
+    private PrioritizedReplayBuffer replayBuffer; // 收到第一筆 TRANSITION 時才依 obs 長度建立
+    private PrioritizedReplayBuffer.SampleBatch sampleBatch;
+    private final Random replayRng = new Random();
+    // TRANSITION 帶有 state_hash 時去除完全相同的 transition（state_hash、action、reward、done 與 next_obs 都相同）。
+    // 吃到食物後下一顆食物是隨機的，同一個 (state, action) 可能導向不同的 next_obs，這些都要保留。
+    private TranspositionTable transitionSeen;
+    private long duplicateTransitions = 0L;
+
     /**
      * 建立一個監聽指定埠號的 Socket 伺服端。
      *
@@ -37,21 +74,109 @@ public class SocketSnakeServer implements Closeable {
     /**
      * 啟動 ServerSocket 並阻塞等待一個 Python client 連進來。
      * 只接受一次連線，若要多 client 需自行擴充。
+     * 已經由 {@link #accept(ServerSocket)} 取得連線的實例直接回傳。
      */
     public synchronized void waitForClient() throws IOException {
         if (serverSocket != null && !serverSocket.isClosed()) {
             return;
         }
+        if (clientSocket != null && !clientSocket.isClosed()) {
+            return;
+        }
 
         serverSocket = new ServerSocket(port);
         System.out.println("[SocketSnakeServer] Listening on port " + port + " ...");
-        clientSocket = serverSocket.accept();
+        attach(serverSocket.accept());
+    }
+
+    /**
+     * 關閉目前的 client 連線（如果有），在同一個 port 接受下一個 client。
+     * replay buffer 等 server 端的狀態保留；連線設定重設為預設值，之後由 {@link #attachSession} 指定的 session 決定。
+     */
+    public synchronized void acceptNext() throws IOException {
+        closeClient();
+        if (serverSocket == null || serverSocket.isClosed()) {
+            serverSocket = new ServerSocket(port);
+            System.out.println("[SocketSnakeServer] Listening on port " + port + " ...");
+        }
+        config = new ConnectionConfig();
+        egoView = null;
+        lastState = null;
+        lastActionRepeat = 1;
+        lastStateSentNanos = 0L;
+        pendingEncodeNanos = 0L;
+        attach(serverSocket.accept());
+    }
+
+    /**
+     * 從一個共用的 ServerSocket 接受一條連線並包成 SocketSnakeServer（例如 arena 一個 port 收多個 agent）。
+     * 回傳的實例 close() 時只關閉這條連線，不會關閉共用的 ServerSocket。
+     */
+    static SocketSnakeServer accept(ServerSocket shared) throws IOException {
+        SocketSnakeServer server = new SocketSnakeServer(shared.getLocalPort());
+        server.attach(shared.accept());
+        return server;
+    }
+
+    private void attach(Socket socket) throws IOException {
+        clientSocket = socket;
         System.out.println("[SocketSnakeServer] Client connected from " + clientSocket.getRemoteSocketAddress());
 
+        // 每步都是「小封包 + 等回應」，關掉 Nagle 避免與 delayed ACK 疊加出 40ms 級的延遲
+        clientSocket.setTcpNoDelay(true);
+        connectionLabel = String.valueOf(clientSocket.getRemoteSocketAddress());
+        EnvEvents.ClientConnected connected = new EnvEvents.ClientConnected();
+        if (connected.shouldCommit()) {
+            connected.connection = connectionLabel;
+            connected.commit();
+        }
         reader = new BufferedReader(
-                new InputStreamReader(clientSocket.getInputStream(), StandardCharsets.UTF_8));
+                new InputStreamReader(new CountingInputStream(clientSocket.getInputStream()), StandardCharsets.UTF_8));
         writer = new BufferedWriter(
-                new OutputStreamWriter(clientSocket.getOutputStream(), StandardCharsets.UTF_8));
+                new OutputStreamWriter(new CountingOutputStream(clientSocket.getOutputStream()), StandardCharsets.UTF_8));
+    }
+
+    /**
+     * 啟用 server 端的 prioritized replay buffer。
+     * 實際的 buffer 會在收到第一筆 TRANSITION 時依其 obs 長度建立。
+     *
+     * @param capacity 最多保存的 transition 筆數
+     * @param alpha    priority 指數
+     */
+    public synchronized void enableReplayBuffer(int capacity, double alpha) {
+        if (capacity <= 0) {
+            throw new IllegalArgumentException("replay capacity 必須 > 0: " + capacity);
+        }
+        this.replayCapacity = capacity;
+        this.replayAlpha = alpha;
+        this.replayBuffer = null;
+        // slot 數取 capacity 的兩倍以上（2 的次方），避免表格太滿時頻繁淘汰
+        int bits = 32 - Integer.numberOfLeadingZeros(Math.max(1, capacity * 2 - 1));
+        this.transitionSeen = new TranspositionTable(Math.max(1, Math.min(28, bits)));
+        this.duplicateTransitions = 0L;
+    }
+
+    /** 因為與之前的 transition 完全相同而被丟棄的 TRANSITION 筆數。 */
+    public synchronized long getDuplicateTransitions() {
+        return duplicateTransitions;
+    }
+
+    /** 取得目前的 replay buffer；尚未啟用或尚未收到 TRANSITION 時為 null。 */
+    public synchronized PrioritizedReplayBuffer getReplayBuffer() {
+        return replayBuffer;
+    }
+
+    /** 這條連線目前的設定（client 以 CONFIG 修改）。 */
+    public synchronized ConnectionConfig getConfig() {
+        return config;
+    }
+
+    /**
+     * 最近一次 {@link #readAction()} 讀到的 ACTION 要重複執行幾步：
+     * ACTION 帶有 "repeat" 時以它為準，否則為連線的 action_repeat。
+     */
+    public synchronized int getLastActionRepeat() {
+        return lastActionRepeat;
     }
 
     /** 確保已經有 client 連線，否則拋出 IOException。 */
@@ -65,9 +190,71 @@ public class SocketSnakeServer implements Closeable {
     /** 發送一個通用 SocketMessage。會自動 encode 並加上換行。 */
     public synchronized void sendMessage(SocketProtocol.SocketMessage msg) throws IOException {
         ensureConnected();
+        EnvEvents.MessageSent event = new EnvEvents.MessageSent();
+        event.begin();
+        long t0 = StepPhases.start();
         String line = SocketProtocol.encode(msg);
+        long t1 = StepPhases.start();
+        remember(line);
         writer.write(line);
         writer.flush();
+        commitSent(event, msg.getType().name(), line);
+        if (msg.getType() == SocketProtocol.MessageType.STATE) {
+            lastStateSentNanos = System.nanoTime();
+            StepPhases phases = StepPhases.get();
+            phases.record(StepPhases.Phase.ENCODE, pendingEncodeNanos + (t1 - t0));
+            phases.end(StepPhases.Phase.SEND, t1);
+            pendingEncodeNanos = 0L;
+        }
+    }
+
+    /**
+     * 送出已由 {@link SocketProtocol#encode} 編碼好的一行（同一訊息廣播給多條連線時只編碼一次）。
+     * type 為該行的訊息類型，只用於 JFR 的 MessageSent 事件。
+     */
+    synchronized void sendEncoded(SocketProtocol.MessageType type, String line) throws IOException {
+        ensureConnected();
+        EnvEvents.MessageSent event = new EnvEvents.MessageSent();
+        event.begin();
+        remember(line);
+        writer.write(line);
+        writer.flush();
+        commitSent(event, type.name(), line);
+    }
+
+    /** 可恢復的 session 記下最後一個 ACTION 之後送出的訊息（先記再送，寫入失敗的訊息也會重送）。 */
+    private void remember(String line) {
+        if (session != null && session.token != null) {
+            session.outbox.add(line);
+        }
+    }
+
+    /** 收到一個 ACTION：之前送出的訊息對方都已經收到了。 */
+    private void actionReceived() {
+        if (session != null) {
+            session.actions++;
+            session.outbox.clear();
+        }
+    }
+
+    private void commitSent(EnvEvents.MessageSent event, String type, String line) {
+        if (event.shouldCommit()) {
+            event.type = type;
+            event.bytes = line.getBytes(StandardCharsets.UTF_8).length;
+            event.connection = connectionLabel;
+            event.commit();
+        }
+    }
+
+    /** 收到 ACTION 時記錄與上一個 STATE 之間的往返時間，以及 wait / decode 兩個階段。 */
+    private void recordActionRtt() {
+        if (lastStateSentNanos != 0L) {
+            EnvMetrics.get().recordRtt(connectionLabel, System.nanoTime() - lastStateSentNanos);
+            StepPhases phases = StepPhases.get();
+            phases.record(StepPhases.Phase.WAIT_ACTION, lastLineReadNanos - lastStateSentNanos);
+            phases.record(StepPhases.Phase.DECODE, lastDecodeNanos);
+            lastStateSentNanos = 0L;
+        }
     }
 
     /**
@@ -77,12 +264,23 @@ public class SocketSnakeServer implements Closeable {
      */
     public synchronized SocketProtocol.SocketMessage readMessage() throws IOException {
         ensureConnected();
+        EnvEvents.MessageReceived event = new EnvEvents.MessageReceived();
+        event.begin();
         String line = reader.readLine();
         if (line == null) {
             // 對方斷線
             return null;
         }
-        return SocketProtocol.decode(line);
+        lastLineReadNanos = System.nanoTime();
+        SocketProtocol.SocketMessage msg = SocketProtocol.decode(line);
+        lastDecodeNanos = System.nanoTime() - lastLineReadNanos;
+        if (event.shouldCommit()) {
+            event.type = msg.getType().name();
+            event.bytes = line.getBytes(StandardCharsets.UTF_8).length + 1L; // 含換行
+            event.connection = connectionLabel;
+            event.commit();
+        }
+        return msg;
     }
 
     // ======== 專用 helper：State / Action / Init / Reset / Ping ========
@@ -122,6 +320,47 @@ public class SocketSnakeServer implements Closeable {
         sendMessage(msg);
     }
 
+    /**
+     * Java → Python：直接由 GameState 傳送完整狀態（含 state_hash）。
+     */
+    public void sendState(GameState state) throws IOException {
+        sendMessage(stateMessage(state, state.getReward(), 1));
+    }
+
+    /**
+     * Java → Python：action repeat 後傳送狀態，reward 為這幾步的總和，steps 為實際走的步數。
+     */
+    public void sendState(GameState state, double reward, int steps) throws IOException {
+        sendMessage(stateMessage(state, reward, steps));
+    }
+
+    /**
+     * 依這條連線的 obs_mode 建立 STATE（ego 時以局部視窗取代 board），但不送出；
+     * auto-reset 合併訊息的兩個觀測也用這個方法建立，格式才會一致。
+     */
+    public synchronized SocketProtocol.SocketMessage stateMessage(GameState state, double reward, int steps) {
+        lastState = state;
+        lastStateReward = reward;
+        lastStateSteps = steps;
+        long t0 = StepPhases.start();
+        SocketProtocol.SocketMessage msg = SocketProtocol.createStateMessage(state, reward, steps, currentEgoView());
+        if (StepPhases.ENABLED) {
+            pendingEncodeNanos += System.nanoTime() - t0;
+        }
+        return msg;
+    }
+
+    private EgocentricView currentEgoView() {
+        if (!config.isEgoObs()) {
+            return null;
+        }
+        if (egoView == null || egoView.getWindowSize() != config.getEgoSize()
+                || egoView.getCoarseSize() != config.getCoarseSize()) {
+            egoView = new EgocentricView(config.getEgoSize(), config.getCoarseSize());
+        }
+        return egoView;
+    }
+
     /**
      * Java → Python：傳送初始資訊，例如棋盤大小。
      */
@@ -131,6 +370,23 @@ public class SocketSnakeServer implements Closeable {
         sendMessage(msg);
     }
 
+    /**
+     * 這條連線之後使用的 session；連線設定改用 session 保存的設定。
+     *
+     * @param registry RESUME 時從這裡取回斷線的 session；null 表示不支援 RESUME
+     */
+    public synchronized void attachSession(SessionRegistry registry, SessionRegistry.Session session) {
+        this.sessions = registry;
+        this.session = session;
+        this.config = session.config;
+        this.egoView = null;
+        this.lastState = null;
+    }
+
+    public synchronized SessionRegistry.Session getSession() {
+        return session;
+    }
+
     /**
      * Java → Python：送出 RESET，告訴對方要重開一局。
      */
@@ -161,10 +417,14 @@ public class SocketSnakeServer implements Closeable {
             SocketProtocol.MessageType type = msg.getType();
             if (type == SocketProtocol.MessageType.ACTION) {
                 JsonObject payload = msg.getPayload();
-                if (!payload.has("action")) {
-                    throw new IOException("ACTION 封包缺少 `action` 欄位。");
-                }
-                return payload.get("action").getAsInt();
+                int action = requireNumber(payload, "action", SocketProtocol.MessageType.ACTION).getAsInt();
+                int repeat = readRepeat(payload);
+                recordActionRtt();
+                actionReceived();
+                lastActionRepeat = repeat;
+                return action;
+            } else if (handleConfigMessage(msg) || handleReplayMessage(msg) || handleResumeMessage(msg)) {
+                continue;
             } else if (type == SocketProtocol.MessageType.RESET) {
                 System.out.println("[SocketSnakeServer] 收到 RESET，暫時忽略 ACTION 讀取，繼續等待 ACTION。");
                 // continue 等待下一個訊息
@@ -187,6 +447,8 @@ public class SocketSnakeServer implements Closeable {
     /**
      * Read action with timeout. If a valid ACTION message is received within the timeout, return it.
      * If timeout occurs, return -1 to indicate no action received.
+     * 等待期間收到的 replay 訊息（TRANSITION / SAMPLE / PRIORITIES）不佔用 timeout：
+     * 從開始等待到處理完該訊息的時間會加回期限，learner 持續送 transition 也不會讓真正的 ACTION 被當成無動作。
      */
     public int readActionWithTimeout(int timeoutMs) throws IOException {
         ensureConnected();
@@ -197,17 +459,33 @@ public class SocketSnakeServer implements Closeable {
             originalTimeout = 0;
         }
         try {
-            clientSocket.setSoTimeout(Math.max(1, timeoutMs));
-            SocketProtocol.SocketMessage msg = readMessage();
-            if (msg == null) {
-                throw new IOException("連線已關閉，讀不到 ACTION。");
+            long deadline = System.currentTimeMillis() + Math.max(1, timeoutMs);
+            SocketProtocol.SocketMessage msg;
+            while (true) {
+                clientSocket.setSoTimeout((int) Math.max(1, deadline - System.currentTimeMillis()));
+                msg = readMessage();
+                if (msg == null) {
+                    throw new IOException("連線已關閉，讀不到 ACTION。");
+                }
+                // 處理 replay 訊息（例如抽 minibatch）花的時間不算在等 ACTION 的時限內；等待封包到達的時間照算
+                long handleStart = System.currentTimeMillis();
+                if (handleReplayMessage(msg)) {
+                    deadline += System.currentTimeMillis() - handleStart;
+                    continue;
+                }
+                // CONFIG / RESUME 訊息在 timeout 內就地處理，不算「無動作」
+                if (!handleConfigMessage(msg) && !handleResumeMessage(msg)) {
+                    break;
+                }
             }
             if (msg.getType() == SocketProtocol.MessageType.ACTION) {
                 JsonObject payload = msg.getPayload();
-                if (!payload.has("action")) {
-                    throw new IOException("ACTION 封包缺少 `action` 欄位。");
-                }
-                return payload.get("action").getAsInt();
+                int action = requireNumber(payload, "action", SocketProtocol.MessageType.ACTION).getAsInt();
+                int repeat = readRepeat(payload);
+                recordActionRtt();
+                actionReceived();
+                lastActionRepeat = repeat;
+                return action;
             } else {
                 // 如果收到 RESET/INIT/PING 等非 ACTION 訊息，回傳 -1 表示逾時/無動作
                 return -1;
@@ -225,10 +503,316 @@ public class SocketSnakeServer implements Closeable {
         }
     }
 
+    private int readRepeat(JsonObject payload) throws IOException {
+        return payload.has("repeat")
+                ? config.repeatFor(requireNumber(payload, "repeat", SocketProtocol.MessageType.ACTION).getAsInt())
+                : config.getActionRepeat();
+    }
+
+    /**
+     * 處理 CONFIG：更新連線設定並回覆實際生效的值。
+     * 觀測格式（obs_mode / ego_size / coarse_size）有變時，緊接著以新格式重送目前的 STATE，
+     * 並標上 "resend": true，client 可用它取代剛才收到的觀測而不當成一步的結果。
+     *
+     * @return true 表示此訊息已被處理
+     */
+    private boolean handleConfigMessage(SocketProtocol.SocketMessage msg) throws IOException {
+        if (msg.getType() != SocketProtocol.MessageType.CONFIG) {
+            return false;
+        }
+        String before = obsFormat();
+        config.apply(msg.getPayload());
+        sendMessage(SocketProtocol.createConfigMessage(config));
+        System.out.println("[SocketSnakeServer] 收到 CONFIG，目前設定: " + config.toJson());
+        if (lastState != null && !before.equals(obsFormat())) {
+            SocketProtocol.SocketMessage resend = stateMessage(lastState, lastStateReward, lastStateSteps);
+            resend.getPayload().addProperty("resend", true);
+            sendMessage(resend);
+        }
+        return true;
+    }
+
+    /**
+     * 處理 RESUME：client 斷線重連後以原本的 token 要求接回 session。
+     * 成功時這條連線改用原本的 session（局面、連線設定、ACTION 計數），本來為這條連線開的新 session 直接丟棄；
+     * client 送出的 ACTION 數與 server 已執行的相同時，緊接著重送斷線時沒送到的訊息，否則等 client 重送最後一個 ACTION。
+     * 失敗時（token 不存在或已過期）回覆 resumed=false，這條連線維持新的 session。
+     *
+     * @return true 表示此訊息已被處理
+     */
+    private boolean handleResumeMessage(SocketProtocol.SocketMessage msg) throws IOException {
+        if (msg.getType() != SocketProtocol.MessageType.RESUME) {
+            return false;
+        }
+        JsonObject payload = msg.getPayload();
+        String token = null;
+        if (payload.has("session")) {
+            JsonElement t = payload.get("session");
+            if (!t.isJsonPrimitive() || !t.getAsJsonPrimitive().isString()) {
+                throw new IOException("RESUME 封包的 `session` 必須是字串: " + t);
+            }
+            token = t.getAsString();
+        }
+        long clientActions = payload.has("actions")
+                ? requireNumber(payload, "actions", SocketProtocol.MessageType.RESUME).getAsLong() : -1L;
+        SessionRegistry.Session old = null;
+        if (sessions != null && session != null && token != null && !token.equals(session.token)) {
+            old = sessions.resume(token);
+        }
+        if (old == null) {
+            System.out.println("[SocketSnakeServer] 無法恢復 session " + token + "（不存在或已過期）");
+            writeRaw(SocketProtocol.encode(SocketProtocol.createResumeMessage(
+                    session == null ? null : session.token, false, session == null ? 0L : session.actions, false)));
+            return true;
+        }
+        attachSession(sessions, old);
+        boolean replay = clientActions <= old.actions;
+        System.out.println("[SocketSnakeServer] 恢復 session " + token + "（已執行 " + old.actions + " 個 ACTION，"
+                + (replay ? "重送 " + old.outbox.size() + " 個訊息" : "等待 client 重送 ACTION") + "）");
+        writeRaw(SocketProtocol.encode(SocketProtocol.createResumeMessage(old.token, true, old.actions, replay)));
+        if (replay) {
+            for (String line : old.outbox) {
+                writeRaw(line);
+            }
+        }
+        return true;
+    }
+
+    /** 直接寫出一行，不記錄到 session 的 outbox（RESUME 回覆與重送的訊息）。 */
+    private synchronized void writeRaw(String line) throws IOException {
+        ensureConnected();
+        writer.write(line);
+        writer.flush();
+    }
+
+    private String obsFormat() {
+        return config.getObsMode() + "/" + config.getEgoSize() + "/" + config.getCoarseSize();
+    }
+
+    /**
+     * 處理 replay buffer 相關訊息（TRANSITION / SAMPLE / PRIORITIES）。
+     * 欄位缺少、型別不對、obs 長度與 buffer 不符、batch_size 或 index 超出範圍時丟出 IOException（與 ACTION 缺欄位相同）。
+     *
+     * @return true 表示此訊息已被處理，呼叫端應繼續等待 ACTION
+     * @throws IOException 封包內容不合法或送出 SAMPLE 結果失敗
+     */
+    private boolean handleReplayMessage(SocketProtocol.SocketMessage msg) throws IOException {
+        SocketProtocol.MessageType type = msg.getType();
+        if (type != SocketProtocol.MessageType.TRANSITION
+                && type != SocketProtocol.MessageType.SAMPLE
+                && type != SocketProtocol.MessageType.PRIORITIES) {
+            return false;
+        }
+        if (replayCapacity <= 0) {
+            System.out.println("[SocketSnakeServer] 收到 " + type + " 但 replay buffer 未啟用，忽略。");
+            if (type == SocketProtocol.MessageType.SAMPLE) {
+                // client 會等 SAMPLE_RESULT，回一個空的 batch，不要讓它卡住
+                sendMessage(SocketProtocol.createSampleResultMessage(
+                        new PrioritizedReplayBuffer.SampleBatch(0, 1), 0));
+            }
+            return true;
+        }
+        JsonObject payload = msg.getPayload();
+        switch (type) {
+            case TRANSITION: {
+                int action = requireNumber(payload, "action", type).getAsInt();
+                float reward = requireNumber(payload, "reward", type).getAsFloat();
+                boolean done = false;
+                if (payload.has("done")) {
+                    JsonElement d = payload.get("done");
+                    if (!d.isJsonPrimitive() || !d.getAsJsonPrimitive().isBoolean()) {
+                        throw new IOException("TRANSITION 封包的 `done` 必須是 boolean。");
+                    }
+                    done = d.getAsBoolean();
+                }
+                float[] obs = toFloatArray(payload, "obs");
+                float[] nextObs = toFloatArray(payload, "next_obs");
+                if (obs.length == 0 || nextObs.length != obs.length) {
+                    throw new IOException("TRANSITION 封包的 obs / next_obs 長度不合法: " + obs.length + " / " + nextObs.length);
+                }
+                if (replayBuffer != null && obs.length != replayBuffer.getObsDim()) {
+                    throw new IOException("TRANSITION 封包的 obs 長度需為 " + replayBuffer.getObsDim() + "，收到 " + obs.length);
+                }
+                if (payload.has("state_hash")) {
+                    long key = transitionKey(requireNumber(payload, "state_hash", type).getAsLong(),
+                            action, reward, done, nextObs);
+                    if (!transitionSeen.putIfAbsent(key)) {
+                        duplicateTransitions++;
+                        break;
+                    }
+                }
+                if (replayBuffer == null) {
+                    replayBuffer = new PrioritizedReplayBuffer(replayCapacity, obs.length, replayAlpha);
+                    System.out.println("[SocketSnakeServer] 建立 replay buffer: capacity=" + replayCapacity
+                            + ", obs_dim=" + obs.length + ", alpha=" + replayAlpha);
+                }
+                replayBuffer.add(obs, action, reward, nextObs, done);
+                break;
+            }
+            case SAMPLE: {
+                int batchSize = payload.has("batch_size") ? requireNumber(payload, "batch_size", type).getAsInt() : 64;
+                double beta = payload.has("beta") ? requireNumber(payload, "beta", type).getAsDouble() : 0.4;
+                if (batchSize < 1 || batchSize > replayCapacity) {
+                    throw new IOException("SAMPLE 封包的 `batch_size` 必須介於 1 與 " + replayCapacity + " 之間: " + batchSize);
+                }
+                if (replayBuffer == null) {
+                    sendMessage(SocketProtocol.createSampleResultMessage(
+                            new PrioritizedReplayBuffer.SampleBatch(0, 1), 0));
+                    break;
+                }
+                if (sampleBatch == null || sampleBatch.getBatchSize() != batchSize) {
+                    sampleBatch = new PrioritizedReplayBuffer.SampleBatch(batchSize, replayBuffer.getObsDim());
+                }
+                int count = replayBuffer.sample(sampleBatch, beta, replayRng);
+                sendMessage(SocketProtocol.createSampleResultMessage(sampleBatch, count));
+                break;
+            }
+            case PRIORITIES: {
+                if (replayBuffer == null) {
+                    break;
+                }
+                JsonArray idx = requireArray(payload, "indices", type);
+                JsonArray pri = requireArray(payload, "priorities", type);
+                if (idx.size() != pri.size()) {
+                    throw new IOException("PRIORITIES 封包的 indices 與 priorities 長度不同: " + idx.size() + " / " + pri.size());
+                }
+                int size = replayBuffer.size();
+                int[] indices = new int[idx.size()];
+                double[] tdErrors = new double[pri.size()];
+                for (int i = 0; i < indices.length; i++) {
+                    indices[i] = requireNumber(idx.get(i), "indices", type).getAsInt();
+                    if (indices[i] < 0 || indices[i] >= size) {
+                        throw new IOException("PRIORITIES 封包的 index 超出範圍 [0, " + size + "): " + indices[i]);
+                    }
+                    tdErrors[i] = requireNumber(pri.get(i), "priorities", type).getAsDouble();
+                }
+                replayBuffer.updatePriorities(indices, tdErrors);
+                break;
+            }
+            default:
+                break;
+        }
+        return true;
+    }
+
+    /** 整筆 transition 的 64-bit key：obs 以 state_hash 代表，其餘欄位與 next_obs 逐一混入。 */
+    private static long transitionKey(long stateHash, int action, float reward, boolean done, float[] nextObs) {
+        long h = stateHash ^ (action + 1) * 0x9E3779B97F4A7C15L;
+        h = mix(h ^ Float.floatToIntBits(reward) ^ (done ? 0x100000000L : 0L));
+        for (float v : nextObs) {
+            h = mix(h ^ Float.floatToIntBits(v));
+        }
+        return h;
+    }
+
+    /** SplitMix64 的 finalizer。 */
+    private static long mix(long z) {
+        z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+        z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+        return z ^ (z >>> 31);
+    }
+
+    private static float[] toFloatArray(JsonObject payload, String key) throws IOException {
+        JsonArray arr = requireArray(payload, key, SocketProtocol.MessageType.TRANSITION);
+        float[] out = new float[arr.size()];
+        for (int i = 0; i < out.length; i++) {
+            out[i] = requireNumber(arr.get(i), key, SocketProtocol.MessageType.TRANSITION).getAsFloat();
+        }
+        return out;
+    }
+
+    private static JsonElement requireNumber(JsonObject payload, String key, SocketProtocol.MessageType type)
+            throws IOException {
+        if (!payload.has(key)) {
+            throw new IOException(type + " 封包缺少 `" + key + "` 欄位。");
+        }
+        return requireNumber(payload.get(key), key, type);
+    }
+
+    private static JsonElement requireNumber(JsonElement e, String key, SocketProtocol.MessageType type)
+            throws IOException {
+        if (e == null || !e.isJsonPrimitive() || !e.getAsJsonPrimitive().isNumber()) {
+            throw new IOException(type + " 封包的 `" + key + "` 必須是數字: " + e);
+        }
+        return e;
+    }
+
+    private static JsonArray requireArray(JsonObject payload, String key, SocketProtocol.MessageType type)
+            throws IOException {
+        JsonElement e = payload.get(key);
+        if (e == null || !e.isJsonArray()) {
+            throw new IOException(type + " 封包缺少 `" + key + "` 陣列。");
+        }
+        return e.getAsJsonArray();
+    }
+
     // ======== 資源釋放 ========
 
+    /** 計算收到的 byte 數並累加到 {@link EnvMetrics}。 */
+    private static final class CountingInputStream extends FilterInputStream {
+        CountingInputStream(InputStream in) {
+            super(in);
+        }
+
+        @Override
+        public int read() throws IOException {
+            int b = super.read();
+            if (b >= 0) {
+                EnvMetrics.get().addBytesIn(1);
+            }
+            return b;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            int n = super.read(b, off, len);
+            if (n > 0) {
+                EnvMetrics.get().addBytesIn(n);
+            }
+            return n;
+        }
+    }
+
+    /** 計算送出的 byte 數並累加到 {@link EnvMetrics}。 */
+    private static final class CountingOutputStream extends FilterOutputStream {
+        CountingOutputStream(OutputStream out) {
+            super(out);
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            out.write(b);
+            EnvMetrics.get().addBytesOut(1);
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            out.write(b, off, len);
+            EnvMetrics.get().addBytesOut(len);
+        }
+    }
+
     @Override
     public synchronized void close() {
+        closeClient();
+        try {
+            if (serverSocket != null && !serverSocket.isClosed()) {
+                serverSocket.close();
+            }
+        } catch (IOException ignored) {
+        }
+    }
+
+    /** 只關閉目前的 client 連線，ServerSocket 保持開啟。 */
+    private synchronized void closeClient() {
+        EnvMetrics.get().removeConnection(connectionLabel);
+        if (clientSocket != null && !clientSocket.isClosed()) {
+            EnvEvents.ClientDisconnected disconnected = new EnvEvents.ClientDisconnected();
+            if (disconnected.shouldCommit()) {
+                disconnected.connection = connectionLabel;
+                disconnected.commit();
+            }
+        }
         try {
             if (reader != null) {
                 reader.close();
@@ -247,11 +831,5 @@ public class SocketSnakeServer implements Closeable {
             }
         } catch (IOException ignored) {
         }
-        try {
-            if (serverSocket != null && !serverSocket.isClosed()) {
-                serverSocket.close();
-            }
-        } catch (IOException ignored) {
-        }
     }
 }
@@ -11,7 +11,6 @@ import com.google.gson.Gson;
 import com.google.gson.JsonObject;
 import com.google.gson.JsonParser;
 import com.google.gson.JsonElement;
-import java.util.Random; // 新增 Random import
 
 // SocketSnakeServerGame：
 // 這個類同時包含 Swing 視窗（檢視與控制）與後台的 socket server 管理。
@@ -32,6 +31,8 @@ public class SocketSnakeServerGame extends JFrame {
     private final GameState gameState;           // 遊戲邏輯物件（含 board, snake, food, reward）
     private final SocketSnakePanel snakePanel;   // 顯示盤面用的自訂 JPanel
     private final JLabel statusLabel;            // 下方狀態列
+    private final JLabel phaseLabel;             // 狀態列第二行：各階段耗時摘要（StepPhases）
+    private final LearningCurvePanel curvePanel; // 右側即時學習曲線；-Dsnake.gui.chart=false 時為 null
     private final JTextField episodesField;      // 輸入局數的欄位
     private final JTextField maxStepsField;     // 輸入每局最大步數（0 表示無上限）
     private final JTextField totalTimestepsField; // 可直接指定 total_timesteps（可選）
@@ -46,8 +47,8 @@ public class SocketSnakeServerGame extends JFrame {
     private SocketSnakeServer socketServer;      // 伺服端物件（負責 accept、send/read）
     private Timer gameLoopTimer;                 // 控制遊戲步進的 Swing Timer
 
-    // 隨機 generator（在 Python 未回應時 fallback 用）
-    private final Random rng = new Random();
+    // Python 未回應時的 fallback 動作來源（-Dsnake.fallback.policy=bfs|greedy|hamiltonian|random，預設 bfs）
+    private final Policy fallbackPolicy;
 
     // 遊戲控制參數
     private int stepDelayMs = 50;                // 步進延遲 (ms)
@@ -60,16 +61,40 @@ public class SocketSnakeServerGame extends JFrame {
     // 每局累積 reward（方便在局結束時列印）
     private double episodeReward = 0.0;
 
+    // 一局結束後停頓多久再開始下一局（方便看清楚死法）；-Dsnake.gui.episode_pause_ms=0 可關閉
+    private final int episodePauseMs = Integer.getInteger("snake.gui.episode_pause_ms", 1000);
+    // auto-reset：reset 前先建立好的終局 STATE，resetEpisode 時與新局觀測合併成一個訊息送出
+    private SocketProtocol.SocketMessage pendingTerminalState = null;
+    private boolean pendingTruncated = false;
+    private int pendingLength = 0;
+    private double pendingReward = 0.0;
+    private int pendingScore = 0;
+    // 合併訊息已經帶了新局的第一個觀測，下一個 tick 不必再送 STATE
+    private boolean stateAlreadySent = false;
+
     // 若 UI 要啟動 Python 訓練程式，記錄其 Process
     private Process pythonTrainerProcess = null;
 
+    // 以 -Dsnake.action.source=local 指定時，改用 JVM 內的 policy 決定動作，不等待 Python
+    private final Policy localPolicy;
+
     // 建構子：建立 UI 元件並立即在背景啟動 socket server 等待連線
     public SocketSnakeServerGame() {
         super("Socket Snake Server Game");
 
         this.gameState = new GameState();
+        this.localPolicy = loadLocalPolicy();
+        this.fallbackPolicy = Policy.builtin(System.getProperty("snake.fallback.policy", "bfs"), gameState.getBoardSize());
         this.snakePanel = new SocketSnakePanel();
         this.statusLabel = new JLabel("請輸入局數並按開始。");
+        this.phaseLabel = new JLabel(StepPhases.get().summaryLine());
+        if (!"false".equalsIgnoreCase(System.getProperty("snake.gui.chart"))) {
+            this.curvePanel = new LearningCurvePanel(new LearningCurve(
+                    Integer.getInteger("snake.gui.chart_capacity", 2000),
+                    Integer.getInteger("snake.gui.chart_window", 50)));
+        } else {
+            this.curvePanel = null;
+        }
 
         // 控制列（局數輸入、開始、重新開始、加速/減速）
         // 提升 controlPanel 為欄位，方便計算最終 frame 大小
@@ -109,7 +134,13 @@ public class SocketSnakeServerGame extends JFrame {
         setLayout(new BorderLayout());
         add(controlPanel, BorderLayout.NORTH);
         add(snakePanel, BorderLayout.CENTER);
-        add(statusLabel, BorderLayout.SOUTH);
+        if (curvePanel != null) {
+            add(curvePanel, BorderLayout.EAST);
+        }
+        JPanel statusPanel = new JPanel(new GridLayout(2, 1));
+        statusPanel.add(statusLabel);
+        statusPanel.add(phaseLabel);
+        add(statusPanel, BorderLayout.SOUTH);
 
 
         // 初次 pack() 讓 Swing 使用預設偏好尺寸計算整體佈局
@@ -123,15 +154,19 @@ public class SocketSnakeServerGame extends JFrame {
         int contentW = getWidth() - insets.left - insets.right;
         int contentH = getHeight() - insets.top - insets.bottom;
 
-        // controlPanel 在 NORTH、status 在 SOUTH，中心為 snakePanel。
+        // controlPanel 在 NORTH、status 在 SOUTH，中心為 snakePanel，學習曲線在 EAST。
         int controlH = controlPanel.getPreferredSize().height;
-        int statusH = statusLabel.getPreferredSize().height;
+        int statusH = statusPanel.getPreferredSize().height;
+        int curveW = (curvePanel != null) ? curvePanel.getPreferredSize().width : 0;
 
-        int desiredPanelW = contentW;
+        int desiredPanelW = Math.max(1, contentW - curveW);
         int desiredPanelH = Math.max(1, contentH - controlH - statusH);
 
         // 設定 snakePanel 的偏好尺寸並重新 pack
         snakePanel.setPreferredSize(new Dimension(desiredPanelW, desiredPanelH));
+        if (curvePanel != null) {
+            curvePanel.setPreferredSize(new Dimension(curveW, desiredPanelH));
+        }
         pack();
 
         // 禁止使用者改變視窗大小以維持固定顯示比例
@@ -139,6 +174,16 @@ public class SocketSnakeServerGame extends JFrame {
         setLocationRelativeTo(null);
         setDefaultCloseOperation(JFrame.EXIT_ON_CLOSE);
 
+        // 每秒更新一次各階段耗時摘要
+        if (StepPhases.ENABLED) {
+            new Timer(1000, e -> phaseLabel.setText(StepPhases.get().summaryLine())).start();
+        } else {
+            phaseLabel.setText("階段計時已關閉 (-Dsnake.trace.phases=false)");
+        }
+        if (curvePanel != null) {
+            curvePanel.start();
+        }
+
         // 開始按鈕：設定局數並啟動（若 server 已連線則馬上啟動循環）
         // 預設開始按鈕不可用，直到 socket 連線
         startButton.setEnabled(false);
@@ -146,9 +191,19 @@ public class SocketSnakeServerGame extends JFrame {
         // 停止按鈕：停止遊戲循環
         stopButton.addActionListener(e -> onStop());
 
-        // 預設不啟動遊戲，但立即在背景啟動 socket server，等待 Python client 連線。
-        System.out.println("[SocketSnakeServerGame] 啟動 UI，將在背景啟動 socket server 等待連線...");
-        new Thread(this::initSocketServerOnly, "SocketSnakeServerGame-ServerThread").start();
+        if (localPolicy != null) {
+            // 本機 policy 模式：不需要 socket，直接開放控制按鈕
+            startButton.setEnabled(true);
+            restartBtn.setEnabled(true);
+            speedUpBtn.setEnabled(true);
+            slowDownBtn.setEnabled(true);
+            snakePanel.updateBoard(gameState.getBoard());
+            statusLabel.setText("使用本機 policy 決定動作。請按開始啟動遊戲。");
+        } else {
+            // 預設不啟動遊戲，但立即在背景啟動 socket server，等待 Python client 連線。
+            System.out.println("[SocketSnakeServerGame] 啟動 UI，將在背景啟動 socket server 等待連線...");
+            new Thread(this::initSocketServerOnly, "SocketSnakeServerGame-ServerThread").start();
+        }
 
         // 顯示視窗
         setVisible(true);
@@ -213,6 +268,12 @@ public class SocketSnakeServerGame extends JFrame {
 
         System.out.println("[SocketSnakeServerGame] 使用者按下開始，已寫入設定並開始遊戲循環。當前目標局數 = " + maxEpisodes);
 
+        if (localPolicy != null) {
+            // 本機 policy 不需要 Python 訓練程式，直接開始
+            SwingUtilities.invokeLater(() -> startGameLoopTimer());
+            return;
+        }
+
         // 嘗試啟動 Python 訓練程式（在獨立 cmd 視窗），會讀取 agent/config.json
         boolean trainerStarted = startPythonTrainer();
         if (trainerStarted) {
@@ -227,6 +288,33 @@ public class SocketSnakeServerGame extends JFrame {
         }
     }
 
+    /**
+     * 依 -Dsnake.action.source 決定動作來源：local 時載入 -Dsnake.policy.file
+     * （預設 agent/dqn_snake_policy.bin，由 agent/export_policy.py 匯出）；mcts 時改用 {@link MctsPlanner}
+     * 即時搜尋（預算見 -Dsnake.mcts.*，搜尋期間會佔住 EDT，建議設定 -Dsnake.mcts.time_ms）。
+     * 其他值或載入失敗時回傳 null，維持原本由 Python 透過 socket 決定動作的流程。
+     */
+    private static Policy loadLocalPolicy() {
+        String source = System.getProperty("snake.action.source", "python");
+        if ("mcts".equalsIgnoreCase(source)) {
+            System.out.println("[SocketSnakeServerGame] 使用 MCTS 決定動作");
+            return MctsPlanner.fromProperties();
+        }
+        if (!"local".equalsIgnoreCase(source)) {
+            return null;
+        }
+        String file = System.getProperty("snake.policy.file",
+                System.getProperty("user.dir") + File.separator + "agent" + File.separator + "dqn_snake_policy.bin");
+        try {
+            Policy policy = LocalNetworkPolicy.load(java.nio.file.Paths.get(file));
+            System.out.println("[SocketSnakeServerGame] 已載入本機 policy: " + file);
+            return policy;
+        } catch (IOException e) {
+            System.err.println("[SocketSnakeServerGame] 無法載入本機 policy " + file + "，改用 Python: " + e.getMessage());
+            return null;
+        }
+    }
+
     /**
      * 在新的 cmd 視窗啟動 Python 訓練程式（非阻塞）。
      * 返回 true 表示命令已發出（不代表內部訓練成功啟動）。
@@ -320,6 +408,8 @@ public class SocketSnakeServerGame extends JFrame {
 
             System.out.println("[SocketSnakeServerGame] 呼叫 waitForClient()，阻塞等待 client 連線...");
             socketServer.waitForClient();
+            // 畫面逐格推進，每個 ACTION 只走一步；CONFIG 回覆的 action_repeat 因此固定為 1
+            socketServer.getConfig().setMaxActionRepeat(1);
 
             System.out.println("[SocketSnakeServerGame] client 已連線。準備傳送 INIT...");
             int boardSize = gameState.getBoardSize();
@@ -369,106 +459,42 @@ public class SocketSnakeServerGame extends JFrame {
 
             // 若本局已結束（撞牆或撞自己），處理局結束流程
             if (gameState.isDone()) {
+                EnvMetrics.get().recordEpisode(stepCountInEpisode, episodeReward);
+                EnvEvents.episodeEnd(stepCountInEpisode, episodeReward, gameState.getSnakeLength() - 3, false);
+                EpisodeLog.recordEpisode(gameState, false);
+                recordLearningCurve();
                 // 在局結束時印出本局累積 reward
                 System.out.println("[SocketSnakeServerGame] 第 " + currentEpisode + " 局結束，上一局總 reward=" + String.format("%.3f", episodeReward));
                 statusLabel.setText("第 " + currentEpisode + " 局結束，蛇死了。上一局總 reward=" + String.format("%.3f", episodeReward));
                 snakePanel.updateBoard(gameState.getBoard());
-                // 暫停 1 秒，然後自動開始下一局或結束整個任務
+                // 停頓一下，然後自動開始下一局或結束整個任務
                 gameLoopTimer.stop();
-                new Timer(1000, evt -> {
-                    ((Timer) evt.getSource()).stop();
-                    if (currentEpisode < maxEpisodes) {
-                        currentEpisode++;
-                        System.out.println("[SocketSnakeServerGame] 開始第 " + currentEpisode + " 局");
-                        // reset accumulator for new episode
-                        episodeReward = 0.0;
-                        resetEpisode();
-                        statusLabel.setText("第 " + currentEpisode + " 局 / 共 " + maxEpisodes + " 局");
-                        gameLoopTimer.start();
-                    } else {
-                        statusLabel.setText("全部 " + maxEpisodes + " 局已結束。最後一局總 reward=" + String.format("%.3f", episodeReward));
-                        isRunning = false;
-                        startButton.setEnabled(true);
-                        episodesField.setEnabled(true);
-                    }
-                }).start();
+                prepareAutoReset(false);
+                scheduleNextEpisode("");
                 return;
             }
 
-            if (socketServer == null) {
+            if (socketServer == null && localPolicy == null) {
                 statusLabel.setText("尚未有 Python 連線...");
                 return;
             }
 
             try {
-                int[][] board = gameState.getBoard();
-                double reward = gameState.getReward();
-                boolean done = gameState.isDone();
-
-                // 累積本局 reward（這個 reward 是上一步的結果）
-                episodeReward += reward;
-
-                // 診斷輸出：印在 console 上，方便除錯
-                System.out.println("[SocketSnakeServerGame] sendState: reward=" + reward + ", done=" + done + ", episodeReward=" + String.format("%.3f", episodeReward));
-
-                // 傳 STATE 給 Python（先做防護，避免任何欄位為 null / 非法）
-                int headX = gameState.getHeadX();
-                int headY = gameState.getHeadY();
-                int snakeLen = gameState.getSnakeLength();
-                int foodX = gameState.getFoodX();
-                int foodY = gameState.getFoodY();
-                int direction = gameState.getDirection();
-
-                // 驗證座標範圍，若不合法則設為 -1（Python 端可檢測 -1 表示 unknown）
-                int boardN = gameState.getBoardSize();
-                if (boardN <= 0) boardN = 20;
-                if (headX < 0 || headX >= boardN) headX = -1;
-                if (headY < 0 || headY >= boardN) headY = -1;
-                if (foodX < 0 || foodX >= boardN) foodX = -1;
-                if (foodY < 0 || foodY >= boardN) foodY = -1;
-                if (snakeLen < 0) snakeLen = 0;
-                if (direction < 0 || direction > 3) direction = -1;
-
-                // 記錄要送出的 payload（方便 debug）
-                System.out.println(String.format("[SocketSnakeServerGame] sendState payload: head=(%d,%d), snake_len=%d, food=(%d,%d), dir=%d",
-                        headX, headY, snakeLen, foodX, foodY, direction));
-
-                try {
-                    // 優先使用新簽章（含 head/food/len/dir）
-                    socketServer.sendState(board, reward, done, headX, headY, snakeLen, foodX, foodY, direction);
-                } catch (NoSuchMethodError nsme) {
-                    // 若 socketServer 沒有新簽章（向後相容），改用舊簽章
-                    System.err.println("[SocketSnakeServerGame] sendState: 新簽章不可用，使用舊簽章。" + nsme.getMessage());
-                    try {
-                        socketServer.sendState(board, reward, done);
-                    } catch (IOException ioe2) {
-                        System.err.println("[SocketSnakeServerGame] fallback sendState 失敗: " + ioe2.getMessage());
-                    }
-                } catch (IOException ioe) {
-                    // 若傳送失敗，嘗試用較小的兼容 payload（舊版 sendState）避免斷線
-                    System.err.println("[SocketSnakeServerGame] sendState 發生 IOException，嘗試用最小 payload 傳送並忽略細節: " + ioe.getMessage());
-                    try {
-                        socketServer.sendState(board, reward, done);
-                    } catch (IOException ex2) {
-                        System.err.println("[SocketSnakeServerGame] fallback sendState 也失敗，略過本步驟: " + ex2.getMessage());
-                    }
-                }
-
-
-                // 等待 Python 傳回 ACTION
-                System.out.println("[SocketSnakeServerGame] 等待 client 回傳 ACTION (timeout=" + stepDelayMs + "ms)...");
-                int action = socketServer.readActionWithTimeout(stepDelayMs);
-                if (action == -1) {
-                    // Python 未在 timeout 內回應，改由 Java 端隨機動作（探索）
-                    action = rng.nextInt(4);
-                    System.out.println("[SocketSnakeServerGame] Python 未回應或回傳非 ACTION，fallback 隨機 action=" + action);
+                int action;
+                if (localPolicy != null) {
+                    // 本機 policy：直接在 JVM 內推論，不經過 socket
+                    episodeReward += gameState.getReward();
+                    action = localPolicy.selectAction(gameState);
                 } else {
-                    System.out.println("[SocketSnakeServerGame] 收到 ACTION=" + action);
+                    action = exchangeWithPython();
                 }
 
 
                 // 根據動作推進遊戲一步，並更新畫面
+                long stepStart = StepPhases.start();
                 gameState.stepByAction(action);
+                StepPhases.get().end(StepPhases.Phase.STEP, stepStart);
+                EnvMetrics.get().recordStep();
                  // 每執行一步，計數 +1
                  stepCountInEpisode++;
                  // DEBUG: 印出步數計數，方便追蹤為何每局只有 10 步
@@ -478,30 +504,19 @@ public class SocketSnakeServerGame extends JFrame {
                      System.out.println("[SocketSnakeServerGame] 已達每局最大步數上限 (" + uiMaxSteps + ")，將結束本局。");
                      // 停止 timer 以處理局結束流程（與撞牆邏輯一致）
                      gameLoopTimer.stop();
+                     EnvMetrics.get().recordEpisode(stepCountInEpisode, episodeReward);
+                     EnvEvents.episodeEnd(stepCountInEpisode, episodeReward, gameState.getSnakeLength() - 3, true);
+                     EpisodeLog.recordEpisode(gameState, true);
+                     recordLearningCurve();
                      // 印出本局 reward
                      System.out.println("[SocketSnakeServerGame] 第 " + currentEpisode + " 局達到步數上限，上一局總 reward=" + String.format("%.3f", episodeReward));
-                     // 等 1 秒再開始下一局或結束
-                     new Timer(1000, evt -> {
-                         ((Timer) evt.getSource()).stop();
-                         if (currentEpisode < maxEpisodes) {
-                             currentEpisode++;
-                             System.out.println("[SocketSnakeServerGame] 開始第 " + currentEpisode + " 局 (由步數上限觸發)");
-                             // reset accumulator for new episode
-                             episodeReward = 0.0;
-                             stepCountInEpisode = 0;
-                             resetEpisode();
-                             statusLabel.setText("第 " + currentEpisode + " 局 / 共 " + maxEpisodes + " 局");
-                             gameLoopTimer.start();
-                         } else {
-                             statusLabel.setText("全部 " + maxEpisodes + " 局已結束 (由步數上限)。最後一局總 reward=" + String.format("%.3f", episodeReward));
-                             isRunning = false;
-                             startButton.setEnabled(true);
-                             episodesField.setEnabled(true);
-                         }
-                     }).start();
+                     prepareAutoReset(true);
+                     scheduleNextEpisode(" (由步數上限)");
                      return;
                   }
+                  long renderStart = StepPhases.start();
                   snakePanel.updateBoard(gameState.getBoard());
+                  StepPhases.get().end(StepPhases.Phase.RENDER, renderStart);
                   statusLabel.setText("第 " + currentEpisode + " 局 / 共 " + maxEpisodes + " 局，最近動作: " + action);
             } catch (IOException ex) {
                 ex.printStackTrace();
@@ -516,6 +531,139 @@ public class SocketSnakeServerGame extends JFrame {
         gameLoopTimer.start();
     }
 
+    // recordLearningCurve：把剛結束的一局加入學習曲線（只更新 ring buffer，重畫由背景 thread 處理）
+    private void recordLearningCurve() {
+        if (curvePanel != null) {
+            curvePanel.getCurve().add(episodeReward, stepCountInEpisode);
+        }
+    }
+
+    // prepareAutoReset：client 開啟 auto_reset 時，在 reset 之前先建立終局 STATE
+    private void prepareAutoReset(boolean truncated) {
+        if (socketServer == null || localPolicy != null || !socketServer.getConfig().isAutoReset()) {
+            return;
+        }
+        pendingTerminalState = socketServer.stateMessage(gameState, gameState.getReward(), 1);
+        pendingTruncated = truncated;
+        pendingLength = gameState.getEpisodeSteps();
+        pendingReward = gameState.getEpisodeReward();
+        pendingScore = gameState.getSnakeLength() - 3;
+    }
+
+    // scheduleNextEpisode：停頓 episodePauseMs 後開始下一局或結束整個任務；
+    // auto-reset 時不停頓（client 已經拿到新局的觀測在等回應）
+    private void scheduleNextEpisode(String reason) {
+        int pause = (pendingTerminalState != null) ? 0 : episodePauseMs;
+        if (pause <= 0) {
+            startNextEpisode(reason);
+            return;
+        }
+        new Timer(pause, evt -> {
+            ((Timer) evt.getSource()).stop();
+            startNextEpisode(reason);
+        }).start();
+    }
+
+    private void startNextEpisode(String reason) {
+        if (currentEpisode < maxEpisodes) {
+            currentEpisode++;
+            System.out.println("[SocketSnakeServerGame] 開始第 " + currentEpisode + " 局" + reason);
+            // reset accumulator for new episode
+            episodeReward = 0.0;
+            stepCountInEpisode = 0;
+            resetEpisode();
+            statusLabel.setText("第 " + currentEpisode + " 局 / 共 " + maxEpisodes + " 局");
+            gameLoopTimer.start();
+        } else {
+            pendingTerminalState = null;
+            statusLabel.setText("全部 " + maxEpisodes + " 局已結束" + reason + "。最後一局總 reward=" + String.format("%.3f", episodeReward));
+            isRunning = false;
+            startButton.setEnabled(true);
+            episodesField.setEnabled(true);
+        }
+    }
+
+    // exchangeWithPython：送出目前 STATE 給 Python，並在 stepDelayMs 內等待 ACTION；
+    // 逾時則改用 fallbackPolicy 的動作。
+    private int exchangeWithPython() throws IOException {
+        int[][] board = gameState.getBoard();
+        double reward = gameState.getReward();
+        boolean done = gameState.isDone();
+
+        // 累積本局 reward（這個 reward 是上一步的結果）
+        episodeReward += reward;
+
+        // 診斷輸出：印在 console 上，方便除錯
+        System.out.println("[SocketSnakeServerGame] sendState: reward=" + reward + ", done=" + done + ", episodeReward=" + String.format("%.3f", episodeReward));
+
+        // 傳 STATE 給 Python（先做防護，避免任何欄位為 null / 非法）
+        int headX = gameState.getHeadX();
+        int headY = gameState.getHeadY();
+        int snakeLen = gameState.getSnakeLength();
+        int foodX = gameState.getFoodX();
+        int foodY = gameState.getFoodY();
+        int direction = gameState.getDirection();
+
+        // 驗證座標範圍，若不合法則設為 -1（Python 端可檢測 -1 表示 unknown）
+        int boardN = gameState.getBoardSize();
+        if (boardN <= 0) boardN = 20;
+        if (headX < 0 || headX >= boardN) headX = -1;
+        if (headY < 0 || headY >= boardN) headY = -1;
+        if (foodX < 0 || foodX >= boardN) foodX = -1;
+        if (foodY < 0 || foodY >= boardN) foodY = -1;
+        if (snakeLen < 0) snakeLen = 0;
+        if (direction < 0 || direction > 3) direction = -1;
+
+        // 記錄要送出的 payload（方便 debug）
+        System.out.println(String.format("[SocketSnakeServerGame] sendState payload: head=(%d,%d), snake_len=%d, food=(%d,%d), dir=%d",
+                headX, headY, snakeLen, foodX, foodY, direction));
+
+        try {
+            // 優先使用完整 payload（含 head/food/len/dir 與 state_hash）；auto-reset 的合併訊息已經送過就略過
+            if (stateAlreadySent) {
+                stateAlreadySent = false;
+            } else {
+                socketServer.sendState(gameState);
+            }
+        } catch (NoSuchMethodError nsme) {
+            // 若 socketServer 沒有新簽章（向後相容），改用舊簽章
+            System.err.println("[SocketSnakeServerGame] sendState: 新簽章不可用，使用舊簽章。" + nsme.getMessage());
+            try {
+                socketServer.sendState(board, reward, done);
+            } catch (IOException ioe2) {
+                System.err.println("[SocketSnakeServerGame] fallback sendState 失敗: " + ioe2.getMessage());
+            }
+        } catch (IOException ioe) {
+            // 若傳送失敗，嘗試用較小的兼容 payload（舊版 sendState）避免斷線
+            System.err.println("[SocketSnakeServerGame] sendState 發生 IOException，嘗試用最小 payload 傳送並忽略細節: " + ioe.getMessage());
+            try {
+                socketServer.sendState(board, reward, done);
+            } catch (IOException ex2) {
+                System.err.println("[SocketSnakeServerGame] fallback sendState 也失敗，略過本步驟: " + ex2.getMessage());
+            }
+        }
+
+
+        // 等待 Python 傳回 ACTION
+        System.out.println("[SocketSnakeServerGame] 等待 client 回傳 ACTION (timeout=" + stepDelayMs + "ms)...");
+        int action = socketServer.readActionWithTimeout(stepDelayMs);
+        if (action == -1) {
+            // Python 未在 timeout 內回應，改由 Java 端內建策略決定（避免隨機亂走自殺污染訓練資料）
+            action = fallbackPolicy.selectAction(gameState);
+            EnvMetrics.get().recordFallbackAction();
+            EnvEvents.FallbackAction fallback = new EnvEvents.FallbackAction();
+            if (fallback.shouldCommit()) {
+                fallback.action = action;
+                fallback.timeoutMs = stepDelayMs;
+                fallback.commit();
+            }
+            System.out.println("[SocketSnakeServerGame] Python 未回應或回傳非 ACTION，fallback action=" + action);
+        } else {
+            System.out.println("[SocketSnakeServerGame] 收到 ACTION=" + action);
+        }
+        return action;
+    }
+
     // resetEpisode：重新初始化當前局的 game state，並通知 Python（若連線）
     private void resetEpisode() {
         gameState.reset();
@@ -527,8 +675,17 @@ public class SocketSnakeServerGame extends JFrame {
         episodeReward = 0.0;
         if (socketServer != null) {
             try {
-                // 通知 Python 並包含 head/food/len (reset 後立即發一次 state 會由 timer 做)
-                socketServer.sendReset();
+                if (pendingTerminalState != null) {
+                    // auto-reset：終局 STATE + 該局統計 + 新局觀測一次送出，不再送 RESET
+                    socketServer.sendMessage(SocketProtocol.createAutoResetStateMessage(pendingTerminalState,
+                            pendingTruncated, pendingLength, pendingReward, pendingScore,
+                            socketServer.stateMessage(gameState, gameState.getReward(), 0)));
+                    pendingTerminalState = null;
+                    stateAlreadySent = true;
+                } else {
+                    // 通知 Python 並包含 head/food/len (reset 後立即發一次 state 會由 timer 做)
+                    socketServer.sendReset();
+                }
             } catch (IOException e) {
                 e.printStackTrace();
                 statusLabel.setText("送 RESET 給 Python 失敗: " + e.getMessage());
@@ -563,6 +720,8 @@ public class SocketSnakeServerGame extends JFrame {
     }
 
     public static void main(String[] args) {
+        MetricsHttpServer.startIfConfigured();
+        StepPhases.get().installShutdownDump();
         SwingUtilities.invokeLater(SocketSnakeServerGame::new);
     }
 }
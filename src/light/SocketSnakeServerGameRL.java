@@ -6,13 +6,17 @@ import java.io.IOException;
  * 使用 SocketSnakeServer + GameState 與 Python DQN 透過 socket 互動的 RL 版遊戲迴圈。
  *
  * 流程：
- *  1. 建立 GameState，啟動 SocketSnakeServer 監聽指定埠。
- *  2. 等待 Python client 連線後，送出 INIT(board_size)。
+ *  1. 啟動 SocketSnakeServer 監聽指定埠。
+ *  2. 等待 Python client 連線後，為它開一個新的 session（GameState），送出 INIT(board_size, session token)。
  *  3. 進入迴圈：
- *     - 若 done：reset()，送 RESET。
+ *     - 若 done：reset()，送 RESET；連線設定 auto_reset 時改為送一個帶有終局觀測、
+ *       該局統計與新局第一個觀測的 STATE（見 {@link SocketProtocol#createAutoResetStateMessage}），省掉額外的往返。
  *     - 送 STATE(board, reward, done)。
  *     - 阻塞 readAction()，拿到 0~3 的 action。
- *     - 呼叫 gameState.stepByAction(action)。
+ *     - 呼叫 gameState.stepByAction(action)；依連線的 action_repeat（或 ACTION 的 "repeat"）連續執行 k 次，
+ *       中途 done 就停止。下一個 STATE 的 reward 為這幾步的總和，steps 為實際走的步數。
+ *  4. client 斷線時 process 不結束：session 保留 {@code -Dsnake.session.grace_ms}（預設 60 秒），回到 2 等下一個連線。
+ *     client 在期限內重連並送出 RESUME(token) 就接著原本的 GameState 繼續（見 {@link SessionRegistry}）。
  */
 public class SocketSnakeServerGameRL {
 
@@ -22,63 +26,166 @@ public class SocketSnakeServerGameRL {
     /** 每步之間的延遲，主要讓訓練用時不要太快吃滿 CPU。視情況可調或設成 0。 */
     private static final long STEP_DELAY_MS = 10L;
 
+    /** 以 -Dsnake.replay.capacity=N 啟用 server 端 replay buffer（0 = 不啟用）。 */
+    private static final int REPLAY_CAPACITY = Integer.getInteger("snake.replay.capacity", 0);
+
     public static void main(String[] args) {
-        GameState gameState = new GameState();
-        int boardSize = gameState.getBoardSize();
+        MetricsHttpServer.startIfConfigured();
+        StepPhases.get().installShutdownDump();
+
+        SessionRegistry sessions = new SessionRegistry(SessionRegistry.DEFAULT_GRACE_MS);
 
         try (SocketSnakeServer server = new SocketSnakeServer(PORT)) {
-            System.out.println("[SocketSnakeServerGameRL] 啟動，等待 Python client 連線 (port=" + PORT + ")...");
-            server.waitForClient();
-            System.out.println("[SocketSnakeServerGameRL] Python client 已連線。");
+            if (REPLAY_CAPACITY > 0) {
+                server.enableReplayBuffer(REPLAY_CAPACITY, 0.6);
+                System.out.println("[SocketSnakeServerGameRL] 已啟用 replay buffer, capacity=" + REPLAY_CAPACITY);
+            }
+            System.out.println("[SocketSnakeServerGameRL] 啟動，等待 Python client 連線 (port=" + PORT
+                    + ", session 寬限期=" + sessions.getGraceMs() + "ms)...");
+            while (true) {
+                server.acceptNext();
+                try {
+                    runSession(server, sessions, sessions.open(new GameState()), STEP_DELAY_MS, true);
+                } catch (IOException e) {
+                    System.err.println("[SocketSnakeServerGameRL] session 中斷: " + e);
+                }
+                SessionRegistry.Session last = server.getSession();
+                sessions.detach(last);
+                System.out.println("[SocketSnakeServerGameRL] client 斷線，session " + last.getToken() + " 保留 "
+                        + sessions.getGraceMs() + "ms，等待下一個連線...");
+            }
+        } catch (IOException e) {
+            System.err.println("[SocketSnakeServerGameRL] 建立或關閉 SocketSnakeServer 時發生 IOException:");
+            e.printStackTrace();
+        }
 
-            // 告訴 Python 棋盤大小
-            server.sendInit(boardSize);
-            System.out.println("[SocketSnakeServerGameRL] 已送出 INIT, board_size=" + boardSize);
+        MetricsHttpServer.stop();
+        System.out.println("[SocketSnakeServerGameRL] 結束。");
+    }
 
-            while (true) {
-                // 若一局結束，reset 並告訴 Python
-                if (gameState.isDone()) {
-                    System.out.println("[SocketSnakeServerGameRL] 一局結束，重置遊戲。");
+    /**
+     * 等待一個 client 連線並跑完整個 STATE / ACTION 迴圈，直到連線中斷為止（不可恢復的 session）。
+     * {@link LoadGenerator} 也用這個方法在同一個 JVM 內啟動多個 server。
+     *
+     * @param stepDelayMs 每步之間的延遲（0 = 不延遲）
+     * @param verbose     是否印出局結束 / 斷線等訊息，以及 GameState 的逐步診斷
+     */
+    static void runSession(SocketSnakeServer server, GameState gameState,
+                           long stepDelayMs, boolean verbose) throws IOException {
+        runSession(server, null, new SessionRegistry.Session(null, gameState), stepDelayMs, verbose);
+    }
+
+    /**
+     * 以 session 跑 STATE / ACTION 迴圈，直到連線中斷為止；結束時呼叫端以 {@link SocketSnakeServer#getSession()}
+     * 取得這條連線最後使用的 session（client 送出 RESUME 時會換成斷線前的 session）交給 registry 保留。
+     *
+     * @param sessions 可恢復 session 的 registry；null 時 INIT 不帶 token，也不接受 RESUME
+     */
+    static void runSession(SocketSnakeServer server, SessionRegistry sessions, SessionRegistry.Session session,
+                           long stepDelayMs, boolean verbose) throws IOException {
+        server.attachSession(sessions, session);
+        int boardSize = session.state.getBoardSize();
+        session.state.setVerbose(verbose);
+
+        server.waitForClient();
+        if (verbose) System.out.println("[SocketSnakeServerGameRL] Python client 已連線。");
+
+        // 告訴 Python 棋盤大小（與 session token）
+        if (sessions != null && session.token != null) {
+            server.sendMessage(SocketProtocol.createInitMessage(boardSize, session.token, sessions.getGraceMs()));
+        } else {
+            server.sendInit(boardSize);
+        }
+        if (verbose) System.out.println("[SocketSnakeServerGameRL] 已送出 INIT, board_size=" + boardSize);
+
+        while (true) {
+            // RESUME 會在 readAction() 中換掉 session，每一輪都重新取
+            SessionRegistry.Session s = server.getSession();
+            GameState gameState = s.state;
+            // 若一局結束，reset 並告訴 Python
+            SocketProtocol.SocketMessage stateMsg = null;
+            boolean sendReset = false;
+            if (gameState.isDone()) {
+                if (verbose) System.out.println("[SocketSnakeServerGameRL] 一局結束，重置遊戲。");
+                int length = gameState.getEpisodeSteps();
+                double total = gameState.getEpisodeReward();
+                int score = gameState.getSnakeLength() - 3;
+                EnvMetrics.get().recordEpisode(length, total);
+                EnvEvents.episodeEnd(length, total, score, false);
+                EpisodeLog.recordEpisode(gameState, false);
+                if (server.getConfig().isAutoReset()) {
+                    // 終局觀測必須在 reset 之前取出
+                    SocketProtocol.SocketMessage terminal = server.stateMessage(gameState, s.stepReward, s.stepsTaken);
                     gameState.reset();
-                    server.sendReset();
+                    stateMsg = SocketProtocol.createAutoResetStateMessage(terminal, false, length, total, score,
+                            server.stateMessage(gameState, gameState.getReward(), 0));
+                } else {
+                    gameState.reset();
+                    sendReset = true;
                 }
+                s.stepReward = gameState.getReward();
+                s.stepsTaken = 0;
+            }
 
-                int[][] board = gameState.getBoard();
-                double reward = gameState.getReward(); // GameState 已有 reward 欄位
-                boolean done = gameState.isDone();
-
-                // 1) 把目前狀態送給 Python
+            // 1) 把目前狀態送給 Python（含 head/food/len/direction 與 state_hash）
+            // RESET 送失敗時仍送出 STATE，兩者都記進 session 的 outbox，RESUME 時才能一起重送
+            IOException sendError = null;
+            if (sendReset) {
                 try {
-                    server.sendState(board, reward, done);
+                    server.sendReset();
                 } catch (IOException e) {
-                    System.err.println("[SocketSnakeServerGameRL] 傳送 STATE 給 Python 失敗，結束伺服器。");
-                    e.printStackTrace();
-                    break;
+                    sendError = e;
                 }
+            }
+            try {
+                if (stateMsg != null) {
+                    server.sendMessage(stateMsg);
+                } else {
+                    server.sendState(gameState, s.stepReward, s.stepsTaken);
+                }
+            } catch (IOException e) {
+                if (sendError == null) sendError = e;
+            }
+            if (sendError != null) {
+                if (verbose) {
+                    System.err.println("[SocketSnakeServerGameRL] 傳送 STATE 給 Python 失敗，結束這個 session。");
+                    sendError.printStackTrace();
+                }
+                break;
+            }
 
-                // 2) 從 Python 讀取動作；若連線斷掉或資料不對會拋 IOException
-                int action;
-                try {
-                    action = server.readAction();
-                } catch (IOException e) {
-                    System.err.println("[SocketSnakeServerGameRL] 讀取 ACTION 失敗 (可能斷線)，結束伺服器。");
+            // 2) 從 Python 讀取動作；若連線斷掉或資料不對會拋 IOException
+            int action;
+            try {
+                action = server.readAction();
+            } catch (IOException e) {
+                if (verbose) {
+                    System.err.println("[SocketSnakeServerGameRL] 讀取 ACTION 失敗 (可能斷線)，結束這個 session。");
                     e.printStackTrace();
-                    break;
                 }
+                break;
+            }
 
-                // 3) 依 action 前進一步
+            // 3) 依 action 前進 repeat 步（done 時提早停止）；RESUME 之後 session 已換成斷線前的那一個
+            s = server.getSession();
+            gameState = s.state;
+            int repeat = server.getLastActionRepeat();
+            s.stepReward = 0.0;
+            s.stepsTaken = 0;
+            long stepStart = StepPhases.start();
+            do {
                 gameState.stepByAction(action);
-
-                // 4) 控制迴圈速度（可視需要調整或拿掉）
-                sleepQuietly(STEP_DELAY_MS);
+                s.stepReward += gameState.getReward();
+                s.stepsTaken++;
+            } while (s.stepsTaken < repeat && !gameState.isDone());
+            StepPhases.get().end(StepPhases.Phase.STEP, stepStart);
+            EnvMetrics.get().recordSteps(s.stepsTaken);
+
+            // 4) 控制迴圈速度（可視需要調整或拿掉）
+            if (stepDelayMs > 0) {
+                sleepQuietly(stepDelayMs);
             }
-
-        } catch (IOException e) {
-            System.err.println("[SocketSnakeServerGameRL] 建立或關閉 SocketSnakeServer 時發生 IOException:");
-            e.printStackTrace();
         }
-
-        System.out.println("[SocketSnakeServerGameRL] 結束。");
     }
 
     private static void sleepQuietly(long ms) {
@@ -0,0 +1,143 @@
+package light;
+
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.io.StringWriter;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * socket 遊戲迴圈每一步各階段的耗時分佈，用來回答「一步 50ms 花在 Python、Gson 還是 Swing」。
+ *
+ * 階段：
+ * <ul>
+ *   <li>{@link Phase#ENCODE}：建立 STATE 的 JSON 並序列化成一行文字</li>
+ *   <li>{@link Phase#SEND}：寫入 socket 並 flush</li>
+ *   <li>{@link Phase#WAIT_ACTION}：STATE 送出後到讀到 ACTION 那一行為止（client 推論 + 網路）</li>
+ *   <li>{@link Phase#DECODE}：把 ACTION 那一行 decode 成 SocketMessage</li>
+ *   <li>{@link Phase#STEP}：{@link GameState#stepByAction(int)}（含 action repeat 的所有步）</li>
+ *   <li>{@link Phase#RENDER}：把棋盤交給 Swing 重畫（只有 GUI 版本）</li>
+ * </ul>
+ * 每個階段一個 {@link LatencyHistogram}，寫入不加鎖。以 {@code -Dsnake.trace.phases=false} 關閉；
+ * {@link #installShutdownDump()} 會在 JVM 結束時印出統計表，設定 {@code -Dsnake.trace.file} 時另外寫入該檔。
+ */
+public final class StepPhases {
+
+    public enum Phase {
+        ENCODE("encode"),
+        SEND("send"),
+        WAIT_ACTION("wait"),
+        DECODE("decode"),
+        STEP("step"),
+        RENDER("render");
+
+        private final String label;
+
+        Phase(String label) {
+            this.label = label;
+        }
+
+        public String label() {
+            return label;
+        }
+    }
+
+    public static final boolean ENABLED = !"false".equalsIgnoreCase(System.getProperty("snake.trace.phases"));
+
+    private static final StepPhases INSTANCE = new StepPhases();
+
+    private final Map<Phase, LatencyHistogram> histograms = new EnumMap<>(Phase.class);
+    private final AtomicBoolean dumpInstalled = new AtomicBoolean(false);
+
+    private StepPhases() {
+        for (Phase p : Phase.values()) {
+            histograms.put(p, new LatencyHistogram());
+        }
+    }
+
+    public static StepPhases get() {
+        return INSTANCE;
+    }
+
+    /** 階段開始時間；關閉時回傳 0 且 {@link #end} 不做任何事。 */
+    public static long start() {
+        return ENABLED ? System.nanoTime() : 0L;
+    }
+
+    /** 記錄從 {@link #start()} 到現在的耗時。 */
+    public void end(Phase phase, long startNanos) {
+        if (ENABLED) {
+            histograms.get(phase).record(System.nanoTime() - startNanos);
+        }
+    }
+
+    /** 直接記錄一段已量好的耗時。 */
+    public void record(Phase phase, long nanos) {
+        if (ENABLED) {
+            histograms.get(phase).record(nanos);
+        }
+    }
+
+    public LatencyHistogram histogram(Phase phase) {
+        return histograms.get(phase);
+    }
+
+    /** 狀態列用的一行摘要：有樣本的階段各列出 p50/p99（ms）。 */
+    public String summaryLine() {
+        StringBuilder sb = new StringBuilder("p50/p99 ms ");
+        boolean any = false;
+        for (Phase p : Phase.values()) {
+            LatencyHistogram h = histograms.get(p);
+            if (h.getCount() == 0) continue;
+            if (any) sb.append(" | ");
+            sb.append(p.label()).append(' ')
+                    .append(String.format("%.2f/%.2f", h.percentileNanos(0.50) / 1e6, h.percentileNanos(0.99) / 1e6));
+            any = true;
+        }
+        return any ? sb.toString() : "尚無 step 計時資料";
+    }
+
+    /** 完整統計表（ms）。 */
+    public String renderTable() {
+        StringWriter sw = new StringWriter();
+        PrintWriter pw = new PrintWriter(sw);
+        pw.printf("%-8s %10s %9s %9s %9s %9s %9s %9s%n", "phase", "count", "mean", "p50", "p90", "p99", "p99.9", "max");
+        for (Phase p : Phase.values()) {
+            LatencyHistogram h = histograms.get(p);
+            pw.printf("%-8s %10d %9.3f %9.3f %9.3f %9.3f %9.3f %9.3f%n", p.label(), h.getCount(),
+                    h.getMeanNanos() / 1e6, h.percentileNanos(0.50) / 1e6, h.percentileNanos(0.90) / 1e6,
+                    h.percentileNanos(0.99) / 1e6, h.percentileNanos(0.999) / 1e6, h.getMaxNanos() / 1e6);
+        }
+        pw.flush();
+        return sw.toString();
+    }
+
+    /** 註冊 shutdown hook，在 JVM 結束時輸出統計表；重複呼叫只註冊一次。 */
+    public void installShutdownDump() {
+        if (!ENABLED || !dumpInstalled.compareAndSet(false, true)) {
+            return;
+        }
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+            String table = renderTable();
+            System.out.println("[StepPhases] 各階段耗時 (ms):");
+            System.out.print(table);
+            String file = System.getProperty("snake.trace.file");
+            if (file != null && !file.isEmpty()) {
+                try {
+                    Path path = Paths.get(file);
+                    if (path.getParent() != null) {
+                        Files.createDirectories(path.getParent());
+                    }
+                    Files.write(path, table.getBytes(StandardCharsets.UTF_8));
+                } catch (IOException e) {
+                    System.err.println("[StepPhases] 無法寫入 " + file + ": " + e.getMessage());
+                }
+            }
+        }, "StepPhases-dump"));
+    }
+}
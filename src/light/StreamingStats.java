@@ -0,0 +1,76 @@
+package light;
+
+import com.google.gson.JsonObject;
+
+/**
+ * 單一數值序列的串流統計：筆數、平均、最小 / 最大值，以及數個分位數的 P² 估計。
+ *
+ * 不保存樣本，記憶體固定；分位數是近似值（樣本數大時誤差通常在 1% 以內），
+ * 且與加入順序有關。不是 thread-safe，由呼叫端同步。
+ */
+final class StreamingStats {
+
+    private final double[] quantiles;
+    private final LearningCurve.P2Quantile[] estimators;
+    private long count = 0L;
+    private double sum = 0.0;
+    private double min = Double.POSITIVE_INFINITY;
+    private double max = Double.NEGATIVE_INFINITY;
+
+    /** @param quantiles 要估計的分位數（0~1），例如 {0.05, 0.5, 0.95} */
+    StreamingStats(double... quantiles) {
+        this.quantiles = quantiles.clone();
+        this.estimators = new LearningCurve.P2Quantile[quantiles.length];
+        for (int i = 0; i < quantiles.length; i++) {
+            estimators[i] = new LearningCurve.P2Quantile(quantiles[i]);
+        }
+    }
+
+    void add(double x) {
+        count++;
+        sum += x;
+        min = Math.min(min, x);
+        max = Math.max(max, x);
+        for (LearningCurve.P2Quantile e : estimators) {
+            e.add(x);
+        }
+    }
+
+    long getCount() {
+        return count;
+    }
+
+    double getMean() {
+        return count == 0 ? 0.0 : sum / count;
+    }
+
+    double getMin() {
+        return count == 0 ? 0.0 : min;
+    }
+
+    double getMax() {
+        return count == 0 ? 0.0 : max;
+    }
+
+    /** 第 i 個分位數（建構時的順序）的估計值。 */
+    double quantile(int i) {
+        return estimators[i].value();
+    }
+
+    /** {"mean", "min", "max", "p5", "p50", ...}；分位數的 key 以百分比命名。 */
+    JsonObject toJson() {
+        JsonObject json = new JsonObject();
+        json.addProperty("mean", getMean());
+        json.addProperty("min", getMin());
+        json.addProperty("max", getMax());
+        for (int i = 0; i < quantiles.length; i++) {
+            json.addProperty(quantileKey(quantiles[i]), quantile(i));
+        }
+        return json;
+    }
+
+    static String quantileKey(double q) {
+        double pct = q * 100.0;
+        return (pct == Math.rint(pct)) ? "p" + (long) pct : "p" + pct;
+    }
+}
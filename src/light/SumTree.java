@@ -0,0 +1,74 @@
+package light;
+
+/**
+ * 比例式優先抽樣用的 sum-tree。
+ *
+ * 以單一 double[] 存放完整二元樹：節點 i 的子節點為 2i / 2i+1，
+ * 葉節點從 {@code leafBase} 開始，依序對應 replay buffer 的 slot。
+ * 更新與依前綴和查找皆為 O(log N)，過程中不配置任何物件。
+ */
+final class SumTree {
+
+    private final int capacity;
+    private final int leafBase;   // 第一個葉節點在 tree[] 中的位置（2 的次方）
+    private final double[] tree;
+
+    SumTree(int capacity) {
+        if (capacity <= 0) {
+            throw new IllegalArgumentException("capacity 必須 > 0: " + capacity);
+        }
+        this.capacity = capacity;
+        int base = 1;
+        while (base < capacity) {
+            base <<= 1;
+        }
+        this.leafBase = base;
+        this.tree = new double[base * 2];
+    }
+
+    int capacity() {
+        return capacity;
+    }
+
+    /** 所有葉節點 priority 的總和。 */
+    double total() {
+        return tree[1];
+    }
+
+    /** 取得 slot 目前的 priority。 */
+    double get(int index) {
+        return tree[leafBase + index];
+    }
+
+    /** 設定 slot 的 priority，並沿路更新祖先節點的總和。 */
+    void set(int index, double priority) {
+        if (index < 0 || index >= capacity) {
+            throw new IndexOutOfBoundsException("index=" + index + ", capacity=" + capacity);
+        }
+        int node = leafBase + index;
+        double delta = priority - tree[node];
+        while (node >= 1) {
+            tree[node] += delta;
+            node >>= 1;
+        }
+    }
+
+    /**
+     * 找出前綴和落在 {@code prefix} 的葉節點 slot。
+     * prefix 應介於 [0, total())；超出範圍時會被夾到最後一個非零葉節點。
+     */
+    int find(double prefix) {
+        int node = 1;
+        while (node < leafBase) {
+            int left = node << 1;
+            if (prefix < tree[left] || tree[left + 1] <= 0.0) {
+                node = left;
+            } else {
+                prefix -= tree[left];
+                node = left + 1;
+            }
+        }
+        int index = node - leafBase;
+        return Math.min(index, capacity - 1);
+    }
+}
@@ -0,0 +1,289 @@
+package light;
+
+import com.google.gson.Gson;
+import com.google.gson.JsonObject;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 同時啟動 K 個 Python 訓練 / actor process 的 process pool（Linux / Windows 皆可）。
+ *
+ * 每個 worker 有自己的：
+ * <ul>
+ *   <li>工作目錄 agent/workers/worker-N/（config.json、log、模型與 checkpoint 都寫在這裡）</li>
+ *   <li>port（basePort + N），並可選擇在同一個 JVM 內替它開一個 env server</li>
+ *   <li>seed（baseSeed + N）</li>
+ * </ul>
+ * 以環境變數 SNAKE_CONFIG / SNAKE_PORT / SNAKE_SEED / SNAKE_OUTPUT_DIR / SNAKE_WORKER_ID
+ * 傳給 agent/train_agent_socket.py。stdout / stderr 由 OS 直接轉寫到 worker.log，
+ * 不需要 Java 端的讀取執行緒；process 非正常結束時會在 backoff 後自動重啟。
+ */
+public class TrainerProcessPool implements AutoCloseable {
+
+    private static final String SCRIPT = "train_agent_socket.py";
+    private static final long RESTART_BACKOFF_MS = 2000L;
+
+    private final Gson gson = new Gson();
+    private final File agentDir;
+    private final int workerCount;
+    private final int basePort;
+    private final long baseSeed;
+    private final int maxRestarts;
+    private final boolean startEnvServers;
+    private final JsonObject baseConfig;
+
+    private final List<Worker> workers = new ArrayList<>();
+    private final ScheduledExecutorService restarter =
+            Executors.newSingleThreadScheduledExecutor(r -> {
+                Thread t = new Thread(r, "TrainerProcessPool-Restarter");
+                t.setDaemon(true);
+                return t;
+            });
+    private volatile boolean stopping = false;
+
+    /**
+     * @param workerCount     worker 數 K
+     * @param basePort        第 N 個 worker 使用 basePort + N
+     * @param baseSeed        第 N 個 worker 使用 baseSeed + N
+     * @param maxRestarts     每個 worker 最多自動重啟幾次
+     * @param startEnvServers 是否在本 JVM 內替每個 worker 開一個 headless env server
+     * @param baseConfig      每個 worker config.json 的共同內容（episodes / max_steps ...）
+     */
+    public TrainerProcessPool(int workerCount, int basePort, long baseSeed, int maxRestarts,
+                              boolean startEnvServers, JsonObject baseConfig) {
+        this.agentDir = PythonTrainerLauncher.resolveAgentDir();
+        this.workerCount = workerCount;
+        this.basePort = basePort;
+        this.baseSeed = baseSeed;
+        this.maxRestarts = maxRestarts;
+        this.startEnvServers = startEnvServers;
+        this.baseConfig = baseConfig == null ? new JsonObject() : baseConfig;
+    }
+
+    /** 建立所有 worker 的目錄與 config，並啟動它們。 */
+    public synchronized void start() throws IOException {
+        File script = new File(agentDir, SCRIPT);
+        if (!script.exists()) {
+            throw new IOException("找不到訓練腳本: " + script.getAbsolutePath());
+        }
+        for (int i = 0; i < workerCount; i++) {
+            Worker w = new Worker(i, basePort + i, baseSeed + i,
+                    new File(agentDir, "workers" + File.separator + "worker-" + i));
+            w.prepare();
+            workers.add(w);
+            if (startEnvServers) {
+                w.startEnvServer();
+            }
+            w.launch();
+        }
+        System.out.println("[TrainerProcessPool] 已啟動 " + workerCount + " 個 worker (ports "
+                + basePort + ".." + (basePort + workerCount - 1) + ")");
+    }
+
+    /** 阻塞直到所有 worker 正常結束（或耗盡重啟次數）。 */
+    public void awaitCompletion() throws InterruptedException {
+        for (Worker w : workers) {
+            w.awaitFinished();
+        }
+    }
+
+    @Override
+    public synchronized void close() {
+        stopping = true;
+        restarter.shutdownNow();
+        for (Worker w : workers) {
+            w.stop();
+        }
+    }
+
+    /** 單一 worker：負責自己的 config、process 與（選用的）env server。 */
+    private final class Worker {
+        private final int index;
+        private final int port;
+        private final long seed;
+        private final File dir;
+        private final File configFile;
+        private final File logFile;
+        private volatile Process process;
+        private volatile Thread envServerThread;
+        private volatile SocketSnakeServer envServer;
+        private int restarts = 0;
+        private final Object finished = new Object();
+        private boolean done = false;
+
+        Worker(int index, int port, long seed, File dir) {
+            this.index = index;
+            this.port = port;
+            this.seed = seed;
+            this.dir = dir;
+            this.configFile = new File(dir, "config.json");
+            this.logFile = new File(dir, "worker.log");
+        }
+
+        void prepare() throws IOException {
+            if (!dir.exists() && !dir.mkdirs()) {
+                throw new IOException("無法建立目錄: " + dir.getAbsolutePath());
+            }
+            JsonObject cfg = baseConfig.deepCopy();
+            cfg.addProperty("port", port);
+            cfg.addProperty("seed", seed);
+            try (FileWriter fw = new FileWriter(configFile, false)) {
+                fw.write(gson.toJson(cfg));
+            }
+        }
+
+        /** 在背景反覆開 server 並跑 session，trainer 重啟後可以重新連上同一個 port。 */
+        void startEnvServer() {
+            envServerThread = new Thread(() -> {
+                GameState state = new GameState(seed);
+                while (!stopping) {
+                    try (SocketSnakeServer server = new SocketSnakeServer(port)) {
+                        envServer = server;
+                        SocketSnakeServerGameRL.runSession(server, state, 0L, false);
+                    } catch (IOException e) {
+                        if (!stopping) {
+                            System.err.println("[TrainerProcessPool] worker-" + index + " env server 錯誤: " + e.getMessage());
+                            try {
+                                Thread.sleep(RESTART_BACKOFF_MS);
+                            } catch (InterruptedException ie) {
+                                Thread.currentThread().interrupt();
+                                return;
+                            }
+                        }
+                    }
+                    state.reset();
+                }
+            }, "TrainerProcessPool-EnvServer-" + index);
+            envServerThread.setDaemon(true);
+            envServerThread.start();
+        }
+
+        synchronized void launch() throws IOException {
+            ProcessBuilder pb = new ProcessBuilder(PythonTrainerLauncher.pythonExecutable(), "-u", SCRIPT);
+            pb.directory(agentDir);
+            Map<String, String> env = pb.environment();
+            env.put("SNAKE_CONFIG", configFile.getAbsolutePath());
+            env.put("SNAKE_PORT", String.valueOf(port));
+            env.put("SNAKE_SEED", String.valueOf(seed));
+            env.put("SNAKE_OUTPUT_DIR", dir.getAbsolutePath());
+            env.put("SNAKE_WORKER_ID", String.valueOf(index));
+            env.put("PYTHONIOENCODING", "utf-8");
+            pb.redirectErrorStream(true);
+            pb.redirectOutput(ProcessBuilder.Redirect.appendTo(logFile));
+
+            process = pb.start();
+            System.out.println("[TrainerProcessPool] worker-" + index + " 啟動 (pid=" + process.pid()
+                    + ", port=" + port + ", seed=" + seed + ", log=" + logFile.getAbsolutePath() + ")");
+            process.onExit().thenAccept(this::onExit);
+        }
+
+        private void onExit(Process p) {
+            int code = p.exitValue();
+            if (stopping || code == 0) {
+                System.out.println("[TrainerProcessPool] worker-" + index + " 結束 (exitCode=" + code + ")");
+                markFinished();
+                return;
+            }
+            if (restarts >= maxRestarts) {
+                System.err.println("[TrainerProcessPool] worker-" + index + " exitCode=" + code
+                        + "，已達重啟上限 " + maxRestarts + "，放棄。");
+                markFinished();
+                return;
+            }
+            restarts++;
+            System.err.println("[TrainerProcessPool] worker-" + index + " 異常結束 (exitCode=" + code
+                    + ")，" + RESTART_BACKOFF_MS + "ms 後第 " + restarts + " 次重啟。");
+            try {
+                restarter.schedule(() -> {
+                    try {
+                        if (!stopping) launch();
+                    } catch (IOException e) {
+                        System.err.println("[TrainerProcessPool] worker-" + index + " 重啟失敗: " + e.getMessage());
+                        markFinished();
+                    }
+                }, RESTART_BACKOFF_MS, TimeUnit.MILLISECONDS);
+            } catch (java.util.concurrent.RejectedExecutionException e) {
+                markFinished();
+            }
+        }
+
+        private void markFinished() {
+            synchronized (finished) {
+                done = true;
+                finished.notifyAll();
+            }
+        }
+
+        void awaitFinished() throws InterruptedException {
+            synchronized (finished) {
+                while (!done) {
+                    finished.wait();
+                }
+            }
+        }
+
+        void stop() {
+            Process p = process;
+            if (p != null && p.isAlive()) {
+                p.destroy();
+            }
+            SocketSnakeServer server = envServer;
+            if (server != null) {
+                server.close();
+            }
+            markFinished();
+        }
+    }
+
+    /**
+     * 用法：
+     * <pre>
+     *   java -cp ... light.TrainerProcessPool workers=4 port=5000 seed=1 episodes=900 max_steps=0 env=true
+     * </pre>
+     */
+    public static void main(String[] args) throws Exception {
+        int workers = Runtime.getRuntime().availableProcessors();
+        int port = 5000;
+        long seed = 1L;
+        int maxRestarts = 3;
+        boolean env = true;
+        JsonObject cfg = new JsonObject();
+        cfg.addProperty("episodes", 100);
+        cfg.addProperty("max_steps", 0);
+
+        for (String arg : args) {
+            int eq = arg.indexOf('=');
+            if (eq < 0) continue;
+            String key = arg.substring(0, eq);
+            String value = arg.substring(eq + 1);
+            switch (key) {
+                case "workers": workers = Integer.parseInt(value); break;
+                case "port": port = Integer.parseInt(value); break;
+                case "seed": seed = Long.parseLong(value); break;
+                case "restarts": maxRestarts = Integer.parseInt(value); break;
+                case "env": env = Boolean.parseBoolean(value); break;
+                case "episodes":
+                case "max_steps":
+                case "total_timesteps":
+                    cfg.addProperty(key, Long.parseLong(value));
+                    break;
+                default:
+                    System.err.println("[TrainerProcessPool] 未知參數: " + key);
+            }
+        }
+
+        TrainerProcessPool pool = new TrainerProcessPool(workers, port, seed, maxRestarts, env, cfg);
+        Runtime.getRuntime().addShutdownHook(new Thread(pool::close, "TrainerProcessPool-Shutdown"));
+        pool.start();
+        pool.awaitCompletion();
+        pool.close();
+    }
+}
@@ -0,0 +1,113 @@
+package light;
+
+/**
+ * 以 {@link GameState#getZobristHash()} 為 key 的固定大小 transposition table，全部存在兩個 {@code long[]} 裡。
+ *
+ * 不加鎖：每個 slot 存 {@code key ^ data} 與 {@code data}，讀取時以 XOR 驗證，
+ * 多執行緒同時寫入同一 slot 造成的撕裂（torn）內容會被視為 miss，不會回傳錯誤的值
+ * （Hyatt 的 lockless hashing）。同一 key 的並行更新可能互相覆蓋而遺失部分樣本，搜尋可以接受這種誤差。
+ *
+ * 每兩個 slot 為一個 bucket；同 key 或空 slot 優先，否則淘汰較舊世代（{@link #newGeneration()}）
+ * 或拜訪次數較少的那一格。
+ *
+ * data 的配置：低 32 bit 為平均值（float bits），32~55 bit 為樣本數，最高 8 bit 為世代。
+ */
+public final class TranspositionTable {
+
+    private static final long VISITS_MASK = 0xFFFFFFL;
+    private static final int MAX_VISITS = (int) VISITS_MASK;
+
+    private final long[] keys;
+    private final long[] data;
+    private final int mask;
+    private volatile int generation;
+
+    /** @param bits 容量為 2^bits 個 slot（每個 slot 16 bytes） */
+    public TranspositionTable(int bits) {
+        if (bits < 1 || bits > 28) {
+            throw new IllegalArgumentException("bits 必須介於 1 與 28 之間: " + bits);
+        }
+        int capacity = 1 << bits;
+        this.keys = new long[capacity];
+        this.data = new long[capacity];
+        this.mask = capacity - 1;
+    }
+
+    public int capacity() {
+        return keys.length;
+    }
+
+    /** 開始新的一輪搜尋（例如每走一步），舊世代的項目會優先被取代。 */
+    public void newGeneration() {
+        generation = (generation + 1) & 0xFF;
+    }
+
+    public void clear() {
+        java.util.Arrays.fill(keys, 0L);
+        java.util.Arrays.fill(data, 0L);
+    }
+
+    /** 查詢 key；沒有時回傳 0（{@link #visits(long)} 為 0）。 */
+    public long probe(long key) {
+        int i = (int) key & mask & ~1;
+        long d = data[i];
+        if ((keys[i] ^ d) == key && d != 0L) return d;
+        d = data[i + 1];
+        if ((keys[i + 1] ^ d) == key && d != 0L) return d;
+        return 0L;
+    }
+
+    /** 把一個樣本併入 key 的平均值。 */
+    public void update(long key, double sample) {
+        long old = probe(key);
+        int n = visits(old);
+        double mean = (n == 0) ? sample : value(old) + (sample - value(old)) / (n + 1);
+        store(key, (float) mean, Math.min(MAX_VISITS, n + 1));
+    }
+
+    /** 若 key 還沒出現過就寫入並回傳 true；用來在資料集裡去除重複項目（併發時可能偶爾兩者都回傳 true）。 */
+    public boolean putIfAbsent(long key) {
+        if (visits(probe(key)) > 0) {
+            return false;
+        }
+        store(key, 0f, 1);
+        return true;
+    }
+
+    /** 直接寫入 key 的平均值與樣本數，依 replacement policy 選擇 bucket 內的 slot。 */
+    public void store(long key, float value, int visits) {
+        int i = (int) key & mask & ~1;
+        int slot = chooseSlot(i, key);
+        long d = pack(value, visits, generation);
+        data[slot] = d;
+        keys[slot] = key ^ d;
+    }
+
+    private int chooseSlot(int i, long key) {
+        long d0 = data[i];
+        long d1 = data[i + 1];
+        if (d0 == 0L || (keys[i] ^ d0) == key) return i;
+        if (d1 == 0L || (keys[i + 1] ^ d1) == key) return i + 1;
+        int gen = generation;
+        boolean stale0 = generationOf(d0) != gen;
+        boolean stale1 = generationOf(d1) != gen;
+        if (stale0 != stale1) return stale0 ? i : i + 1;
+        return visits(d0) <= visits(d1) ? i : i + 1;
+    }
+
+    private static long pack(float value, int visits, int generation) {
+        return ((long) generation << 56) | ((long) visits << 32) | (Float.floatToRawIntBits(value) & 0xFFFFFFFFL);
+    }
+
+    public static float value(long data) {
+        return Float.intBitsToFloat((int) data);
+    }
+
+    public static int visits(long data) {
+        return (int) ((data >>> 32) & VISITS_MASK);
+    }
+
+    private static int generationOf(long data) {
+        return (int) (data >>> 56);
+    }
+}
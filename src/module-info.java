@@ -1,6 +1,10 @@
 module SnakeGame {
     requires java.desktop;
     requires com.google.gson;
+    requires jdk.httpserver;
+    requires java.management;
+    requires jdk.incubator.vector;
+    requires jdk.jfr;
 
     exports light to com.google.gson;
 }
\ No newline at end of file